@@ -0,0 +1,64 @@
+package cuchaz.enigma.benchmark;
+
+import cuchaz.enigma.source.Decompiler;
+import cuchaz.enigma.source.DecompilerPool;
+import cuchaz.enigma.source.Decompilers;
+import cuchaz.enigma.source.SourceSettings;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decompiles a part of the generated jar on a growing number of threads sharing a decompiler pool,
+ * the way the source export does, to show how decompiling scales with the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecompilerPoolBenchmark {
+	private static final int CLASSES = 200;
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private List<String> classNames;
+	private ExecutorService executor;
+	private Decompiler pool;
+
+	@Setup(Level.Trial)
+	public void setup(SyntheticProject project) {
+		classNames = project.classNames.stream().sorted().limit(CLASSES).toList();
+		executor = Executors.newFixedThreadPool(threads);
+		pool = new DecompilerPool(() -> Decompilers.PROCYON.create(project.classProvider, new SourceSettings(false, false)));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	@Benchmark
+	public long decompile() throws InterruptedException, ExecutionException {
+		List<Future<Integer>> sources = new ArrayList<>(classNames.size());
+		for (String className : classNames) {
+			sources.add(executor.submit(() -> pool.getSource(className, null).asString().length()));
+		}
+
+		long length = 0;
+		for (Future<Integer> source : sources) {
+			length += source.get();
+		}
+
+		return length;
+	}
+}
@@ -0,0 +1,36 @@
+package cuchaz.enigma.benchmark;
+
+import cuchaz.enigma.translation.mapping.EntryResolver;
+import cuchaz.enigma.translation.mapping.ResolutionStrategy;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntryResolverBenchmark {
+	@Param({"RESOLVE_ROOT", "RESOLVE_CLOSEST"})
+	public ResolutionStrategy strategy;
+
+	private EntryResolver resolver;
+	private MethodEntry[] methods;
+
+	@Setup
+	public void setup(SyntheticProject project) {
+		resolver = project.index.getEntryResolver();
+		methods = project.index.getEntryIndex().getMethods().toArray(new MethodEntry[0]);
+	}
+
+	@Benchmark
+	public void resolveEntry(Blackhole blackhole) {
+		for (MethodEntry method : methods) {
+			blackhole.consume(resolver.resolveEntry(method, strategy));
+		}
+	}
+}
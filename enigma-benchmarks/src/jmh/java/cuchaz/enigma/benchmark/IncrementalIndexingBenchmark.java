@@ -0,0 +1,33 @@
+package cuchaz.enigma.benchmark;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.analysis.index.JarIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IncrementalIndexingBenchmark {
+	private Set<String> changedClasses;
+
+	@Setup(Level.Trial)
+	public void setup(SyntheticProject project) {
+		List<String> classNames = project.classNames.stream().sorted().toList();
+		changedClasses = Set.of(classNames.get(classNames.size() / 2));
+	}
+
+	@Benchmark
+	public JarIndex updateOneClass(SyntheticProject project) {
+		// the class is updated with the same bytes, which leaves the index unchanged between invocations
+		project.index.updateClasses(Collections.emptySet(), Collections.emptySet(), changedClasses, project.classProvider, ProgressListener.none());
+		return project.index;
+	}
+}
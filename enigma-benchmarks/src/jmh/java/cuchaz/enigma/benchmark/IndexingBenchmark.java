@@ -0,0 +1,26 @@
+package cuchaz.enigma.benchmark;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.analysis.index.JarIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexingBenchmark {
+	@Param({"false", "true"})
+	public boolean parallel;
+
+	@Benchmark
+	public JarIndex indexJar(SyntheticProject project) {
+		// classes come from the warm caching provider, so this measures indexing rather than parsing
+		JarIndex index = JarIndex.empty();
+		index.indexJar(project.classNames, project.classProvider, ProgressListener.none(), parallel);
+		return index;
+	}
+}
@@ -0,0 +1,48 @@
+package cuchaz.enigma.benchmark;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.serde.MappingFileNameFormat;
+import cuchaz.enigma.translation.mapping.serde.MappingFormat;
+import cuchaz.enigma.translation.mapping.serde.MappingParseException;
+import cuchaz.enigma.translation.mapping.serde.MappingSaveParameters;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingsReadBenchmark {
+	private static final MappingSaveParameters SAVE_PARAMETERS = new MappingSaveParameters(MappingFileNameFormat.BY_DEOBF);
+
+	@Param({"ENIGMA_FILE", "ENIGMA_DIRECTORY", "TINY_V2"})
+	public MappingFormat format;
+
+	private Path directory;
+	private Path mappingsPath;
+
+	@Setup
+	public void setup(SyntheticProject project) throws IOException {
+		directory = Files.createTempDirectory("enigma-benchmark-mappings");
+		mappingsPath = directory.resolve("mappings");
+		format.write(project.mappings, mappingsPath, ProgressListener.none(), SAVE_PARAMETERS);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		SyntheticProject.deleteRecursively(directory);
+	}
+
+	@Benchmark
+	public EntryTree<EntryMapping> read() throws IOException, MappingParseException {
+		return format.read(mappingsPath, ProgressListener.none(), SAVE_PARAMETERS);
+	}
+}
@@ -0,0 +1,42 @@
+package cuchaz.enigma.benchmark;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.translation.mapping.serde.MappingFileNameFormat;
+import cuchaz.enigma.translation.mapping.serde.MappingSaveParameters;
+import cuchaz.enigma.translation.mapping.serde.enigma.EnigmaMappingsWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingsWriteBenchmark {
+	@Param({"BY_OBF", "BY_DEOBF"})
+	public MappingFileNameFormat fileNameFormat;
+
+	private Path directory;
+
+	// every invocation writes into a fresh directory, so that each one measures a full save rather
+	// than overwriting the files of the previous invocation
+	@Setup(Level.Invocation)
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("enigma-benchmark-mappings");
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDown() throws IOException {
+		SyntheticProject.deleteRecursively(directory);
+	}
+
+	@Benchmark
+	public void writeDirectory(SyntheticProject project) {
+		EnigmaMappingsWriter.DIRECTORY.write(project.mappings, directory, ProgressListener.none(), new MappingSaveParameters(fileNameFormat));
+	}
+}
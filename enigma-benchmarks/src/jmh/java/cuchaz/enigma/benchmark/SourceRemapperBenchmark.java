@@ -0,0 +1,65 @@
+package cuchaz.enigma.benchmark;
+
+import cuchaz.enigma.source.SourceRemapper;
+import cuchaz.enigma.source.Token;
+import cuchaz.enigma.translation.MappingTranslator;
+import cuchaz.enigma.translation.Translator;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remaps a generated source file with one token per indexed entry, the way a decompiled class is
+ * remapped whenever mappings change.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SourceRemapperBenchmark {
+	private SourceRemapper remapper;
+	private Map<Token, Entry<?>> tokenEntries;
+	private Translator translator;
+
+	@Setup
+	public void setup(SyntheticProject project) {
+		translator = new MappingTranslator(project.mappings, project.index.getEntryResolver());
+
+		List<Entry<?>> entries = new ArrayList<>();
+		entries.addAll(project.index.getEntryIndex().getClasses());
+		entries.addAll(project.index.getEntryIndex().getFields());
+		entries.addAll(project.index.getEntryIndex().getMethods());
+
+		StringBuilder source = new StringBuilder();
+		List<Token> tokens = new ArrayList<>();
+		tokenEntries = new HashMap<>();
+
+		for (Entry<?> entry : entries) {
+			String name = entry instanceof ClassEntry classEntry ? classEntry.getSimpleName() : entry.getName();
+			source.append("    public int ");
+			Token token = new Token(source.length(), source.length() + name.length(), name);
+			source.append(name).append("() { return 0; }\n");
+
+			tokens.add(token);
+			tokenEntries.put(token, entry);
+		}
+
+		remapper = new SourceRemapper(source.toString(), tokens);
+	}
+
+	@Benchmark
+	public SourceRemapper.Result remap() {
+		return remapper.remap((token, movedToken) -> {
+			Entry<?> translated = translator.extendedTranslate(tokenEntries.get(token)).getValue();
+			return translated != null ? translated.getSourceRemapName() : null;
+		});
+	}
+}
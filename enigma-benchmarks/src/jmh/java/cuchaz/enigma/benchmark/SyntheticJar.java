@@ -0,0 +1,188 @@
+package cuchaz.enigma.benchmark;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates a jar of obfuscated-looking classes to benchmark against.
+ *
+ * <p>The classes form short inheritance chains that override each other's methods, implement a
+ * shared set of interfaces, and reference fields and methods of random other classes, so that every
+ * index and resolution path has something to do. The same size and seed always give the same jar.</p>
+ */
+public final class SyntheticJar {
+	public static final int FIELDS_PER_CLASS = 4;
+	public static final int METHODS_PER_CLASS = 6;
+
+	private static final int CHAIN_LENGTH = 8;
+	private static final int CLASSES_PER_PACKAGE = 64;
+
+	private final int classCount;
+	private final int interfaceCount;
+	private final Random random;
+
+	private SyntheticJar(int classCount, long seed) {
+		this.classCount = classCount;
+		this.interfaceCount = Math.max(1, classCount / 16);
+		this.random = new Random(seed);
+	}
+
+	public static void write(Path jarPath, int classCount, long seed) throws IOException {
+		new SyntheticJar(classCount, seed).write(jarPath);
+	}
+
+	private void write(Path jarPath) throws IOException {
+		try (OutputStream out = Files.newOutputStream(jarPath); JarOutputStream jar = new JarOutputStream(out)) {
+			for (int i = 0; i < interfaceCount; i++) {
+				writeEntry(jar, interfaceName(i), generateInterface(i));
+			}
+
+			for (int i = 0; i < classCount; i++) {
+				writeEntry(jar, className(i), generateClass(i));
+			}
+		}
+	}
+
+	private static void writeEntry(JarOutputStream jar, String name, byte[] bytes) throws IOException {
+		jar.putNextEntry(new JarEntry(name + ".class"));
+		jar.write(bytes);
+		jar.closeEntry();
+	}
+
+	private byte[] generateInterface(int index) {
+		ClassWriter writer = new ClassWriter(0);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE, interfaceName(index), null, "java/lang/Object", null);
+		writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "a", "()V", null, null).visitEnd();
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	private byte[] generateClass(int index) {
+		String name = className(index);
+		String superName = index % CHAIN_LENGTH == 0 ? "java/lang/Object" : className(index - 1);
+		String interfaceName = interfaceName(index % interfaceCount);
+
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, new String[]{interfaceName});
+
+		for (int i = 0; i < FIELDS_PER_CLASS; i++) {
+			writer.visitField(Opcodes.ACC_PUBLIC, fieldName(i), "I", null, null).visitEnd();
+			writer.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, staticFieldName(i), "I", null, null).visitEnd();
+		}
+
+		MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+		init.visitCode();
+		init.visitVarInsn(Opcodes.ALOAD, 0);
+		init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+		init.visitInsn(Opcodes.RETURN);
+		init.visitMaxs(0, 0);
+		init.visitEnd();
+
+		// implements the interface method by calling into the class itself
+		MethodVisitor run = writer.visitMethod(Opcodes.ACC_PUBLIC, "a", "()V", null, null);
+		run.visitCode();
+		run.visitVarInsn(Opcodes.ALOAD, 0);
+		run.visitInsn(Opcodes.ICONST_0);
+		run.visitMethodInsn(Opcodes.INVOKEVIRTUAL, name, methodName(0), "(I)I", false);
+		run.visitInsn(Opcodes.POP);
+		run.visitInsn(Opcodes.RETURN);
+		run.visitMaxs(0, 0);
+		run.visitEnd();
+
+		for (int i = 0; i < METHODS_PER_CLASS; i++) {
+			generateMethod(writer, name, i);
+			generateStaticMethod(writer, name, i);
+		}
+
+		writer.visitEnd();
+		return writer.toByteArray();
+	}
+
+	private void generateMethod(ClassWriter writer, String owner, int index) {
+		MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, methodName(index), "(I)I", null, null);
+		method.visitCode();
+
+		// int x = this.field + arg
+		method.visitVarInsn(Opcodes.ALOAD, 0);
+		method.visitFieldInsn(Opcodes.GETFIELD, owner, fieldName(index % FIELDS_PER_CLASS), "I");
+		method.visitVarInsn(Opcodes.ILOAD, 1);
+		method.visitInsn(Opcodes.IADD);
+		method.visitVarInsn(Opcodes.ISTORE, 2);
+
+		// x = this.next(x), dispatched through the inheritance chain
+		method.visitVarInsn(Opcodes.ALOAD, 0);
+		method.visitVarInsn(Opcodes.ILOAD, 2);
+		method.visitMethodInsn(Opcodes.INVOKEVIRTUAL, owner, methodName((index + 1) % METHODS_PER_CLASS), "(I)I", false);
+		method.visitVarInsn(Opcodes.ISTORE, 2);
+
+		// x = Other.static(x) + Other.staticField
+		String other = className(random.nextInt(classCount));
+		method.visitVarInsn(Opcodes.ILOAD, 2);
+		method.visitMethodInsn(Opcodes.INVOKESTATIC, other, staticMethodName(random.nextInt(METHODS_PER_CLASS)), "(I)I", false);
+		method.visitFieldInsn(Opcodes.GETSTATIC, other, staticFieldName(random.nextInt(FIELDS_PER_CLASS)), "I");
+		method.visitInsn(Opcodes.IADD);
+		method.visitVarInsn(Opcodes.ISTORE, 2);
+
+		// this.field = x
+		method.visitVarInsn(Opcodes.ALOAD, 0);
+		method.visitVarInsn(Opcodes.ILOAD, 2);
+		method.visitFieldInsn(Opcodes.PUTFIELD, owner, fieldName((index + 1) % FIELDS_PER_CLASS), "I");
+
+		method.visitVarInsn(Opcodes.ILOAD, 2);
+		method.visitInsn(Opcodes.IRETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+	}
+
+	private void generateStaticMethod(ClassWriter writer, String owner, int index) {
+		MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, staticMethodName(index), "(I)I", null, null);
+		method.visitCode();
+
+		// Other.staticField = arg; new Other().a(); return arg
+		int otherIndex = random.nextInt(classCount);
+		String other = className(otherIndex);
+		method.visitVarInsn(Opcodes.ILOAD, 0);
+		method.visitFieldInsn(Opcodes.PUTSTATIC, other, staticFieldName(random.nextInt(FIELDS_PER_CLASS)), "I");
+		method.visitTypeInsn(Opcodes.NEW, other);
+		method.visitInsn(Opcodes.DUP);
+		method.visitMethodInsn(Opcodes.INVOKESPECIAL, other, "<init>", "()V", false);
+		method.visitMethodInsn(Opcodes.INVOKEINTERFACE, interfaceName(otherIndex % interfaceCount), "a", "()V", true);
+		method.visitVarInsn(Opcodes.ILOAD, 0);
+		method.visitInsn(Opcodes.IRETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+	}
+
+	public static String className(int index) {
+		return "p" + index / CLASSES_PER_PACKAGE + "/c" + index;
+	}
+
+	public static String interfaceName(int index) {
+		return "p/i" + index;
+	}
+
+	public static String fieldName(int index) {
+		return "f" + index;
+	}
+
+	public static String staticFieldName(int index) {
+		return "g" + index;
+	}
+
+	public static String methodName(int index) {
+		return "m" + index;
+	}
+
+	public static String staticMethodName(int index) {
+		return "s" + index;
+	}
+}
@@ -0,0 +1,112 @@
+package cuchaz.enigma.benchmark;
+
+import cuchaz.enigma.ProgressListener;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.classprovider.MappedJarClassProvider;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.ResolutionStrategy;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.LocalVariableEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * A generated jar, its index and a full set of mappings for it, shared by the benchmarks.
+ */
+@State(Scope.Benchmark)
+public class SyntheticProject {
+	@Param({"1000"})
+	public int classCount;
+
+	@Param({"42"})
+	public long seed;
+
+	public Path directory;
+	public Path jarPath;
+	public MappedJarClassProvider jarClassProvider;
+	public ClassProvider classProvider;
+	public Set<String> classNames;
+	public JarIndex index;
+	public EntryTree<EntryMapping> mappings;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("enigma-benchmark");
+		jarPath = directory.resolve("synthetic.jar");
+		SyntheticJar.write(jarPath, classCount, seed);
+
+		jarClassProvider = new MappedJarClassProvider(jarPath);
+		classProvider = new CachingClassProvider(jarClassProvider);
+		classNames = jarClassProvider.getClassNames();
+
+		index = JarIndex.empty();
+		index.indexJar(classNames, classProvider, ProgressListener.none(), true);
+
+		mappings = createMappings(index);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		jarClassProvider.close();
+		deleteRecursively(directory);
+	}
+
+	/**
+	 * Names every class, field, root method and method parameter in the index.
+	 */
+	public static EntryTree<EntryMapping> createMappings(JarIndex index) {
+		EntryTree<EntryMapping> mappings = new HashEntryTree<>();
+
+		for (ClassEntry classEntry : index.getEntryIndex().getClasses()) {
+			mappings.insert(classEntry, new EntryMapping("named/" + classEntry.getFullName().replace('/', '_').toUpperCase()));
+		}
+
+		for (FieldEntry fieldEntry : index.getEntryIndex().getFields()) {
+			mappings.insert(fieldEntry, new EntryMapping(fieldEntry.getName() + "Field"));
+		}
+
+		for (MethodEntry methodEntry : index.getEntryIndex().getMethods()) {
+			if (methodEntry.isConstructor() || !index.getEntryResolver().resolveEntry(methodEntry, ResolutionStrategy.RESOLVE_ROOT).contains(methodEntry)) {
+				continue;
+			}
+
+			mappings.insert(methodEntry, new EntryMapping(methodEntry.getName() + "Method"));
+
+			if (!methodEntry.getDesc().getArgumentDescs().isEmpty()) {
+				int firstParameter = index.getEntryIndex().getMethodAccess(methodEntry).isStatic() ? 0 : 1;
+				mappings.insert(new LocalVariableEntry(methodEntry, firstParameter, "", true, null), new EntryMapping("value"));
+			}
+		}
+
+		return mappings;
+	}
+
+	public static void deleteRecursively(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+
+		try (Stream<Path> paths = Files.walk(path)) {
+			for (Path file : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(file);
+			}
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package cuchaz.enigma.benchmark;
+
+import cuchaz.enigma.translation.MappingTranslator;
+import cuchaz.enigma.translation.Translator;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.LocalVariableEntry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslationBenchmark {
+	@Param({"CLASS", "FIELD", "METHOD", "LOCAL_VARIABLE"})
+	public String entryType;
+
+	private Translator translator;
+	private Entry<?>[] entries;
+
+	@Setup
+	public void setup(SyntheticProject project) {
+		translator = new MappingTranslator(project.mappings, project.index.getEntryResolver());
+
+		List<Entry<?>> entries = new ArrayList<>();
+		switch (entryType) {
+			case "CLASS" -> entries.addAll(project.index.getEntryIndex().getClasses());
+			case "FIELD" -> entries.addAll(project.index.getEntryIndex().getFields());
+			case "METHOD" -> entries.addAll(project.index.getEntryIndex().getMethods());
+			case "LOCAL_VARIABLE" -> project.mappings.getAllEntries()
+					.filter(entry -> entry instanceof LocalVariableEntry)
+					.forEach(entries::add);
+			default -> throw new IllegalArgumentException("Unknown entry type " + entryType);
+		}
+
+		this.entries = entries.toArray(new Entry<?>[0]);
+	}
+
+	@Benchmark
+	public void translate(Blackhole blackhole) {
+		for (Entry<?> entry : entries) {
+			blackhole.consume(translator.extendedTranslate(entry).getValue());
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package cuchaz.enigma.translation.mapping.tree;
+
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.LocalVariableEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares looking up deep local variable entries in a {@link HashEntryTree} by descending from the
+ * root ancestor against the previous lookup, which materialized the ancestry list of every entry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashEntryTreeBenchmark {
+	@Param({"1000"})
+	public int classCount;
+
+	@Param({"10"})
+	public int methodsPerClass;
+
+	private HashEntryTree<EntryMapping> tree;
+	private LocalVariableEntry[] targets;
+
+	@Setup
+	public void setup() {
+		tree = new HashEntryTree<>();
+		List<LocalVariableEntry> variables = new ArrayList<>();
+
+		for (int i = 0; i < classCount; i++) {
+			ClassEntry innerClass = new ClassEntry("pkg/C" + i + "$Inner");
+			tree.insert(innerClass, new EntryMapping("pkg/Named" + i + "$Inner"));
+
+			for (int j = 0; j < methodsPerClass; j++) {
+				MethodEntry method = new MethodEntry(innerClass, "m" + j, new MethodDescriptor("(IJ)V"));
+				tree.insert(method, new EntryMapping("method" + j));
+
+				for (int k = 1; k <= 2; k++) {
+					LocalVariableEntry variable = new LocalVariableEntry(method, k, "", true, null);
+					tree.insert(variable, new EntryMapping("arg" + k));
+					variables.add(variable);
+				}
+			}
+		}
+
+		// look up fresh, equal instances like the translator does with entries from the source
+		targets = new LocalVariableEntry[variables.size()];
+		Random random = new Random(0);
+		for (int i = 0; i < targets.length; i++) {
+			LocalVariableEntry variable = variables.get(random.nextInt(variables.size()));
+			MethodEntry method = variable.getParent();
+			ClassEntry owner = new ClassEntry(method.getParent().getFullName());
+			targets[i] = new LocalVariableEntry(new MethodEntry(owner, method.getName(), method.getDesc()), variable.getIndex(), "", true, null);
+		}
+	}
+
+	@Benchmark
+	public void findNode(Blackhole blackhole) {
+		for (LocalVariableEntry target : targets) {
+			blackhole.consume(tree.findNode(target));
+		}
+	}
+
+	@Benchmark
+	public void findNodeByAncestry(Blackhole blackhole) {
+		for (LocalVariableEntry target : targets) {
+			blackhole.consume(findNodeByAncestry(target));
+		}
+	}
+
+	private HashTreeNode<EntryMapping> findNodeByAncestry(Entry<?> target) {
+		List<Entry<?>> parentChain = getAncestry(target);
+
+		HashTreeNode<EntryMapping> node = tree.findNode(parentChain.get(0));
+		for (int i = 1; i < parentChain.size(); i++) {
+			if (node == null) {
+				return null;
+			}
+			node = node.getChild(parentChain.get(i));
+		}
+
+		return node;
+	}
+
+	private static List<Entry<?>> getAncestry(Entry<?> entry) {
+		Entry<?> parent = entry.getParent();
+		List<Entry<?>> entries = new ArrayList<>();
+		if (parent != null) {
+			entries.addAll(getAncestry(parent));
+		}
+		entries.add(entry);
+		return entries;
+	}
+}
@@ -30,9 +30,11 @@ public abstract class Command {
 	public abstract void run(String... args) throws Exception;
 
 	protected static EnigmaProject openProject(Path fileJarIn, Path fileMappings) throws Exception {
-		ProgressListener progress = new ConsoleProgressListener();
+		return openProject(Enigma.create(), fileJarIn, fileMappings);
+	}
 
-		Enigma enigma = Enigma.create();
+	protected static EnigmaProject openProject(Enigma enigma, Path fileJarIn, Path fileMappings) throws Exception {
+		ProgressListener progress = new ConsoleProgressListener();
 
 		System.out.println("Reading jar...");
 		EnigmaProject project = enigma.openJar(fileJarIn, new ClasspathClassProvider(), progress);
@@ -1,8 +1,10 @@
 package cuchaz.enigma.command;
 
+import cuchaz.enigma.Enigma;
 import cuchaz.enigma.EnigmaProject;
 import cuchaz.enigma.ProgressListener;
 import cuchaz.enigma.EnigmaProject.DecompileErrorStrategy;
+import cuchaz.enigma.config.ConfigPaths;
 import cuchaz.enigma.source.DecompilerService;
 import cuchaz.enigma.source.Decompilers;
 
@@ -43,13 +45,13 @@ public class DecompileCommand extends Command {
 			return;
 		}
 
-		EnigmaProject project = openProject(fileJarIn, fileMappings);
+		Enigma enigma = Enigma.builder()
+				.setSourceCacheDirectory(ConfigPaths.getCachePathRoot().resolve("enigma").resolve("sources"))
+				.build();
+		EnigmaProject project = openProject(enigma, fileJarIn, fileMappings);
 
 		ProgressListener progress = new ConsoleProgressListener();
 
-		EnigmaProject.JarExport jar = project.exportRemappedJar(progress);
-		EnigmaProject.SourceExport source = jar.decompile(progress, decompilerService, DecompileErrorStrategy.TRACE_AS_SOURCE);
-
-		source.write(fileJarOut, progress);
+		project.exportRemappedSources(fileJarOut, progress, decompilerService, DecompileErrorStrategy.TRACE_AS_SOURCE);
 	}
 }
@@ -1,8 +1,11 @@
 package cuchaz.enigma.command;
 
 import cuchaz.enigma.EnigmaProject;
+import cuchaz.enigma.JarExportManifest;
 import cuchaz.enigma.ProgressListener;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class DeobfuscateCommand extends Command {
@@ -13,12 +16,12 @@ public class DeobfuscateCommand extends Command {
 
 	@Override
 	public String getUsage() {
-		return "<in jar> <out jar> [<mappings file>]";
+		return "<in jar> <out jar> [<mappings file>] [<hash manifest>]";
 	}
 
 	@Override
 	public boolean isValidArgument(int length) {
-		return length == 2 || length == 3;
+		return length >= 2 && length <= 4;
 	}
 
 	@Override
@@ -26,12 +29,25 @@ public class DeobfuscateCommand extends Command {
 		Path fileJarIn = getReadablePath(getArg(args, 0, "in jar", true));
 		Path fileJarOut = getWritableFile(getArg(args, 1, "out jar", true)).toPath();
 		Path fileMappings = getReadablePath(getArg(args, 2, "mappings file", false));
+		File fileManifest = getWritableFile(getArg(args, 3, "hash manifest", false));
 
 		EnigmaProject project = openProject(fileJarIn, fileMappings);
 
 		ProgressListener progress = new ConsoleProgressListener();
 
-		EnigmaProject.JarExport jar = project.exportRemappedJar(progress);
-		jar.write(fileJarOut, progress);
+		if (fileManifest == null) {
+			project.exportRemappedJar(fileJarOut, progress);
+			return;
+		}
+
+		// a reproducible export, which only recompresses the classes that changed since the last one
+		Path manifestPath = fileManifest.toPath();
+		JarExportManifest previous = Files.exists(manifestPath) ? JarExportManifest.read(manifestPath) : null;
+		JarExportManifest manifest = project.exportReproducibleJar(fileJarOut, progress, previous);
+		manifest.write(manifestPath);
+
+		if (previous != null) {
+			System.out.println(String.format("%d classes changed, %d removed", manifest.getChangedClasses(previous).size(), manifest.getRemovedClasses(previous).size()));
+		}
 	}
 }
@@ -0,0 +1,65 @@
+package cuchaz.enigma.network;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+import cuchaz.enigma.translation.mapping.EntryChange;
+
+/**
+ * The last changes applied to the mappings of a server, numbered from 1 in the order they were
+ * applied. Only the last {@code capacity} changes are kept.
+ */
+final class ChangeLog {
+	private final int capacity;
+	private final Deque<EntryChange<?>> changes = new ArrayDeque<>();
+	private long lastSequence;
+
+	ChangeLog(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return the sequence number of the change
+	 */
+	long add(EntryChange<?> change) {
+		if (changes.size() == capacity) {
+			changes.removeFirst();
+		}
+
+		changes.addLast(change);
+		return ++lastSequence;
+	}
+
+	long getLastSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * @return the changes applied after the one with the given sequence number, or {@code null} if
+	 * some of them are not kept anymore
+	 */
+	@Nullable
+	List<EntryChange<?>> getChangesSince(long sequence) {
+		long missed = lastSequence - sequence;
+		if (missed < 0 || missed > changes.size()) {
+			return null;
+		}
+
+		List<EntryChange<?>> result = new ArrayList<>((int) missed);
+		Iterator<EntryChange<?>> iterator = changes.iterator();
+		for (int i = 0; i < changes.size() - missed; i++) {
+			iterator.next();
+		}
+
+		while (iterator.hasNext()) {
+			result.add(iterator.next());
+		}
+
+		return result;
+	}
+}
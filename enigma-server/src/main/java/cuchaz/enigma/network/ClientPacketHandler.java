@@ -10,8 +10,37 @@ import java.util.List;
 public interface ClientPacketHandler {
     void openMappings(EntryTree<EntryMapping> mappings);
 
+    /**
+     * Applies a part of the mappings synced from the server.
+     *
+     * @param first         whether this is the first part, which replaces the current mappings
+     * @param last          whether this is the last part
+     * @param syncedEntries the number of entries synced so far, including this part
+     * @param totalEntries  the number of entries being synced
+     */
+    void openMappingsChunk(EntryTree<EntryMapping> mappings, boolean first, boolean last, int syncedEntries, int totalEntries);
+
     boolean applyChangeFromServer(EntryChange<?> change);
 
+    /**
+     * Applies changes made together, refreshing the views once for all of them.
+     */
+    boolean applyChangesFromServer(List<EntryChange<?>> changes);
+
+    /**
+     * Records how far the client is synced, so that only the changes made after this position
+     * have to be synced when reconnecting to the same server.
+     *
+     * @param acknowledgesChange whether this answers a change sent by this client, which was
+     *                           either applied or rejected by the server
+     */
+    void updateSyncPosition(SyncPosition position, boolean acknowledgesChange);
+
+    /**
+     * Moves the sync position past changes made by another client, which were just received.
+     */
+    void advanceSyncPosition(int changes);
+
     void disconnectIfConnected(String reason);
 
     void sendPacket(Packet<ServerPacketHandler> packet);
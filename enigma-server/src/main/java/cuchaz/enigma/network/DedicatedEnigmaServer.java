@@ -4,8 +4,13 @@ import com.google.common.io.MoreFiles;
 import cuchaz.enigma.*;
 import cuchaz.enigma.classprovider.ClasspathClassProvider;
 import cuchaz.enigma.translation.mapping.serde.MappingParseException;
+import cuchaz.enigma.translation.mapping.EntryChange;
+import cuchaz.enigma.translation.mapping.EntryMapping;
 import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.mapping.MappingDelta;
 import cuchaz.enigma.translation.mapping.serde.MappingFormat;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
 import cuchaz.enigma.utils.Utils;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
@@ -14,21 +19,36 @@ import joptsimple.ValueConverter;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
 
 public class DedicatedEnigmaServer extends EnigmaServer {
 
+	private static final long JOURNAL_SYNC_INTERVAL_MILLIS = 100;
+	private static final long SHUTDOWN_TIMEOUT_SECONDS = 60;
+
 	private final EnigmaProfile profile;
 	private final MappingFormat mappingFormat;
 	private final Path mappingsFile;
+	private final MappingJournal journal;
 	private final PrintWriter log;
 	private BlockingQueue<Runnable> tasks = new LinkedBlockingDeque<>();
+	// completed by the server thread once the mappings were saved for the last time, it runs no tasks after that
+	private final CompletableFuture<Void> closed = new CompletableFuture<>();
+	// the changes which a failed save didn't write, they are written again with the next save
+	private MappingDelta<EntryMapping> unsavedDelta;
 
 	public DedicatedEnigmaServer(
 			byte[] jarChecksum,
@@ -36,6 +56,7 @@ public class DedicatedEnigmaServer extends EnigmaServer {
 			EnigmaProfile profile,
 			MappingFormat mappingFormat,
 			Path mappingsFile,
+			MappingJournal journal,
 			PrintWriter log,
 			EntryRemapper mappings,
 			int port
@@ -44,6 +65,7 @@ public class DedicatedEnigmaServer extends EnigmaServer {
 		this.profile = profile;
 		this.mappingFormat = mappingFormat;
 		this.mappingsFile = mappingsFile;
+		this.journal = journal;
 		this.log = log;
 	}
 
@@ -52,6 +74,16 @@ public class DedicatedEnigmaServer extends EnigmaServer {
 		tasks.add(task);
 	}
 
+	@Override
+	protected void onChangesApplied(List<EntryChange<?>> changes) {
+		try {
+			journal.append(changes);
+		} catch (IOException e) {
+			System.err.println("Failed to write changes to the journal");
+			e.printStackTrace();
+		}
+	}
+
 	@Override
 	public void log(String message) {
 		super.log(message);
@@ -71,6 +103,15 @@ public class DedicatedEnigmaServer extends EnigmaServer {
 				.required()
 				.withValuesConvertedBy(PathConverter.INSTANCE);
 
+		OptionSpec<Path> journalOpt = parser.accepts("journal", "File to log the changes made since the mappings were last saved to, defaults to the mappings path with a .journal extension")
+				.withRequiredArg()
+				.withValuesConvertedBy(PathConverter.INSTANCE);
+
+		OptionSpec<Integer> saveIntervalOpt = parser.accepts("save-interval", "Minutes between saves of the journaled changes to the mappings")
+				.withRequiredArg()
+				.ofType(Integer.class)
+				.defaultsTo(10);
+
 		OptionSpec<Path> profileOpt = parser.accepts("profile", "Profile json to apply at startup")
 				.withRequiredArg()
 				.withValuesConvertedBy(PathConverter.INSTANCE);
@@ -89,9 +130,19 @@ public class DedicatedEnigmaServer extends EnigmaServer {
 				.withValuesConvertedBy(PathConverter.INSTANCE)
 				.defaultsTo(Paths.get("log.txt"));
 
+		OptionSpec<Path> indexCacheOpt = parser.accepts("index-cache", "Directory to cache the jar index in")
+				.withRequiredArg()
+				.withValuesConvertedBy(PathConverter.INSTANCE);
+
 		OptionSet parsedArgs = parser.parse(args);
 		Path jar = parsedArgs.valueOf(jarOpt);
 		Path mappingsFile = parsedArgs.valueOf(mappingsOpt);
+		Path journalFile = parsedArgs.has(journalOpt) ? parsedArgs.valueOf(journalOpt) : mappingsFile.resolveSibling(mappingsFile.getFileName() + ".journal");
+		int saveInterval = parsedArgs.valueOf(saveIntervalOpt);
+		if (saveInterval <= 0) {
+			System.err.println("Save interval must be positive");
+			System.exit(1);
+		}
 		Path profileFile = parsedArgs.valueOf(profileOpt);
 		int port = parsedArgs.valueOf(portOpt);
 		char[] password = parsedArgs.valueOf(passwordOpt).toCharArray();
@@ -100,6 +151,7 @@ public class DedicatedEnigmaServer extends EnigmaServer {
 			System.exit(1);
 		}
 		Path logFile = parsedArgs.valueOf(logFileOpt);
+		Path indexCacheDirectory = parsedArgs.valueOf(indexCacheOpt);
 
 		System.out.println("Starting Enigma server");
 		DedicatedEnigmaServer server;
@@ -107,7 +159,7 @@ public class DedicatedEnigmaServer extends EnigmaServer {
 			byte[] checksum = Utils.zipSha1(parsedArgs.valueOf(jarOpt));
 
 			EnigmaProfile profile = EnigmaProfile.read(profileFile);
-			Enigma enigma = Enigma.builder().setProfile(profile).build();
+			Enigma enigma = Enigma.builder().setProfile(profile).setIndexCacheDirectory(indexCacheDirectory).build();
 			System.out.println("Indexing Jar...");
 			EnigmaProject project = enigma.openJar(jar, new ClasspathClassProvider(), ProgressListener.none());
 
@@ -127,9 +179,15 @@ public class DedicatedEnigmaServer extends EnigmaServer {
 				mappings = EntryRemapper.mapped(project.getJarIndex(), mappingFormat.read(mappingsFile, ProgressListener.none(), profile.getMappingSaveParameters()));
 			}
 
+			MappingJournal journal = new MappingJournal(journalFile);
+			int replayed = journal.replay(mappings);
+			if (replayed > 0) {
+				System.out.println("Replayed " + replayed + " changes from the journal");
+			}
+
 			PrintWriter log = new PrintWriter(Files.newBufferedWriter(logFile));
 
-			server = new DedicatedEnigmaServer(checksum, password, profile, mappingFormat, mappingsFile, log, mappings, port);
+			server = new DedicatedEnigmaServer(checksum, password, profile, mappingFormat, mappingsFile, journal, log, mappings, port);
 			server.start();
 			System.out.println("Server started");
 		} catch (IOException | MappingParseException e) {
@@ -139,29 +197,104 @@ public class DedicatedEnigmaServer extends EnigmaServer {
 			return;
 		}
 
+		// changes are synced to the journal in small batches, and only saved to the mappings once in a while
+		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+		scheduler.scheduleAtFixedRate(() -> server.runOnThread(server::syncJournal), JOURNAL_SYNC_INTERVAL_MILLIS, JOURNAL_SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
 		// noinspection RedundantSuppression
 		// noinspection Convert2MethodRef - javac 8 bug
-		Executors.newScheduledThreadPool(1).scheduleAtFixedRate(() -> server.runOnThread(() -> server.saveMappings()), 0, 1, TimeUnit.MINUTES);
-		Runtime.getRuntime().addShutdownHook(new Thread(server::saveMappings));
+		scheduler.scheduleAtFixedRate(() -> server.runOnThread(() -> server.saveMappings()), 0, saveInterval, TimeUnit.MINUTES);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			scheduler.shutdownNow();
+			server.stop();
+			server.awaitClose();
+		}));
 
-		while (true) {
+		while (!server.closed.isDone()) {
 			try {
 				server.tasks.take().run();
 			} catch (InterruptedException e) {
 				break;
 			}
 		}
+
+		System.exit(0);
 	}
 
+	/**
+	 * Kicks all clients, then saves the mappings and closes the journal on the server thread.
+	 */
 	@Override
-	public synchronized void stop() {
+	public void stop() {
 		super.stop();
-		System.exit(0);
+		runOnThread(this::close);
+	}
+
+	private void close() {
+		if (closed.isDone()) {
+			return;
+		}
+
+		try {
+			saveMappings();
+			journal.close();
+		} catch (IOException e) {
+			System.err.println("Failed to close the journal");
+			e.printStackTrace();
+		} finally {
+			log.close();
+			closed.complete(null);
+		}
+	}
+
+	private void awaitClose() {
+		try {
+			closed.get(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			System.err.println("Failed to save the mappings before shutting down");
+			e.printStackTrace();
+		}
+	}
+
+	private void syncJournal() {
+		try {
+			journal.sync();
+		} catch (IOException e) {
+			System.err.println("Failed to sync the journal");
+			e.printStackTrace();
+		}
 	}
 
+	/**
+	 * Saves the changes in the journal to the mappings, and empties the journal once they are saved.
+	 */
 	private void saveMappings() {
-		mappingFormat.write(getMappings().getObfToDeobf(), getMappings().takeMappingDelta(), mappingsFile, ProgressListener.none(), profile.getMappingSaveParameters());
 		log.flush();
+
+		EntryRemapper mappings = getMappings();
+		MappingDelta<EntryMapping> delta = mappings.takeMappingDelta();
+		if (unsavedDelta != null) {
+			EntryTree<Object> changes = new HashEntryTree<>();
+			Stream.concat(unsavedDelta.getChanges().getAllEntries(), delta.getChanges().getAllEntries())
+					.forEach(entry -> changes.insert(entry, MappingDelta.PLACEHOLDER));
+			delta = new MappingDelta<>(unsavedDelta.getBaseMappings(), changes);
+		}
+
+		try {
+			mappingFormat.write(mappings.getObfToDeobf(), delta, mappingsFile, ProgressListener.none(), profile.getMappingSaveParameters());
+		} catch (UncheckedIOException e) {
+			unsavedDelta = delta;
+			System.err.println("Failed to save the mappings, keeping the journal");
+			e.printStackTrace();
+			return;
+		}
+
+		unsavedDelta = null;
+		try {
+			journal.clear();
+		} catch (IOException e) {
+			System.err.println("Failed to clear the journal");
+			e.printStackTrace();
+		}
 	}
 
 	public static class PathConverter implements ValueConverter<Path> {
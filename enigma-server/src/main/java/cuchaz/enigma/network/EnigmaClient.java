@@ -1,5 +1,6 @@
 package cuchaz.enigma.network;
 
+import cuchaz.enigma.network.packet.LoginC2SPacket;
 import cuchaz.enigma.network.packet.Packet;
 import cuchaz.enigma.network.packet.PacketRegistry;
 
@@ -15,7 +16,9 @@ public class EnigmaClient {
 	private final String ip;
 	private final int port;
 	private Socket socket;
-	private DataOutput output;
+	private DataOutputStream output;
+	// the packets sent after logging in are prefixed with their length
+	private boolean loggedIn;
 
 	public EnigmaClient(ClientPacketHandler controller, String ip, int port) {
 		this.controller = controller;
@@ -25,10 +28,12 @@ public class EnigmaClient {
 
 	public void connect() throws IOException {
 		socket = new Socket(ip, port);
-		output = new DataOutputStream(socket.getOutputStream());
+		socket.setTcpNoDelay(true);
+		// packets are flushed whole, instead of a write call per field
+		output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
 		Thread thread = new Thread(() -> {
 			try {
-				DataInput input = new DataInputStream(socket.getInputStream());
+				DataInput input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
 				while (true) {
 					int packetId;
 					try {
@@ -66,10 +71,22 @@ public class EnigmaClient {
 	}
 
 
-	public void sendPacket(Packet<ServerPacketHandler> packet) {
+	public synchronized void sendPacket(Packet<ServerPacketHandler> packet) {
 		try {
-			output.writeByte(PacketRegistry.getC2SId(packet));
-			packet.write(output);
+			if (loggedIn) {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream framed = new DataOutputStream(bytes);
+				framed.writeByte(PacketRegistry.getC2SId(packet));
+				packet.write(framed);
+
+				output.writeInt(bytes.size());
+				bytes.writeTo(output);
+			} else {
+				output.writeByte(PacketRegistry.getC2SId(packet));
+				packet.write(output);
+				loggedIn = packet instanceof LoginC2SPacket;
+			}
+			output.flush();
 		} catch (IOException e) {
 			controller.disconnectIfConnected(e.toString());
 		}
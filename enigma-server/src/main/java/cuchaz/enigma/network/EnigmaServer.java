@@ -1,11 +1,21 @@
 package cuchaz.enigma.network;
 
 import java.io.*;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
 
 import cuchaz.enigma.network.packet.*;
 import cuchaz.enigma.translation.mapping.EntryChange;
@@ -17,14 +27,35 @@ public abstract class EnigmaServer {
 
 	// https://discordapp.com/channels/507304429255393322/566418023372816394/700292322918793347
 	public static final int DEFAULT_PORT = 34712;
-	public static final int PROTOCOL_VERSION = 1;
+	public static final int PROTOCOL_VERSION = 6;
+	// older clients are still accepted, and sent what their protocol version supports
+	public static final int MIN_PROTOCOL_VERSION = 1;
+	public static final int CHUNKED_SYNC_PROTOCOL_VERSION = 2;
+	public static final int DELTA_SYNC_PROTOCOL_VERSION = 3;
+	public static final int BATCH_CHANGE_PROTOCOL_VERSION = 4;
+	// clients prefix the packets they send after logging in with their length
+	public static final int FRAMED_PACKETS_PROTOCOL_VERSION = 5;
+	// clients count the changes of other clients themselves, instead of being sent their sync position
+	public static final int COUNTED_CHANGES_PROTOCOL_VERSION = 6;
 	public static final int CHECKSUM_SIZE = 20;
 	public static final int MAX_PASSWORD_LENGTH = 255; // length is written as a byte in the login packet
 
+	private static final int READ_BUFFER_SIZE = 16 * 1024;
+	private static final int MAX_PACKET_SIZE = 16 * 1024 * 1024;
+	// a client which doesn't read the packets sent to it fast enough is dropped after this much is queued
+	private static final long MAX_QUEUED_OUTPUT = 256L * 1024 * 1024;
+	private static final long CLOSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+	// clients which missed more changes than this are sent all mappings when they reconnect
+	private static final int CHANGE_LOG_SIZE = 16384;
+
 	private final int port;
-	private ServerSocket socket;
+	private ServerSocketChannel serverChannel;
+	private Selector selector;
+	private final Map<Socket, Connection> connections = new ConcurrentHashMap<>();
+	private final Queue<Connection> connectionsToFlush = new ConcurrentLinkedQueue<>();
 	private List<Socket> clients = new CopyOnWriteArrayList<>();
 	private Map<Socket, String> usernames = new HashMap<>();
+	private Map<Socket, Integer> protocolVersions = new HashMap<>();
 	private Set<Socket> unapprovedClients = new HashSet<>();
 
 	private final byte[] jarChecksum;
@@ -33,11 +64,11 @@ public abstract class EnigmaServer {
 	public static final int DUMMY_SYNC_ID = 0;
 	private final EntryRemapper mappings;
 	private Map<Entry<?>, Integer> syncIds = new HashMap<>();
-	private Map<Integer, Entry<?>> inverseSyncIds = new HashMap<>();
+	private Map<Integer, Set<Entry<?>>> inverseSyncIds = new HashMap<>();
 	private Map<Integer, Set<Socket>> clientsNeedingConfirmation = new HashMap<>();
 	private int nextSyncId = DUMMY_SYNC_ID + 1;
-
-	private static int nextIoId = 0;
+	private final long sessionId = new Random().nextLong();
+	private final ChangeLog changeLog = new ChangeLog(CHANGE_LOG_SIZE);
 
 	public EnigmaServer(byte[] jarChecksum, char[] password, EntryRemapper mappings, int port) {
 		this.jarChecksum = jarChecksum;
@@ -47,68 +78,116 @@ public abstract class EnigmaServer {
 	}
 
 	public void start() throws IOException {
-		socket = new ServerSocket(port);
-		log("Server started on " + socket.getInetAddress() + ":" + port);
+		selector = Selector.open();
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(port));
+		serverChannel.configureBlocking(false);
+		serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		log("Server started on " + serverChannel.socket().getInetAddress() + ":" + port);
 		Thread thread = new Thread(() -> {
 			try {
-				while (!socket.isClosed()) {
-					acceptClient();
-				}
-			} catch (SocketException e) {
+				runSelector();
 				System.out.println("Server closed");
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		});
-		thread.setName("Server client listener");
+		thread.setName("Server I/O thread");
 		thread.setDaemon(true);
 		thread.start();
 	}
 
-	private void acceptClient() throws IOException {
-		Socket client = socket.accept();
-		clients.add(client);
-		Thread thread = new Thread(() -> {
-			try {
-				DataInput input = new DataInputStream(client.getInputStream());
-				while (true) {
-					int packetId;
-					try {
-						packetId = input.readUnsignedByte();
-					} catch (EOFException | SocketException e) {
+	/**
+	 * Accepts clients and does all reads and writes of their channels on a single thread. Packets
+	 * are handled on the server thread, in the order they were received.
+	 */
+	private void runSelector() throws IOException {
+		long closeDeadline = 0;
+
+		try {
+			while (serverChannel.isOpen() || !connections.isEmpty()) {
+				if (serverChannel.isOpen()) {
+					selector.select();
+				} else {
+					// give the kick packets some time to be sent when the server is stopped
+					if (closeDeadline == 0) {
+						closeDeadline = System.nanoTime() + CLOSE_TIMEOUT_NANOS;
+					} else if (System.nanoTime() - closeDeadline > 0) {
+						connections.values().forEach(Connection::close);
 						break;
 					}
-					Packet<ServerPacketHandler> packet = PacketRegistry.createC2SPacket(packetId);
-					if (packet == null) {
-						throw new IOException("Received invalid packet id " + packetId);
+
+					selector.select(100);
+				}
+
+				Connection connection;
+				while ((connection = connectionsToFlush.poll()) != null) {
+					connection.flush();
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if (key.isValid() && key.isAcceptable()) {
+						try {
+							acceptClient();
+						} catch (IOException e) {
+							System.err.println("Failed to accept client");
+							e.printStackTrace();
+						}
+						continue;
+					}
+
+					connection = (Connection) key.attachment();
+					if (key.isValid() && key.isReadable()) {
+						connection.read();
+					}
+					if (key.isValid() && key.isWritable()) {
+						connection.flush();
 					}
-					packet.read(input);
-					runOnThread(() -> packet.handle(new ServerPacketHandler(client, this)));
 				}
-			} catch (IOException e) {
-				kick(client, e.toString());
-				e.printStackTrace();
-				return;
 			}
-			kick(client, "disconnect.disconnected");
-		});
-		thread.setName("Server I/O thread #" + (nextIoId++));
-		thread.setDaemon(true);
-		thread.start();
+		} finally {
+			selector.close();
+		}
+	}
+
+	private void acceptClient() throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) {
+			return;
+		}
+
+		Connection connection;
+		try {
+			channel.configureBlocking(false);
+			// packets are written whole, so there is nothing to gain from delaying them
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			connection = new Connection(channel);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+
+		connections.put(connection.socket, connection);
+		clients.add(connection.socket);
 	}
 
 	public void stop() {
 		runOnThread(() -> {
-			if (socket != null && !socket.isClosed()) {
+			if (serverChannel != null && serverChannel.isOpen()) {
 				for (Socket client : clients) {
 					kick(client, "disconnect.server_closed");
 				}
 				try {
-					socket.close();
+					serverChannel.close();
 				} catch (IOException e) {
 					System.err.println("Failed to close server socket");
 					e.printStackTrace();
 				}
+				selector.wakeup();
 			}
 		});
 	}
@@ -123,11 +202,10 @@ public abstract class EnigmaServer {
 			return list.isEmpty();
 		});
 		String username = usernames.remove(client);
-		try {
-			client.close();
-		} catch (IOException e) {
-			System.err.println("Failed to close server client socket");
-			e.printStackTrace();
+		protocolVersions.remove(client);
+		Connection connection = connections.get(client);
+		if (connection != null) {
+			connection.closeWhenFlushed();
 		}
 
 		if (username != null) {
@@ -156,36 +234,133 @@ public abstract class EnigmaServer {
 		return usernames.get(client);
 	}
 
-	public void sendPacket(Socket client, Packet<ClientPacketHandler> packet) {
-		if (!client.isClosed()) {
-			int packetId = PacketRegistry.getS2CId(packet);
-			try {
-				DataOutput output = new DataOutputStream(client.getOutputStream());
-				output.writeByte(packetId);
-				packet.write(output);
-			} catch (IOException e) {
-				if (!(packet instanceof KickS2CPacket)) {
-					kick(client, e.toString());
-					e.printStackTrace();
+	public void setProtocolVersion(Socket client, int protocolVersion) {
+		protocolVersions.put(client, protocolVersion);
+	}
+
+	public int getProtocolVersion(Socket client) {
+		return protocolVersions.getOrDefault(client, MIN_PROTOCOL_VERSION);
+	}
+
+	public SyncPosition getSyncPosition() {
+		return new SyncPosition(sessionId, changeLog.getLastSequence());
+	}
+
+	/**
+	 * Syncs the mappings to a client which just logged in. If the client was synced with this server
+	 * before and the changes made since then are still logged, only these changes are sent.
+	 *
+	 * @param lastPosition how far the client was synced before, or {@code null}
+	 */
+	public void sendMappings(Socket client, @Nullable SyncPosition lastPosition) {
+		if (getProtocolVersion(client) < DELTA_SYNC_PROTOCOL_VERSION) {
+			sendAllMappings(client);
+			return;
+		}
+
+		List<EntryChange<?>> missedChanges = null;
+		if (lastPosition != null && lastPosition.sessionId() == sessionId) {
+			missedChanges = changeLog.getChangesSince(lastPosition.sequence());
+		}
+
+		if (missedChanges != null) {
+			log("Resyncing " + missedChanges.size() + " changes to " + getUsername(client));
+			if (getProtocolVersion(client) >= BATCH_CHANGE_PROTOCOL_VERSION) {
+				if (!missedChanges.isEmpty()) {
+					sendPacket(client, new EntryChangeBatchS2CPacket(DUMMY_SYNC_ID, missedChanges));
+				}
+			} else {
+				for (EntryChange<?> change : missedChanges) {
+					sendPacket(client, new EntryChangeS2CPacket(DUMMY_SYNC_ID, change));
 				}
 			}
+		} else {
+			sendAllMappings(client);
 		}
+
+		sendPacket(client, new SyncPositionS2CPacket(getSyncPosition(), false));
 	}
 
-	public void sendToAll(Packet<ClientPacketHandler> packet) {
-		for (Socket client : clients) {
-			sendPacket(client, packet);
+	private void sendAllMappings(Socket client) {
+		if (getProtocolVersion(client) >= CHUNKED_SYNC_PROTOCOL_VERSION) {
+			for (SyncMappingsChunkS2CPacket packet : SyncMappingsChunkS2CPacket.split(mappings.getObfToDeobf())) {
+				sendPacket(client, packet);
+			}
+		} else {
+			sendPacket(client, new SyncMappingsS2CPacket(mappings.getObfToDeobf()));
 		}
 	}
 
+	public void sendPacket(Socket client, Packet<ClientPacketHandler> packet) {
+		Connection connection = connections.get(client);
+		if (connection == null) {
+			return;
+		}
+
+		try {
+			connection.send(encodePacket(packet));
+		} catch (IOException e) {
+			if (!(packet instanceof KickS2CPacket)) {
+				kick(client, e.toString());
+				e.printStackTrace();
+			}
+		}
+	}
+
+	public void sendToAll(Packet<ClientPacketHandler> packet) {
+		sendToAllExcept(null, packet);
+	}
+
 	public void sendToAllExcept(Socket excluded, Packet<ClientPacketHandler> packet) {
+		sendToAllExcept(excluded, packet, MIN_PROTOCOL_VERSION, PROTOCOL_VERSION);
+	}
+
+	/**
+	 * Sends a packet to all clients with a protocol version in the given range, except one.
+	 */
+	public void sendToAllExcept(Socket excluded, Packet<ClientPacketHandler> packet, int minProtocolVersion, int maxProtocolVersion) {
+		// encoded once, and only queued for every client
+		ByteBuffer encoded;
+		try {
+			encoded = encodePacket(packet);
+		} catch (IOException e) {
+			for (Socket client : clients) {
+				if (client != excluded && !(packet instanceof KickS2CPacket)) {
+					kick(client, e.toString());
+				}
+			}
+			e.printStackTrace();
+			return;
+		}
+
 		for (Socket client : clients) {
-			if (client != excluded) {
-				sendPacket(client, packet);
+			int protocolVersion = getProtocolVersion(client);
+			Connection connection = connections.get(client);
+			if (client != excluded && connection != null && protocolVersion >= minProtocolVersion && protocolVersion <= maxProtocolVersion) {
+				connection.send(encoded);
 			}
 		}
 	}
 
+	/**
+	 * Sends changes applied together to all clients except their author, as a single packet to the
+	 * clients which support batches, and as separate changes with the same sync id to the others.
+	 */
+	public void sendChangesToAllExcept(Socket author, int syncId, List<EntryChange<?>> changes) {
+		sendToAllExcept(author, new EntryChangeBatchS2CPacket(syncId, changes), BATCH_CHANGE_PROTOCOL_VERSION, PROTOCOL_VERSION);
+		for (EntryChange<?> change : changes) {
+			sendToAllExcept(author, new EntryChangeS2CPacket(syncId, change), MIN_PROTOCOL_VERSION, BATCH_CHANGE_PROTOCOL_VERSION - 1);
+		}
+	}
+
+	private static ByteBuffer encodePacket(Packet<ClientPacketHandler> packet) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeByte(PacketRegistry.getS2CId(packet));
+		packet.write(output);
+		return ByteBuffer.wrap(bytes.toByteArray()).asReadOnlyBuffer();
+	}
+
 	public boolean canModifyEntry(Socket client, Entry<?> entry) {
 		if (unapprovedClients.contains(client)) {
 			return false;
@@ -200,18 +375,31 @@ public abstract class EnigmaServer {
 	}
 
 	public int lockEntry(Socket exception, Entry<?> entry) {
+		return lockEntries(exception, List.of(entry));
+	}
+
+	/**
+	 * Locks entries changed together under a single sync id, until all other clients confirmed the changes.
+	 */
+	public int lockEntries(Socket exception, Collection<? extends Entry<?>> entries) {
 		int syncId = nextSyncId;
 		nextSyncId++;
 		// sync id is sent as an unsigned short, can't have more than 65536
 		if (nextSyncId == 65536) {
 			nextSyncId = DUMMY_SYNC_ID + 1;
 		}
-		Integer oldSyncId = syncIds.get(entry);
-		if (oldSyncId != null) {
-			clientsNeedingConfirmation.remove(oldSyncId);
+		for (Entry<?> entry : entries) {
+			Integer oldSyncId = syncIds.put(entry, syncId);
+			if (oldSyncId != null) {
+				// the entry doesn't wait for the confirmation of its previous change anymore
+				Set<Entry<?>> oldEntries = inverseSyncIds.get(oldSyncId);
+				if (oldEntries != null && oldEntries.remove(entry) && oldEntries.isEmpty()) {
+					inverseSyncIds.remove(oldSyncId);
+					clientsNeedingConfirmation.remove(oldSyncId);
+				}
+			}
 		}
-		syncIds.put(entry, syncId);
-		inverseSyncIds.put(syncId, entry);
+		inverseSyncIds.put(syncId, new HashSet<>(entries));
 		Set<Socket> clients = new HashSet<>(this.clients);
 		clients.remove(exception);
 		clientsNeedingConfirmation.put(syncId, clients);
@@ -228,11 +416,50 @@ public abstract class EnigmaServer {
 			clients.remove(client);
 			if (clients.isEmpty()) {
 				clientsNeedingConfirmation.remove(syncId);
-				syncIds.remove(inverseSyncIds.remove(syncId));
+				Set<Entry<?>> entries = inverseSyncIds.remove(syncId);
+				if (entries != null) {
+					entries.forEach(syncIds::remove);
+				}
+			}
+		}
+	}
+
+	public void logChange(Socket author, EntryChange<?> change) {
+		logChanges(author, List.of(change));
+	}
+
+	/**
+	 * Logs changes applied to the mappings, after they were sent to the other clients.
+	 */
+	public void logChanges(Socket author, List<EntryChange<?>> changes) {
+		onChangesApplied(changes);
+
+		for (EntryChange<?> change : changes) {
+			changeLog.add(change);
+		}
+
+		SyncPosition position = getSyncPosition();
+		for (Socket client : clients) {
+			if (!protocolVersions.containsKey(client) || getProtocolVersion(client) < DELTA_SYNC_PROTOCOL_VERSION) {
+				continue;
+			}
+
+			// the author is always answered, the other clients only if they don't count the changes they receive
+			if (client == author || getProtocolVersion(client) < COUNTED_CHANGES_PROTOCOL_VERSION) {
+				sendPacket(client, new SyncPositionS2CPacket(position, client == author));
 			}
 		}
 	}
 
+	/**
+	 * Answers a change sent by a client which was rejected, after the correct mapping was sent.
+	 */
+	public void rejectChange(Socket client) {
+		if (getProtocolVersion(client) >= DELTA_SYNC_PROTOCOL_VERSION) {
+			sendPacket(client, new SyncPositionS2CPacket(getSyncPosition(), true));
+		}
+	}
+
 	public void sendCorrectMapping(Socket client, Entry<?> entry, boolean refreshClassTree) {
 		EntryMapping oldMapping = mappings.getDeobfMapping(entry);
 		String oldName = oldMapping.targetName();
@@ -245,12 +472,18 @@ public abstract class EnigmaServer {
 
 	protected abstract void runOnThread(Runnable task);
 
+	/**
+	 * Called on the server thread with changes applied to the mappings, in the order they were applied.
+	 */
+	protected void onChangesApplied(List<EntryChange<?>> changes) {
+	}
+
 	public void log(String message) {
 		System.out.println(message);
 	}
 
 	protected boolean isRunning() {
-		return !socket.isClosed();
+		return serverChannel.isOpen();
 	}
 
 	public byte[] getJarChecksum() {
@@ -266,8 +499,254 @@ public abstract class EnigmaServer {
 	}
 
 	public void sendMessage(Message message) {
+		sendMessage(message, MIN_PROTOCOL_VERSION);
+	}
+
+	/**
+	 * Sends a message to the clients which support its type.
+	 */
+	public void sendMessage(Message message, int minProtocolVersion) {
 		log(String.format("[MSG] %s", message.translate()));
-		sendToAll(new MessageS2CPacket(message));
+		sendToAllExcept(null, new MessageS2CPacket(message), minProtocolVersion, PROTOCOL_VERSION);
+	}
+
+	/**
+	 * A client's channel and the packets queued for it. The channel is only read from and written
+	 * to by the selector thread, other threads queue encoded packets and wake it up.
+	 */
+	private final class Connection {
+		private final SocketChannel channel;
+		private final Socket socket;
+		private final SelectionKey key;
+		private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		// only accessed by the selector thread
+		private boolean framed;
+
+		// guarded by this
+		private final Deque<ByteBuffer> output = new ArrayDeque<>();
+		private long queuedBytes;
+		private boolean flushScheduled;
+		private boolean closing;
+
+		Connection(SocketChannel channel) throws IOException {
+			this.channel = channel;
+			this.socket = channel.socket();
+			this.key = channel.register(selector, SelectionKey.OP_READ, this);
+		}
+
+		void send(ByteBuffer packet) {
+			synchronized (this) {
+				if (closing) {
+					return;
+				}
+
+				if (queuedBytes + packet.remaining() > MAX_QUEUED_OUTPUT) {
+					System.err.println("Dropping client " + socket.getRemoteSocketAddress() + ", too many packets are queued for it");
+					output.clear();
+					closing = true;
+					runOnThread(() -> kick(socket, "disconnect.disconnected"));
+				} else {
+					output.add(packet.duplicate());
+					queuedBytes += packet.remaining();
+				}
+
+				if (flushScheduled) {
+					return;
+				}
+				flushScheduled = true;
+			}
+
+			connectionsToFlush.add(this);
+			selector.wakeup();
+		}
+
+		/**
+		 * Closes the connection once the packets queued so far were sent, and ignores the packets
+		 * queued from now on.
+		 */
+		void closeWhenFlushed() {
+			synchronized (this) {
+				closing = true;
+				if (flushScheduled) {
+					return;
+				}
+				flushScheduled = true;
+			}
+
+			connectionsToFlush.add(this);
+			selector.wakeup();
+		}
+
+		void flush() {
+			if (!key.isValid()) {
+				return;
+			}
+
+			synchronized (this) {
+				flushScheduled = false;
+
+				try {
+					while (!output.isEmpty()) {
+						// gather as many queued packets as possible into a single write
+						long written = channel.write(output.toArray(new ByteBuffer[0]));
+						queuedBytes -= written;
+
+						while (!output.isEmpty() && !output.peek().hasRemaining()) {
+							output.poll();
+						}
+
+						if (written == 0) {
+							break;
+						}
+					}
+				} catch (IOException e) {
+					close();
+					runOnThread(() -> kick(socket, e.toString()));
+					return;
+				}
+
+				if (output.isEmpty() && closing) {
+					close();
+				} else {
+					int readOps = closing ? 0 : SelectionKey.OP_READ;
+					key.interestOps(output.isEmpty() ? readOps : readOps | SelectionKey.OP_WRITE);
+				}
+			}
+		}
+
+		void read() {
+			try {
+				if (channel.read(input) == -1) {
+					close();
+					runOnThread(() -> kick(socket, "disconnect.disconnected"));
+					return;
+				}
+			} catch (IOException e) {
+				close();
+				runOnThread(() -> kick(socket, e.toString()));
+				return;
+			}
+
+			input.flip();
+			try {
+				while (input.hasRemaining()) {
+					Packet<ServerPacketHandler> packet = readPacket();
+					if (packet == null) {
+						break;
+					}
+					runOnThread(() -> packet.handle(new ServerPacketHandler(socket, EnigmaServer.this)));
+				}
+			} catch (IOException e) {
+				// stop reading, the client is kicked on the server thread
+				key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+				runOnThread(() -> kick(socket, e.toString()));
+				e.printStackTrace();
+				return;
+			} finally {
+				input.compact();
+			}
+
+			if (!input.hasRemaining()) {
+				if (input.capacity() >= MAX_PACKET_SIZE) {
+					key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+					runOnThread(() -> kick(socket, new IOException("Received a packet larger than " + MAX_PACKET_SIZE + " bytes").toString()));
+					return;
+				}
+
+				ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+				input.flip();
+				larger.put(input);
+				input = larger;
+			}
+		}
+
+		/**
+		 * Reads the next packet from the input buffer.
+		 *
+		 * <p>Packets of clients which don't prefix them with their length are parsed again whenever
+		 * more of them was received, which is only fast for small packets.</p>
+		 *
+		 * @return the packet, or {@code null} if it wasn't fully received yet
+		 */
+		private Packet<ServerPacketHandler> readPacket() throws IOException {
+			if (framed) {
+				return readFramedPacket();
+			}
+
+			ByteArrayInputStream bytes = new ByteArrayInputStream(input.array(), input.arrayOffset() + input.position(), input.remaining());
+			Packet<ServerPacketHandler> packet;
+
+			try {
+				packet = readPacket(new DataInputStream(bytes));
+			} catch (EOFException e) {
+				return null;
+			}
+
+			input.position(input.limit() - bytes.available());
+			if (packet instanceof LoginC2SPacket login && login.getProtocolVersion() >= FRAMED_PACKETS_PROTOCOL_VERSION) {
+				framed = true;
+			}
+
+			return packet;
+		}
+
+		private Packet<ServerPacketHandler> readFramedPacket() throws IOException {
+			if (input.remaining() < 4) {
+				return null;
+			}
+
+			int length = input.getInt(input.position());
+			if (length <= 0 || length > MAX_PACKET_SIZE - 4) {
+				throw new IOException("Received a packet of invalid length " + length);
+			}
+
+			if (input.remaining() - 4 < length) {
+				return null;
+			}
+
+			ByteArrayInputStream bytes = new ByteArrayInputStream(input.array(), input.arrayOffset() + input.position() + 4, length);
+			Packet<ServerPacketHandler> packet;
+
+			try {
+				packet = readPacket(new DataInputStream(bytes));
+			} catch (EOFException e) {
+				throw new IOException("Received a packet shorter than its contents", e);
+			}
+
+			if (bytes.available() > 0) {
+				throw new IOException("Received a packet with " + bytes.available() + " bytes after its contents");
+			}
+
+			input.position(input.position() + 4 + length);
+			return packet;
+		}
+
+		private static Packet<ServerPacketHandler> readPacket(DataInput in) throws IOException {
+			int packetId = in.readUnsignedByte();
+			Packet<ServerPacketHandler> packet = PacketRegistry.createC2SPacket(packetId);
+			if (packet == null) {
+				throw new IOException("Received invalid packet id " + packetId);
+			}
+
+			packet.read(in);
+			return packet;
+		}
+
+		void close() {
+			synchronized (this) {
+				closing = true;
+				output.clear();
+			}
+
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				System.err.println("Failed to close server client socket");
+				e.printStackTrace();
+			}
+			connections.remove(socket);
+		}
 	}
 
 }
@@ -0,0 +1,149 @@
+package cuchaz.enigma.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import cuchaz.enigma.network.packet.PacketHelper;
+import cuchaz.enigma.translation.mapping.EntryChange;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.mapping.EntryUtil;
+import cuchaz.enigma.utils.validation.PrintValidatable;
+import cuchaz.enigma.utils.validation.ValidationContext;
+
+/**
+ * An append-only log of the changes applied to the mappings since they were last saved, so that
+ * they are not lost if the server stops without saving.
+ *
+ * <p>Each record is the length and CRC32 of an encoded entry change, followed by the change. Records
+ * are written as soon as changes are applied, and only forced to the disk by {@link #sync()}, so
+ * changes applied in quick succession share a single sync. A record which was only partly written
+ * when the server stopped is dropped, along with everything after it.</p>
+ */
+final class MappingJournal implements Closeable {
+	private static final int MAX_RECORD_SIZE = 1024 * 1024;
+	private static final int HEADER_SIZE = 8;
+	// sync early when a lot of changes are waiting to be synced
+	private static final int MAX_UNSYNCED_BYTES = 64 * 1024;
+
+	private final Path path;
+	private final FileChannel channel;
+	private long unsyncedBytes;
+
+	MappingJournal(Path path) throws IOException {
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * Applies the changes in the journal to mappings read from the last save.
+	 *
+	 * @return the number of changes applied
+	 */
+	synchronized int replay(EntryRemapper mappings) throws IOException {
+		List<EntryChange<?>> changes = read();
+
+		for (EntryChange<?> change : changes) {
+			// changes are applied on their own, so that an invalid one doesn't prevent the next ones
+			ValidationContext vc = new ValidationContext();
+			vc.setActiveElement(PrintValidatable.INSTANCE);
+			EntryUtil.applyChange(vc, mappings, change);
+		}
+
+		return changes.size();
+	}
+
+	private List<EntryChange<?>> read() throws IOException {
+		ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(path));
+		List<EntryChange<?>> changes = new ArrayList<>();
+
+		while (journal.remaining() >= HEADER_SIZE) {
+			int length = journal.getInt(journal.position());
+			int checksum = journal.getInt(journal.position() + 4);
+			if (length < 0 || length > MAX_RECORD_SIZE || journal.remaining() - HEADER_SIZE < length) {
+				break;
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(journal.array(), journal.position() + HEADER_SIZE, length);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+
+			changes.add(PacketHelper.readEntryChange(new DataInputStream(new ByteArrayInputStream(journal.array(), journal.position() + HEADER_SIZE, length))));
+			journal.position(journal.position() + HEADER_SIZE + length);
+		}
+
+		if (journal.hasRemaining()) {
+			System.err.println("Dropping " + journal.remaining() + " bytes of incomplete changes at the end of the journal " + path);
+			channel.truncate(journal.position());
+			channel.force(true);
+		}
+
+		channel.position(journal.position());
+		return changes;
+	}
+
+	synchronized void append(List<EntryChange<?>> changes) throws IOException {
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(records);
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+
+		for (EntryChange<?> change : changes) {
+			record.reset();
+			PacketHelper.writeEntryChange(new DataOutputStream(record), change);
+
+			CRC32 crc = new CRC32();
+			crc.update(record.toByteArray());
+			output.writeInt(record.size());
+			output.writeInt((int) crc.getValue());
+			record.writeTo(output);
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+
+		unsyncedBytes += records.size();
+		if (unsyncedBytes >= MAX_UNSYNCED_BYTES) {
+			sync();
+		}
+	}
+
+	/**
+	 * Forces the changes appended since the last sync to the disk.
+	 */
+	synchronized void sync() throws IOException {
+		if (unsyncedBytes > 0) {
+			channel.force(false);
+			unsyncedBytes = 0;
+		}
+	}
+
+	/**
+	 * Empties the journal, once the mappings were saved with all changes in it.
+	 */
+	synchronized void clear() throws IOException {
+		channel.truncate(0);
+		channel.force(true);
+		unsyncedBytes = 0;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		sync();
+		channel.close();
+	}
+}
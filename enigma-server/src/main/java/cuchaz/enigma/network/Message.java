@@ -13,6 +13,10 @@ public abstract class Message {
 
 	public final String user;
 	
+	public static BatchChange batchChange(String user, int changes) {
+		return new BatchChange(user, changes);
+	}
+
 	public static Chat chat(String user, String message) {
 		return new Chat(user, message);
 	}
@@ -73,6 +77,9 @@ public abstract class Message {
 				entry = PacketHelper.readEntry(input);
 				String newName = input.readUTF();
 				return rename(user, entry, newName);
+			case BATCH_CHANGE:
+				int changes = input.readInt();
+				return batchChange(user, changes);
 			default:
 				throw new IllegalStateException("unreachable");
 		}
@@ -108,6 +115,8 @@ public abstract class Message {
 		MARK_DEOBF,
 		REMOVE_MAPPING,
 		RENAME,
+		// only sent to clients which support batch changes
+		BATCH_CHANGE,
 	}
 
 	public static final class Chat extends Message {
@@ -390,4 +399,50 @@ public abstract class Message {
 
 	}
 
+	public static final class BatchChange extends Message {
+
+		public final int changes;
+
+		private BatchChange(String user, int changes) {
+			super(user);
+			this.changes = changes;
+		}
+
+		@Override
+		public void write(DataOutput output) throws IOException {
+			super.write(output);
+			output.writeInt(changes);
+		}
+
+		@Override
+		public String translate() {
+			return String.format(I18n.translate("message.batch_change.text"), user, changes);
+		}
+
+		@Override
+		public Type getType() {
+			return Type.BATCH_CHANGE;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			if (!super.equals(o)) return false;
+			BatchChange that = (BatchChange) o;
+			return changes == that.changes;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(super.hashCode(), changes);
+		}
+
+		@Override
+		public String toString() {
+			return String.format("Message.BatchChange { user: '%s', changes: %d }", user, changes);
+		}
+
+	}
+
 }
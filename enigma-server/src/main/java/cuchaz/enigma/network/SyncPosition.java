@@ -0,0 +1,10 @@
+package cuchaz.enigma.network;
+
+/**
+ * How far a client is synced with the mappings of a server.
+ *
+ * @param sessionId a random id of the server run, sequence numbers start over when the server is restarted
+ * @param sequence  the number of changes applied to the mappings since the server was started
+ */
+public record SyncPosition(long sessionId, long sequence) {
+}
@@ -0,0 +1,72 @@
+package cuchaz.enigma.network.packet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.List;
+
+import cuchaz.enigma.network.EnigmaServer;
+import cuchaz.enigma.network.Message;
+import cuchaz.enigma.network.ServerPacketHandler;
+import cuchaz.enigma.translation.mapping.EntryChange;
+import cuchaz.enigma.translation.mapping.EntryUtil;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.utils.validation.PrintValidatable;
+import cuchaz.enigma.utils.validation.ValidationContext;
+
+/**
+ * Changes made together, such as the class renames of a package rename. They are validated and
+ * applied together, so either all or none of them are applied.
+ */
+public class EntryChangeBatchC2SPacket implements Packet<ServerPacketHandler> {
+
+	private List<EntryChange<?>> changes;
+
+	EntryChangeBatchC2SPacket() {
+	}
+
+	public EntryChangeBatchC2SPacket(List<EntryChange<?>> changes) {
+		this.changes = changes;
+	}
+
+	@Override
+	public void read(DataInput input) throws IOException {
+		this.changes = PacketHelper.readEntryChanges(input);
+	}
+
+	@Override
+	public void write(DataOutput output) throws IOException {
+		PacketHelper.writeEntryChanges(output, changes);
+	}
+
+	@Override
+	public void handle(ServerPacketHandler handler) {
+		EnigmaServer server = handler.getServer();
+		Socket client = handler.getClient();
+		List<Entry<?>> targets = this.changes.stream().<Entry<?>>map(EntryChange::getTarget).toList();
+
+		ValidationContext vc = new ValidationContext();
+		vc.setActiveElement(PrintValidatable.INSTANCE);
+
+		boolean valid = targets.stream().allMatch(target -> server.canModifyEntry(client, target));
+
+		if (valid) {
+			valid = EntryUtil.applyChanges(vc, server.getMappings(), this.changes);
+		}
+
+		if (!valid) {
+			for (Entry<?> target : targets) {
+				server.sendCorrectMapping(client, target, true);
+			}
+			server.rejectChange(client);
+			return;
+		}
+
+		int syncId = server.lockEntries(client, targets);
+		server.sendChangesToAllExcept(client, syncId, this.changes);
+		server.logChanges(client, this.changes);
+		server.sendMessage(Message.batchChange(server.getUsername(client), this.changes.size()), EnigmaServer.BATCH_CHANGE_PROTOCOL_VERSION);
+	}
+
+}
@@ -0,0 +1,56 @@
+package cuchaz.enigma.network.packet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+import cuchaz.enigma.network.ClientPacketHandler;
+import cuchaz.enigma.network.EnigmaServer;
+import cuchaz.enigma.translation.mapping.EntryChange;
+
+/**
+ * Changes applied together, sent to clients which support {@link cuchaz.enigma.network.EnigmaServer#BATCH_CHANGE_PROTOCOL_VERSION batches}.
+ * All changes share the same sync id.
+ */
+public class EntryChangeBatchS2CPacket implements Packet<ClientPacketHandler> {
+
+	private int syncId;
+	private List<EntryChange<?>> changes;
+
+	public EntryChangeBatchS2CPacket(int syncId, List<EntryChange<?>> changes) {
+		this.syncId = syncId;
+		this.changes = changes;
+	}
+
+	EntryChangeBatchS2CPacket() {
+	}
+
+	@Override
+	public void read(DataInput input) throws IOException {
+		this.syncId = input.readUnsignedShort();
+		this.changes = PacketHelper.readEntryChanges(input);
+	}
+
+	@Override
+	public void write(DataOutput output) throws IOException {
+		output.writeShort(this.syncId);
+		PacketHelper.writeEntryChanges(output, this.changes);
+	}
+
+	public List<EntryChange<?>> getChanges() {
+		return changes;
+	}
+
+	@Override
+	public void handle(ClientPacketHandler handler) {
+		if (handler.applyChangesFromServer(this.changes)) {
+			handler.sendPacket(new ConfirmChangeC2SPacket(this.syncId));
+		}
+
+		if (this.syncId != EnigmaServer.DUMMY_SYNC_ID) {
+			handler.advanceSyncPosition(this.changes.size());
+		}
+	}
+
+}
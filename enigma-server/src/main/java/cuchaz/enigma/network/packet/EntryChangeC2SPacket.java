@@ -46,11 +46,13 @@ public class EntryChangeC2SPacket implements Packet<ServerPacketHandler> {
 
 		if (!valid) {
 			handler.getServer().sendCorrectMapping(handler.getClient(), this.change.getTarget(), true);
+			handler.getServer().rejectChange(handler.getClient());
 			return;
 		}
 
 		int syncId = handler.getServer().lockEntry(handler.getClient(), this.change.getTarget());
 		handler.getServer().sendToAllExcept(handler.getClient(), new EntryChangeS2CPacket(syncId, this.change));
+		handler.getServer().logChange(handler.getClient(), this.change);
 
 		if (this.change.getDeobfName().isSet()) {
 			handler.getServer().sendMessage(Message.rename(handler.getServer().getUsername(handler.getClient()), this.change.getTarget(), this.change.getDeobfName().getNewValue()));
@@ -5,6 +5,7 @@ import java.io.DataOutput;
 import java.io.IOException;
 
 import cuchaz.enigma.network.ClientPacketHandler;
+import cuchaz.enigma.network.EnigmaServer;
 import cuchaz.enigma.translation.mapping.EntryChange;
 
 public class EntryChangeS2CPacket implements Packet<ClientPacketHandler> {
@@ -37,6 +38,11 @@ public class EntryChangeS2CPacket implements Packet<ClientPacketHandler> {
 		if (handler.applyChangeFromServer(this.change)) {
 			handler.sendPacket(new ConfirmChangeC2SPacket(this.syncId));
 		}
+
+		// the changes of other clients have a sync id, corrections and resyncs don't
+		if (this.syncId != EnigmaServer.DUMMY_SYNC_ID) {
+			handler.advanceSyncPosition(1);
+		}
 	}
 
 }
@@ -3,29 +3,44 @@ package cuchaz.enigma.network.packet;
 import cuchaz.enigma.network.EnigmaServer;
 import cuchaz.enigma.network.ServerPacketHandler;
 import cuchaz.enigma.network.Message;
+import cuchaz.enigma.network.SyncPosition;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.util.Arrays;
 
+import javax.annotation.Nullable;
+
 public class LoginC2SPacket implements Packet<ServerPacketHandler> {
+	private int protocolVersion = EnigmaServer.PROTOCOL_VERSION;
 	private byte[] jarChecksum;
 	private char[] password;
 	private String username;
+	private SyncPosition lastPosition;
 
 	LoginC2SPacket() {
 	}
 
 	public LoginC2SPacket(byte[] jarChecksum, char[] password, String username) {
+		this(jarChecksum, password, username, null);
+	}
+
+	/**
+	 * @param lastPosition how far the client was synced with the server before it reconnects,
+	 *                     or {@code null} to be sent all mappings
+	 */
+	public LoginC2SPacket(byte[] jarChecksum, char[] password, String username, @Nullable SyncPosition lastPosition) {
 		this.jarChecksum = jarChecksum;
 		this.password = password;
 		this.username = username;
+		this.lastPosition = lastPosition;
 	}
 
 	@Override
 	public void read(DataInput input) throws IOException {
-		if (input.readUnsignedShort() != EnigmaServer.PROTOCOL_VERSION) {
+		this.protocolVersion = input.readUnsignedShort();
+		if (protocolVersion < EnigmaServer.MIN_PROTOCOL_VERSION || protocolVersion > EnigmaServer.PROTOCOL_VERSION) {
 			throw new IOException("Mismatching protocol");
 		}
 		this.jarChecksum = new byte[EnigmaServer.CHECKSUM_SIZE];
@@ -35,17 +50,29 @@ public class LoginC2SPacket implements Packet<ServerPacketHandler> {
 			password[i] = input.readChar();
 		}
 		this.username = PacketHelper.readString(input);
+		if (protocolVersion >= EnigmaServer.DELTA_SYNC_PROTOCOL_VERSION && input.readBoolean()) {
+			this.lastPosition = new SyncPosition(input.readLong(), input.readLong());
+		}
 	}
 
 	@Override
 	public void write(DataOutput output) throws IOException {
-		output.writeShort(EnigmaServer.PROTOCOL_VERSION);
+		output.writeShort(protocolVersion);
 		output.write(jarChecksum);
 		output.writeByte(password.length);
 		for (char c : password) {
 			output.writeChar(c);
 		}
 		PacketHelper.writeString(output, username);
+		output.writeBoolean(lastPosition != null);
+		if (lastPosition != null) {
+			output.writeLong(lastPosition.sessionId());
+			output.writeLong(lastPosition.sequence());
+		}
+	}
+
+	public int getProtocolVersion() {
+		return protocolVersion;
 	}
 
 	@Override
@@ -69,7 +96,8 @@ public class LoginC2SPacket implements Packet<ServerPacketHandler> {
 			return;
 		}
 
-		handler.getServer().sendPacket(handler.getClient(), new SyncMappingsS2CPacket(handler.getServer().getMappings().getObfToDeobf()));
+		handler.getServer().setProtocolVersion(handler.getClient(), protocolVersion);
+		handler.getServer().sendMappings(handler.getClient(), lastPosition);
 		handler.getServer().sendMessage(Message.connect(username));
 	}
 }
@@ -4,6 +4,8 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 import cuchaz.enigma.translation.mapping.AccessModifier;
 import cuchaz.enigma.translation.mapping.EntryChange;
@@ -136,6 +138,26 @@ public class PacketHelper {
 		output.write(bytes);
 	}
 
+	public static int readVarInt(DataInput input) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = input.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("VarInt too long");
+	}
+
+	public static void writeVarInt(DataOutput output, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			output.writeByte(value & 0x7F | 0x80);
+			value >>>= 7;
+		}
+		output.writeByte(value);
+	}
+
 	public static EntryChange<?> readEntryChange(DataInput input) throws IOException {
 		Entry<?> e = readEntry(input);
 		EntryChange<?> change = EntryChange.modify(e);
@@ -196,4 +218,21 @@ public class PacketHelper {
 		}
 	}
 
+	public static List<EntryChange<?>> readEntryChanges(DataInput input) throws IOException {
+		int size = readVarInt(input);
+		List<EntryChange<?>> changes = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			changes.add(readEntryChange(input));
+		}
+
+		return changes;
+	}
+
+	public static void writeEntryChanges(DataOutput output, List<EntryChange<?>> changes) throws IOException {
+		writeVarInt(output, changes.size());
+		for (EntryChange<?> change : changes) {
+			writeEntryChange(output, change);
+		}
+	}
+
 }
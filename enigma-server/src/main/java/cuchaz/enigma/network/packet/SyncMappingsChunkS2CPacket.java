@@ -0,0 +1,299 @@
+package cuchaz.enigma.network.packet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.Nullable;
+
+import cuchaz.enigma.network.ClientPacketHandler;
+import cuchaz.enigma.network.EnigmaServer;
+import cuchaz.enigma.translation.mapping.AccessModifier;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.EntryTreeNode;
+import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.TypeDescriptor;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.LocalVariableEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+
+/**
+ * A part of the mappings sent to a client when it logs in, replacing {@link SyncMappingsS2CPacket}
+ * for clients which support {@link EnigmaServer#CHUNKED_SYNC_PROTOCOL_VERSION chunked syncing}.
+ *
+ * <p>Each chunk holds the mapping trees of some top level classes, deflated. Names, descriptors and
+ * javadocs are only written the first time they occur in a chunk, and referenced by their index
+ * afterwards. The client applies every chunk as soon as it arrives.</p>
+ */
+public class SyncMappingsChunkS2CPacket implements Packet<ClientPacketHandler> {
+	public static final int ENTRIES_PER_CHUNK = 4096;
+
+	private static final int FIRST = 1, LAST = 2;
+	private static final int ENTRY_CLASS = 0, ENTRY_FIELD = 1, ENTRY_METHOD = 2, ENTRY_LOCAL_VAR = 3;
+	private static final int NULL_STRING = 0, NEW_STRING = 1, STRING_REFERENCE = 2;
+	private static final AccessModifier[] ACCESS_MODIFIERS = AccessModifier.values();
+
+	private int flags;
+	private int syncedEntries;
+	private int totalEntries;
+	private Collection<? extends EntryTreeNode<EntryMapping>> roots;
+	private EntryTree<EntryMapping> mappings;
+
+	SyncMappingsChunkS2CPacket() {
+	}
+
+	private SyncMappingsChunkS2CPacket(Collection<? extends EntryTreeNode<EntryMapping>> roots, int flags, int syncedEntries, int totalEntries) {
+		this.roots = roots;
+		this.flags = flags;
+		this.syncedEntries = syncedEntries;
+		this.totalEntries = totalEntries;
+	}
+
+	/**
+	 * Splits mappings into chunks of about {@link #ENTRIES_PER_CHUNK} entries, without splitting
+	 * the tree of a top level class. There is always at least one chunk.
+	 */
+	public static List<SyncMappingsChunkS2CPacket> split(EntryTree<EntryMapping> mappings) {
+		List<List<EntryTreeNode<EntryMapping>>> chunks = new ArrayList<>();
+		List<Integer> chunkSizes = new ArrayList<>();
+		List<EntryTreeNode<EntryMapping>> chunk = new ArrayList<>();
+		int chunkSize = 0;
+		int totalEntries = 0;
+
+		for (EntryTreeNode<EntryMapping> root : mappings.getRootNodes().toList()) {
+			chunk.add(root);
+			chunkSize += root.getNodesRecursively().size();
+
+			if (chunkSize >= ENTRIES_PER_CHUNK) {
+				chunks.add(chunk);
+				chunkSizes.add(chunkSize);
+				totalEntries += chunkSize;
+				chunk = new ArrayList<>();
+				chunkSize = 0;
+			}
+		}
+
+		if (!chunk.isEmpty() || chunks.isEmpty()) {
+			chunks.add(chunk);
+			chunkSizes.add(chunkSize);
+			totalEntries += chunkSize;
+		}
+
+		List<SyncMappingsChunkS2CPacket> packets = new ArrayList<>(chunks.size());
+		int syncedEntries = 0;
+		for (int i = 0; i < chunks.size(); i++) {
+			int flags = (i == 0 ? FIRST : 0) | (i == chunks.size() - 1 ? LAST : 0);
+			syncedEntries += chunkSizes.get(i);
+			packets.add(new SyncMappingsChunkS2CPacket(chunks.get(i), flags, syncedEntries, totalEntries));
+		}
+
+		return packets;
+	}
+
+	@Override
+	public void read(DataInput input) throws IOException {
+		flags = input.readUnsignedByte();
+		syncedEntries = input.readInt();
+		totalEntries = input.readInt();
+
+		int length = input.readInt();
+		if (length < 0) {
+			throw new IOException("Invalid chunk length " + length);
+		}
+		byte[] compressed = new byte[length];
+		input.readFully(compressed);
+
+		mappings = new HashEntryTree<>();
+		List<String> strings = new ArrayList<>();
+		try (DataInputStream payload = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+			int size = PacketHelper.readVarInt(payload);
+			for (int i = 0; i < size; i++) {
+				readEntryTreeNode(payload, null, strings);
+			}
+		}
+	}
+
+	private void readEntryTreeNode(DataInput input, Entry<?> parent, List<String> strings) throws IOException {
+		int type = input.readUnsignedByte();
+		String name = readString(input, strings);
+		String javadocs = readString(input, strings);
+
+		Entry<?> entry;
+		switch (type) {
+			case ENTRY_CLASS: {
+				if (parent != null && !(parent instanceof ClassEntry)) {
+					throw new IOException("Class requires class parent");
+				}
+
+				entry = new ClassEntry((ClassEntry) parent, name, javadocs);
+				break;
+			}
+			case ENTRY_FIELD: {
+				if (!(parent instanceof ClassEntry parentClass)) {
+					throw new IOException("Field requires class parent");
+				}
+
+				entry = new FieldEntry(parentClass, name, new TypeDescriptor(readString(input, strings)), javadocs);
+				break;
+			}
+			case ENTRY_METHOD: {
+				if (!(parent instanceof ClassEntry parentClass)) {
+					throw new IOException("Method requires class parent");
+				}
+
+				entry = new MethodEntry(parentClass, name, new MethodDescriptor(readString(input, strings)), javadocs);
+				break;
+			}
+			case ENTRY_LOCAL_VAR: {
+				if (!(parent instanceof MethodEntry parentMethod)) {
+					throw new IOException("Local variable requires method parent");
+				}
+
+				int index = PacketHelper.readVarInt(input);
+				boolean parameter = input.readBoolean();
+				entry = new LocalVariableEntry(parentMethod, index, name, parameter, javadocs);
+				break;
+			}
+			default:
+				throw new IOException("Received unknown entry type " + type);
+		}
+
+		if (input.readBoolean()) {
+			String targetName = readString(input, strings);
+			int accessOrdinal = input.readUnsignedByte();
+			if (accessOrdinal >= ACCESS_MODIFIERS.length) {
+				throw new IOException("Received unknown access modifier " + accessOrdinal);
+			}
+			AccessModifier access = ACCESS_MODIFIERS[accessOrdinal];
+			String javadoc = readString(input, strings);
+			mappings.insert(entry, new EntryMapping(targetName, access, javadoc));
+		}
+
+		int size = PacketHelper.readVarInt(input);
+		for (int i = 0; i < size; i++) {
+			readEntryTreeNode(input, entry, strings);
+		}
+	}
+
+	@Override
+	public void write(DataOutput output) throws IOException {
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		Map<String, Integer> strings = new HashMap<>();
+		try (DataOutputStream payload = new DataOutputStream(new DeflaterOutputStream(compressed))) {
+			PacketHelper.writeVarInt(payload, roots.size());
+			for (EntryTreeNode<EntryMapping> node : roots) {
+				writeEntryTreeNode(payload, node, strings);
+			}
+		}
+
+		output.writeByte(flags);
+		output.writeInt(syncedEntries);
+		output.writeInt(totalEntries);
+		output.writeInt(compressed.size());
+		output.write(compressed.toByteArray());
+	}
+
+	private static void writeEntryTreeNode(DataOutput output, EntryTreeNode<EntryMapping> node, Map<String, Integer> strings) throws IOException {
+		Entry<?> entry = node.getEntry();
+		if (entry instanceof ClassEntry) {
+			output.writeByte(ENTRY_CLASS);
+		} else if (entry instanceof FieldEntry) {
+			output.writeByte(ENTRY_FIELD);
+		} else if (entry instanceof MethodEntry) {
+			output.writeByte(ENTRY_METHOD);
+		} else if (entry instanceof LocalVariableEntry) {
+			output.writeByte(ENTRY_LOCAL_VAR);
+		} else {
+			throw new IOException("Don't know how to serialize entry of type " + entry.getClass().getSimpleName());
+		}
+
+		writeString(output, entry.getName(), strings);
+		writeString(output, entry.getJavadocs(), strings);
+
+		if (entry instanceof FieldEntry field) {
+			writeString(output, field.getDesc().toString(), strings);
+		} else if (entry instanceof MethodEntry method) {
+			writeString(output, method.getDesc().toString(), strings);
+		} else if (entry instanceof LocalVariableEntry localVar) {
+			PacketHelper.writeVarInt(output, localVar.getIndex());
+			output.writeBoolean(localVar.isArgument());
+		}
+
+		EntryMapping mapping = node.getValue();
+		output.writeBoolean(mapping != null);
+		if (mapping != null) {
+			writeString(output, mapping.targetName(), strings);
+			output.writeByte(mapping.accessModifier().ordinal());
+			writeString(output, mapping.javadoc(), strings);
+		}
+
+		Collection<? extends EntryTreeNode<EntryMapping>> children = node.getChildNodes();
+		PacketHelper.writeVarInt(output, children.size());
+		for (EntryTreeNode<EntryMapping> child : children) {
+			writeEntryTreeNode(output, child, strings);
+		}
+	}
+
+	@Nullable
+	private static String readString(DataInput input, List<String> strings) throws IOException {
+		int reference = PacketHelper.readVarInt(input);
+		if (reference == NULL_STRING) {
+			return null;
+		} else if (reference == NEW_STRING) {
+			String string = PacketHelper.readString(input);
+			strings.add(string);
+			return string;
+		}
+
+		int index = reference - STRING_REFERENCE;
+		if (index < 0 || index >= strings.size()) {
+			throw new IOException("Received invalid string reference " + reference);
+		}
+		return strings.get(index);
+	}
+
+	private static void writeString(DataOutput output, @Nullable String string, Map<String, Integer> strings) throws IOException {
+		if (string == null) {
+			PacketHelper.writeVarInt(output, NULL_STRING);
+			return;
+		}
+
+		Integer index = strings.get(string);
+		if (index != null) {
+			PacketHelper.writeVarInt(output, STRING_REFERENCE + index);
+		} else {
+			strings.put(string, strings.size());
+			PacketHelper.writeVarInt(output, NEW_STRING);
+			PacketHelper.writeString(output, string);
+		}
+	}
+
+	public EntryTree<EntryMapping> getMappings() {
+		return mappings;
+	}
+
+	@Override
+	public void handle(ClientPacketHandler controller) {
+		boolean last = (flags & LAST) != 0;
+		controller.openMappingsChunk(mappings, (flags & FIRST) != 0, last, syncedEntries, totalEntries);
+
+		if (last) {
+			controller.sendPacket(new ConfirmChangeC2SPacket(EnigmaServer.DUMMY_SYNC_ID));
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package cuchaz.enigma.network.packet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import cuchaz.enigma.network.ClientPacketHandler;
+import cuchaz.enigma.network.SyncPosition;
+
+/**
+ * Tells a client how far it is synced, after the initial sync and in answer to every change it sends.
+ * Only sent to clients which support {@link cuchaz.enigma.network.EnigmaServer#DELTA_SYNC_PROTOCOL_VERSION delta syncing}.
+ *
+ * <p>Clients older than {@link cuchaz.enigma.network.EnigmaServer#COUNTED_CHANGES_PROTOCOL_VERSION} are also
+ * sent their position after every change of another client, newer ones count these changes themselves.</p>
+ */
+public class SyncPositionS2CPacket implements Packet<ClientPacketHandler> {
+	private SyncPosition position;
+	private boolean acknowledgesChange;
+
+	SyncPositionS2CPacket() {
+	}
+
+	public SyncPositionS2CPacket(SyncPosition position, boolean acknowledgesChange) {
+		this.position = position;
+		this.acknowledgesChange = acknowledgesChange;
+	}
+
+	@Override
+	public void read(DataInput input) throws IOException {
+		this.position = new SyncPosition(input.readLong(), input.readLong());
+		this.acknowledgesChange = input.readBoolean();
+	}
+
+	@Override
+	public void write(DataOutput output) throws IOException {
+		output.writeLong(position.sessionId());
+		output.writeLong(position.sequence());
+		output.writeBoolean(acknowledgesChange);
+	}
+
+	@Override
+	public void handle(ClientPacketHandler controller) {
+		controller.updateSyncPosition(position, acknowledgesChange);
+	}
+}
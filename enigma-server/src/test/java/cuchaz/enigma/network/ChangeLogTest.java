@@ -0,0 +1,32 @@
+package cuchaz.enigma.network;
+
+import cuchaz.enigma.translation.mapping.EntryChange;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ChangeLogTest {
+	@Test
+	public void changesSince() {
+		ChangeLog log = new ChangeLog(3);
+		List<EntryChange<?>> changes = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			EntryChange<?> change = EntryChange.modify(new ClassEntry("a" + i)).withDeobfName("b" + i);
+			changes.add(change);
+			assertEquals(i + 1, log.add(change));
+		}
+
+		assertEquals(5, log.getLastSequence());
+		assertEquals(changes.subList(2, 5), log.getChangesSince(2));
+		assertEquals(List.of(), log.getChangesSince(5));
+
+		// the first two changes are not kept anymore
+		assertNull(log.getChangesSince(1));
+		assertNull(log.getChangesSince(6));
+	}
+}
@@ -0,0 +1,469 @@
+package cuchaz.enigma.network;
+
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.network.packet.EntryChangeBatchC2SPacket;
+import cuchaz.enigma.network.packet.EntryChangeBatchS2CPacket;
+import cuchaz.enigma.network.packet.EntryChangeC2SPacket;
+import cuchaz.enigma.network.packet.EntryChangeS2CPacket;
+import cuchaz.enigma.network.packet.KickS2CPacket;
+import cuchaz.enigma.network.packet.LoginC2SPacket;
+import cuchaz.enigma.network.packet.MessageS2CPacket;
+import cuchaz.enigma.network.packet.Packet;
+import cuchaz.enigma.network.packet.PacketHelper;
+import cuchaz.enigma.network.packet.PacketRegistry;
+import cuchaz.enigma.network.packet.SyncMappingsChunkS2CPacket;
+import cuchaz.enigma.network.packet.SyncMappingsS2CPacket;
+import cuchaz.enigma.network.packet.SyncPositionS2CPacket;
+import cuchaz.enigma.network.packet.UserListS2CPacket;
+import cuchaz.enigma.translation.mapping.AccessModifier;
+import cuchaz.enigma.translation.mapping.EntryChange;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.TypeDescriptor;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class EnigmaServerTest {
+	private static final byte[] CHECKSUM = new byte[EnigmaServer.CHECKSUM_SIZE];
+	private static final char[] PASSWORD = "password".toCharArray();
+
+	private final ExecutorService serverThread = Executors.newSingleThreadExecutor();
+	private EnigmaServer server;
+	private int port;
+
+	@Before
+	public void startServer() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		server = new EnigmaServer(CHECKSUM, PASSWORD, EntryRemapper.empty(JarIndex.empty()), port) {
+			@Override
+			protected void runOnThread(Runnable task) {
+				try {
+					serverThread.execute(task);
+				} catch (RejectedExecutionException e) {
+					// the connections are only closed after the server is stopped
+				}
+			}
+		};
+		server.start();
+	}
+
+	@After
+	public void stopServer() throws InterruptedException {
+		server.stop();
+		serverThread.shutdown();
+		serverThread.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void loginAndBroadcast() throws Exception {
+		try (Socket alice = connect(); Socket bob = connect()) {
+			DataInputStream aliceInput = input(alice);
+			alice.getOutputStream().write(encode(new LoginC2SPacket(CHECKSUM, PASSWORD, "alice")));
+			receive(aliceInput, SyncMappingsChunkS2CPacket.class);
+
+			// a packet split over several writes is only handled once it was fully received
+			byte[] login = encode(new LoginC2SPacket(CHECKSUM, PASSWORD, "bob"));
+			OutputStream bobOutput = bob.getOutputStream();
+			for (int i = 0; i < login.length; i += 5) {
+				bobOutput.write(login, i, Math.min(5, login.length - i));
+				bobOutput.flush();
+				Thread.sleep(5);
+			}
+			receive(input(bob), SyncMappingsChunkS2CPacket.class);
+
+			assertEquals(List.of("alice", "bob"), receiveUsers(aliceInput));
+		}
+	}
+
+	@Test
+	public void framedPackets() throws Exception {
+		try (Socket client = connect()) {
+			DataInputStream input = input(client);
+			OutputStream output = client.getOutputStream();
+			output.write(encode(new LoginC2SPacket(CHECKSUM, PASSWORD, "alice")));
+			receivePosition(input);
+
+			// a batch larger than the read buffer, received in pieces
+			List<EntryChange<?>> changes = new ArrayList<>();
+			for (int i = 0; i < 2000; i++) {
+				changes.add(EntryChange.modify(new ClassEntry("a" + i)).withDeobfName("pkg/Class" + i));
+			}
+
+			byte[] batch = encode(new EntryChangeBatchC2SPacket(changes));
+			for (int i = 0; i < batch.length; i += 4096) {
+				output.write(batch, i, Math.min(4096, batch.length - i));
+				output.flush();
+			}
+
+			assertTrue(receivePosition(input).acknowledgesChange);
+			assertEquals("pkg/Class1999", server.getMappings().getDeobfMapping(new ClassEntry("a1999")).targetName());
+
+			// a packet which doesn't match its length is rejected
+			byte[] change = encode(new EntryChangeC2SPacket(EntryChange.modify(new ClassEntry("b")).withDeobfName("pkg/B")));
+			change[3]++;
+			output.write(change);
+			output.write(0);
+
+			RecordingHandler handler = new RecordingHandler();
+			receive(input, KickS2CPacket.class).handle(handler);
+			assertTrue(handler.reason, handler.reason.contains("after its contents"));
+		}
+	}
+
+	@Test
+	public void kickIsSentBeforeClosing() throws IOException {
+		try (Socket client = connect()) {
+			DataInputStream input = input(client);
+			client.getOutputStream().write(encode(new LoginC2SPacket(CHECKSUM, "wrong".toCharArray(), "eve")));
+
+			RecordingHandler handler = new RecordingHandler();
+			receive(input, KickS2CPacket.class).handle(handler);
+			assertEquals("disconnect.wrong_password", handler.reason);
+			assertEquals(-1, input.read());
+		}
+	}
+
+	@Test
+	public void oldProtocolVersion() throws IOException {
+		try (Socket client = connect()) {
+			client.getOutputStream().write(encodeOldLogin("old"));
+			receive(input(client), SyncMappingsS2CPacket.class);
+		}
+	}
+
+	@Test
+	public void chunkedSync() throws IOException {
+		EntryTree<EntryMapping> mappings = new HashEntryTree<>();
+		for (int i = 0; i < 3000; i++) {
+			ClassEntry classEntry = new ClassEntry("a" + i);
+			mappings.insert(classEntry, new EntryMapping("pkg/Class" + i));
+			mappings.insert(new FieldEntry(classEntry, "a", new TypeDescriptor("I")), new EntryMapping("field", AccessModifier.PUBLIC));
+			mappings.insert(new MethodEntry(classEntry, "b", new MethodDescriptor("(I)V")), new EntryMapping(null, "Some javadoc"));
+		}
+
+		List<SyncMappingsChunkS2CPacket> chunks = SyncMappingsChunkS2CPacket.split(mappings);
+		assertEquals(3, chunks.size());
+
+		EntryTree<EntryMapping> synced = new HashEntryTree<>();
+		RecordingHandler handler = new RecordingHandler();
+		for (SyncMappingsChunkS2CPacket chunk : chunks) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			chunk.write(new DataOutputStream(bytes));
+
+			SyncMappingsChunkS2CPacket read = (SyncMappingsChunkS2CPacket) PacketRegistry.createS2CPacket(PacketRegistry.getS2CId(chunk));
+			read.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			read.handle(handler);
+			read.getMappings().getAllEntries().forEach(entry -> synced.insert(entry, read.getMappings().get(entry)));
+		}
+
+		assertEquals(9000, handler.syncedEntries);
+		assertEquals(mappings.getAllEntries().collect(Collectors.toSet()), synced.getAllEntries().collect(Collectors.toSet()));
+		mappings.getAllEntries().forEach(entry -> assertEquals(mappings.get(entry), synced.get(entry)));
+	}
+
+	@Test
+	public void invalidAccessModifier() throws IOException {
+		EntryTree<EntryMapping> mappings = new HashEntryTree<>();
+		mappings.insert(new ClassEntry("a"), new EntryMapping("pkg/A", AccessModifier.PRIVATE));
+
+		SyncMappingsChunkS2CPacket chunk = SyncMappingsChunkS2CPacket.split(mappings).get(0);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		chunk.write(new DataOutputStream(bytes));
+		DataInputStream written = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		byte[] header = new byte[13];
+		written.readFully(header);
+		byte[] payload = new InflaterInputStream(new ByteArrayInputStream(written.readAllBytes())).readAllBytes();
+
+		// the access modifier is followed by the javadoc and the number of children, one byte each
+		assertEquals(AccessModifier.PRIVATE.ordinal(), payload[payload.length - 3]);
+		payload[payload.length - 3] = (byte) AccessModifier.values().length;
+
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+			deflater.write(payload);
+		}
+
+		ByteArrayOutputStream corrupted = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(corrupted);
+		output.write(header, 0, 9);
+		output.writeInt(compressed.size());
+		compressed.writeTo(output);
+
+		Packet<ClientPacketHandler> read = PacketRegistry.createS2CPacket(PacketRegistry.getS2CId(chunk));
+		IOException e = assertThrows(IOException.class, () -> read.read(new DataInputStream(new ByteArrayInputStream(corrupted.toByteArray()))));
+		assertEquals("Received unknown access modifier 4", e.getMessage());
+	}
+
+	@Test
+	public void deltaResync() throws IOException {
+		SyncPosition start;
+		try (Socket alice = connect(); Socket bob = connect()) {
+			alice.getOutputStream().write(encode(new LoginC2SPacket(CHECKSUM, PASSWORD, "alice")));
+			start = receivePosition(input(alice)).position;
+
+			DataInputStream bobInput = input(bob);
+			bob.getOutputStream().write(encode(new LoginC2SPacket(CHECKSUM, PASSWORD, "bob")));
+			receivePosition(bobInput);
+
+			bob.getOutputStream().write(encode(new EntryChangeC2SPacket(EntryChange.modify(new ClassEntry("a")).withDeobfName("Renamed"))));
+			RecordingHandler handler = receivePosition(bobInput);
+			assertEquals(new SyncPosition(start.sessionId(), start.sequence() + 1), handler.position);
+			assertTrue(handler.acknowledgesChange);
+		}
+
+		// a client which missed a change is only sent that change when reconnecting
+		try (Socket alice = connect()) {
+			DataInputStream input = input(alice);
+			alice.getOutputStream().write(encode(new LoginC2SPacket(CHECKSUM, PASSWORD, "alice2", start)));
+			assertEquals(List.of(EntryChangeBatchS2CPacket.class, SyncPositionS2CPacket.class), receiveSync(input));
+		}
+
+		// positions of another server run are unknown
+		try (Socket alice = connect()) {
+			DataInputStream input = input(alice);
+			alice.getOutputStream().write(encode(new LoginC2SPacket(CHECKSUM, PASSWORD, "alice3", new SyncPosition(start.sessionId() + 1, 0))));
+			assertEquals(List.of(SyncMappingsChunkS2CPacket.class, SyncPositionS2CPacket.class), receiveSync(input));
+		}
+	}
+
+	@Test
+	public void batchChange() throws IOException {
+		try (Socket alice = connect(); Socket bob = connect(); Socket old = connect()) {
+			DataInputStream aliceInput = input(alice);
+			alice.getOutputStream().write(encode(new LoginC2SPacket(CHECKSUM, PASSWORD, "alice")));
+			SyncPosition start = receivePosition(aliceInput).position;
+
+			DataInputStream bobInput = input(bob);
+			bob.getOutputStream().write(encode(new LoginC2SPacket(CHECKSUM, PASSWORD, "bob")));
+			receivePosition(bobInput);
+
+			DataInputStream oldInput = input(old);
+			old.getOutputStream().write(encodeOldLogin("old"));
+			receive(oldInput, SyncMappingsS2CPacket.class);
+
+			List<EntryChange<?>> changes = List.of(
+					EntryChange.modify(new ClassEntry("a")).withDeobfName("pkg/A"),
+					EntryChange.modify(new ClassEntry("b")).withDeobfName("pkg/B")
+			);
+			bob.getOutputStream().write(encode(new EntryChangeBatchC2SPacket(changes)));
+
+			// other clients count the changes instead of being sent their new position
+			RecordingHandler handler = new RecordingHandler();
+			handler.position = start;
+			receive(aliceInput, EntryChangeBatchS2CPacket.class).handle(handler);
+			assertEquals(new SyncPosition(start.sessionId(), start.sequence() + 2), handler.position);
+			Packet<ClientPacketHandler> message = receive(aliceInput);
+			assertTrue(message instanceof MessageS2CPacket);
+			message.handle(handler);
+			assertEquals(Message.batchChange("bob", 2), handler.message);
+
+			// older clients are sent the changes one by one
+			receive(oldInput, EntryChangeS2CPacket.class);
+			receive(oldInput, EntryChangeS2CPacket.class);
+
+			assertTrue(receivePosition(bobInput).acknowledgesChange);
+
+			// none of the changes are applied if one of them is invalid
+			bob.getOutputStream().write(encode(new EntryChangeBatchC2SPacket(List.of(
+					EntryChange.modify(new ClassEntry("c")).withDeobfName("pkg/C"),
+					EntryChange.modify(new ClassEntry("d")).withDeobfName("pkg/not valid")
+			))));
+
+			handler = receivePosition(bobInput);
+			assertTrue(handler.acknowledgesChange);
+			assertEquals(new SyncPosition(start.sessionId(), start.sequence() + 2), handler.position);
+			assertNull(server.getMappings().getDeobfMapping(new ClassEntry("c")).targetName());
+			assertEquals("pkg/A", server.getMappings().getDeobfMapping(new ClassEntry("a")).targetName());
+		}
+	}
+
+	private Socket connect() throws IOException {
+		Socket socket = new Socket("localhost", port);
+		socket.setSoTimeout(5000);
+		return socket;
+	}
+
+	private static DataInputStream input(Socket socket) throws IOException {
+		return new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+	}
+
+	/**
+	 * Encodes a packet the way a client with the current protocol version sends it, prefixed with its
+	 * length unless it is the login packet.
+	 */
+	private static byte[] encode(Packet<ServerPacketHandler> packet) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeByte(PacketRegistry.getC2SId(packet));
+		packet.write(output);
+
+		if (packet instanceof LoginC2SPacket) {
+			return bytes.toByteArray();
+		}
+
+		ByteArrayOutputStream framed = new ByteArrayOutputStream();
+		new DataOutputStream(framed).writeInt(bytes.size());
+		bytes.writeTo(framed);
+		return framed.toByteArray();
+	}
+
+	/**
+	 * Encodes the login packet of a client with the oldest supported protocol version.
+	 */
+	private static byte[] encodeOldLogin(String username) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream login = new DataOutputStream(bytes);
+		login.writeByte(PacketRegistry.getC2SId(new LoginC2SPacket(CHECKSUM, PASSWORD, username)));
+		login.writeShort(EnigmaServer.MIN_PROTOCOL_VERSION);
+		login.write(CHECKSUM);
+		login.writeByte(PASSWORD.length);
+		login.writeChars(new String(PASSWORD));
+		PacketHelper.writeString(login, username);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Skips packets until one of the given type is received.
+	 */
+	private static <T extends Packet<ClientPacketHandler>> T receive(DataInputStream input, Class<T> type) throws IOException {
+		while (true) {
+			Packet<ClientPacketHandler> packet = receive(input);
+			if (type.isInstance(packet)) {
+				return type.cast(packet);
+			}
+		}
+	}
+
+	private static Packet<ClientPacketHandler> receive(DataInputStream input) throws IOException {
+		int packetId = input.readUnsignedByte();
+		Packet<ClientPacketHandler> packet = PacketRegistry.createS2CPacket(packetId);
+		if (packet == null) {
+			throw new IOException("Received invalid packet id " + packetId);
+		}
+
+		packet.read(input);
+		return packet;
+	}
+
+	private static RecordingHandler receivePosition(DataInputStream input) throws IOException {
+		RecordingHandler handler = new RecordingHandler();
+		receive(input, SyncPositionS2CPacket.class).handle(handler);
+		return handler;
+	}
+
+	/**
+	 * @return the types of the mapping packets received until the client is synced
+	 */
+	private static List<Class<?>> receiveSync(DataInputStream input) throws IOException {
+		List<Class<?>> packets = new ArrayList<>();
+		Packet<ClientPacketHandler> packet;
+		do {
+			packet = receive(input);
+			if (!(packet instanceof MessageS2CPacket) && !(packet instanceof UserListS2CPacket)) {
+				packets.add(packet.getClass());
+			}
+		} while (!(packet instanceof SyncPositionS2CPacket));
+
+		return packets;
+	}
+
+	private static List<String> receiveUsers(DataInputStream input) throws IOException {
+		RecordingHandler handler = new RecordingHandler();
+		while (handler.users == null || handler.users.size() < 2) {
+			receive(input, UserListS2CPacket.class).handle(handler);
+		}
+		return handler.users;
+	}
+
+	private static class RecordingHandler implements ClientPacketHandler {
+		private String reason;
+		private List<String> users;
+		private int syncedEntries;
+		private SyncPosition position;
+		private boolean acknowledgesChange;
+		private Message message;
+
+		@Override
+		public void openMappings(EntryTree<EntryMapping> mappings) {
+		}
+
+		@Override
+		public void openMappingsChunk(EntryTree<EntryMapping> mappings, boolean first, boolean last, int syncedEntries, int totalEntries) {
+			this.syncedEntries = syncedEntries;
+		}
+
+		@Override
+		public boolean applyChangeFromServer(EntryChange<?> change) {
+			return true;
+		}
+
+		@Override
+		public boolean applyChangesFromServer(List<EntryChange<?>> changes) {
+			return true;
+		}
+
+		@Override
+		public void updateSyncPosition(SyncPosition position, boolean acknowledgesChange) {
+			this.position = position;
+			this.acknowledgesChange = acknowledgesChange;
+		}
+
+		@Override
+		public void advanceSyncPosition(int changes) {
+			this.position = new SyncPosition(this.position.sessionId(), this.position.sequence() + changes);
+		}
+
+		@Override
+		public void disconnectIfConnected(String reason) {
+			this.reason = reason;
+		}
+
+		@Override
+		public void sendPacket(Packet<ServerPacketHandler> packet) {
+		}
+
+		@Override
+		public void addMessage(Message message) {
+			this.message = message;
+		}
+
+		@Override
+		public void updateUserList(List<String> users) {
+			this.users = users;
+		}
+	}
+}
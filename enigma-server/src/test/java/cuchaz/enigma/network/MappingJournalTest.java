@@ -0,0 +1,66 @@
+package cuchaz.enigma.network;
+
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.translation.mapping.EntryChange;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MappingJournalTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void replay() throws IOException {
+		Path path = folder.getRoot().toPath().resolve("mappings.journal");
+
+		try (MappingJournal journal = new MappingJournal(path)) {
+			journal.append(List.of(EntryChange.modify(new ClassEntry("a")).withDeobfName("First")));
+			journal.append(List.of(
+					EntryChange.modify(new ClassEntry("a")).withDeobfName("Second"),
+					EntryChange.modify(new ClassEntry("b")).withJavadoc("Some docs")
+			));
+		}
+
+		// a change which was only partly written when the server stopped
+		long length = Files.size(path);
+		Files.write(path, new byte[]{0, 0, 0, 20, 1, 2, 3}, StandardOpenOption.APPEND);
+
+		EntryRemapper mappings = EntryRemapper.empty(JarIndex.empty());
+		try (MappingJournal journal = new MappingJournal(path)) {
+			assertEquals(3, journal.replay(mappings));
+			assertEquals(length, Files.size(path));
+
+			journal.append(List.of(EntryChange.modify(new ClassEntry("c")).withDeobfName("Third")));
+		}
+
+		assertEquals("Second", mappings.getDeobfMapping(new ClassEntry("a")).targetName());
+		assertEquals("Some docs", mappings.getDeobfMapping(new ClassEntry("b")).javadoc());
+
+		mappings = EntryRemapper.empty(JarIndex.empty());
+		try (MappingJournal journal = new MappingJournal(path)) {
+			assertEquals(4, journal.replay(mappings));
+			journal.clear();
+		}
+
+		assertEquals("Third", mappings.getDeobfMapping(new ClassEntry("c")).targetName());
+
+		mappings = EntryRemapper.empty(JarIndex.empty());
+		try (MappingJournal journal = new MappingJournal(path)) {
+			assertEquals(0, journal.replay(mappings));
+		}
+
+		assertNull(mappings.getDeobfMapping(new ClassEntry("a")).targetName());
+	}
+}
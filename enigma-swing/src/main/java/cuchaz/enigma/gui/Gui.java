@@ -305,6 +305,7 @@ public class Gui implements LanguageChangeListener {
 				showStructure(getActiveEditor());
 			}
 		});
+		openFiles.addChangeListener(e -> updateVisibleEditor());
 
 		deobfPanelPopupMenu = new DeobfPanelPopupMenu(this);
 		deobfPanel.deobfClasses.addMouseListener(new MouseAdapter() {
@@ -494,6 +495,7 @@ public class Gui implements LanguageChangeListener {
 				public void onClassHandleChanged(EditorPanel editor, ClassEntry old, ClassHandle ch) {
 					editors.remove(old);
 					editors.put(ch.getRef(), editor);
+					updateVisibleEditor();
 				}
 
 				@Override
@@ -598,6 +600,16 @@ public class Gui implements LanguageChangeListener {
 		infoPanel.setReference(reference == null ? null : reference.entry);
 	}
 
+	private void updateVisibleEditor() {
+		EditorPanel activeEditor = getActiveEditor();
+		for (EditorPanel editor : editors.values()) {
+			ClassHandle handle = editor.getClassHandle();
+			if (handle != null) {
+				handle.setVisible(editor == activeEditor);
+			}
+		}
+	}
+
 	@Nullable
 	public EditorPanel getActiveEditor() {
 		return EditorPanel.byUi(openFiles.getSelectedComponent());
@@ -811,14 +823,22 @@ public class Gui implements LanguageChangeListener {
 
 	public void onRenameFromClassTree(ValidationContext vc, Object prevData, Object data, DefaultMutableTreeNode node) {
 		if (data instanceof String) {
-			// package rename
+			// package rename, the classes are renamed together
+			Set<ClassEntry> children = new LinkedHashSet<>();
 			for (int i = 0; i < node.getChildCount(); i++) {
 				DefaultMutableTreeNode childNode = (DefaultMutableTreeNode) node.getChildAt(i);
-				ClassEntry prevDataChild = (ClassEntry) childNode.getUserObject();
+				children.add((ClassEntry) childNode.getUserObject());
+			}
+
+			List<EntryChange<?>> changes = new ArrayList<>();
+			Map<ClassEntry, ClassEntry> deobfToObf = this.getObfClasses(children);
+			for (ClassEntry prevDataChild : children) {
 				ClassEntry dataChild = new ClassEntry(data + "/" + prevDataChild.getSimpleName());
 
-				onRenameFromClassTree(vc, prevDataChild, dataChild, node);
+				ClassEntry obf = deobfToObf.getOrDefault(prevDataChild, prevDataChild);
+				changes.add(EntryChange.modify(obf).withDeobfName(dataChild.getFullName()));
 			}
+			this.controller.applyChanges(vc, changes);
 			node.setUserObject(data);
 			// Ob package will never be modified, just reload deob view
 			this.deobfPanel.deobfClasses.reload();
@@ -841,6 +861,24 @@ public class Gui implements LanguageChangeListener {
 		}
 	}
 
+	/**
+	 * Looks up the obfuscated names of several classes in a single pass over the mappings.
+	 */
+	private Map<ClassEntry, ClassEntry> getObfClasses(Set<ClassEntry> deobfClasses) {
+		EntryRemapper mapper = this.controller.project.getMapper();
+		Map<ClassEntry, ClassEntry> deobfToObf = new HashMap<>();
+		mapper.getObfToDeobf().getAllEntries()
+				.filter(e -> e instanceof ClassEntry)
+				.map(e -> (ClassEntry) e)
+				.forEach(e -> {
+					ClassEntry deobf = mapper.deobfuscate(e);
+					if (deobfClasses.contains(deobf)) {
+						deobfToObf.putIfAbsent(deobf, e);
+					}
+				});
+		return deobfToObf;
+	}
+
 	public void moveClassTree(Entry<?> obfEntry, String newName) {
 		String oldEntry = obfEntry.getContainingClass().getPackageName();
 		String newEntry = new ClassEntry(newName).getPackageName();
@@ -911,6 +949,14 @@ public class Gui implements LanguageChangeListener {
 		statusLabel.setText(message.translate());
 	}
 
+	public void setSyncProgress(int syncedEntries, int totalEntries) {
+		if (syncedEntries < totalEntries) {
+			statusLabel.setText(String.format(I18n.translate("status.syncing_mappings"), syncedEntries, totalEntries));
+		} else {
+			statusLabel.setText(I18n.translate("status.ready"));
+		}
+	}
+
 	public void setUserList(List<String> users) {
 		userModel.clear();
 		users.forEach(userModel::addElement);
@@ -15,6 +15,7 @@ import java.awt.Desktop;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
@@ -37,6 +38,7 @@ import cuchaz.enigma.api.service.ObfuscationTestService;
 import cuchaz.enigma.classhandle.ClassHandle;
 import cuchaz.enigma.classhandle.ClassHandleProvider;
 import cuchaz.enigma.classprovider.ClasspathClassProvider;
+import cuchaz.enigma.config.ConfigPaths;
 import cuchaz.enigma.gui.config.NetConfig;
 import cuchaz.enigma.gui.config.UiConfig;
 import cuchaz.enigma.gui.dialog.ProgressDialog;
@@ -45,6 +47,7 @@ import cuchaz.enigma.gui.stats.StatsGenerator;
 import cuchaz.enigma.gui.stats.StatsMember;
 import cuchaz.enigma.gui.util.History;
 import cuchaz.enigma.network.*;
+import cuchaz.enigma.network.packet.EntryChangeBatchC2SPacket;
 import cuchaz.enigma.network.packet.EntryChangeC2SPacket;
 import cuchaz.enigma.network.packet.LoginC2SPacket;
 import cuchaz.enigma.network.packet.Packet;
@@ -58,6 +61,7 @@ import cuchaz.enigma.translation.mapping.serde.MappingFormat;
 import cuchaz.enigma.translation.mapping.serde.MappingParseException;
 import cuchaz.enigma.translation.mapping.serde.MappingSaveParameters;
 import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.EntryTreeNode;
 import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.Entry;
@@ -76,7 +80,10 @@ public class GuiController implements ClientPacketHandler {
 	private IndexTreeBuilder indexTreeBuilder;
 
 	private Path loadedMappingPath;
+	private EntryTree<EntryMapping> syncedMappings;
 	private MappingFormat loadedMappingFormat;
+	// the changes of a failed save, which are still to be written to loadedMappingPath
+	private MappingDelta<EntryMapping> unsavedDelta;
 
 	private ClassHandleProvider chp;
 
@@ -85,15 +92,22 @@ public class GuiController implements ClientPacketHandler {
 	private EnigmaClient client;
 	private EnigmaServer server;
 
+	// how far the mappings of syncedMapper are synced with the server, to only resync the changes made since then when reconnecting
+	private SyncPosition syncPosition;
+	private EntryRemapper syncedMapper;
+	private int unacknowledgedChanges;
+
 	public GuiController(Gui gui, EnigmaProfile profile) {
 		this.gui = gui;
 		this.enigma = Enigma.builder()
 				.setProfile(profile)
+				.setIndexCacheDirectory(ConfigPaths.getCachePathRoot().resolve("enigma").resolve("index"))
+				.setSourceCacheDirectory(ConfigPaths.getCachePathRoot().resolve("enigma").resolve("sources"))
 				.build();
 	}
 
 	public boolean isDirty() {
-		return project != null && project.getMapper().isDirty();
+		return project != null && (project.getMapper().isDirty() || unsavedDelta != null);
 	}
 
 	public CompletableFuture<Void> openJar(final Path jarPath) {
@@ -114,6 +128,7 @@ public class GuiController implements ClientPacketHandler {
 		this.chp.destroy();
 		this.chp = null;
 		this.project = null;
+		this.unsavedDelta = null;
 		this.gui.onCloseJar();
 	}
 
@@ -128,6 +143,7 @@ public class GuiController implements ClientPacketHandler {
 
 				EntryTree<EntryMapping> mappings = format.read(path, progress, saveParameters);
 				project.setMappings(mappings);
+				unsavedDelta = null;
 
 				loadedMappingFormat = format;
 				loadedMappingPath = path;
@@ -145,10 +161,39 @@ public class GuiController implements ClientPacketHandler {
 		if (project == null) return;
 
 		project.setMappings(mappings);
+		unsavedDelta = null;
 		refreshClasses();
 		chp.invalidateJavadoc();
 	}
 
+	@Override
+	public void openMappingsChunk(EntryTree<EntryMapping> mappings, boolean first, boolean last, int syncedEntries, int totalEntries) {
+		if (project == null) return;
+
+		if (first) {
+			// the later chunks are added to the tree the mapper translates with, without being tracked as changes
+			syncedMappings = mappings;
+			openMappings(mappings);
+		} else {
+			for (EntryTreeNode<EntryMapping> node : mappings) {
+				if (node.hasValue()) {
+					syncedMappings.insert(node.getEntry(), node.getValue());
+				}
+			}
+
+			mappings.getRootNodes().forEach(node -> chp.invalidateJavadoc((ClassEntry) node.getEntry()));
+		}
+
+		if (last) {
+			syncedMappings = null;
+			if (!first) {
+				refreshClasses();
+			}
+		}
+
+		gui.setSyncProgress(syncedEntries, totalEntries);
+	}
+
 	public CompletableFuture<Void> saveMappings(Path path) {
 		return saveMappings(path, loadedMappingFormat);
 	}
@@ -172,16 +217,31 @@ public class GuiController implements ClientPacketHandler {
 			MappingSaveParameters saveParameters = enigma.getProfile().getMappingSaveParameters();
 
 			MappingDelta<EntryMapping> delta = mapper.takeMappingDelta();
+			if (unsavedDelta != null) {
+				// the changes of a failed save are written together with the new ones
+				EntryTree<Object> changes = new HashEntryTree<>();
+				Stream.concat(unsavedDelta.getChanges().getAllEntries(), delta.getChanges().getAllEntries())
+						.forEach(entry -> changes.insert(entry, MappingDelta.PLACEHOLDER));
+				delta = new MappingDelta<>(unsavedDelta.getBaseMappings(), changes);
+			}
+
 			boolean saveAll = !path.equals(loadedMappingPath);
 
+			try {
+				if (saveAll) {
+					format.write(mapper.getObfToDeobf(), path, progress, saveParameters);
+				} else {
+					format.write(mapper.getObfToDeobf(), delta, path, progress, saveParameters);
+				}
+			} catch (UncheckedIOException e) {
+				unsavedDelta = delta;
+				SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(gui.getFrame(), e.getCause().toString(), I18n.translate("menu.file.mappings.save.error"), JOptionPane.ERROR_MESSAGE));
+				throw e;
+			}
+
+			unsavedDelta = null;
 			loadedMappingFormat = format;
 			loadedMappingPath = path;
-
-			if (saveAll) {
-				format.write(mapper.getObfToDeobf(), path, progress, saveParameters);
-			} else {
-				format.write(mapper.getObfToDeobf(), delta, path, progress, saveParameters);
-			}
 		});
 	}
 
@@ -189,6 +249,7 @@ public class GuiController implements ClientPacketHandler {
 		if (project == null) return;
 
 		project.setMappings(null);
+		unsavedDelta = null;
 
 		this.gui.setMappingsFile(null);
 		refreshClasses();
@@ -227,15 +288,7 @@ public class GuiController implements ClientPacketHandler {
 		if (project == null) return CompletableFuture.completedFuture(null);
 
 		return ProgressDialog.runOffThread(this.gui.getFrame(), progress -> {
-			EnigmaProject.JarExport jar = project.exportRemappedJar(progress);
-			jar.decompileStream(progress, chp.getDecompilerService(), EnigmaProject.DecompileErrorStrategy.TRACE_AS_SOURCE)
-					.forEach(source -> {
-						try {
-							source.writeTo(source.resolvePath(path));
-						} catch (IOException e) {
-							e.printStackTrace();
-						}
-					});
+			project.exportRemappedSources(path, progress, chp.getDecompilerService(), EnigmaProject.DecompileErrorStrategy.TRACE_AS_SOURCE);
 		});
 	}
 
@@ -243,8 +296,7 @@ public class GuiController implements ClientPacketHandler {
 		if (project == null) return CompletableFuture.completedFuture(null);
 
 		return ProgressDialog.runOffThread(this.gui.getFrame(), progress -> {
-			EnigmaProject.JarExport jar = project.exportRemappedJar(progress);
-			jar.write(path, progress);
+			project.exportRemappedJar(path, progress);
 		});
 	}
 
@@ -471,6 +523,34 @@ public class GuiController implements ClientPacketHandler {
 		return vc.canProceed();
 	}
 
+	@Override
+	public boolean applyChangesFromServer(List<EntryChange<?>> changes) {
+		ValidationContext vc = new ValidationContext();
+		vc.setActiveElement(PrintValidatable.INSTANCE);
+		this.applyChanges0(vc, changes);
+
+		return vc.canProceed();
+	}
+
+	@Override
+	public void updateSyncPosition(SyncPosition position, boolean acknowledgesChange) {
+		if (project == null) return;
+
+		if (acknowledgesChange && unacknowledgedChanges > 0) {
+			unacknowledgedChanges--;
+		}
+
+		syncPosition = position;
+		syncedMapper = project.getMapper();
+	}
+
+	@Override
+	public void advanceSyncPosition(int changes) {
+		if (syncPosition != null) {
+			syncPosition = new SyncPosition(syncPosition.sessionId(), syncPosition.sequence() + changes);
+		}
+	}
+
 	public void validateChange(ValidationContext vc, EntryChange<?> change) {
 		if (change.getDeobfName().isSet()) {
 			EntryValidation.validateRename(vc, this.project, change.getTarget(), change.getDeobfName().getNewValue());
@@ -485,7 +565,48 @@ public class GuiController implements ClientPacketHandler {
 		this.applyChange0(vc, change);
 		gui.showStructure(gui.getActiveEditor());
 		if (!vc.canProceed()) return;
-		this.sendPacket(new EntryChangeC2SPacket(change));
+		this.sendChangePacket(new EntryChangeC2SPacket(change));
+	}
+
+	/**
+	 * Applies changes made together, such as the renames of the classes of a package. Either all
+	 * or none of them are applied, and they are sent to the server as a single batch.
+	 */
+	public void applyChanges(ValidationContext vc, List<EntryChange<?>> changes) {
+		if (changes.isEmpty()) return;
+
+		this.applyChanges0(vc, changes);
+		if (!vc.canProceed()) return;
+		this.sendChangePacket(new EntryChangeBatchC2SPacket(changes));
+	}
+
+	private void sendChangePacket(Packet<ServerPacketHandler> packet) {
+		if (client != null) {
+			unacknowledgedChanges++;
+		} else {
+			// the server doesn't know about this change, so all mappings have to be synced when reconnecting
+			syncPosition = null;
+		}
+		this.sendPacket(packet);
+	}
+
+	private void applyChanges0(ValidationContext vc, List<EntryChange<?>> changes) {
+		for (EntryChange<?> change : changes) {
+			validateChange(vc, change);
+		}
+		if (!vc.canProceed()) return;
+
+		if (!EntryUtil.applyChanges(vc, this.project.getMapper(), changes)) return;
+
+		// refresh everything once, instead of once per change
+		refreshClasses();
+		this.chp.invalidateMapped();
+		changes.stream()
+				.filter(change -> !change.getJavadoc().isUnchanged())
+				.map(change -> change.getTarget().getTopLevelClass())
+				.distinct()
+				.forEach(this.chp::invalidateJavadoc);
+		gui.showStructure(gui.getActiveEditor());
 	}
 
 	private void applyChange0(ValidationContext vc, EntryChange<?> change) {
@@ -503,7 +624,7 @@ public class GuiController implements ClientPacketHandler {
 		}
 
 		if (!Objects.equals(prev.targetName(), mapping.targetName())) {
-			this.chp.invalidateMapped();
+			this.chp.invalidateRenamed(target);
 		}
 
 		if (!Objects.equals(prev.javadoc(), mapping.javadoc())) {
@@ -552,9 +673,12 @@ public class GuiController implements ClientPacketHandler {
 	}
 
 	public void createClient(String username, String ip, int port, char[] password) throws IOException {
+		SyncPosition lastPosition = project.getMapper() == syncedMapper ? syncPosition : null;
+		unacknowledgedChanges = 0;
+
 		client = new EnigmaClient(this, ip, port);
 		client.connect();
-		client.sendPacket(new LoginC2SPacket(project.getJarChecksum(), password, username));
+		client.sendPacket(new LoginC2SPacket(project.getJarChecksum(), password, username, lastPosition));
 		gui.setConnectionState(ConnectionState.CONNECTED);
 	}
 
@@ -582,6 +706,12 @@ public class GuiController implements ClientPacketHandler {
 		client = null;
 		server = null;
 		SwingUtilities.invokeLater(() -> {
+			// changes which weren't answered by the server might not have been applied
+			if (unacknowledgedChanges > 0) {
+				syncPosition = null;
+				unacknowledgedChanges = 0;
+			}
+
 			if (reason != null) {
 				JOptionPane.showMessageDialog(gui.getFrame(), I18n.translate(reason), I18n.translate("disconnect.disconnected"), JOptionPane.INFORMATION_MESSAGE);
 			}
@@ -11,17 +11,26 @@
 
 package cuchaz.enigma;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
 import org.objectweb.asm.Opcodes;
 
 import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.analysis.index.JarIndexCache;
 import cuchaz.enigma.api.EnigmaPlugin;
 import cuchaz.enigma.api.EnigmaPluginContext;
 import cuchaz.enigma.api.service.EnigmaService;
@@ -29,9 +38,13 @@ import cuchaz.enigma.api.service.EnigmaServiceFactory;
 import cuchaz.enigma.api.service.EnigmaServiceType;
 import cuchaz.enigma.api.service.JarIndexerService;
 import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassCacheSettings;
 import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.classprovider.ClasspathClassProvider;
 import cuchaz.enigma.classprovider.CombiningClassProvider;
-import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.classprovider.MappedJarClassProvider;
+import cuchaz.enigma.source.DecompiledSourceCache;
+import cuchaz.enigma.utils.I18n;
 import cuchaz.enigma.utils.Utils;
 
 public class Enigma {
@@ -42,10 +55,16 @@ public class Enigma {
 
     private final EnigmaProfile profile;
 	private final EnigmaServices services;
+	@Nullable
+	private final JarIndexCache indexCache;
+	@Nullable
+	private final DecompiledSourceCache sourceCache;
 
-	private Enigma(EnigmaProfile profile, EnigmaServices services) {
+	private Enigma(EnigmaProfile profile, EnigmaServices services, @Nullable JarIndexCache indexCache, @Nullable DecompiledSourceCache sourceCache) {
 		this.profile = profile;
 		this.services = services;
+		this.indexCache = indexCache;
+		this.sourceCache = sourceCache;
 	}
 
 	public static Enigma create() {
@@ -57,15 +76,84 @@ public class Enigma {
 	}
 
 	public EnigmaProject openJar(Path path, ClassProvider libraryClassProvider, ProgressListener progress) throws IOException {
-		JarClassProvider jarClassProvider = new JarClassProvider(path);
-		ClassProvider classProvider = new CachingClassProvider(new CombiningClassProvider(jarClassProvider, libraryClassProvider));
+		MappedJarClassProvider jarClassProvider = new MappedJarClassProvider(path);
+		ClassProvider classProvider = new CachingClassProvider(new CombiningClassProvider(jarClassProvider, libraryClassProvider), profile.getClassCacheSettings().share(ClassCacheSettings.PROJECT_SHARE));
 		Set<String> scope = jarClassProvider.getClassNames();
+		byte[] jarChecksum = Utils.zipSha1(path);
 
-		JarIndex index = JarIndex.empty();
-		index.indexJar(scope, classProvider, progress);
+		JarIndex index = loadOrIndexJar(scope, classProvider, jarChecksum, describeLibraries(libraryClassProvider), progress);
 		services.get(JarIndexerService.TYPE).forEach(indexer -> indexer.acceptJar(scope, classProvider, index));
 
-		return new EnigmaProject(this, path, classProvider, index, Utils.zipSha1(path));
+		return new EnigmaProject(this, path, classProvider, index, jarChecksum);
+	}
+
+	/**
+	 * Identifies the library classes a jar is indexed with, so that an index cached with other
+	 * libraries is not reused. Classpath entries are identified by their path, and by the sizes and
+	 * modification times of their files, so that a library replaced at the same path is noticed.
+	 *
+	 * @return the description of the libraries, or {@code null} if they can't be identified
+	 */
+	@Nullable
+	private static String describeLibraries(ClassProvider libraryClassProvider) {
+		if (libraryClassProvider instanceof ClasspathClassProvider) {
+			StringBuilder description = new StringBuilder(String.join(File.pathSeparator, "classpath", System.getProperty("java.home"), System.getProperty("java.runtime.version")));
+			for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+				description.append(File.pathSeparator).append(entry);
+				describeClasspathEntry(description, entry);
+			}
+
+			return description.toString();
+		}
+
+		return null;
+	}
+
+	private static void describeClasspathEntry(StringBuilder description, String entry) {
+		try {
+			Path path = Paths.get(entry);
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> files = Files.walk(path)) {
+					for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile).sorted()::iterator) {
+						description.append('|').append(path.relativize(file));
+						describeFile(description, file);
+					}
+				}
+			} else if (Files.exists(path)) {
+				describeFile(description, path);
+			}
+		} catch (IOException | InvalidPathException e) {
+			// an entry which can't be read doesn't provide classes either
+			description.append("|unreadable");
+		}
+	}
+
+	private static void describeFile(StringBuilder description, Path file) throws IOException {
+		description.append('|').append(Files.size(file)).append('|').append(Files.getLastModifiedTime(file).toMillis());
+	}
+
+	private JarIndex loadOrIndexJar(Set<String> scope, ClassProvider classProvider, byte[] jarChecksum, @Nullable String libraries, ProgressListener progress) {
+		// indexes are only cached when the library classes are known, as they could be stale otherwise
+		JarIndexCache indexCache = libraries != null ? this.indexCache : null;
+
+		if (indexCache != null) {
+			progress.init(1, I18n.translate("progress.jar.indexing"));
+			progress.step(1, I18n.translate("progress.jar.indexing.cache"));
+
+			JarIndex cachedIndex = indexCache.load(jarChecksum, libraries);
+			if (cachedIndex != null) {
+				return cachedIndex;
+			}
+		}
+
+		JarIndex index = JarIndex.empty();
+		index.indexJar(scope, classProvider, progress, true);
+
+		if (indexCache != null) {
+			indexCache.save(jarChecksum, libraries, index);
+		}
+
+		return index;
 	}
 
 	public EnigmaProfile getProfile() {
@@ -76,9 +164,19 @@ public class Enigma {
 		return services;
 	}
 
+	/**
+	 * Gets the cache decompiled sources are stored in, or {@code null} if sources are not cached.
+	 */
+	@Nullable
+	public DecompiledSourceCache getSourceCache() {
+		return sourceCache;
+	}
+
 	public static class Builder {
 		private EnigmaProfile profile = EnigmaProfile.EMPTY;
 		private Iterable<EnigmaPlugin> plugins = ServiceLoader.load(EnigmaPlugin.class);
+		private Path indexCacheDirectory;
+		private Path sourceCacheDirectory;
 
 		private Builder() {
 		}
@@ -95,6 +193,22 @@ public class Enigma {
 			return this;
 		}
 
+		/**
+		 * Sets the directory processed jar indexes are cached in, or {@code null} to always index jars from scratch.
+		 */
+		public Builder setIndexCacheDirectory(@Nullable Path indexCacheDirectory) {
+			this.indexCacheDirectory = indexCacheDirectory;
+			return this;
+		}
+
+		/**
+		 * Sets the directory decompiled sources are cached in, or {@code null} to always decompile classes from scratch.
+		 */
+		public Builder setSourceCacheDirectory(@Nullable Path sourceCacheDirectory) {
+			this.sourceCacheDirectory = sourceCacheDirectory;
+			return this;
+		}
+
 		public Enigma build() {
 			PluginContext pluginContext = new PluginContext(profile);
 			for (EnigmaPlugin plugin : plugins) {
@@ -102,7 +216,9 @@ public class Enigma {
 			}
 
 			EnigmaServices services = pluginContext.buildServices();
-			return new Enigma(profile, services);
+			JarIndexCache indexCache = indexCacheDirectory != null ? new JarIndexCache(indexCacheDirectory, pluginContext.getJarIndexers()) : null;
+			DecompiledSourceCache sourceCache = sourceCacheDirectory != null ? new DecompiledSourceCache(sourceCacheDirectory) : null;
+			return new Enigma(profile, services, indexCache, sourceCache);
 		}
 	}
 
@@ -110,6 +226,7 @@ public class Enigma {
 		private final EnigmaProfile profile;
 
 		private final ImmutableListMultimap.Builder<EnigmaServiceType<?>, EnigmaService> services = ImmutableListMultimap.builder();
+		private final ImmutableList.Builder<String> jarIndexers = ImmutableList.builder();
 
 		PluginContext(EnigmaProfile profile) {
 			this.profile = profile;
@@ -123,6 +240,11 @@ public class Enigma {
 				if (serviceProfile.matches(id)) {
 					T service = factory.create(serviceProfile::getArgument);
 					services.put(serviceType, service);
+
+					if (serviceType.equals(JarIndexerService.TYPE)) {
+						jarIndexers.add(serviceProfile.toString());
+					}
+
 					break;
 				}
 			}
@@ -131,6 +253,10 @@ public class Enigma {
 		EnigmaServices buildServices() {
 			return new EnigmaServices(services.build());
 		}
+
+		List<String> getJarIndexers() {
+			return jarIndexers.build();
+		}
 	}
 
 	static {
@@ -11,6 +11,7 @@ import com.google.gson.JsonParseException;
 import com.google.gson.annotations.SerializedName;
 import com.google.gson.reflect.TypeToken;
 import cuchaz.enigma.api.service.EnigmaServiceType;
+import cuchaz.enigma.classprovider.ClassCacheSettings;
 import cuchaz.enigma.translation.mapping.serde.MappingFileNameFormat;
 import cuchaz.enigma.translation.mapping.serde.MappingSaveParameters;
 
@@ -27,6 +28,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
 public final class EnigmaProfile {
 	public static final EnigmaProfile EMPTY = new EnigmaProfile(new ServiceContainer(ImmutableMap.of()));
@@ -44,6 +46,9 @@ public final class EnigmaProfile {
 	@SerializedName("mapping_save_parameters")
 	private final MappingSaveParameters mappingSaveParameters = null;
 
+	@SerializedName("class_cache")
+	private final ClassCacheSettings classCacheSettings = null;
+
 	private EnigmaProfile(ServiceContainer serviceProfiles) {
 		this.serviceProfiles = serviceProfiles;
 	}
@@ -99,6 +104,11 @@ public final class EnigmaProfile {
 		return mappingSaveParameters == null ? EnigmaProfile.DEFAULT_MAPPING_SAVE_PARAMETERS : mappingSaveParameters;
 	}
 
+	public ClassCacheSettings getClassCacheSettings() {
+		//noinspection ConstantConditions
+		return classCacheSettings == null ? ClassCacheSettings.DEFAULT : classCacheSettings;
+	}
+
 	public static class Service {
 		private final String id;
 		private final Map<String, String> args;
@@ -115,6 +125,11 @@ public final class EnigmaProfile {
 		public Optional<String> getArgument(String key) {
 			return args != null ? Optional.ofNullable(args.get(key)) : Optional.empty();
 		}
+
+		@Override
+		public String toString() {
+			return args != null ? id + new TreeMap<>(args) : id;
+		}
 	}
 
 	static final class ServiceContainer {
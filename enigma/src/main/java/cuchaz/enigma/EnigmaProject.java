@@ -7,20 +7,22 @@ import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.jar.JarEntry;
-import java.util.jar.JarOutputStream;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.annotation.Nullable;
+
 import com.google.common.base.Functions;
 import com.google.common.base.Preconditions;
 import cuchaz.enigma.api.service.ObfuscationTestService;
 import cuchaz.enigma.classprovider.ObfuscationFixClassProvider;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.tree.ClassNode;
 
 import cuchaz.enigma.analysis.EntryReference;
@@ -28,7 +30,10 @@ import cuchaz.enigma.analysis.index.JarIndex;
 import cuchaz.enigma.api.service.NameProposalService;
 import cuchaz.enigma.bytecode.translators.TranslationClassVisitor;
 import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.source.CachingDecompiler;
+import cuchaz.enigma.source.DecompiledSourceCache;
 import cuchaz.enigma.source.Decompiler;
+import cuchaz.enigma.source.DecompilerPool;
 import cuchaz.enigma.source.DecompilerService;
 import cuchaz.enigma.source.SourceSettings;
 import cuchaz.enigma.translation.ProposingTranslator;
@@ -42,9 +47,12 @@ import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.Entry;
 import cuchaz.enigma.translation.representation.entry.LocalVariableEntry;
 import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import cuchaz.enigma.utils.AsmUtil;
 import cuchaz.enigma.utils.I18n;
 
 public class EnigmaProject {
+	private static final int DEFAULT_DECOMPILER_THREADS = Integer.getInteger("enigma.decompilerThreads", Runtime.getRuntime().availableProcessors());
+
 	private final Enigma enigma;
 
 	private final Path jarPath;
@@ -191,9 +199,7 @@ public class EnigmaProject {
 	public JarExport exportRemappedJar(ProgressListener progress) {
 		Collection<ClassEntry> classEntries = jarIndex.getEntryIndex().getClasses();
 		ClassProvider fixingClassProvider = new ObfuscationFixClassProvider(classProvider, jarIndex);
-
-		NameProposalService[] nameProposalServices = getEnigma().getServices().get(NameProposalService.TYPE).toArray(new NameProposalService[0]);
-		Translator deobfuscator = nameProposalServices.length == 0 ? mapper.getDeobfuscator() : new ProposingTranslator(mapper, nameProposalServices);
+		Translator deobfuscator = createExportTranslator();
 
 		AtomicInteger count = new AtomicInteger();
 		progress.init(classEntries.size(), I18n.translate("progress.classes.deobfuscating"));
@@ -204,53 +210,167 @@ public class EnigmaProject {
 					progress.step(count.getAndIncrement(), translatedEntry.toString());
 
 					ClassNode node = fixingClassProvider.get(entry.getFullName());
-					if (node != null) {
-						ClassNode translatedNode = new ClassNode();
-						node.accept(new TranslationClassVisitor(deobfuscator, Enigma.ASM_VERSION, translatedNode));
-						return translatedNode;
-					}
-
-					return null;
+					return node != null ? translateClass(node, deobfuscator) : null;
 				})
 				.filter(Objects::nonNull)
 				.collect(Collectors.toMap(n -> n.name, Functions.identity()));
 
-		return new JarExport(mapper, compiled);
+		return new JarExport(mapper, compiled, enigma.getSourceCache());
+	}
+
+	/**
+	 * Translates and writes all classes to a jar one by one, without keeping them all in memory.
+	 */
+	public void exportRemappedJar(Path path, ProgressListener progress) throws IOException {
+		this.exportRemappedJar(path, progress, DEFAULT_DECOMPILER_THREADS);
+	}
+
+	/**
+	 * Like {@link #exportRemappedJar(Path, ProgressListener)}, translating and compressing classes
+	 * on the given number of threads.
+	 */
+	public void exportRemappedJar(Path path, ProgressListener progress, int threads) throws IOException {
+		StreamingJarExport export = new StreamingJarExport(progress);
+		ParallelJarWriter.write(path, export.names, export::getClassBytes, threads, progress);
+	}
+
+	/**
+	 * Like {@link #exportRemappedJar(Path, ProgressListener)}, writing a jar which only depends on
+	 * the classes and their mappings: entries are sorted by class name and have a fixed timestamp.
+	 *
+	 * @param previous the manifest of the jar currently at {@code path}, if any. Classes whose hash
+	 *                 is unchanged are copied from that jar without compressing them again
+	 * @return the hashes of the exported classes
+	 */
+	public JarExportManifest exportReproducibleJar(Path path, ProgressListener progress, @Nullable JarExportManifest previous) throws IOException {
+		StreamingJarExport export = new StreamingJarExport(progress);
+		return ParallelJarWriter.writeReproducible(path, export.names, export::getClassBytes, DEFAULT_DECOMPILER_THREADS, previous, progress);
+	}
+
+	/**
+	 * Translates, decompiles and writes the sources of all classes one by one, keeping only the
+	 * classes which are being decompiled in memory.
+	 *
+	 * @param path the directory to write the sources to, or a zip file if it ends in {@code .zip} or
+	 *             {@code .jar}
+	 */
+	public void exportRemappedSources(Path path, ProgressListener progress, DecompilerService decompilerService, DecompileErrorStrategy errorStrategy) throws IOException {
+		this.exportRemappedSources(path, progress, decompilerService, errorStrategy, DEFAULT_DECOMPILER_THREADS);
+	}
+
+	/**
+	 * Like {@link #exportRemappedSources(Path, ProgressListener, DecompilerService, DecompileErrorStrategy)},
+	 * decompiling on the given number of threads.
+	 */
+	public void exportRemappedSources(Path path, ProgressListener progress, DecompilerService decompilerService, DecompileErrorStrategy errorStrategy, int threads) throws IOException {
+		ClassProvider fixingClassProvider = new ObfuscationFixClassProvider(classProvider, jarIndex);
+		new StreamingSourceExport(this, fixingClassProvider, createExportTranslator()).write(path, progress, decompilerService, errorStrategy, threads);
+	}
+
+	private Translator createExportTranslator() {
+		NameProposalService[] nameProposalServices = getEnigma().getServices().get(NameProposalService.TYPE).toArray(new NameProposalService[0]);
+		return nameProposalServices.length == 0 ? mapper.getDeobfuscator() : new ProposingTranslator(mapper, nameProposalServices);
+	}
+
+	static ClassNode translateClass(ClassNode node, Translator deobfuscator) {
+		ClassNode translatedNode = new ClassNode();
+		node.accept(new TranslationClassVisitor(deobfuscator, Enigma.ASM_VERSION, translatedNode));
+		return translatedNode;
+	}
+
+	static Decompiler createExportDecompiler(DecompilerService decompilerService, ClassProvider classProvider, @Nullable DecompiledSourceCache sourceCache) {
+		SourceSettings settings = new SourceSettings(false, false);
+		Decompiler decompiler = decompilerService.create(classProvider, settings);
+		return sourceCache != null ? new CachingDecompiler(decompiler, classProvider, settings, sourceCache) : decompiler;
+	}
+
+	/**
+	 * Decompiles a class, handling errors as the given strategy says.
+	 *
+	 * @return the source, or {@code null} if the class should be skipped
+	 */
+	@Nullable
+	static String decompileClass(Decompiler decompiler, String name, EntryRemapper mapper, DecompileErrorStrategy errorStrategy) {
+		try {
+			return decompiler.getSource(name, mapper).asString();
+		} catch (Throwable throwable) {
+			switch (errorStrategy) {
+				case PROPAGATE: throw throwable;
+				case IGNORE: return null;
+				case TRACE_AS_SOURCE: {
+					StringWriter writer = new StringWriter();
+					throwable.printStackTrace(new PrintWriter(writer));
+					return writer.toString();
+				}
+				default: throw new IllegalStateException("Unknown error strategy " + errorStrategy);
+			}
+		}
+	}
+
+	/**
+	 * Translates the classes of the project for the jar writer, as it asks for them.
+	 */
+	private final class StreamingJarExport {
+		private final ClassProvider fixingClassProvider = new ObfuscationFixClassProvider(classProvider, jarIndex);
+		private final Translator deobfuscator = createExportTranslator();
+		private final Map<String, ClassEntry> obfClasses = new HashMap<>();
+		private final List<String> names;
+
+		StreamingJarExport(ProgressListener progress) {
+			for (ClassEntry entry : jarIndex.getEntryIndex().getClasses()) {
+				obfClasses.put(deobfuscator.translate(entry).getFullName(), entry);
+			}
+
+			this.names = obfClasses.keySet().stream().sorted().toList();
+			progress.init(names.size(), I18n.translate("progress.jar.writing"));
+		}
+
+		@Nullable
+		byte[] getClassBytes(String name) {
+			ClassNode node = fixingClassProvider.get(obfClasses.get(name).getFullName());
+			return node != null ? AsmUtil.nodeToBytes(translateClass(node, deobfuscator)) : null;
+		}
 	}
 
 	public static final class JarExport {
 		private final EntryRemapper mapper;
 		private final Map<String, ClassNode> compiled;
+		private final ClassProvider compiledClassProvider;
+		@Nullable
+		private final DecompiledSourceCache sourceCache;
 
-		JarExport(EntryRemapper mapper, Map<String, ClassNode> compiled) {
+		JarExport(EntryRemapper mapper, Map<String, ClassNode> compiled, @Nullable DecompiledSourceCache sourceCache) {
 			this.mapper = mapper;
 			this.compiled = compiled;
+			this.compiledClassProvider = new CompiledClassProvider(compiled);
+			this.sourceCache = sourceCache;
 		}
 
 		public void write(Path path, ProgressListener progress) throws IOException {
 			progress.init(this.compiled.size(), I18n.translate("progress.jar.writing"));
 
-			try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(path))) {
-				AtomicInteger count = new AtomicInteger();
-
-				for (ClassNode node : this.compiled.values()) {
-					progress.step(count.getAndIncrement(), node.name);
-
-					String entryName = node.name.replace('.', '/') + ".class";
-
-					ClassWriter writer = new ClassWriter(0);
-					node.accept(writer);
-
-					out.putNextEntry(new JarEntry(entryName));
-					out.write(writer.toByteArray());
-					out.closeEntry();
-				}
-			}
+			List<String> names = this.compiled.keySet().stream().sorted().toList();
+			ParallelJarWriter.write(path, names, this.compiledClassProvider::getClassBytes, DEFAULT_DECOMPILER_THREADS, progress);
 		}
 
 		public SourceExport decompile(ProgressListener progress, DecompilerService decompilerService, DecompileErrorStrategy errorStrategy) {
-			List<ClassSource> decompiled = this.decompileStream(progress, decompilerService, errorStrategy).toList();
-			return new SourceExport(decompiled);
+			return this.decompile(progress, decompilerService, errorStrategy, DEFAULT_DECOMPILER_THREADS);
+		}
+
+		/**
+		 * Decompiles all classes on the given number of threads, each of which uses its own
+		 * decompiler instance.
+		 */
+		public SourceExport decompile(ProgressListener progress, DecompilerService decompilerService, DecompileErrorStrategy errorStrategy, int threads) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+
+			try {
+				// a parallel stream runs in the pool its terminal operation is called from
+				List<ClassSource> decompiled = pool.submit(() -> this.decompileStream(progress, decompilerService, errorStrategy).toList()).join();
+				return new SourceExport(decompiled);
+			} finally {
+				pool.shutdown();
+			}
 		}
 
 		public Stream<ClassSource> decompileStream(ProgressListener progress, DecompilerService decompilerService, DecompileErrorStrategy errorStrategy) {
@@ -260,8 +380,8 @@ public class EnigmaProject {
 
 			progress.init(classes.size(), I18n.translate("progress.classes.decompiling"));
 
-			//create a common instance outside the loop as mappings shouldn't be changing while this is happening
-			Decompiler decompiler = decompilerService.create(compiled::get, new SourceSettings(false, false));
+			//create the decompilers outside the loop as mappings shouldn't be changing while this is happening
+			Decompiler decompiler = new DecompilerPool(() -> createDecompiler(decompilerService));
 
 			AtomicInteger count = new AtomicInteger();
 
@@ -269,22 +389,7 @@ public class EnigmaProject {
 					.map(translatedNode -> {
 						progress.step(count.getAndIncrement(), translatedNode.name);
 
-						String source = null;
-						try {
-							source = decompileClass(translatedNode, decompiler);
-						} catch (Throwable throwable) {
-							switch (errorStrategy) {
-								case PROPAGATE: throw throwable;
-								case IGNORE: break;
-								case TRACE_AS_SOURCE: {
-									StringWriter writer = new StringWriter();
-									throwable.printStackTrace(new PrintWriter(writer));
-									source = writer.toString();
-									break;
-								}
-							}
-						}
-
+						String source = decompileClass(decompiler, translatedNode.name, mapper, errorStrategy);
 						if (source == null) {
 							return null;
 						}
@@ -294,8 +399,34 @@ public class EnigmaProject {
 					.filter(Objects::nonNull);
 		}
 
-		private String decompileClass(ClassNode translatedNode, Decompiler decompiler) {
-			return decompiler.getSource(translatedNode.name, mapper).asString();
+		private Decompiler createDecompiler(DecompilerService decompilerService) {
+			return createExportDecompiler(decompilerService, compiledClassProvider, sourceCache);
+		}
+	}
+
+	/**
+	 * Provides the remapped classes of an export, serialising each of them only once for all
+	 * decompiler instances.
+	 */
+	private static final class CompiledClassProvider implements ClassProvider {
+		private final Map<String, ClassNode> compiled;
+		private final Map<String, byte[]> compiledBytes = new ConcurrentHashMap<>();
+
+		CompiledClassProvider(Map<String, ClassNode> compiled) {
+			this.compiled = compiled;
+		}
+
+		@Nullable
+		@Override
+		public ClassNode get(String name) {
+			return compiled.get(name);
+		}
+
+		@Nullable
+		@Override
+		public byte[] getClassBytes(String name) {
+			ClassNode node = compiled.get(name);
+			return node != null ? compiledBytes.computeIfAbsent(name, n -> AsmUtil.nodeToBytes(node)) : null;
 		}
 	}
 
@@ -0,0 +1,112 @@
+package cuchaz.enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * The SHA-256 hashes of the classes in an exported jar, by class name.
+ *
+ * <p>Manifests are stored in the format of {@code sha256sum}, one {@code <hash>  <entry name>} line
+ * per class in the order of the jar entries, so they can also be checked by standard tools.</p>
+ */
+public final class JarExportManifest {
+	private static final String CLASS_SUFFIX = ".class";
+
+	private final Map<String, String> hashes;
+
+	JarExportManifest(Map<String, String> hashes) {
+		this.hashes = Collections.unmodifiableMap(new LinkedHashMap<>(hashes));
+	}
+
+	public static JarExportManifest read(Path path) throws IOException {
+		Map<String, String> hashes = new LinkedHashMap<>();
+
+		try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isBlank()) {
+					continue;
+				}
+
+				int separator = line.indexOf(' ');
+				// sha256sum marks binary mode with a '*' instead of the second space
+				if (separator == -1 || separator + 2 > line.length() || !line.endsWith(CLASS_SUFFIX)) {
+					throw new IOException("Invalid manifest line: " + line);
+				}
+
+				String entryName = line.substring(separator + 2);
+				hashes.put(entryName.substring(0, entryName.length() - CLASS_SUFFIX.length()), line.substring(0, separator));
+			}
+		}
+
+		return new JarExportManifest(hashes);
+	}
+
+	public void write(Path path) throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, String> entry : hashes.entrySet()) {
+				writer.write(entry.getValue());
+				writer.write("  ");
+				writer.write(entry.getKey());
+				writer.write(CLASS_SUFFIX);
+				writer.write('\n');
+			}
+		}
+	}
+
+	/**
+	 * @return the hex encoded hash of a class, or {@code null} if it is not in the jar
+	 */
+	@Nullable
+	public String getHash(String className) {
+		return hashes.get(className);
+	}
+
+	public Set<String> getClassNames() {
+		return hashes.keySet();
+	}
+
+	/**
+	 * @return the classes which were added or changed since the previous export, in jar order
+	 */
+	public Set<String> getChangedClasses(JarExportManifest previous) {
+		Set<String> changed = new LinkedHashSet<>();
+		for (Map.Entry<String, String> entry : hashes.entrySet()) {
+			if (!entry.getValue().equals(previous.hashes.get(entry.getKey()))) {
+				changed.add(entry.getKey());
+			}
+		}
+
+		return changed;
+	}
+
+	/**
+	 * @return the classes which were in the previous export but are not anymore
+	 */
+	public Set<String> getRemovedClasses(JarExportManifest previous) {
+		Set<String> removed = new LinkedHashSet<>(previous.hashes.keySet());
+		removed.removeAll(hashes.keySet());
+		return removed;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof JarExportManifest manifest && hashes.equals(manifest.hashes);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashes.hashCode();
+	}
+}
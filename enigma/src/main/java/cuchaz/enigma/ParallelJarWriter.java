@@ -0,0 +1,492 @@
+package cuchaz.enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.annotation.Nullable;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Writes class files into a jar, serialising and compressing them on multiple threads.
+ *
+ * <p>Entries are deflated into buffers by worker threads, and appended to the jar as raw, already
+ * compressed data in the order of the given names, so that the output only depends on the classes.
+ * At most a fixed window of entries is buffered at a time.</p>
+ *
+ * <p>Reproducible jars also get a fixed timestamp on every entry. When such a jar is written over
+ * a previous export, the classes whose hash did not change are copied from it without compressing
+ * them again.</p>
+ */
+final class ParallelJarWriter {
+	private static final int WINDOW_PER_THREAD = 8;
+	// the earliest DOS timestamp, plus a month so that it stays valid in every time zone
+	private static final LocalDateTime REPRODUCIBLE_TIME = LocalDateTime.of(1980, 2, 1, 0, 0);
+
+	private ParallelJarWriter() {
+	}
+
+	/**
+	 * @param path       the jar to write
+	 * @param classNames the internal names of the classes to write, in the order of the entries
+	 * @param classBytes gets the bytes of a class, or {@code null} to skip it, called from worker threads
+	 * @param threads    the number of threads to serialise and compress classes on
+	 */
+	static JarExportManifest write(Path path, List<String> classNames, Function<String, byte[]> classBytes, int threads, ProgressListener progress) throws IOException {
+		return write(path, classNames, classBytes, threads, LocalDateTime.now(), null, progress);
+	}
+
+	/**
+	 * Like {@link #write(Path, List, Function, int, ProgressListener)}, with a fixed timestamp on
+	 * every entry.
+	 *
+	 * @param previous the manifest of the jar currently at {@code path}, if its entries should be
+	 *                 reused for unchanged classes
+	 */
+	static JarExportManifest writeReproducible(Path path, List<String> classNames, Function<String, byte[]> classBytes, int threads, @Nullable JarExportManifest previous, ProgressListener progress) throws IOException {
+		if (previous == null || !Files.isRegularFile(path)) {
+			return write(path, classNames, classBytes, threads, REPRODUCIBLE_TIME, null, progress);
+		}
+
+		PreviousJar previousJar;
+		try {
+			previousJar = PreviousJar.open(path, previous);
+		} catch (IOException e) {
+			System.err.println("Couldn't read the previous export " + path + ", compressing all classes again: " + e);
+			return write(path, classNames, classBytes, threads, REPRODUCIBLE_TIME, null, progress);
+		}
+
+		// the previous jar is read while the new one is written
+		Path tempPath = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+		try {
+			JarExportManifest manifest;
+			try (previousJar) {
+				manifest = write(tempPath, classNames, classBytes, threads, REPRODUCIBLE_TIME, previousJar, progress);
+			}
+
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING);
+			return manifest;
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	private static JarExportManifest write(Path path, List<String> classNames, Function<String, byte[]> classBytes, int threads, LocalDateTime time, @Nullable PreviousJar previousJar, ProgressListener progress) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Deque<Future<CompressedEntry>> window = new ArrayDeque<>();
+		Iterator<String> names = classNames.iterator();
+		Map<String, String> hashes = new LinkedHashMap<>();
+		int count = 0;
+
+		try (ZipWriter out = new ZipWriter(Files.newOutputStream(path), time)) {
+			while (names.hasNext() && window.size() < threads * WINDOW_PER_THREAD) {
+				window.add(submit(executor, names.next(), classBytes, previousJar));
+			}
+
+			while (!window.isEmpty()) {
+				CompressedEntry entry = await(window.poll());
+				if (names.hasNext()) {
+					window.add(submit(executor, names.next(), classBytes, previousJar));
+				}
+
+				if (entry != null) {
+					progress.step(count++, entry.className);
+					out.write(entry);
+					hashes.put(entry.className, entry.hash);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return new JarExportManifest(hashes);
+	}
+
+	private static Future<CompressedEntry> submit(ExecutorService executor, String className, Function<String, byte[]> classBytes, @Nullable PreviousJar previousJar) {
+		return executor.submit(() -> {
+			byte[] bytes = classBytes.apply(className);
+			if (bytes == null) {
+				return null;
+			}
+
+			String hash = Hashing.sha256().hashBytes(bytes).toString();
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+
+			CompressedEntry entry = previousJar != null ? previousJar.read(className, hash, crc.getValue(), bytes.length) : null;
+			return entry != null ? entry : CompressedEntry.compress(className, hash, crc.getValue(), bytes);
+		});
+	}
+
+	@Nullable
+	private static CompressedEntry await(Future<CompressedEntry> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Jar export was interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			} else if (e.getCause() instanceof Error cause) {
+				throw cause;
+			}
+
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private record CompressedEntry(String className, String hash, boolean deflated, long crc, int size, byte[] data, int dataLength) {
+		String entryName() {
+			return className + ".class";
+		}
+
+		static CompressedEntry compress(String className, String hash, long crc, byte[] bytes) {
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try {
+				deflater.setInput(bytes);
+				deflater.finish();
+
+				ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 64);
+				byte[] buffer = new byte[8192];
+				while (!deflater.finished()) {
+					out.write(buffer, 0, deflater.deflate(buffer));
+				}
+
+				// tiny classes may grow when deflated
+				if (out.size() >= bytes.length) {
+					return new CompressedEntry(className, hash, false, crc, bytes.length, bytes, bytes.length);
+				}
+
+				return new CompressedEntry(className, hash, true, crc, bytes.length, out.toByteArray(), out.size());
+			} finally {
+				deflater.end();
+			}
+		}
+	}
+
+	/**
+	 * Reads the compressed entries of a jar written by a previous export, by their position in the
+	 * central directory.
+	 */
+	private static final class PreviousJar implements Closeable {
+		private static final int END_SIZE = 22;
+		private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+		private final FileChannel channel;
+		private final JarExportManifest manifest;
+		private final Map<String, RawEntry> entries = new HashMap<>();
+
+		private PreviousJar(FileChannel channel, JarExportManifest manifest) {
+			this.channel = channel;
+			this.manifest = manifest;
+		}
+
+		static PreviousJar open(Path path, JarExportManifest manifest) throws IOException {
+			PreviousJar jar = new PreviousJar(FileChannel.open(path, StandardOpenOption.READ), manifest);
+			try {
+				jar.readCentralDirectory();
+				return jar;
+			} catch (IOException | RuntimeException e) {
+				jar.close();
+				throw e;
+			}
+		}
+
+		private void readCentralDirectory() throws IOException {
+			long size = channel.size();
+			int tailSize = (int) Math.min(size, END_SIZE + MAX_COMMENT_SIZE);
+			ByteBuffer tail = readFully(size - tailSize, tailSize);
+
+			int end = tailSize - END_SIZE;
+			while (end >= 0 && tail.getInt(end) != ZipWriter.END_SIGNATURE) {
+				end--;
+			}
+
+			if (end < 0) {
+				throw new IOException("Not a zip file");
+			}
+
+			long entryCount = Short.toUnsignedLong(tail.getShort(end + 10));
+			long directorySize = Integer.toUnsignedLong(tail.getInt(end + 12));
+			long directoryOffset = Integer.toUnsignedLong(tail.getInt(end + 16));
+
+			if (entryCount == 0xFFFF || directorySize == 0xFFFFFFFFL || directoryOffset == 0xFFFFFFFFL) {
+				long endOffset = size - tailSize + end;
+				ByteBuffer locator = readFully(endOffset - 20, 20);
+				if (locator.getInt(0) != ZipWriter.ZIP64_LOCATOR_SIGNATURE) {
+					throw new IOException("Missing zip64 end locator");
+				}
+
+				ByteBuffer zip64End = readFully(locator.getLong(8), 56);
+				if (zip64End.getInt(0) != ZipWriter.ZIP64_END_SIGNATURE) {
+					throw new IOException("Missing zip64 end record");
+				}
+
+				entryCount = zip64End.getLong(32);
+				directorySize = zip64End.getLong(40);
+				directoryOffset = zip64End.getLong(48);
+			}
+
+			if (directorySize > Integer.MAX_VALUE) {
+				throw new IOException("Central directory too large");
+			}
+
+			ByteBuffer directory = readFully(directoryOffset, (int) directorySize);
+			for (long i = 0; i < entryCount; i++) {
+				if (directory.getInt() != ZipWriter.CENTRAL_HEADER_SIGNATURE) {
+					throw new IOException("Invalid central directory");
+				}
+
+				int start = directory.position() - 4;
+				int method = Short.toUnsignedInt(directory.getShort(start + 10));
+				long crc = Integer.toUnsignedLong(directory.getInt(start + 16));
+				long compressedSize = Integer.toUnsignedLong(directory.getInt(start + 20));
+				long uncompressedSize = Integer.toUnsignedLong(directory.getInt(start + 24));
+				int nameLength = Short.toUnsignedInt(directory.getShort(start + 28));
+				int extraLength = Short.toUnsignedInt(directory.getShort(start + 30));
+				int commentLength = Short.toUnsignedInt(directory.getShort(start + 32));
+				long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(start + 42));
+
+				byte[] name = new byte[nameLength];
+				directory.position(start + 46).get(name);
+
+				// zip64 values are present in this order, only for the fields which overflowed
+				int extra = start + 46 + nameLength;
+				int extraEnd = extra + extraLength;
+				while (extra + 4 <= extraEnd) {
+					int id = Short.toUnsignedInt(directory.getShort(extra));
+					int length = Short.toUnsignedInt(directory.getShort(extra + 2));
+					if (id == ZipWriter.ZIP64_EXTRA_ID) {
+						int value = extra + 4;
+						if (uncompressedSize == 0xFFFFFFFFL) {
+							uncompressedSize = directory.getLong(value);
+							value += 8;
+						}
+
+						if (compressedSize == 0xFFFFFFFFL) {
+							compressedSize = directory.getLong(value);
+							value += 8;
+						}
+
+						if (localHeaderOffset == 0xFFFFFFFFL) {
+							localHeaderOffset = directory.getLong(value);
+						}
+					}
+
+					extra += 4 + length;
+				}
+
+				directory.position(extraEnd + commentLength);
+
+				if ((method == ZipWriter.STORED || method == ZipWriter.DEFLATED) && compressedSize <= Integer.MAX_VALUE) {
+					String entryName = new String(name, StandardCharsets.UTF_8);
+					entries.put(entryName, new RawEntry(method == ZipWriter.DEFLATED, crc, uncompressedSize, (int) compressedSize, localHeaderOffset));
+				}
+			}
+		}
+
+		/**
+		 * @return the entry of a class from the previous jar, or {@code null} if the class changed
+		 */
+		@Nullable
+		CompressedEntry read(String className, String hash, long crc, int size) throws IOException {
+			if (!hash.equals(manifest.getHash(className))) {
+				return null;
+			}
+
+			RawEntry entry = entries.get(className + ".class");
+			if (entry == null || entry.crc != crc || entry.size != size) {
+				return null;
+			}
+
+			ByteBuffer localHeader = readFully(entry.localHeaderOffset, 30);
+			if (localHeader.getInt(0) != ZipWriter.LOCAL_HEADER_SIGNATURE) {
+				throw new IOException("Invalid local header for " + className);
+			}
+
+			long dataOffset = entry.localHeaderOffset + 30 + Short.toUnsignedInt(localHeader.getShort(26)) + Short.toUnsignedInt(localHeader.getShort(28));
+			byte[] data = readFully(dataOffset, entry.compressedSize).array();
+			return new CompressedEntry(className, hash, entry.deflated, crc, size, data, data.length);
+		}
+
+		private ByteBuffer readFully(long position, int length) throws IOException {
+			ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+			while (buffer.hasRemaining()) {
+				// positional reads are safe from multiple threads
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					throw new EOFException("Unexpected end of the previous jar");
+				}
+			}
+
+			return buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+
+		private record RawEntry(boolean deflated, long crc, long size, int compressedSize, long localHeaderOffset) {
+		}
+	}
+
+	/**
+	 * Writes zip entries whose data is already compressed, falling back to zip64 records when the
+	 * archive gets too large for the plain format.
+	 */
+	private static final class ZipWriter implements Closeable {
+		private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+		private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+		private static final int END_SIGNATURE = 0x06054b50;
+		private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+		private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+		private static final int ZIP64_EXTRA_ID = 0x0001;
+
+		private static final int VERSION = 20;
+		private static final int ZIP64_VERSION = 45;
+		private static final int UTF8_FLAG = 0x0800;
+		private static final int STORED = 0;
+		private static final int DEFLATED = 8;
+
+		private final OutputStream out;
+		private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+		private final int time;
+		private final int date;
+		private long offset;
+		private long entryCount;
+
+		ZipWriter(OutputStream out, LocalDateTime time) {
+			this.out = new BufferedOutputStream(out, 1 << 16);
+			this.time = time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() / 2;
+			this.date = Math.max(time.getYear() - 1980, 0) << 9 | time.getMonthValue() << 5 | time.getDayOfMonth();
+		}
+
+		void write(CompressedEntry entry) throws IOException {
+			byte[] name = entry.entryName().getBytes(StandardCharsets.UTF_8);
+			int method = entry.deflated ? DEFLATED : STORED;
+
+			ByteBuffer header = newBuffer(30 + name.length);
+			header.putInt(LOCAL_HEADER_SIGNATURE);
+			putCommonFields(header, entry, method, VERSION);
+			header.putShort((short) name.length);
+			header.putShort((short) 0);
+			header.put(name);
+			out.write(header.array());
+			out.write(entry.data, 0, entry.dataLength);
+
+			boolean zip64Offset = offset >= 0xFFFFFFFFL;
+			ByteBuffer central = newBuffer(46 + name.length + (zip64Offset ? 12 : 0));
+			central.putInt(CENTRAL_HEADER_SIGNATURE);
+			central.putShort((short) VERSION); // made by
+			// the zip64 extra field needs a reader which understands it
+			putCommonFields(central, entry, method, zip64Offset ? ZIP64_VERSION : VERSION);
+			central.putShort((short) name.length);
+			central.putShort((short) (zip64Offset ? 12 : 0));
+			central.putShort((short) 0); // comment
+			central.putShort((short) 0); // disk
+			central.putShort((short) 0); // internal attributes
+			central.putInt(0); // external attributes
+			central.putInt(zip64Offset ? 0xFFFFFFFF : (int) offset);
+			central.put(name);
+			if (zip64Offset) {
+				central.putShort((short) ZIP64_EXTRA_ID);
+				central.putShort((short) 8);
+				central.putLong(offset);
+			}
+
+			centralDirectory.write(central.array());
+
+			offset += header.capacity() + entry.dataLength;
+			entryCount++;
+		}
+
+		private void putCommonFields(ByteBuffer buffer, CompressedEntry entry, int method, int versionNeeded) {
+			buffer.putShort((short) versionNeeded);
+			buffer.putShort((short) UTF8_FLAG);
+			buffer.putShort((short) method);
+			buffer.putShort((short) time);
+			buffer.putShort((short) date);
+			buffer.putInt((int) entry.crc);
+			buffer.putInt(entry.dataLength);
+			buffer.putInt(entry.size);
+		}
+
+		@Override
+		public void close() throws IOException {
+			try (out) {
+				long directoryOffset = offset;
+				long directorySize = centralDirectory.size();
+				centralDirectory.writeTo(out);
+
+				boolean zip64 = entryCount >= 0xFFFF || directoryOffset >= 0xFFFFFFFFL || directorySize >= 0xFFFFFFFFL;
+				if (zip64) {
+					long zip64EndOffset = directoryOffset + directorySize;
+
+					ByteBuffer zip64End = newBuffer(56);
+					zip64End.putInt(ZIP64_END_SIGNATURE);
+					zip64End.putLong(44); // size of the rest of the record
+					zip64End.putShort((short) ZIP64_VERSION);
+					zip64End.putShort((short) ZIP64_VERSION);
+					zip64End.putInt(0); // disk
+					zip64End.putInt(0); // disk with the central directory
+					zip64End.putLong(entryCount);
+					zip64End.putLong(entryCount);
+					zip64End.putLong(directorySize);
+					zip64End.putLong(directoryOffset);
+					out.write(zip64End.array());
+
+					ByteBuffer locator = newBuffer(20);
+					locator.putInt(ZIP64_LOCATOR_SIGNATURE);
+					locator.putInt(0); // disk with the zip64 end record
+					locator.putLong(zip64EndOffset);
+					locator.putInt(1); // disks
+					out.write(locator.array());
+				}
+
+				ByteBuffer end = newBuffer(22);
+				end.putInt(END_SIGNATURE);
+				end.putShort((short) 0); // disk
+				end.putShort((short) 0); // disk with the central directory
+				end.putShort((short) (zip64 ? 0xFFFF : entryCount));
+				end.putShort((short) (zip64 ? 0xFFFF : entryCount));
+				end.putInt(zip64 ? 0xFFFFFFFF : (int) directorySize);
+				end.putInt(zip64 ? 0xFFFFFFFF : (int) directoryOffset);
+				end.putShort((short) 0); // comment
+				out.write(end.array());
+			}
+		}
+
+		private static ByteBuffer newBuffer(int size) {
+			return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package cuchaz.enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.annotation.Nullable;
+
+import org.objectweb.asm.tree.ClassNode;
+
+import cuchaz.enigma.EnigmaProject.ClassSource;
+import cuchaz.enigma.EnigmaProject.DecompileErrorStrategy;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassCacheSettings;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.source.Decompiler;
+import cuchaz.enigma.source.DecompilerPool;
+import cuchaz.enigma.source.DecompilerService;
+import cuchaz.enigma.translation.Translator;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.utils.I18n;
+
+/**
+ * Translates, decompiles and writes the sources of a project class by class.
+ *
+ * <p>Classes are translated when a decompiler first reads them, and kept in a cache bounded by the
+ * project's class cache settings instead of all at once. At most a fixed window of classes is in
+ * flight, and the sources are written in the order of the class names, so that the output only
+ * depends on the classes.</p>
+ */
+final class StreamingSourceExport {
+	private static final int WINDOW_PER_THREAD = 4;
+	// a fresh decompiler drops the types an old one resolved and cached
+	private static final int CLASSES_PER_DECOMPILER = 1000;
+
+	private final EnigmaProject project;
+	private final ClassProvider translatedClassProvider;
+	private final List<String> topLevelClasses = new ArrayList<>();
+
+	StreamingSourceExport(EnigmaProject project, ClassProvider fixingClassProvider, Translator deobfuscator) {
+		this.project = project;
+
+		Map<String, ClassEntry> obfClasses = new HashMap<>();
+		for (ClassEntry entry : project.getJarIndex().getEntryIndex().getClasses()) {
+			String name = deobfuscator.translate(entry).getFullName();
+			obfClasses.put(name, entry);
+
+			if (name.indexOf('$') == -1) {
+				topLevelClasses.add(name);
+			}
+		}
+
+		ClassProvider translatingClassProvider = name -> {
+			ClassEntry entry = obfClasses.get(name);
+			ClassNode node = entry != null ? fixingClassProvider.get(entry.getFullName()) : null;
+			return node != null ? EnigmaProject.translateClass(node, deobfuscator) : null;
+		};
+
+		Collections.sort(topLevelClasses);
+		this.translatedClassProvider = new CachingClassProvider(translatingClassProvider, project.getEnigma().getProfile().getClassCacheSettings().share(ClassCacheSettings.EXPORT_SHARE));
+	}
+
+	void write(Path path, ProgressListener progress, DecompilerService decompilerService, DecompileErrorStrategy errorStrategy, int threads) throws IOException {
+		progress.init(topLevelClasses.size(), I18n.translate("progress.classes.decompiling"));
+
+		Decompiler decompiler = new DecompilerPool(() -> EnigmaProject.createExportDecompiler(decompilerService, translatedClassProvider, project.getEnigma().getSourceCache()), CLASSES_PER_DECOMPILER);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		Deque<Future<ClassSource>> window = new ArrayDeque<>();
+		Iterator<String> names = topLevelClasses.iterator();
+		AtomicInteger count = new AtomicInteger();
+
+		try (SourceOutput output = SourceOutput.open(path)) {
+			while (names.hasNext() && window.size() < threads * WINDOW_PER_THREAD) {
+				window.add(submit(executor, decompiler, names.next(), errorStrategy, progress, count));
+			}
+
+			while (!window.isEmpty()) {
+				ClassSource source = await(window.poll());
+				if (names.hasNext()) {
+					window.add(submit(executor, decompiler, names.next(), errorStrategy, progress, count));
+				}
+
+				if (source != null) {
+					output.write(source);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Future<ClassSource> submit(ExecutorService executor, Decompiler decompiler, String name, DecompileErrorStrategy errorStrategy, ProgressListener progress, AtomicInteger count) {
+		return executor.submit(() -> {
+			progress.step(count.getAndIncrement(), name);
+
+			String source = EnigmaProject.decompileClass(decompiler, name, project.getMapper(), errorStrategy);
+			return source != null ? new ClassSource(name, source) : null;
+		});
+	}
+
+	@Nullable
+	private static ClassSource await(Future<ClassSource> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Source export was interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			} else if (e.getCause() instanceof Error cause) {
+				throw cause;
+			}
+
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private interface SourceOutput extends Closeable {
+		static SourceOutput open(Path path) throws IOException {
+			String fileName = path.getFileName() != null ? path.getFileName().toString().toLowerCase(Locale.ROOT) : "";
+			if (fileName.endsWith(".zip") || fileName.endsWith(".jar")) {
+				return new ZipSourceOutput(new BufferedOutputStream(Files.newOutputStream(path)));
+			}
+
+			return new DirectorySourceOutput(path);
+		}
+
+		void write(ClassSource source) throws IOException;
+	}
+
+	private record DirectorySourceOutput(Path root) implements SourceOutput {
+		@Override
+		public void write(ClassSource source) throws IOException {
+			source.writeTo(source.resolvePath(root));
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	private static final class ZipSourceOutput implements SourceOutput {
+		private final ZipOutputStream out;
+
+		private ZipSourceOutput(OutputStream out) {
+			this.out = new ZipOutputStream(out);
+		}
+
+		@Override
+		public void write(ClassSource source) throws IOException {
+			out.putNextEntry(new ZipEntry(source.name + ".java"));
+			out.write(source.source.getBytes(StandardCharsets.UTF_8));
+			out.closeEntry();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
@@ -9,6 +9,7 @@ import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
 import cuchaz.enigma.translation.representation.entry.MethodEntry;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.*;
 
 public class BridgeMethodIndex implements JarIndexer {
@@ -26,8 +27,12 @@ public class BridgeMethodIndex implements JarIndexer {
 	}
 
 	public void findBridgeMethods() {
+		findBridgeMethods(entryIndex.getMethods(), referenceIndex);
+	}
+
+	void findBridgeMethods(Collection<MethodEntry> methods, ReferenceIndex references) {
 		// look for access and bridged methods
-		for (MethodEntry methodEntry : entryIndex.getMethods()) {
+		for (MethodEntry methodEntry : methods) {
 			MethodDefEntry methodDefEntry = (MethodDefEntry) methodEntry;
 
 			AccessFlags access = methodDefEntry.getAccess();
@@ -35,7 +40,7 @@ public class BridgeMethodIndex implements JarIndexer {
 				continue;
 			}
 
-			indexSyntheticMethod(methodDefEntry, access);
+			indexSyntheticMethod(methodDefEntry, access, references);
 		}
 	}
 
@@ -55,8 +60,23 @@ public class BridgeMethodIndex implements JarIndexer {
 		}
 	}
 
-	private void indexSyntheticMethod(MethodDefEntry syntheticMethod, AccessFlags access) {
-		MethodEntry specializedMethod = findSpecializedMethod(syntheticMethod);
+	void writeSnapshot(SnapshotOutput out) throws IOException {
+		out.writeMap(bridgeToSpecialized, out::writeEntry, out::writeEntry);
+		out.writeMap(specializedToBridge, out::writeEntry, out::writeEntry);
+	}
+
+	void readSnapshot(SnapshotInput in) throws IOException {
+		in.readMap(bridgeToSpecialized, in::readEntry, in::readEntry);
+		in.readMap(specializedToBridge, in::readEntry, in::readEntry);
+	}
+
+	void removeClasses(Set<ClassEntry> classEntries) {
+		bridgeToSpecialized.keySet().removeIf(bridge -> classEntries.contains(bridge.getParent()));
+		specializedToBridge.values().removeIf(bridge -> classEntries.contains(bridge.getParent()));
+	}
+
+	private void indexSyntheticMethod(MethodDefEntry syntheticMethod, AccessFlags access, ReferenceIndex references) {
+		MethodEntry specializedMethod = findSpecializedMethod(syntheticMethod, references);
 		if (specializedMethod == null) {
 			return;
 		}
@@ -67,11 +87,11 @@ public class BridgeMethodIndex implements JarIndexer {
 		}
 	}
 
-	private MethodEntry findSpecializedMethod(MethodEntry method) {
+	private MethodEntry findSpecializedMethod(MethodEntry method, ReferenceIndex references) {
 		// we want to find all compiler-added methods that directly call another with no processing
 
 		// get all the methods that we call
-		final Collection<MethodEntry> referencedMethods = referenceIndex.getMethodsReferencedBy(method);
+		final Collection<MethodEntry> referencedMethods = references.getMethodsReferencedBy(method);
 
 		// is there just one?
 		if (referencedMethods.size() != 1) {
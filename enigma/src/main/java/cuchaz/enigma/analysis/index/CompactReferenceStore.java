@@ -0,0 +1,502 @@
+package cuchaz.enigma.analysis.index;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.ReferenceTargetType;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Read-only storage for the references of a processed {@link ReferenceIndex}.
+ *
+ * <p>Every entry is assigned a dense integer id, and each relation is stored in compressed sparse
+ * row form: the targets of the entry with id {@code i} are {@code targets[offsets[i]]} up to
+ * {@code targets[offsets[i + 1]]}. The target type and flags of a reference are stored as the id of
+ * a prototype reference, of which there are only a handful per jar. The rows of the most recently
+ * queried entries are kept as immutable collections, so repeated queries for an entry don't rebuild
+ * its references, and the returned collections are never live views of the store.</p>
+ *
+ * <p>Referenced entries and the definitions they are referenced from are kept in separate tables,
+ * since a definition entry is equal to the plain entry it defines and would otherwise replace it.</p>
+ */
+final class CompactReferenceStore {
+	private static final int CACHED_ROWS = 1024;
+
+	private final EntryTable entries = new EntryTable();
+	private final EntryTable contexts = new EntryTable();
+
+	private final Map<ReferenceFlags, Integer> prototypeIds = new HashMap<>();
+	private final List<EntryReference<?, ?>> prototypes = new ArrayList<>();
+
+	/**
+	 * Compacts a relation from definitions to the entries they reference.
+	 */
+	<K extends Entry<?>, V extends Entry<?>> EntryRows<K, V> compactEntries(Multimap<K, V> multimap) {
+		int[] keyIds = internKeys(multimap, contexts);
+		int[] offsets = computeOffsets(multimap, keyIds, contexts.size());
+		int[] targets = new int[multimap.size()];
+
+		int i = 0;
+		for (Collection<V> values : multimap.asMap().values()) {
+			int position = offsets[keyIds[i++]];
+			for (V value : values) {
+				targets[position++] = entries.intern(value);
+			}
+		}
+
+		return new EntryRows<>(offsets, targets);
+	}
+
+	/**
+	 * Compacts a relation from entries to the references made to them.
+	 */
+	<E extends Entry<?>, C extends Entry<?>> ReferenceRows<E, C> compactReferences(Multimap<E, EntryReference<E, C>> multimap) {
+		int[] keyIds = internKeys(multimap, entries);
+		int[] offsets = computeOffsets(multimap, keyIds, entries.size());
+		int[] targets = new int[multimap.size()];
+		int[] flags = new int[multimap.size()];
+
+		int i = 0;
+		for (Collection<EntryReference<E, C>> references : multimap.asMap().values()) {
+			int position = offsets[keyIds[i++]];
+			for (EntryReference<E, C> reference : references) {
+				targets[position] = reference.context != null ? contexts.intern(reference.context) : -1;
+				flags[position] = internPrototype(reference);
+				position++;
+			}
+		}
+
+		return new ReferenceRows<>(offsets, targets, flags);
+	}
+
+	/**
+	 * Marks the ids of the definitions which belong to one of the given classes.
+	 */
+	boolean[] findContexts(Set<ClassEntry> classes) {
+		boolean[] found = new boolean[contexts.size()];
+		for (int id = 0; id < found.length; id++) {
+			found[id] = classes.contains(contexts.get(id).getContainingClass());
+		}
+
+		return found;
+	}
+
+	/**
+	 * Returns whether less than half of the interned entries are still used by the given rows.
+	 *
+	 * <p>Updating rows only ever adds entries to the tables, so the entries of replaced references
+	 * stay in them until the store is rebuilt.</p>
+	 */
+	boolean isSparse(Collection<? extends Rows> rows) {
+		boolean[] usedEntries = new boolean[entries.size()];
+		boolean[] usedContexts = new boolean[contexts.size()];
+		for (Rows row : rows) {
+			row.markUsed(usedEntries, usedContexts);
+		}
+
+		int used = count(usedEntries) + count(usedContexts);
+		return used * 2 < usedEntries.length + usedContexts.length;
+	}
+
+	private static int count(boolean[] flags) {
+		int count = 0;
+		for (boolean flag : flags) {
+			if (flag) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	private static int[] internKeys(Multimap<? extends Entry<?>, ?> multimap, EntryTable table) {
+		int[] keyIds = new int[multimap.keySet().size()];
+
+		int i = 0;
+		for (Entry<?> key : multimap.keySet()) {
+			keyIds[i++] = table.intern(key);
+		}
+
+		return keyIds;
+	}
+
+	private static int[] computeOffsets(Multimap<?, ?> multimap, int[] keyIds, int keyCount) {
+		int[] offsets = new int[keyCount + 1];
+
+		int i = 0;
+		for (Collection<?> values : multimap.asMap().values()) {
+			offsets[keyIds[i++] + 1] = values.size();
+		}
+
+		for (int id = 0; id < keyCount; id++) {
+			offsets[id + 1] += offsets[id];
+		}
+
+		return offsets;
+	}
+
+	private int internPrototype(EntryReference<?, ?> reference) {
+		ReferenceTargetType targetType = reference.targetType;
+		ClassEntry targetClass = targetType instanceof ReferenceTargetType.ClassType classType ? classType.getEntry() : null;
+		ReferenceFlags flags = new ReferenceFlags(targetType != null ? targetType.getKind() : null, targetClass, reference.isNamed(), reference.isDeclaration());
+
+		Integer id = prototypeIds.get(flags);
+		if (id == null) {
+			id = prototypes.size();
+			prototypeIds.put(flags, id);
+			// the entry and context of the prototype are never read, only its flags are copied
+			prototypes.add(reference);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Assigns dense ids to entries, in the order they are first seen.
+	 *
+	 * <p>Ids are found through an open addressing table holding {@code id + 1} in each slot, so that
+	 * an entry costs an array element and at most two slots, instead of a map node and a boxed id.</p>
+	 */
+	private static final class EntryTable {
+		private Entry<?>[] entries = new Entry<?>[16];
+		private int[] slots = new int[32];
+		private int size;
+
+		int intern(Entry<?> entry) {
+			int slot = findSlot(slots, entry);
+			if (slots[slot] != 0) {
+				return slots[slot] - 1;
+			}
+
+			if (size == entries.length) {
+				entries = Arrays.copyOf(entries, size * 2);
+			}
+
+			entries[size] = entry;
+			slots[slot] = ++size;
+
+			// keep the table at most half full, so that probe sequences stay short
+			if (size * 2 > slots.length) {
+				rehash();
+			}
+
+			return size - 1;
+		}
+
+		int getId(Entry<?> entry) {
+			return slots[findSlot(slots, entry)] - 1;
+		}
+
+		Entry<?> get(int id) {
+			return entries[id];
+		}
+
+		int size() {
+			return size;
+		}
+
+		private int findSlot(int[] slots, Entry<?> entry) {
+			int mask = slots.length - 1;
+			int slot = mix(entry.hashCode()) & mask;
+			while (slots[slot] != 0 && !entries[slots[slot] - 1].equals(entry)) {
+				slot = (slot + 1) & mask;
+			}
+
+			return slot;
+		}
+
+		private void rehash() {
+			int[] newSlots = new int[slots.length * 2];
+			for (int id = 0; id < size; id++) {
+				newSlots[findSlot(newSlots, entries[id])] = id + 1;
+			}
+
+			slots = newSlots;
+		}
+
+		private static int mix(int hash) {
+			int h = hash * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+
+	interface Rows {
+		/**
+		 * Marks the ids of the entries and definitions which these rows use.
+		 */
+		void markUsed(boolean[] usedEntries, boolean[] usedContexts);
+	}
+
+	final class EntryRows<K extends Entry<?>, V extends Entry<?>> implements Rows {
+		private final int[] offsets;
+		private final int[] targets;
+		private final Cache<K, Collection<V>> rows = CacheBuilder.newBuilder().maximumSize(CACHED_ROWS).build();
+
+		private EntryRows(int[] offsets, int[] targets) {
+			this.offsets = offsets;
+			this.targets = targets;
+		}
+
+		/**
+		 * Returns a copy of these rows without the rows of the given definitions, and with the
+		 * given relations added.
+		 */
+		EntryRows<K, V> update(boolean[] removedContexts, Multimap<K, V> additions) {
+			int[] keyIds = internKeys(additions, contexts);
+			int keyCount = contexts.size();
+
+			int[] newOffsets = new int[keyCount + 1];
+			for (int id = 0; id < offsets.length - 1; id++) {
+				if (!removedContexts[id]) {
+					newOffsets[id + 1] = offsets[id + 1] - offsets[id];
+				}
+			}
+
+			int i = 0;
+			for (Collection<V> values : additions.asMap().values()) {
+				newOffsets[keyIds[i++] + 1] += values.size();
+			}
+
+			for (int id = 0; id < keyCount; id++) {
+				newOffsets[id + 1] += newOffsets[id];
+			}
+
+			int[] newTargets = new int[newOffsets[keyCount]];
+			for (int id = 0; id < offsets.length - 1; id++) {
+				if (!removedContexts[id]) {
+					System.arraycopy(targets, offsets[id], newTargets, newOffsets[id], offsets[id + 1] - offsets[id]);
+				}
+			}
+
+			i = 0;
+			for (Collection<V> values : additions.asMap().values()) {
+				int id = keyIds[i++];
+				// the additions are placed after the targets which are kept
+				int position = newOffsets[id + 1] - values.size();
+				for (V value : values) {
+					newTargets[position++] = entries.intern(value);
+				}
+			}
+
+			return new EntryRows<>(newOffsets, newTargets);
+		}
+
+		@Override
+		public void markUsed(boolean[] usedEntries, boolean[] usedContexts) {
+			for (int id = 0; id < offsets.length - 1; id++) {
+				if (offsets[id] != offsets[id + 1]) {
+					usedContexts[id] = true;
+				}
+			}
+
+			for (int target : targets) {
+				usedEntries[target] = true;
+			}
+		}
+
+		Collection<V> get(K key) {
+			int id = contexts.getId(key);
+			if (id < 0 || id >= offsets.length - 1 || offsets[id] == offsets[id + 1]) {
+				return Collections.emptyList();
+			}
+
+			Collection<V> row = rows.getIfPresent(key);
+			if (row == null) {
+				row = buildRow(id);
+				rows.put(key, row);
+			}
+
+			return row;
+		}
+
+		@SuppressWarnings("unchecked")
+		private Collection<V> buildRow(int id) {
+			List<V> values = new ArrayList<>(offsets[id + 1] - offsets[id]);
+			for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+				values.add((V) entries.get(targets[i]));
+			}
+
+			return Collections.unmodifiableList(values);
+		}
+
+		@SuppressWarnings("unchecked")
+		Multimap<K, V> expand() {
+			Multimap<K, V> multimap = HashMultimap.create();
+			for (int id = 0; id < offsets.length - 1; id++) {
+				for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+					multimap.put((K) contexts.get(id), (V) entries.get(targets[i]));
+				}
+			}
+
+			return multimap;
+		}
+	}
+
+	final class ReferenceRows<E extends Entry<?>, C extends Entry<?>> implements Rows {
+		private final int[] offsets;
+		private final int[] targets;
+		private final int[] flags;
+		private final Cache<E, Collection<EntryReference<E, C>>> rows = CacheBuilder.newBuilder().maximumSize(CACHED_ROWS).build();
+
+		private ReferenceRows(int[] offsets, int[] targets, int[] flags) {
+			this.offsets = offsets;
+			this.targets = targets;
+			this.flags = flags;
+		}
+
+		/**
+		 * Returns a copy of these rows without the references made from the given definitions, and
+		 * with the given references added.
+		 */
+		ReferenceRows<E, C> update(boolean[] removedContexts, Multimap<E, EntryReference<E, C>> additions) {
+			int[] keyIds = internKeys(additions, entries);
+			int keyCount = entries.size();
+
+			int[] newOffsets = new int[keyCount + 1];
+			for (int id = 0; id < offsets.length - 1; id++) {
+				for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+					if (!isRemoved(removedContexts, i)) {
+						newOffsets[id + 1]++;
+					}
+				}
+			}
+
+			int i = 0;
+			for (Collection<EntryReference<E, C>> references : additions.asMap().values()) {
+				newOffsets[keyIds[i++] + 1] += references.size();
+			}
+
+			for (int id = 0; id < keyCount; id++) {
+				newOffsets[id + 1] += newOffsets[id];
+			}
+
+			int[] positions = Arrays.copyOf(newOffsets, keyCount);
+			int[] newTargets = new int[newOffsets[keyCount]];
+			int[] newFlags = new int[newOffsets[keyCount]];
+			for (int id = 0; id < offsets.length - 1; id++) {
+				for (int j = offsets[id]; j < offsets[id + 1]; j++) {
+					if (!isRemoved(removedContexts, j)) {
+						newTargets[positions[id]] = targets[j];
+						newFlags[positions[id]] = flags[j];
+						positions[id]++;
+					}
+				}
+			}
+
+			i = 0;
+			for (Collection<EntryReference<E, C>> references : additions.asMap().values()) {
+				int id = keyIds[i++];
+				for (EntryReference<E, C> reference : references) {
+					newTargets[positions[id]] = reference.context != null ? contexts.intern(reference.context) : -1;
+					newFlags[positions[id]] = internPrototype(reference);
+					positions[id]++;
+				}
+			}
+
+			return new ReferenceRows<>(newOffsets, newTargets, newFlags);
+		}
+
+		private boolean isRemoved(boolean[] removedContexts, int index) {
+			return targets[index] >= 0 && removedContexts[targets[index]];
+		}
+
+		@Override
+		public void markUsed(boolean[] usedEntries, boolean[] usedContexts) {
+			for (int id = 0; id < offsets.length - 1; id++) {
+				if (offsets[id] != offsets[id + 1]) {
+					usedEntries[id] = true;
+				}
+			}
+
+			for (int target : targets) {
+				if (target >= 0) {
+					usedContexts[target] = true;
+				}
+			}
+		}
+
+		/**
+		 * Collects the entries which have references in these rows.
+		 */
+		void collectKeys(Set<Entry<?>> keys) {
+			for (int id = 0; id < offsets.length - 1; id++) {
+				if (offsets[id] != offsets[id + 1]) {
+					keys.add(entries.get(id));
+				}
+			}
+		}
+
+		/**
+		 * Collects the classes which make a reference to one of the matching entries.
+		 */
+		void collectReferencingClasses(Predicate<Entry<?>> referencedEntries, Set<ClassEntry> classes) {
+			for (int id = 0; id < offsets.length - 1; id++) {
+				if (offsets[id] == offsets[id + 1] || !referencedEntries.test(entries.get(id))) {
+					continue;
+				}
+
+				for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+					if (targets[i] >= 0) {
+						classes.add(contexts.get(targets[i]).getContainingClass());
+					}
+				}
+			}
+		}
+
+		Collection<EntryReference<E, C>> get(E entry) {
+			int id = entries.getId(entry);
+			if (id < 0 || id >= offsets.length - 1 || offsets[id] == offsets[id + 1]) {
+				return Collections.emptyList();
+			}
+
+			Collection<EntryReference<E, C>> row = rows.getIfPresent(entry);
+			if (row == null) {
+				row = buildRow(id);
+				rows.put(entry, row);
+			}
+
+			return row;
+		}
+
+		@SuppressWarnings("unchecked")
+		private Collection<EntryReference<E, C>> buildRow(int id) {
+			E key = (E) entries.get(id);
+			List<EntryReference<E, C>> references = new ArrayList<>(offsets[id + 1] - offsets[id]);
+			for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+				references.add(getReference(key, i));
+			}
+
+			return Collections.unmodifiableList(references);
+		}
+
+		@SuppressWarnings("unchecked")
+		Multimap<E, EntryReference<E, C>> expand() {
+			Multimap<E, EntryReference<E, C>> multimap = HashMultimap.create();
+			for (int id = 0; id < offsets.length - 1; id++) {
+				E key = (E) entries.get(id);
+				for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+					multimap.put(key, getReference(key, i));
+				}
+			}
+
+			return multimap;
+		}
+
+		@SuppressWarnings("unchecked")
+		private EntryReference<E, C> getReference(E key, int index) {
+			// references are remapped together with their keys, so the key is the referenced entry
+			C context = targets[index] >= 0 ? (C) contexts.get(targets[index]) : null;
+			return new EntryReference<>(key, context, (EntryReference<E, C>) prototypes.get(flags[index]));
+		}
+	}
+
+	private record ReferenceFlags(@Nullable ReferenceTargetType.Kind kind, @Nullable ClassEntry targetClass, boolean named, boolean declaration) {
+	}
+}
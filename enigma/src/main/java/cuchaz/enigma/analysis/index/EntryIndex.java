@@ -4,9 +4,11 @@ import cuchaz.enigma.translation.representation.AccessFlags;
 import cuchaz.enigma.translation.representation.entry.*;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class EntryIndex implements JarIndexer {
 	private Map<ClassEntry, AccessFlags> classes = new HashMap<>();
@@ -30,6 +32,34 @@ public class EntryIndex implements JarIndexer {
 		fields.put(fieldEntry, fieldEntry.getAccess());
 	}
 
+	void writeSnapshot(SnapshotOutput out) throws IOException {
+		out.writeMap(classes, out::writeEntry, out::writeAccess);
+		out.writeMap(fields, out::writeEntry, out::writeAccess);
+		out.writeMap(methods, out::writeEntry, out::writeAccess);
+		out.writeMap(definitions, out::writeEntry, out::writeEntry);
+	}
+
+	void readSnapshot(SnapshotInput in) throws IOException {
+		in.readMap(classes, in::readEntry, in::readAccess);
+		in.readMap(fields, in::readEntry, in::readAccess);
+		in.readMap(methods, in::readEntry, in::readAccess);
+		in.readMap(definitions, in::readEntry, in::readEntry);
+	}
+
+	void mergeShard(EntryIndex shard) {
+		classes.putAll(shard.classes);
+		fields.putAll(shard.fields);
+		methods.putAll(shard.methods);
+		definitions.putAll(shard.definitions);
+	}
+
+	void removeClasses(Set<ClassEntry> classEntries) {
+		classes.keySet().removeAll(classEntries);
+		definitions.keySet().removeAll(classEntries);
+		fields.keySet().removeIf(field -> classEntries.contains(field.getParent()));
+		methods.keySet().removeIf(method -> classEntries.contains(method.getParent()));
+	}
+
 	public boolean hasClass(ClassEntry entry) {
 		return classes.containsKey(entry);
 	}
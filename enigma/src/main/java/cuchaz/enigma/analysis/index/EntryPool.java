@@ -0,0 +1,68 @@
+package cuchaz.enigma.analysis.index;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.TypeDescriptor;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+
+/**
+ * Canonical instances of the plain entries and descriptors created while indexing a jar, so that
+ * the many references to the same class, field or method share a single instance.
+ *
+ * <p>Only plain {@link ClassEntry}, {@link FieldEntry} and {@link MethodEntry} instances without
+ * javadocs are pooled. Definition entries carry access flags and signatures, and are never returned
+ * in place of a plain entry. The pool is safe to use from multiple threads.</p>
+ */
+public class EntryPool {
+	private final Map<String, ClassEntry> classes = new ConcurrentHashMap<>();
+	private final Map<FieldEntry, FieldEntry> fields = new ConcurrentHashMap<>();
+	private final Map<MethodEntry, MethodEntry> methods = new ConcurrentHashMap<>();
+	private final Map<String, TypeDescriptor> typeDescriptors = new ConcurrentHashMap<>();
+	private final Map<String, MethodDescriptor> methodDescriptors = new ConcurrentHashMap<>();
+
+	public ClassEntry getClass(String name) {
+		ClassEntry entry = classes.get(name);
+		if (entry != null) {
+			return entry;
+		}
+
+		// not computeIfAbsent, the outer class is looked up recursively
+		ClassEntry outerClass = null;
+		int innerClassPos = name.charAt(0) != '[' ? name.lastIndexOf('$') : -1;
+		if (innerClassPos >= 0) {
+			outerClass = getClass(name.substring(0, innerClassPos));
+		}
+
+		entry = new ClassEntry(outerClass, ClassEntry.getInnerName(name));
+		ClassEntry existing = classes.putIfAbsent(name, entry);
+		return existing != null ? existing : entry;
+	}
+
+	public FieldEntry getField(String owner, String name, String desc) {
+		FieldEntry entry = new FieldEntry(getClass(owner), name, getTypeDescriptor(desc));
+		FieldEntry existing = fields.putIfAbsent(entry, entry);
+		return existing != null ? existing : entry;
+	}
+
+	public MethodEntry getMethod(String owner, String name, String desc) {
+		MethodEntry entry = new MethodEntry(getClass(owner), name, getMethodDescriptor(desc));
+		MethodEntry existing = methods.putIfAbsent(entry, entry);
+		return existing != null ? existing : entry;
+	}
+
+	public TypeDescriptor getTypeDescriptor(String desc) {
+		return typeDescriptors.computeIfAbsent(desc, TypeDescriptor::new);
+	}
+
+	public MethodDescriptor getMethodDescriptor(String desc) {
+		return methodDescriptors.computeIfAbsent(desc, MethodDescriptor::new);
+	}
+
+	public int size() {
+		return classes.size() + fields.size() + methods.size();
+	}
+}
@@ -6,7 +6,6 @@ import cuchaz.enigma.analysis.MethodNodeWithAction;
 import cuchaz.enigma.analysis.ReferenceTargetType;
 import cuchaz.enigma.translation.representation.AccessFlags;
 import cuchaz.enigma.translation.representation.Lambda;
-import cuchaz.enigma.translation.representation.MethodDescriptor;
 import cuchaz.enigma.translation.representation.Signature;
 import cuchaz.enigma.translation.representation.entry.*;
 import org.objectweb.asm.*;
@@ -22,28 +21,34 @@ public class IndexReferenceVisitor extends ClassVisitor {
 	private final JarIndexer indexer;
 	private final EntryIndex entryIndex;
 	private final InheritanceIndex inheritanceIndex;
+	private final EntryPool entryPool;
 	private ClassEntry classEntry;
 	private String className;
 
 	public IndexReferenceVisitor(JarIndexer indexer, EntryIndex entryIndex, InheritanceIndex inheritanceIndex, int api) {
+		this(indexer, entryIndex, inheritanceIndex, new EntryPool(), api);
+	}
+
+	public IndexReferenceVisitor(JarIndexer indexer, EntryIndex entryIndex, InheritanceIndex inheritanceIndex, EntryPool entryPool, int api) {
 		super(api);
 		this.indexer = indexer;
 		this.entryIndex = entryIndex;
 		this.inheritanceIndex = inheritanceIndex;
+		this.entryPool = entryPool;
 	}
 
 	@Override
 	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-		classEntry = new ClassEntry(name);
+		classEntry = entryPool.getClass(name);
 		className = name;
 	}
 
 	@Override
 	public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-		MethodDefEntry entry = new MethodDefEntry(classEntry, name, new MethodDescriptor(desc), Signature.createSignature(signature), new AccessFlags(access));
+		MethodDefEntry entry = new MethodDefEntry(classEntry, name, entryPool.getMethodDescriptor(desc), Signature.createSignature(signature), new AccessFlags(access));
 		return new MethodNodeWithAction(api, access, name, desc, signature, exceptions, methodNode -> {
 			try {
-				new Analyzer<>(new MethodInterpreter(entry, indexer, entryIndex, inheritanceIndex)).analyze(className, methodNode);
+				new Analyzer<>(new MethodInterpreter(entry, indexer, entryIndex, inheritanceIndex, entryPool)).analyze(className, methodNode);
 			} catch (AnalyzerException e) {
 				throw new RuntimeException(e);
 			}
@@ -53,18 +58,20 @@ public class IndexReferenceVisitor extends ClassVisitor {
 	private static class MethodInterpreter extends InterpreterPair<BasicValue, SourceValue> {
 		private final MethodDefEntry callerEntry;
 		private JarIndexer indexer;
+		private final EntryPool entryPool;
 
-		public MethodInterpreter(MethodDefEntry callerEntry, JarIndexer indexer, EntryIndex entryIndex, InheritanceIndex inheritanceIndex) {
+		public MethodInterpreter(MethodDefEntry callerEntry, JarIndexer indexer, EntryIndex entryIndex, InheritanceIndex inheritanceIndex, EntryPool entryPool) {
 			super(new IndexSimpleVerifier(entryIndex, inheritanceIndex), new SourceInterpreter());
 			this.callerEntry = callerEntry;
 			this.indexer = indexer;
+			this.entryPool = entryPool;
 		}
 
 		@Override
 		public PairValue<BasicValue, SourceValue> newOperation(AbstractInsnNode insn) throws AnalyzerException {
 			if (insn.getOpcode() == Opcodes.GETSTATIC) {
 				FieldInsnNode field = (FieldInsnNode) insn;
-				indexer.indexFieldReference(callerEntry, FieldEntry.parse(field.owner, field.name, field.desc), ReferenceTargetType.none());
+				indexer.indexFieldReference(callerEntry, entryPool.getField(field.owner, field.name, field.desc), ReferenceTargetType.none());
 			}
 
 			return super.newOperation(insn);
@@ -74,12 +81,12 @@ public class IndexReferenceVisitor extends ClassVisitor {
 		public PairValue<BasicValue, SourceValue> unaryOperation(AbstractInsnNode insn, PairValue<BasicValue, SourceValue> value) throws AnalyzerException {
 			if (insn.getOpcode() == Opcodes.PUTSTATIC) {
 				FieldInsnNode field = (FieldInsnNode) insn;
-				indexer.indexFieldReference(callerEntry, FieldEntry.parse(field.owner, field.name, field.desc), ReferenceTargetType.none());
+				indexer.indexFieldReference(callerEntry, entryPool.getField(field.owner, field.name, field.desc), ReferenceTargetType.none());
 			}
 
 			if (insn.getOpcode() == Opcodes.GETFIELD) {
 				FieldInsnNode field = (FieldInsnNode) insn;
-				indexer.indexFieldReference(callerEntry, FieldEntry.parse(field.owner, field.name, field.desc), getReferenceTargetType(value, insn));
+				indexer.indexFieldReference(callerEntry, entryPool.getField(field.owner, field.name, field.desc), getReferenceTargetType(value, insn));
 			}
 
 			return super.unaryOperation(insn, value);
@@ -90,7 +97,7 @@ public class IndexReferenceVisitor extends ClassVisitor {
 		public PairValue<BasicValue, SourceValue> binaryOperation(AbstractInsnNode insn, PairValue<BasicValue, SourceValue> value1, PairValue<BasicValue, SourceValue> value2) throws AnalyzerException {
 			if (insn.getOpcode() == Opcodes.PUTFIELD) {
 				FieldInsnNode field = (FieldInsnNode) insn;
-				FieldEntry fieldEntry = FieldEntry.parse(field.owner, field.name, field.desc);
+				FieldEntry fieldEntry = entryPool.getField(field.owner, field.name, field.desc);
 				indexer.indexFieldReference(callerEntry, fieldEntry, ReferenceTargetType.none());
 			}
 
@@ -101,12 +108,12 @@ public class IndexReferenceVisitor extends ClassVisitor {
 		public PairValue<BasicValue, SourceValue> naryOperation(AbstractInsnNode insn, List<? extends PairValue<BasicValue, SourceValue>> values) throws AnalyzerException {
 			if (insn.getOpcode() == Opcodes.INVOKEINTERFACE || insn.getOpcode() == Opcodes.INVOKESPECIAL || insn.getOpcode() == Opcodes.INVOKEVIRTUAL) {
 				MethodInsnNode methodInsn = (MethodInsnNode) insn;
-				indexer.indexMethodReference(callerEntry, MethodEntry.parse(methodInsn.owner, methodInsn.name, methodInsn.desc), getReferenceTargetType(values.get(0), insn));
+				indexer.indexMethodReference(callerEntry, entryPool.getMethod(methodInsn.owner, methodInsn.name, methodInsn.desc), getReferenceTargetType(values.get(0), insn));
 			}
 
 			if (insn.getOpcode() == Opcodes.INVOKESTATIC) {
 				MethodInsnNode methodInsn = (MethodInsnNode) insn;
-				indexer.indexMethodReference(callerEntry, MethodEntry.parse(methodInsn.owner, methodInsn.name, methodInsn.desc), ReferenceTargetType.none());
+				indexer.indexMethodReference(callerEntry, entryPool.getMethod(methodInsn.owner, methodInsn.name, methodInsn.desc), ReferenceTargetType.none());
 			}
 
 			if (insn.getOpcode() == Opcodes.INVOKEDYNAMIC) {
@@ -131,10 +138,10 @@ public class IndexReferenceVisitor extends ClassVisitor {
 
 					indexer.indexLambda(callerEntry, new Lambda(
 							invokeDynamicInsn.name,
-							new MethodDescriptor(invokeDynamicInsn.desc),
-							new MethodDescriptor(samMethodType.getDescriptor()),
+							entryPool.getMethodDescriptor(invokeDynamicInsn.desc),
+							entryPool.getMethodDescriptor(samMethodType.getDescriptor()),
 							getHandleEntry(implMethod),
-							new MethodDescriptor(instantiatedMethodType.getDescriptor())
+							entryPool.getMethodDescriptor(instantiatedMethodType.getDescriptor())
 					), targetType);
 				}
 			}
@@ -148,29 +155,29 @@ public class IndexReferenceVisitor extends ClassVisitor {
 			}
 
 			if (target.left.getType().getSort() == Type.OBJECT) {
-				return ReferenceTargetType.classType(new ClassEntry(target.left.getType().getInternalName()));
+				return ReferenceTargetType.classType(entryPool.getClass(target.left.getType().getInternalName()));
 			}
 
 			if (target.left.getType().getSort() == Type.ARRAY) {
-				return ReferenceTargetType.classType(new ClassEntry("java/lang/Object"));
+				return ReferenceTargetType.classType(entryPool.getClass("java/lang/Object"));
 			}
 
 			throw new AnalyzerException(insn, "called method on or accessed field of non-object type");
 		}
 
-		private static ParentedEntry<?> getHandleEntry(Handle handle) {
+		private ParentedEntry<?> getHandleEntry(Handle handle) {
 			switch (handle.getTag()) {
 				case Opcodes.H_GETFIELD:
 				case Opcodes.H_GETSTATIC:
 				case Opcodes.H_PUTFIELD:
 				case Opcodes.H_PUTSTATIC:
-					return FieldEntry.parse(handle.getOwner(), handle.getName(), handle.getDesc());
+					return entryPool.getField(handle.getOwner(), handle.getName(), handle.getDesc());
 				case Opcodes.H_INVOKEINTERFACE:
 				case Opcodes.H_INVOKESPECIAL:
 				case Opcodes.H_INVOKESTATIC:
 				case Opcodes.H_INVOKEVIRTUAL:
 				case Opcodes.H_NEWINVOKESPECIAL:
-					return MethodEntry.parse(handle.getOwner(), handle.getName(), handle.getDesc());
+					return entryPool.getMethod(handle.getOwner(), handle.getName(), handle.getDesc());
 			}
 
 			throw new RuntimeException("Invalid handle tag " + handle.getTag());
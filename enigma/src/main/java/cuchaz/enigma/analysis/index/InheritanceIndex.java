@@ -17,6 +17,7 @@ import com.google.common.collect.Sets;
 import cuchaz.enigma.translation.representation.entry.ClassDefEntry;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -53,6 +54,29 @@ public class InheritanceIndex implements JarIndexer {
 		classChildren.put(parentEntry, childEntry);
 	}
 
+	void writeSnapshot(SnapshotOutput out) throws IOException {
+		out.writeMultimap(classParents, out::writeEntry, out::writeEntry);
+		out.writeMultimap(classChildren, out::writeEntry, out::writeEntry);
+	}
+
+	void readSnapshot(SnapshotInput in) throws IOException {
+		in.readMultimap(classParents, in::readEntry, in::readEntry);
+		in.readMultimap(classChildren, in::readEntry, in::readEntry);
+	}
+
+	void mergeShard(InheritanceIndex shard) {
+		classParents.putAll(shard.classParents);
+		classChildren.putAll(shard.classChildren);
+	}
+
+	void removeClasses(Set<ClassEntry> classEntries) {
+		for (ClassEntry classEntry : classEntries) {
+			for (ClassEntry parent : classParents.removeAll(classEntry)) {
+				classChildren.remove(parent, classEntry);
+			}
+		}
+	}
+
 	public Collection<ClassEntry> getParents(ClassEntry classEntry) {
 		return classParents.get(classEntry);
 	}
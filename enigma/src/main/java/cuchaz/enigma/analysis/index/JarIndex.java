@@ -18,20 +18,29 @@ import cuchaz.enigma.analysis.ReferenceTargetType;
 import cuchaz.enigma.classprovider.ClassProvider;
 import cuchaz.enigma.translation.mapping.EntryResolver;
 import cuchaz.enigma.translation.mapping.IndexEntryResolver;
+import cuchaz.enigma.translation.representation.AccessFlags;
 import cuchaz.enigma.translation.representation.Lambda;
 import cuchaz.enigma.translation.representation.entry.*;
 import cuchaz.enigma.utils.I18n;
+import org.objectweb.asm.ClassVisitor;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 
 public class JarIndex implements JarIndexer {
+	private static final int SHARDS_PER_THREAD = 4;
+
 	private final Set<String> indexedClasses = new HashSet<>();
 	private final EntryIndex entryIndex;
 	private final InheritanceIndex inheritanceIndex;
 	private final ReferenceIndex referenceIndex;
 	private final BridgeMethodIndex bridgeMethodIndex;
 	private final PackageVisibilityIndex packageVisibilityIndex;
-	private final EntryResolver entryResolver;
+	private final MethodFamilyIndex methodFamilyIndex;
+	private final IndexEntryResolver entryResolver;
+	private final EntryPool entryPool;
 
 	private final Collection<JarIndexer> indexers;
 
@@ -39,39 +48,72 @@ public class JarIndex implements JarIndexer {
 	private final ListMultimap<ClassEntry, ParentedEntry> childrenByClass;
 
 	public JarIndex(EntryIndex entryIndex, InheritanceIndex inheritanceIndex, ReferenceIndex referenceIndex, BridgeMethodIndex bridgeMethodIndex, PackageVisibilityIndex packageVisibilityIndex) {
+		this(entryIndex, inheritanceIndex, referenceIndex, bridgeMethodIndex, packageVisibilityIndex, new EntryPool());
+	}
+
+	private JarIndex(EntryIndex entryIndex, InheritanceIndex inheritanceIndex, ReferenceIndex referenceIndex, BridgeMethodIndex bridgeMethodIndex, PackageVisibilityIndex packageVisibilityIndex, EntryPool entryPool) {
 		this.entryIndex = entryIndex;
 		this.inheritanceIndex = inheritanceIndex;
 		this.referenceIndex = referenceIndex;
 		this.bridgeMethodIndex = bridgeMethodIndex;
 		this.packageVisibilityIndex = packageVisibilityIndex;
-		this.indexers = List.of(entryIndex, inheritanceIndex, referenceIndex, bridgeMethodIndex, packageVisibilityIndex);
+		this.methodFamilyIndex = new MethodFamilyIndex(entryIndex, inheritanceIndex, bridgeMethodIndex);
+		this.indexers = List.of(entryIndex, inheritanceIndex, referenceIndex, bridgeMethodIndex, packageVisibilityIndex, methodFamilyIndex);
 		this.entryResolver = new IndexEntryResolver(this);
 		this.childrenByClass = ArrayListMultimap.create();
+		this.entryPool = entryPool;
 	}
 
 	public static JarIndex empty() {
+		return empty(new EntryPool());
+	}
+
+	private static JarIndex empty(EntryPool entryPool) {
 		EntryIndex entryIndex = new EntryIndex();
 		InheritanceIndex inheritanceIndex = new InheritanceIndex(entryIndex);
 		ReferenceIndex referenceIndex = new ReferenceIndex();
 		BridgeMethodIndex bridgeMethodIndex = new BridgeMethodIndex(entryIndex, inheritanceIndex, referenceIndex);
 		PackageVisibilityIndex packageVisibilityIndex = new PackageVisibilityIndex();
-		return new JarIndex(entryIndex, inheritanceIndex, referenceIndex, bridgeMethodIndex, packageVisibilityIndex);
+		return new JarIndex(entryIndex, inheritanceIndex, referenceIndex, bridgeMethodIndex, packageVisibilityIndex, entryPool);
 	}
 
 	public void indexJar(Set<String> classNames, ClassProvider classProvider, ProgressListener progress) {
+		indexJar(classNames, classProvider, progress, false);
+	}
+
+	/**
+	 * Indexes the given classes.
+	 *
+	 * <p>In parallel mode, both indexing passes are split into contiguous chunks of classes which are
+	 * visited on the common fork-join pool. Each chunk is indexed into its own shard, and the shards are
+	 * merged back in class order before bridge methods are searched for, so the result is the same as
+	 * the serial path.</p>
+	 */
+	public void indexJar(Set<String> classNames, ClassProvider classProvider, ProgressListener progress, boolean parallel) {
 		indexedClasses.addAll(classNames);
+		entryResolver.invalidateCache();
+		referenceIndex.prepareIndexing();
 		progress.init(4, I18n.translate("progress.jar.indexing"));
 
 		progress.step(1, I18n.translate("progress.jar.indexing.entries"));
 
-		for (String className : classNames) {
-			classProvider.get(className).accept(new IndexClassVisitor(this, Enigma.ASM_VERSION));
+		if (parallel) {
+			indexShards(classNames, classProvider, shard -> new IndexClassVisitor(shard, Enigma.ASM_VERSION));
+		} else {
+			for (String className : classNames) {
+				classProvider.get(className).accept(new IndexClassVisitor(this, Enigma.ASM_VERSION));
+			}
 		}
 
 		progress.step(2, I18n.translate("progress.jar.indexing.references"));
 
-		for (String className : classNames) {
-			classProvider.get(className).accept(new IndexReferenceVisitor(this, entryIndex, inheritanceIndex, Enigma.ASM_VERSION));
+		if (parallel) {
+			// the shards only collect references, entries and inheritance are looked up in the merged indexes
+			indexShards(classNames, classProvider, shard -> new IndexReferenceVisitor(shard, entryIndex, inheritanceIndex, entryPool, Enigma.ASM_VERSION));
+		} else {
+			for (String className : classNames) {
+				classProvider.get(className).accept(new IndexReferenceVisitor(this, entryIndex, inheritanceIndex, entryPool, Enigma.ASM_VERSION));
+			}
 		}
 
 		progress.step(3, I18n.translate("progress.jar.indexing.methods"));
@@ -81,9 +123,290 @@ public class JarIndex implements JarIndexer {
 		processIndex(this);
 	}
 
+	private void indexShards(Set<String> classNames, ClassProvider classProvider, Function<JarIndex, ClassVisitor> visitorFactory) {
+		List<String> classList = List.copyOf(classNames);
+		int shardCount = ForkJoinPool.getCommonPoolParallelism() * SHARDS_PER_THREAD;
+		int shardSize = Math.max(1, (classList.size() + shardCount - 1) / shardCount);
+
+		List<JarIndex> shards = Lists.partition(classList, shardSize).parallelStream()
+				.map(chunk -> {
+					// shards share the pool so that merged references stay canonical
+					JarIndex shard = JarIndex.empty(entryPool);
+					ClassVisitor visitor = visitorFactory.apply(shard);
+
+					for (String className : chunk) {
+						classProvider.get(className).accept(visitor);
+					}
+
+					return shard;
+				})
+				.toList();
+
+		// merge in encounter order so that ordered collections match the serial path
+		for (JarIndex shard : shards) {
+			mergeShard(shard);
+		}
+	}
+
+	private void mergeShard(JarIndex shard) {
+		mergeDeclarations(shard);
+		referenceIndex.mergeShard(shard.referenceIndex);
+	}
+
+	private void mergeDeclarations(JarIndex shard) {
+		entryIndex.mergeShard(shard.entryIndex);
+		inheritanceIndex.mergeShard(shard.inheritanceIndex);
+		methodImplementations.putAll(shard.methodImplementations);
+		childrenByClass.putAll(shard.childrenByClass);
+	}
+
+	/**
+	 * Updates the index after classes of the jar were added, removed or changed, without indexing
+	 * the whole jar again.
+	 *
+	 * <p>The contributions of the removed and changed classes are retracted from the indexes, along
+	 * with those of the classes whose references may resolve differently afterwards, and only those
+	 * classes are visited again. Bridge methods, package visibility and method families are only
+	 * recomputed around them. Changes to the class hierarchy
+	 * affect references throughout the jar, so if the parents of a class change, or a class which
+	 * other classes extend is added or removed, the whole jar is indexed again instead.</p>
+	 *
+	 * @param addedClasses the classes which are new in the jar
+	 * @param removedClasses the classes which are not in the jar anymore
+	 * @param changedClasses the classes whose bytes changed
+	 * @param classProvider the provider of the updated jar
+	 */
+	public void updateClasses(Set<String> addedClasses, Set<String> removedClasses, Set<String> changedClasses, ClassProvider classProvider, ProgressListener progress) {
+		Set<ClassEntry> added = new HashSet<>();
+		Set<ClassEntry> removed = new HashSet<>();
+		Set<ClassEntry> changed = new HashSet<>();
+
+		for (String className : Sets.union(addedClasses, changedClasses)) {
+			(indexedClasses.contains(className) ? changed : added).add(entryPool.getClass(className));
+		}
+
+		for (String className : removedClasses) {
+			if (indexedClasses.contains(className)) {
+				removed.add(entryPool.getClass(className));
+			}
+		}
+
+		progress.init(4, I18n.translate("progress.jar.indexing"));
+		progress.step(1, I18n.translate("progress.jar.indexing.entries"));
+
+		JarIndex declarations = JarIndex.empty(entryPool);
+		visitClasses(Sets.union(added, changed), classProvider, new IndexClassVisitor(declarations, Enigma.ASM_VERSION));
+
+		if (!isHierarchyUnchanged(declarations, added, removed, changed)) {
+			Set<String> classNames = new HashSet<>(indexedClasses);
+			classNames.removeAll(removedClasses);
+			classNames.addAll(addedClasses);
+
+			Set<ClassEntry> classEntries = new HashSet<>();
+			for (String className : indexedClasses) {
+				classEntries.add(entryPool.getClass(className));
+			}
+
+			retractClasses(classEntries);
+			referenceIndex.replaceReferences(classEntries, new ReferenceIndex());
+			indexJar(classNames, classProvider, progress, true);
+			return;
+		}
+
+		// the references of these classes may resolve to other entries now, so they are indexed again too
+		Set<ClassEntry> dependents = findDependentClasses(declarations, added, removed, changed);
+		dependents.removeAll(removed);
+		dependents.removeAll(added);
+		dependents.removeAll(changed);
+		visitClasses(dependents, classProvider, new IndexClassVisitor(declarations, Enigma.ASM_VERSION));
+
+		Set<ClassEntry> visited = new HashSet<>(added);
+		visited.addAll(changed);
+		visited.addAll(dependents);
+
+		Set<ClassEntry> retracted = new HashSet<>(removed);
+		retracted.addAll(changed);
+		retracted.addAll(dependents);
+
+		retractClasses(retracted);
+		mergeDeclarations(declarations);
+		for (ClassEntry classEntry : visited) {
+			indexedClasses.add(classEntry.getFullName());
+		}
+
+		entryResolver.invalidateCache();
+
+		progress.step(2, I18n.translate("progress.jar.indexing.references"));
+
+		// the references of the visited classes are collected apart, so that only they need to be remapped
+		JarIndex references = JarIndex.empty(entryPool);
+		visitClasses(visited, classProvider, new IndexReferenceVisitor(references, entryIndex, inheritanceIndex, entryPool, Enigma.ASM_VERSION));
+		ReferenceIndex newReferences = declarations.referenceIndex;
+		newReferences.mergeShard(references.referenceIndex);
+
+		progress.step(3, I18n.translate("progress.jar.indexing.methods"));
+		bridgeMethodIndex.findBridgeMethods(declarations.entryIndex.getMethods(), newReferences);
+
+		progress.step(4, I18n.translate("progress.jar.indexing.process"));
+		newReferences.processIndex(this);
+		referenceIndex.replaceReferences(retracted, newReferences);
+		bridgeMethodIndex.processIndex(this);
+
+		Set<ClassEntry> updated = new HashSet<>(retracted);
+		updated.addAll(added);
+		packageVisibilityIndex.updateClasses(this, updated, newReferences);
+		methodFamilyIndex.updateClasses(updated);
+
+		entryResolver.invalidateCache();
+	}
+
+	private void visitClasses(Set<ClassEntry> classEntries, ClassProvider classProvider, ClassVisitor visitor) {
+		for (ClassEntry classEntry : classEntries) {
+			classProvider.get(classEntry.getFullName()).accept(visitor);
+		}
+	}
+
+	private boolean isHierarchyUnchanged(JarIndex declarations, Set<ClassEntry> added, Set<ClassEntry> removed, Set<ClassEntry> changed) {
+		for (ClassEntry classEntry : added) {
+			if (!inheritanceIndex.getChildren(classEntry).isEmpty()) {
+				return false;
+			}
+		}
+
+		for (ClassEntry classEntry : removed) {
+			if (!removed.containsAll(inheritanceIndex.getChildren(classEntry))) {
+				return false;
+			}
+		}
+
+		for (ClassEntry classEntry : changed) {
+			Set<ClassEntry> parents = new HashSet<>(inheritanceIndex.getParents(classEntry));
+			if (!parents.equals(new HashSet<>(declarations.inheritanceIndex.getParents(classEntry)))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private Set<ClassEntry> findDependentClasses(JarIndex declarations, Set<ClassEntry> added, Set<ClassEntry> removed, Set<ClassEntry> changed) {
+		// references to entries of added or removed classes resolve differently, whatever the entry
+		Set<ClassEntry> replaced = new HashSet<>(added);
+		replaced.addAll(removed);
+
+		// and so do references to members which were inherited through a removed class
+		Set<ClassEntry> removedAncestors = new HashSet<>();
+		for (ClassEntry classEntry : removed) {
+			removedAncestors.addAll(inheritanceIndex.getAncestors(classEntry));
+		}
+
+		// otherwise only members which appear, disappear or change visibility affect the resolution of
+		// references to the same member in the class or its ancestors
+		Set<ClassEntry> updatedOwners = new HashSet<>(changed);
+		for (ClassEntry classEntry : changed) {
+			updatedOwners.addAll(inheritanceIndex.getAncestors(classEntry));
+		}
+
+		for (ClassEntry classEntry : added) {
+			for (ClassEntry parent : declarations.inheritanceIndex.getParents(classEntry)) {
+				updatedOwners.add(parent);
+				updatedOwners.addAll(inheritanceIndex.getAncestors(parent));
+			}
+		}
+
+		Map<Entry<?>, AccessFlags> previousMembers = new HashMap<>();
+		for (Entry<?> entry : Iterables.concat(entryIndex.getFields(), entryIndex.getMethods())) {
+			if (changed.contains(entry.getContainingClass())) {
+				previousMembers.put(entry, entryIndex.getEntryAccess(entry));
+			}
+		}
+
+		EntryIndex updatedEntries = declarations.entryIndex;
+		Set<String> updatedMembers = new HashSet<>();
+		for (Entry<?> entry : Iterables.concat(previousMembers.keySet(), updatedEntries.getFields(), updatedEntries.getMethods())) {
+			if (entry instanceof MethodEntry method && method.isConstructor()) {
+				continue;
+			}
+
+			AccessFlags previousAccess = previousMembers.get(entry);
+			AccessFlags access = updatedEntries.getEntryAccess(entry);
+			if (previousAccess == null || access == null || previousAccess.isPrivate() != access.isPrivate()
+					|| previousAccess.isSynthetic() || access.isSynthetic()) {
+				updatedMembers.add(getMemberKey(entry));
+			}
+		}
+
+		return referenceIndex.getReferencingClasses(entry -> {
+			ClassEntry owner = entry.getContainingClass();
+			if (replaced.contains(owner)) {
+				return true;
+			}
+
+			if (entry instanceof ClassEntry) {
+				return false;
+			}
+
+			return removedAncestors.contains(owner) || updatedOwners.contains(owner) && updatedMembers.contains(getMemberKey(entry));
+		});
+	}
+
+	private static String getMemberKey(Entry<?> entry) {
+		if (entry instanceof MethodEntry method) {
+			return method.getName() + method.getDesc();
+		}
+
+		return entry.getName() + ":" + ((FieldEntry) entry).getDesc();
+	}
+
+	private void retractClasses(Set<ClassEntry> classEntries) {
+		for (ClassEntry classEntry : classEntries) {
+			indexedClasses.remove(classEntry.getFullName());
+			methodImplementations.removeAll(classEntry.getFullName());
+
+			// inner classes are indexed separately, so they stay listed as children of their outer class
+			childrenByClass.get(classEntry).removeIf(child -> !(child instanceof ClassEntry));
+			if (classEntry.isInnerClass()) {
+				childrenByClass.remove(classEntry.getOuterClass(), classEntry);
+			}
+		}
+
+		entryIndex.removeClasses(classEntries);
+		inheritanceIndex.removeClasses(classEntries);
+		bridgeMethodIndex.removeClasses(classEntries);
+	}
+
+	void writeSnapshot(SnapshotOutput out) throws IOException {
+		out.writeCollection(indexedClasses, out::writeString);
+		entryIndex.writeSnapshot(out);
+		inheritanceIndex.writeSnapshot(out);
+		referenceIndex.writeSnapshot(out);
+		bridgeMethodIndex.writeSnapshot(out);
+		packageVisibilityIndex.writeSnapshot(out);
+		out.writeMultimap(methodImplementations, out::writeString, out::writeEntry);
+		out.writeMultimap(childrenByClass, out::writeEntry, out::writeEntry);
+	}
+
+	void readSnapshot(SnapshotInput in) throws IOException {
+		in.readCollection(indexedClasses, in::readString);
+		entryIndex.readSnapshot(in);
+		inheritanceIndex.readSnapshot(in);
+		referenceIndex.readSnapshot(in);
+		bridgeMethodIndex.readSnapshot(in);
+		packageVisibilityIndex.readSnapshot(in);
+		in.readMultimap(methodImplementations, in::readString, in::readEntry);
+		in.readMultimap(childrenByClass, in::readEntry, in::readEntry);
+		entryResolver.invalidateCache();
+
+		// method families are cheap to rebuild from the other indexes, so they are not stored
+		methodFamilyIndex.processIndex(this);
+	}
+
 	@Override
 	public void processIndex(JarIndex index) {
 		indexers.forEach(indexer -> indexer.processIndex(index));
+
+		// the bridge method index adds renamed bridges while processing
+		entryResolver.invalidateCache();
 	}
 
 	@Override
@@ -179,10 +502,21 @@ public class JarIndex implements JarIndexer {
 		return packageVisibilityIndex;
 	}
 
+	public MethodFamilyIndex getMethodFamilyIndex() {
+		return methodFamilyIndex;
+	}
+
 	public EntryResolver getEntryResolver() {
 		return entryResolver;
 	}
 
+	/**
+	 * Returns the pool of canonical entries shared by everything indexed into this index.
+	 */
+	public EntryPool getEntryPool() {
+		return entryPool;
+	}
+
 	public ListMultimap<ClassEntry, ParentedEntry> getChildrenByClass() {
 		return this.childrenByClass;
 	}
@@ -0,0 +1,227 @@
+package cuchaz.enigma.analysis.index;
+
+import com.google.common.io.BaseEncoding;
+import cuchaz.enigma.Enigma;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stores fully processed {@link JarIndex}es on disk, keyed by the checksum of the indexed jar, the
+ * configuration of the jar indexer services and the library classes.
+ *
+ * <p>A snapshot is only loaded if it was written by the same snapshot format and Enigma version,
+ * for a jar with the same checksum, with the same jar indexer services and arguments, and with the
+ * same library classes. Only the most recently used snapshots are kept.</p>
+ */
+public final class JarIndexCache {
+	private static final int MAGIC = 0x45494458; // "EIDX"
+	private static final int FORMAT_VERSION = 3;
+	private static final String EXTENSION = ".index";
+	private static final int DEFAULT_MAX_SNAPSHOTS = 8;
+
+	private final Path directory;
+	private final List<String> indexers;
+	private final int maxSnapshots;
+
+	/**
+	 * @param directory the directory snapshots are stored in
+	 * @param indexers  identifiers and arguments of the jar indexer services in use, a snapshot written with other indexers is ignored
+	 */
+	public JarIndexCache(Path directory, List<String> indexers) {
+		this(directory, indexers, DEFAULT_MAX_SNAPSHOTS);
+	}
+
+	/**
+	 * @param directory    the directory snapshots are stored in
+	 * @param indexers     identifiers and arguments of the jar indexer services in use, a snapshot written with other indexers is ignored
+	 * @param maxSnapshots the number of snapshots to keep, the least recently used ones are deleted when a new one is saved
+	 */
+	public JarIndexCache(Path directory, List<String> indexers, int maxSnapshots) {
+		this.directory = directory;
+		this.indexers = List.copyOf(indexers);
+		this.maxSnapshots = maxSnapshots;
+	}
+
+	private Path getSnapshotPath(byte[] jarChecksum, byte[] librariesDigest) {
+		MessageDigest digest = sha1();
+		digest.update(jarChecksum);
+		for (String indexer : indexers) {
+			digest.update(indexer.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+		}
+
+		digest.update(librariesDigest);
+		return directory.resolve(BaseEncoding.base16().lowerCase().encode(digest.digest()) + EXTENSION);
+	}
+
+	// the description of the libraries can be longer than a string in the header may be, so only its digest is stored
+	private static byte[] digestLibraries(String libraries) {
+		return sha1().digest(libraries.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static MessageDigest sha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// Algorithm guaranteed to be supported
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Loads the index of the jar with the given checksum.
+	 *
+	 * @param libraries identifies the library classes the jar was indexed with
+	 * @return the index, or {@code null} if there is no matching snapshot
+	 */
+	@Nullable
+	public JarIndex load(byte[] jarChecksum, String libraries) {
+		byte[] librariesDigest = digestLibraries(libraries);
+		Path path = getSnapshotPath(jarChecksum, librariesDigest);
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (!readHeader(in, jarChecksum, librariesDigest)) {
+				return null;
+			}
+
+			JarIndex index = JarIndex.empty();
+			index.readSnapshot(new SnapshotInput(in, index.getEntryPool()));
+			touch(path);
+			return index;
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Failed to load cached index " + path + ", the jar will be reindexed: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Saves the index of the jar with the given checksum, replacing any previous snapshot, and
+	 * deletes the least recently used snapshots over the limit.
+	 *
+	 * @param libraries identifies the library classes the jar was indexed with
+	 */
+	public void save(byte[] jarChecksum, String libraries, JarIndex index) {
+		byte[] librariesDigest = digestLibraries(libraries);
+		Path path = getSnapshotPath(jarChecksum, librariesDigest);
+
+		try {
+			Files.createDirectories(directory);
+			Path tempPath = Files.createTempFile(directory, "index", ".tmp");
+
+			try {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+					writeHeader(out, jarChecksum, librariesDigest);
+					index.writeSnapshot(new SnapshotOutput(out));
+				}
+
+				Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tempPath);
+			}
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Failed to save cached index " + path + ": " + e);
+			return;
+		}
+
+		prune();
+	}
+
+	// the modification time of a snapshot is the last time it was used
+	private static void touch(Path path) {
+		try {
+			Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+		} catch (IOException e) {
+			System.err.println("Failed to update the modification time of cached index " + path + ": " + e);
+		}
+	}
+
+	private void prune() {
+		List<Path> snapshots;
+		try (Stream<Path> files = Files.list(directory)) {
+			snapshots = files.filter(file -> file.getFileName().toString().endsWith(EXTENSION))
+					.sorted(Comparator.comparing(JarIndexCache::getLastModifiedTime).reversed())
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			System.err.println("Failed to list cached indexes in " + directory + ": " + e);
+			return;
+		}
+
+		for (Path snapshot : snapshots.subList(Math.min(maxSnapshots, snapshots.size()), snapshots.size())) {
+			try {
+				Files.deleteIfExists(snapshot);
+			} catch (IOException e) {
+				System.err.println("Failed to delete cached index " + snapshot + ": " + e);
+			}
+		}
+	}
+
+	private static FileTime getLastModifiedTime(Path path) {
+		try {
+			return Files.getLastModifiedTime(path);
+		} catch (IOException e) {
+			// deleted concurrently, sort it as the oldest
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private void writeHeader(DataOutputStream out, byte[] jarChecksum, byte[] librariesDigest) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(Enigma.VERSION);
+		out.write(jarChecksum);
+		out.writeInt(indexers.size());
+		for (String indexer : indexers) {
+			out.writeUTF(indexer);
+		}
+
+		out.write(librariesDigest);
+	}
+
+	private boolean readHeader(DataInputStream in, byte[] jarChecksum, byte[] librariesDigest) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(Enigma.VERSION)) {
+			return false;
+		}
+
+		byte[] checksum = new byte[jarChecksum.length];
+		in.readFully(checksum);
+		if (!Arrays.equals(checksum, jarChecksum)) {
+			return false;
+		}
+
+		int indexerCount = in.readInt();
+		if (indexerCount != indexers.size()) {
+			return false;
+		}
+
+		for (String indexer : indexers) {
+			if (!in.readUTF().equals(indexer)) {
+				return false;
+			}
+		}
+
+		byte[] digest = new byte[librariesDigest.length];
+		in.readFully(digest);
+		return Arrays.equals(digest, librariesDigest);
+	}
+}
@@ -0,0 +1,221 @@
+package cuchaz.enigma.analysis.index;
+
+import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+
+import java.util.*;
+
+/**
+ * Groups methods into families of methods that override each other, directly, through an
+ * interface they both implement, or through a bridge method.
+ *
+ * <p>Families are found with a union-find over the whole jar once the other indexes are processed,
+ * so looking up the family of a method afterwards is a single map lookup. Only methods which can
+ * override or be overridden are grouped, every other method is alone in its family. Final methods
+ * join the family of the methods they override, but are never its root.</p>
+ */
+public class MethodFamilyIndex implements JarIndexer {
+	private final EntryIndex entryIndex;
+	private final InheritanceIndex inheritanceIndex;
+	private final BridgeMethodIndex bridgeMethodIndex;
+
+	private final Map<MethodEntry, MethodFamily> families = new HashMap<>();
+
+	public MethodFamilyIndex(EntryIndex entryIndex, InheritanceIndex inheritanceIndex, BridgeMethodIndex bridgeMethodIndex) {
+		this.entryIndex = entryIndex;
+		this.inheritanceIndex = inheritanceIndex;
+		this.bridgeMethodIndex = bridgeMethodIndex;
+	}
+
+	@Override
+	public void processIndex(JarIndex index) {
+		Set<MethodEntry> methods = new HashSet<>();
+		for (MethodEntry method : entryIndex.getMethods()) {
+			methods.add(toPlainEntry(method));
+		}
+
+		families.clear();
+		buildFamilies(methods);
+	}
+
+	/**
+	 * Rebuilds the families which the methods of the given classes belong to, before or after they
+	 * were indexed again. The class hierarchy is expected to be unchanged.
+	 */
+	void updateClasses(Set<ClassEntry> classes) {
+		Deque<MethodEntry> queue = new ArrayDeque<>();
+		for (MethodEntry member : families.keySet()) {
+			if (classes.contains(member.getParent())) {
+				queue.add(member);
+			}
+		}
+
+		Map<ClassEntry, Collection<ClassEntry>> descendants = new HashMap<>();
+		for (MethodEntry method : entryIndex.getMethods()) {
+			if (classes.contains(method.getParent())) {
+				MethodEntry entry = toPlainEntry(method);
+				queue.add(entry);
+
+				// a new method can join the families of the methods overriding it
+				for (ClassEntry descendant : descendants.computeIfAbsent(entry.getParent(), inheritanceIndex::getDescendants)) {
+					queue.add(entry.withParent(descendant));
+				}
+			}
+		}
+
+		// every family connected to these methods is rebuilt, the others cannot change
+		Map<ClassEntry, Set<ClassEntry>> ancestors = new HashMap<>();
+		Set<MethodEntry> methods = new HashSet<>();
+		while (!queue.isEmpty()) {
+			MethodEntry entry = queue.poll();
+			if (!methods.add(entry)) {
+				continue;
+			}
+
+			MethodFamily family = families.get(entry);
+			if (family != null) {
+				queue.addAll(family.members());
+			}
+
+			if (canOverride(entry)) {
+				for (ClassEntry ancestor : ancestors.computeIfAbsent(entry.getParent(), inheritanceIndex::getAncestors)) {
+					queue.add(entry.withParent(ancestor));
+				}
+			}
+
+			MethodEntry bridge = bridgeMethodIndex.getBridgeFromSpecialized(entry);
+			if (bridge != null) {
+				queue.add(toPlainEntry(bridge));
+			}
+
+			MethodEntry specialized = bridgeMethodIndex.getSpecializedFromBridge(entry);
+			if (specialized != null) {
+				queue.add(toPlainEntry(specialized));
+			}
+		}
+
+		families.keySet().removeAll(methods);
+		buildFamilies(methods);
+	}
+
+	private void buildFamilies(Set<MethodEntry> methods) {
+		Map<MethodEntry, MethodEntry> parents = new HashMap<>();
+		Map<ClassEntry, Set<ClassEntry>> ancestors = new HashMap<>();
+
+		for (MethodEntry entry : methods) {
+			if (!canOverride(entry)) {
+				continue;
+			}
+
+			parents.putIfAbsent(entry, entry);
+
+			for (ClassEntry ancestor : ancestors.computeIfAbsent(entry.getParent(), inheritanceIndex::getAncestors)) {
+				MethodEntry overridden = entry.withParent(ancestor);
+				if (canInherit(overridden)) {
+					union(parents, entry, overridden);
+				}
+			}
+		}
+
+		for (Map.Entry<MethodEntry, MethodEntry> bridge : bridgeMethodIndex.getSpecializedToBridge().entrySet()) {
+			MethodEntry specialized = toPlainEntry(bridge.getKey());
+			MethodEntry bridgeMethod = toPlainEntry(bridge.getValue());
+			if (methods.contains(specialized) && canOverride(specialized) && canOverride(bridgeMethod)) {
+				union(parents, specialized, bridgeMethod);
+			}
+		}
+
+		Map<MethodEntry, Set<MethodEntry>> members = new HashMap<>();
+		for (MethodEntry entry : parents.keySet()) {
+			members.computeIfAbsent(find(parents, entry), root -> new HashSet<>()).add(entry);
+		}
+
+		for (Set<MethodEntry> familyMembers : members.values()) {
+			if (familyMembers.size() < 2) {
+				continue;
+			}
+
+			// the root is picked independently of the union order, so that it is stable across runs,
+			// and is only a final method if the family was joined through a bridge to a library method
+			MethodEntry root = Collections.min(familyMembers, Comparator.comparing((MethodEntry entry) -> !canInherit(entry))
+					.thenComparing(MethodEntry::getFullName)
+					.thenComparing(entry -> entry.getDesc().toString()));
+			MethodFamily family = new MethodFamily(root, Collections.unmodifiableSet(familyMembers));
+			for (MethodEntry member : familyMembers) {
+				families.put(member, family);
+			}
+		}
+	}
+
+	/**
+	 * Returns whether the method can override the methods of the ancestors of its class.
+	 */
+	private boolean canOverride(MethodEntry entry) {
+		AccessFlags access = entryIndex.getMethodAccess(entry);
+		return access != null && !entry.isConstructor() && !access.isPrivate() && !access.isStatic();
+	}
+
+	/**
+	 * Returns whether the method can be overridden by the methods of the descendants of its class.
+	 */
+	private boolean canInherit(MethodEntry entry) {
+		return canOverride(entry) && !entryIndex.getMethodAccess(entry).isFinal();
+	}
+
+	private static MethodEntry toPlainEntry(MethodEntry entry) {
+		return entry.getClass() == MethodEntry.class ? entry : new MethodEntry(entry.getParent(), entry.getName(), entry.getDesc());
+	}
+
+	private static MethodEntry find(Map<MethodEntry, MethodEntry> parents, MethodEntry entry) {
+		MethodEntry root = entry;
+		MethodEntry parent;
+		while (!(parent = parents.get(root)).equals(root)) {
+			root = parent;
+		}
+
+		// compress the path behind us
+		while (!entry.equals(root)) {
+			MethodEntry next = parents.get(entry);
+			parents.put(entry, root);
+			entry = next;
+		}
+
+		return root;
+	}
+
+	private static void union(Map<MethodEntry, MethodEntry> parents, MethodEntry a, MethodEntry b) {
+		parents.putIfAbsent(a, a);
+		parents.putIfAbsent(b, b);
+
+		MethodEntry rootA = find(parents, a);
+		MethodEntry rootB = find(parents, b);
+		if (!rootA.equals(rootB)) {
+			parents.put(rootB, rootA);
+		}
+	}
+
+	/**
+	 * Returns every method in the family of the given method, including itself.
+	 */
+	public Set<MethodEntry> getFamily(MethodEntry entry) {
+		MethodFamily family = families.get(entry);
+		return family != null ? family.members() : Collections.singleton(entry);
+	}
+
+	/**
+	 * Returns the canonical method of the family of the given method, which is the same for all
+	 * members of the family.
+	 */
+	public MethodEntry getFamilyRoot(MethodEntry entry) {
+		MethodFamily family = families.get(entry);
+		return family != null ? family.root() : entry;
+	}
+
+	public boolean isInFamily(MethodEntry entry, MethodEntry other) {
+		return entry.equals(other) || getFamilyRoot(entry).equals(getFamilyRoot(other));
+	}
+
+	private record MethodFamily(MethodEntry root, Set<MethodEntry> members) {
+	}
+}
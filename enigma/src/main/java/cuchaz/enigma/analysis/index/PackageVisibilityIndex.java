@@ -1,7 +1,6 @@
 package cuchaz.enigma.analysis.index;
 
 import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import cuchaz.enigma.analysis.EntryReference;
@@ -9,6 +8,7 @@ import cuchaz.enigma.analysis.ReferenceTargetType;
 import cuchaz.enigma.translation.representation.AccessFlags;
 import cuchaz.enigma.translation.representation.entry.*;
 
+import java.io.IOException;
 import java.util.*;
 
 public class PackageVisibilityIndex implements JarIndexer {
@@ -39,7 +39,8 @@ public class PackageVisibilityIndex implements JarIndexer {
 	}
 
 	private final HashMultimap<ClassEntry, ClassEntry> connections = HashMultimap.create();
-	private final List<Set<ClassEntry>> partitions = Lists.newArrayList();
+	// partitions are compared by identity, as hashing their contents would be slow
+	private final Set<Set<ClassEntry>> partitions = Sets.newIdentityHashSet();
 	private final Map<ClassEntry, Set<ClassEntry>> classPartitions = Maps.newHashMap();
 
 	private void addConnection(ClassEntry classA, ClassEntry classB) {
@@ -60,58 +61,73 @@ public class PackageVisibilityIndex implements JarIndexer {
 
 	private void addConnections(EntryIndex entryIndex, ReferenceIndex referenceIndex, InheritanceIndex inheritanceIndex) {
 		for (FieldEntry entry : entryIndex.getFields()) {
-			AccessFlags entryAcc = entryIndex.getFieldAccess(entry);
-			if (!entryAcc.isPublic() && !entryAcc.isPrivate()) {
-				for (EntryReference<FieldEntry, MethodDefEntry> ref : referenceIndex.getReferencesToField(entry)) {
-					if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
-						addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
-					}
-				}
-			}
+			addFieldConnections(entry, entryIndex, referenceIndex, inheritanceIndex);
 		}
 
 		for (MethodEntry entry : entryIndex.getMethods()) {
-			AccessFlags entryAcc = entryIndex.getMethodAccess(entry);
-			if (!entryAcc.isPublic() && !entryAcc.isPrivate()) {
-				for (EntryReference<MethodEntry, MethodDefEntry> ref : referenceIndex.getReferencesToMethod(entry)) {
-					if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
-						addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
-					}
+			addMethodConnections(entry, entryIndex, referenceIndex, inheritanceIndex);
+		}
+
+		for (ClassEntry entry : entryIndex.getClasses()) {
+			addClassConnections(entry, entryIndex, referenceIndex, inheritanceIndex);
+		}
+	}
+
+	private void addFieldConnections(FieldEntry entry, EntryIndex entryIndex, ReferenceIndex referenceIndex, InheritanceIndex inheritanceIndex) {
+		AccessFlags entryAcc = entryIndex.getFieldAccess(entry);
+		if (!entryAcc.isPublic() && !entryAcc.isPrivate()) {
+			for (EntryReference<FieldEntry, MethodDefEntry> ref : referenceIndex.getReferencesToField(entry)) {
+				if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
+					addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
 				}
 			}
 		}
+	}
 
-		for (ClassEntry entry : entryIndex.getClasses()) {
-			AccessFlags entryAcc = entryIndex.getClassAccess(entry);
-			if (!entryAcc.isPublic() && !entryAcc.isPrivate()) {
-				for (EntryReference<ClassEntry, FieldDefEntry> ref : referenceIndex.getFieldTypeReferencesToClass(entry)) {
-					if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
-						addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
-					}
+	private void addMethodConnections(MethodEntry entry, EntryIndex entryIndex, ReferenceIndex referenceIndex, InheritanceIndex inheritanceIndex) {
+		AccessFlags entryAcc = entryIndex.getMethodAccess(entry);
+		if (!entryAcc.isPublic() && !entryAcc.isPrivate()) {
+			for (EntryReference<MethodEntry, MethodDefEntry> ref : referenceIndex.getReferencesToMethod(entry)) {
+				if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
+					addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
 				}
+			}
+		}
+	}
 
-				for (EntryReference<ClassEntry, MethodDefEntry> ref : referenceIndex.getMethodTypeReferencesToClass(entry)) {
-					if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
-						addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
-					}
+	private void addClassConnections(ClassEntry entry, EntryIndex entryIndex, ReferenceIndex referenceIndex, InheritanceIndex inheritanceIndex) {
+		AccessFlags entryAcc = entryIndex.getClassAccess(entry);
+		if (!entryAcc.isPublic() && !entryAcc.isPrivate()) {
+			for (EntryReference<ClassEntry, FieldDefEntry> ref : referenceIndex.getFieldTypeReferencesToClass(entry)) {
+				if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
+					addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
 				}
 			}
 
-			for (ClassEntry parent : inheritanceIndex.getParents(entry)) {
-				AccessFlags parentAcc = entryIndex.getClassAccess(parent);
-				if (parentAcc != null && !parentAcc.isPublic() && !parentAcc.isPrivate()) {
-					addConnection(entry, parent);
+			for (EntryReference<ClassEntry, MethodDefEntry> ref : referenceIndex.getMethodTypeReferencesToClass(entry)) {
+				if (requiresSamePackage(entryAcc, ref, inheritanceIndex)) {
+					addConnection(ref.entry.getContainingClass(), ref.context.getContainingClass());
 				}
 			}
+		}
 
-			ClassEntry outerClass = entry.getOuterClass();
-			if (outerClass != null) {
-				addConnection(entry, outerClass);
+		for (ClassEntry parent : inheritanceIndex.getParents(entry)) {
+			AccessFlags parentAcc = entryIndex.getClassAccess(parent);
+			if (parentAcc != null && !parentAcc.isPublic() && !parentAcc.isPrivate()) {
+				addConnection(entry, parent);
 			}
 		}
+
+		ClassEntry outerClass = entry.getOuterClass();
+		if (outerClass != null) {
+			addConnection(entry, outerClass);
+		}
 	}
 
 	private void addPartitions(EntryIndex entryIndex) {
+		partitions.clear();
+		classPartitions.clear();
+
 		Set<ClassEntry> unassignedClasses = Sets.newHashSet(entryIndex.getClasses());
 		while (!unassignedClasses.isEmpty()) {
 			Iterator<ClassEntry> iterator = unassignedClasses.iterator();
@@ -128,6 +144,26 @@ public class PackageVisibilityIndex implements JarIndexer {
 		}
 	}
 
+	void writeSnapshot(SnapshotOutput out) throws IOException {
+		out.writeMultimap(connections, out::writeEntry, out::writeEntry);
+		out.writeCollection(partitions, partition -> out.writeCollection(partition, out::writeEntry));
+	}
+
+	void readSnapshot(SnapshotInput in) throws IOException {
+		in.readMultimap(connections, in::readEntry, in::readEntry);
+		in.readCollection(partitions, () -> {
+			Set<ClassEntry> partition = Sets.newHashSet();
+			in.readCollection(partition, in::readEntry);
+			return partition;
+		});
+
+		for (Set<ClassEntry> partition : partitions) {
+			for (ClassEntry entry : partition) {
+				classPartitions.put(entry, partition);
+			}
+		}
+	}
+
 	public Collection<Set<ClassEntry>> getPartitions() {
 		return partitions;
 	}
@@ -141,7 +177,123 @@ public class PackageVisibilityIndex implements JarIndexer {
 		EntryIndex entryIndex = index.getEntryIndex();
 		ReferenceIndex referenceIndex = index.getReferenceIndex();
 		InheritanceIndex inheritanceIndex = index.getInheritanceIndex();
+		connections.clear();
 		addConnections(entryIndex, referenceIndex, inheritanceIndex);
 		addPartitions(entryIndex);
 	}
+
+	/**
+	 * Recomputes the connections of the given classes after they were indexed again, and rebuilds
+	 * the partitions they were or are now in. The work done only depends on the given classes and
+	 * the partitions they touch, not on the size of the jar.
+	 *
+	 * @param references the references made from the given classes
+	 */
+	void updateClasses(JarIndex index, Set<ClassEntry> classes, ReferenceIndex references) {
+		EntryIndex entryIndex = index.getEntryIndex();
+		ReferenceIndex referenceIndex = index.getReferenceIndex();
+		InheritanceIndex inheritanceIndex = index.getInheritanceIndex();
+
+		for (ClassEntry entry : classes) {
+			for (ClassEntry connected : connections.removeAll(entry)) {
+				connections.remove(connected, entry);
+			}
+		}
+
+		// connections from the given classes
+		for (Entry<?> entry : references.getReferencedEntries()) {
+			if (entry instanceof FieldEntry fieldEntry && entryIndex.hasField(fieldEntry)) {
+				addFieldConnections(fieldEntry, entryIndex, references, inheritanceIndex);
+			} else if (entry instanceof MethodEntry methodEntry && entryIndex.hasMethod(methodEntry)) {
+				addMethodConnections(methodEntry, entryIndex, references, inheritanceIndex);
+			} else if (entry instanceof ClassEntry classEntry && entryIndex.hasClass(classEntry)) {
+				addClassConnections(classEntry, entryIndex, references, inheritanceIndex);
+			}
+		}
+
+		for (ClassEntry entry : classes) {
+			if (!entryIndex.hasClass(entry)) {
+				continue;
+			}
+
+			// connections to the given classes and their members, and from their parents and outer class
+			for (ParentedEntry<?> child : index.getChildrenByClass().get(entry)) {
+				if (child instanceof FieldEntry fieldEntry) {
+					addFieldConnections(fieldEntry, entryIndex, referenceIndex, inheritanceIndex);
+				} else if (child instanceof MethodEntry methodEntry) {
+					addMethodConnections(methodEntry, entryIndex, referenceIndex, inheritanceIndex);
+				} else if (child instanceof ClassEntry innerClass) {
+					addConnection(innerClass, entry);
+				}
+			}
+
+			addClassConnections(entry, entryIndex, referenceIndex, inheritanceIndex);
+
+			// connections from the children of the given classes
+			AccessFlags access = entryIndex.getClassAccess(entry);
+			if (!access.isPublic() && !access.isPrivate()) {
+				for (ClassEntry child : inheritanceIndex.getChildren(entry)) {
+					addConnection(child, entry);
+				}
+			}
+		}
+
+		updatePartitions(entryIndex, classes);
+	}
+
+	/**
+	 * Rebuilds the partitions of the given classes from their connections, merging any other
+	 * partition they are connected to now.
+	 */
+	private void updatePartitions(EntryIndex entryIndex, Set<ClassEntry> classes) {
+		Set<ClassEntry> unassignedClasses = new HashSet<>();
+		for (ClassEntry entry : classes) {
+			removePartition(entry, unassignedClasses);
+		}
+
+		for (ClassEntry entry : classes) {
+			if (entryIndex.hasClass(entry)) {
+				unassignedClasses.add(entry);
+			} else {
+				unassignedClasses.remove(entry);
+			}
+		}
+
+		while (!unassignedClasses.isEmpty()) {
+			Iterator<ClassEntry> iterator = unassignedClasses.iterator();
+			ClassEntry initialEntry = iterator.next();
+			iterator.remove();
+
+			Set<ClassEntry> partition = Sets.newHashSet(initialEntry);
+			Deque<ClassEntry> queue = new ArrayDeque<>(partition);
+			while (!queue.isEmpty()) {
+				for (ClassEntry connected : connections.get(queue.poll())) {
+					// a new connection to a class of another partition merges that partition
+					removePartition(connected, unassignedClasses);
+					if (unassignedClasses.remove(connected)) {
+						partition.add(connected);
+						queue.add(connected);
+					}
+				}
+			}
+
+			partitions.add(partition);
+			for (ClassEntry entry : partition) {
+				classPartitions.put(entry, partition);
+			}
+		}
+	}
+
+	private void removePartition(ClassEntry entry, Set<ClassEntry> unassignedClasses) {
+		Set<ClassEntry> partition = classPartitions.get(entry);
+		if (partition == null) {
+			return;
+		}
+
+		partitions.remove(partition);
+		for (ClassEntry member : partition) {
+			classPartitions.remove(member);
+			unassignedClasses.add(member);
+		}
+	}
 }
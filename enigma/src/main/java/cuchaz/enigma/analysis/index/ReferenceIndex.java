@@ -10,9 +10,30 @@ import cuchaz.enigma.translation.representation.MethodDescriptor;
 import cuchaz.enigma.translation.representation.TypeDescriptor;
 import cuchaz.enigma.translation.representation.entry.*;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 
+import static cuchaz.enigma.utils.Utils.withLock;
+
+/**
+ * Indexes the references between classes, fields and methods.
+ *
+ * <p>References are collected into multimaps while indexing, and moved into a
+ * {@link CompactReferenceStore} once the index is processed. Indexing more classes afterwards
+ * expands the store back into multimaps. Moving the references between the two is guarded by a
+ * lock, so that the index can be queried while classes are indexed again.</p>
+ *
+ * <p>The indexing methods don't lock: an index is only indexed into by the thread which owns it,
+ * either a shard or the index itself once {@link #prepareIndexing} expanded it.</p>
+ */
 public class ReferenceIndex implements JarIndexer {
 	private Multimap<MethodEntry, MethodEntry> methodReferences = HashMultimap.create();
 
@@ -22,9 +43,14 @@ public class ReferenceIndex implements JarIndexer {
 	private Multimap<ClassEntry, EntryReference<ClassEntry, FieldDefEntry>> fieldTypeReferences = HashMultimap.create();
 	private Multimap<ClassEntry, EntryReference<ClassEntry, MethodDefEntry>> methodTypeReferences = HashMultimap.create();
 
+	@Nullable
+	private Compacted compacted;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
 	@Override
 	public void indexMethod(MethodDefEntry methodEntry) {
-	    indexMethodDescriptor(methodEntry, methodEntry.getDesc());
+		indexMethodDescriptor(methodEntry, methodEntry.getDesc());
 	}
 
 	private void indexMethodDescriptor(MethodDefEntry entry, MethodDescriptor descriptor) {
@@ -45,7 +71,7 @@ public class ReferenceIndex implements JarIndexer {
 
 	@Override
 	public void indexField(FieldDefEntry fieldEntry) {
-	    indexFieldTypeDescriptor(fieldEntry, fieldEntry.getDesc());
+		indexFieldTypeDescriptor(fieldEntry, fieldEntry.getDesc());
 	}
 
 	private void indexFieldTypeDescriptor(FieldDefEntry field, TypeDescriptor typeDescriptor) {
@@ -86,14 +112,188 @@ public class ReferenceIndex implements JarIndexer {
 		indexMethodDescriptor(callerEntry, lambda.getInstantiatedMethodType());
 	}
 
+	/**
+	 * Expands the store, so that more classes can be indexed into the multimaps.
+	 */
+	void prepareIndexing() {
+		withLock(lock.writeLock(), this::expand);
+	}
+
+	void writeSnapshot(SnapshotOutput out) throws IOException {
+		lock.readLock().lock();
+		try {
+			// snapshots store the multimaps, so that their format does not depend on the compact store
+			Compacted compacted = this.compacted;
+			out.writeMultimap(compacted != null ? compacted.methodReferences().expand() : methodReferences, out::writeEntry, out::writeEntry);
+			out.writeMultimap(compacted != null ? compacted.referencesToMethods().expand() : referencesToMethods, out::writeEntry, out::writeReference);
+			out.writeMultimap(compacted != null ? compacted.referencesToClasses().expand() : referencesToClasses, out::writeEntry, out::writeReference);
+			out.writeMultimap(compacted != null ? compacted.referencesToFields().expand() : referencesToFields, out::writeEntry, out::writeReference);
+			out.writeMultimap(compacted != null ? compacted.fieldTypeReferences().expand() : fieldTypeReferences, out::writeEntry, out::writeReference);
+			out.writeMultimap(compacted != null ? compacted.methodTypeReferences().expand() : methodTypeReferences, out::writeEntry, out::writeReference);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	void readSnapshot(SnapshotInput in) throws IOException {
+		lock.writeLock().lock();
+		try {
+			expand();
+			in.readMultimap(methodReferences, in::readEntry, in::readEntry);
+			in.readMultimap(referencesToMethods, in::readEntry, in::readReference);
+			in.readMultimap(referencesToClasses, in::readEntry, in::readReference);
+			in.readMultimap(referencesToFields, in::readEntry, in::readReference);
+			in.readMultimap(fieldTypeReferences, in::readEntry, in::readReference);
+			in.readMultimap(methodTypeReferences, in::readEntry, in::readReference);
+
+			// snapshots are written once the index is processed
+			compact();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	void mergeShard(ReferenceIndex shard) {
+		// the shard is only used by the thread merging it, so it isn't locked
+		withLock(lock.writeLock(), () -> {
+			expand();
+			shard.expand();
+			methodReferences.putAll(shard.methodReferences);
+			referencesToMethods.putAll(shard.referencesToMethods);
+			referencesToClasses.putAll(shard.referencesToClasses);
+			referencesToFields.putAll(shard.referencesToFields);
+			fieldTypeReferences.putAll(shard.fieldTypeReferences);
+			methodTypeReferences.putAll(shard.methodTypeReferences);
+		});
+	}
+
 	@Override
 	public void processIndex(JarIndex index) {
-		methodReferences = remapReferences(index, methodReferences);
-		referencesToMethods = remapReferencesTo(index, referencesToMethods);
-		referencesToClasses = remapReferencesTo(index, referencesToClasses);
-		referencesToFields = remapReferencesTo(index, referencesToFields);
-		fieldTypeReferences = remapReferencesTo(index, fieldTypeReferences);
-		methodTypeReferences = remapReferencesTo(index, methodTypeReferences);
+		withLock(lock.writeLock(), () -> {
+			expand();
+
+			methodReferences = remapReferences(index, methodReferences);
+			referencesToMethods = remapReferencesTo(index, referencesToMethods);
+			referencesToClasses = remapReferencesTo(index, referencesToClasses);
+			referencesToFields = remapReferencesTo(index, referencesToFields);
+			fieldTypeReferences = remapReferencesTo(index, fieldTypeReferences);
+			methodTypeReferences = remapReferencesTo(index, methodTypeReferences);
+
+			compact();
+		});
+	}
+
+	// callers hold the write lock
+	private void compact() {
+		CompactReferenceStore store = new CompactReferenceStore();
+		compacted = new Compacted(
+				store,
+				store.compactEntries(methodReferences),
+				store.compactReferences(referencesToMethods),
+				store.compactReferences(referencesToClasses),
+				store.compactReferences(referencesToFields),
+				store.compactReferences(fieldTypeReferences),
+				store.compactReferences(methodTypeReferences)
+		);
+
+		methodReferences = HashMultimap.create();
+		referencesToMethods = HashMultimap.create();
+		referencesToClasses = HashMultimap.create();
+		referencesToFields = HashMultimap.create();
+		fieldTypeReferences = HashMultimap.create();
+		methodTypeReferences = HashMultimap.create();
+	}
+
+	/**
+	 * Replaces the references made from the given classes with the references of a processed shard.
+	 *
+	 * <p>Unlike {@link #mergeShard}, the index stays compacted, and only the rows of the store are
+	 * rebuilt. The tables of the store are never shrunk by an update, so the store is compacted
+	 * again once most of its entries belong to references which were replaced.</p>
+	 */
+	void replaceReferences(Set<ClassEntry> classes, ReferenceIndex shard) {
+		withLock(lock.writeLock(), () -> {
+			if (compacted == null) {
+				compact();
+			}
+
+			shard.expand();
+
+			Compacted compacted = this.compacted;
+			boolean[] removedContexts = compacted.store().findContexts(classes);
+			this.compacted = new Compacted(
+					compacted.store(),
+					compacted.methodReferences().update(removedContexts, shard.methodReferences),
+					compacted.referencesToMethods().update(removedContexts, shard.referencesToMethods),
+					compacted.referencesToClasses().update(removedContexts, shard.referencesToClasses),
+					compacted.referencesToFields().update(removedContexts, shard.referencesToFields),
+					compacted.fieldTypeReferences().update(removedContexts, shard.fieldTypeReferences),
+					compacted.methodTypeReferences().update(removedContexts, shard.methodTypeReferences)
+			);
+
+			if (this.compacted.store().isSparse(this.compacted.rows())) {
+				expand();
+				compact();
+			}
+		});
+	}
+
+	/**
+	 * Returns the classes which make a reference to one of the matching entries.
+	 */
+	Set<ClassEntry> getReferencingClasses(Predicate<Entry<?>> referencedEntries) {
+		return withLock(lock.writeLock(), () -> {
+			if (compacted == null) {
+				compact();
+			}
+
+			Set<ClassEntry> classes = new HashSet<>();
+			compacted.referencesToMethods().collectReferencingClasses(referencedEntries, classes);
+			compacted.referencesToClasses().collectReferencingClasses(referencedEntries, classes);
+			compacted.referencesToFields().collectReferencingClasses(referencedEntries, classes);
+			compacted.fieldTypeReferences().collectReferencingClasses(referencedEntries, classes);
+			compacted.methodTypeReferences().collectReferencingClasses(referencedEntries, classes);
+			return classes;
+		});
+	}
+
+	/**
+	 * Returns the entries which are referenced from the indexed classes, through a member reference
+	 * or the type of a member.
+	 */
+	Set<Entry<?>> getReferencedEntries() {
+		return withLock(lock.readLock(), () -> {
+			Set<Entry<?>> entries = new HashSet<>();
+			if (compacted != null) {
+				compacted.referencesToMethods().collectKeys(entries);
+				compacted.referencesToFields().collectKeys(entries);
+				compacted.fieldTypeReferences().collectKeys(entries);
+				compacted.methodTypeReferences().collectKeys(entries);
+			} else {
+				entries.addAll(referencesToMethods.keySet());
+				entries.addAll(referencesToFields.keySet());
+				entries.addAll(fieldTypeReferences.keySet());
+				entries.addAll(methodTypeReferences.keySet());
+			}
+
+			return entries;
+		});
+	}
+
+	// callers hold the write lock
+	private void expand() {
+		Compacted compacted = this.compacted;
+		if (compacted == null) {
+			return;
+		}
+
+		methodReferences = compacted.methodReferences().expand();
+		referencesToMethods = compacted.referencesToMethods().expand();
+		referencesToClasses = compacted.referencesToClasses().expand();
+		referencesToFields = compacted.referencesToFields().expand();
+		fieldTypeReferences = compacted.fieldTypeReferences().expand();
+		methodTypeReferences = compacted.methodTypeReferences().expand();
+		this.compacted = null;
 	}
 
 	private <K extends Entry<?>, V extends Entry<?>> Multimap<K, V> remapReferences(JarIndex index, Multimap<K, V> multimap) {
@@ -123,26 +323,40 @@ public class ReferenceIndex implements JarIndexer {
 	}
 
 	public Collection<MethodEntry> getMethodsReferencedBy(MethodEntry entry) {
-		return methodReferences.get(entry);
+		return withLock(lock.readLock(), () -> compacted != null ? compacted.methodReferences().get(entry) : methodReferences.get(entry));
 	}
 
 	public Collection<EntryReference<FieldEntry, MethodDefEntry>> getReferencesToField(FieldEntry entry) {
-		return referencesToFields.get(entry);
+		return withLock(lock.readLock(), () -> compacted != null ? compacted.referencesToFields().get(entry) : referencesToFields.get(entry));
 	}
 
 	public Collection<EntryReference<ClassEntry, MethodDefEntry>> getReferencesToClass(ClassEntry entry) {
-		return referencesToClasses.get(entry);
+		return withLock(lock.readLock(), () -> compacted != null ? compacted.referencesToClasses().get(entry) : referencesToClasses.get(entry));
 	}
 
 	public Collection<EntryReference<MethodEntry, MethodDefEntry>> getReferencesToMethod(MethodEntry entry) {
-		return referencesToMethods.get(entry);
+		return withLock(lock.readLock(), () -> compacted != null ? compacted.referencesToMethods().get(entry) : referencesToMethods.get(entry));
 	}
 
 	public Collection<EntryReference<ClassEntry, FieldDefEntry>> getFieldTypeReferencesToClass(ClassEntry entry) {
-		return fieldTypeReferences.get(entry);
+		return withLock(lock.readLock(), () -> compacted != null ? compacted.fieldTypeReferences().get(entry) : fieldTypeReferences.get(entry));
 	}
 
 	public Collection<EntryReference<ClassEntry, MethodDefEntry>> getMethodTypeReferencesToClass(ClassEntry entry) {
-		return methodTypeReferences.get(entry);
+		return withLock(lock.readLock(), () -> compacted != null ? compacted.methodTypeReferences().get(entry) : methodTypeReferences.get(entry));
+	}
+
+	private record Compacted(
+			CompactReferenceStore store,
+			CompactReferenceStore.EntryRows<MethodEntry, MethodEntry> methodReferences,
+			CompactReferenceStore.ReferenceRows<MethodEntry, MethodDefEntry> referencesToMethods,
+			CompactReferenceStore.ReferenceRows<ClassEntry, MethodDefEntry> referencesToClasses,
+			CompactReferenceStore.ReferenceRows<FieldEntry, MethodDefEntry> referencesToFields,
+			CompactReferenceStore.ReferenceRows<ClassEntry, FieldDefEntry> fieldTypeReferences,
+			CompactReferenceStore.ReferenceRows<ClassEntry, MethodDefEntry> methodTypeReferences
+	) {
+		List<CompactReferenceStore.Rows> rows() {
+			return List.of(methodReferences, referencesToMethods, referencesToClasses, referencesToFields, fieldTypeReferences, methodTypeReferences);
+		}
 	}
 }
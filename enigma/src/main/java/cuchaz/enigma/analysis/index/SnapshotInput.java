@@ -0,0 +1,206 @@
+package cuchaz.enigma.analysis.index;
+
+import com.google.common.collect.Multimap;
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.ReferenceTargetType;
+import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.Signature;
+import cuchaz.enigma.translation.representation.TypeDescriptor;
+import cuchaz.enigma.translation.representation.entry.*;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static cuchaz.enigma.analysis.index.SnapshotOutput.*;
+
+/**
+ * Reads the state of a {@link JarIndex} written by {@link SnapshotOutput}.
+ *
+ * <p>Plain entries and descriptors are interned through the {@link EntryPool} of the index they are
+ * read into, so that they are shared with the entries created when classes are reindexed later.</p>
+ */
+final class SnapshotInput {
+	private final DataInputStream in;
+	private final EntryPool entryPool;
+	private final List<String> strings = new ArrayList<>();
+	private final List<Entry<?>> entries = new ArrayList<>();
+
+	SnapshotInput(DataInputStream in, EntryPool entryPool) {
+		this.in = in;
+		this.entryPool = entryPool;
+	}
+
+	int readInt() throws IOException {
+		return in.readInt();
+	}
+
+	boolean readBoolean() throws IOException {
+		return in.readBoolean();
+	}
+
+	int readVarInt() throws IOException {
+		int value = 0;
+		int shift = 0;
+		int b;
+
+		do {
+			if (shift > 28) {
+				throw new IOException("VarInt too long");
+			}
+
+			b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		return value;
+	}
+
+	String readString() throws IOException {
+		switch (readVarInt()) {
+			case NULL:
+				return null;
+			case REFERENCE:
+				return strings.get(readVarInt());
+			case NEW:
+				String value = in.readUTF();
+				strings.add(value);
+				return value;
+			default:
+				throw new IOException("Invalid string tag");
+		}
+	}
+
+	AccessFlags readAccess() throws IOException {
+		return new AccessFlags(readVarInt());
+	}
+
+	@SuppressWarnings("unchecked")
+	<E extends Entry<?>> E readEntry() throws IOException {
+		switch (readVarInt()) {
+			case NULL:
+				return null;
+			case REFERENCE:
+				return (E) entries.get(readVarInt());
+			case NEW:
+				int id = entries.size();
+				entries.add(null);
+				Entry<?> entry = readNewEntry();
+				entries.set(id, entry);
+				return (E) entry;
+			default:
+				throw new IOException("Invalid entry tag");
+		}
+	}
+
+	private Entry<?> readNewEntry() throws IOException {
+		int kind = in.readUnsignedByte();
+		switch (kind) {
+			case CLASS_DEF: {
+				ClassEntry parent = readEntry();
+				String name = readString();
+				Signature signature = Signature.createSignature(readString());
+				AccessFlags access = readAccess();
+				ClassEntry superClass = readEntry();
+				ClassEntry[] interfaces = new ClassEntry[readVarInt()];
+				for (int i = 0; i < interfaces.length; i++) {
+					interfaces[i] = readEntry();
+				}
+
+				return new ClassDefEntry(parent, name, signature, access, superClass, interfaces);
+			}
+			case CLASS: {
+				ClassEntry parent = readEntry();
+				String name = readString();
+				return entryPool.getClass(parent != null ? parent.getFullName() + "$" + name : name);
+			}
+			case FIELD_DEF: {
+				ClassEntry parent = readEntry();
+				String name = readString();
+				TypeDescriptor desc = entryPool.getTypeDescriptor(readString());
+				Signature signature = Signature.createTypedSignature(readString());
+				return new FieldDefEntry(parent, name, desc, signature, readAccess());
+			}
+			case FIELD: {
+				ClassEntry parent = readEntry();
+				String name = readString();
+				return entryPool.getField(parent.getFullName(), name, readString());
+			}
+			case METHOD_DEF: {
+				ClassEntry parent = readEntry();
+				String name = readString();
+				MethodDescriptor desc = entryPool.getMethodDescriptor(readString());
+				Signature signature = Signature.createSignature(readString());
+				return new MethodDefEntry(parent, name, desc, signature, readAccess());
+			}
+			case METHOD: {
+				ClassEntry parent = readEntry();
+				String name = readString();
+				return entryPool.getMethod(parent.getFullName(), name, readString());
+			}
+			default:
+				throw new IOException("Invalid entry kind " + kind);
+		}
+	}
+
+	<E extends Entry<?>, C extends Entry<?>> EntryReference<E, C> readReference() throws IOException {
+		E entry = readEntry();
+		C context = readEntry();
+		boolean named = readBoolean();
+		boolean declaration = readBoolean();
+		ReferenceTargetType targetType = readTargetType();
+
+		// the source name is only used to decide whether the reference is named
+		String sourceName = named ? entry.getName() : null;
+		if (declaration) {
+			return EntryReference.declaration(entry, sourceName);
+		}
+
+		return new EntryReference<>(entry, sourceName, context, targetType);
+	}
+
+	private ReferenceTargetType readTargetType() throws IOException {
+		int kind = in.readUnsignedByte();
+		if (kind >= ReferenceTargetType.Kind.values().length) {
+			throw new IOException("Invalid target type " + kind);
+		}
+
+		return switch (ReferenceTargetType.Kind.values()[kind]) {
+			case NONE -> ReferenceTargetType.none();
+			case UNINITIALIZED -> ReferenceTargetType.uninitialized();
+			case CLASS_TYPE -> ReferenceTargetType.classType(readEntry());
+		};
+	}
+
+	<T> void readCollection(Collection<T> values, ValueReader<? extends T> reader) throws IOException {
+		int size = readVarInt();
+		for (int i = 0; i < size; i++) {
+			values.add(reader.read());
+		}
+	}
+
+	<K, V> void readMap(Map<K, V> map, ValueReader<? extends K> keyReader, ValueReader<? extends V> valueReader) throws IOException {
+		int size = readVarInt();
+		for (int i = 0; i < size; i++) {
+			map.put(keyReader.read(), valueReader.read());
+		}
+	}
+
+	<K, V> void readMultimap(Multimap<K, V> multimap, ValueReader<? extends K> keyReader, ValueReader<? extends V> valueReader) throws IOException {
+		int keyCount = readVarInt();
+		for (int i = 0; i < keyCount; i++) {
+			K key = keyReader.read();
+			readCollection(multimap.get(key), valueReader);
+		}
+	}
+
+	@FunctionalInterface
+	interface ValueReader<T> {
+		T read() throws IOException;
+	}
+}
@@ -0,0 +1,191 @@
+package cuchaz.enigma.analysis.index;
+
+import com.google.common.collect.Multimap;
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.ReferenceTargetType;
+import cuchaz.enigma.translation.representation.AccessFlags;
+import cuchaz.enigma.translation.representation.Signature;
+import cuchaz.enigma.translation.representation.entry.*;
+
+import javax.annotation.Nullable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Writes the state of a {@link JarIndex} for {@link JarIndexCache}.
+ *
+ * <p>Strings and entries are written once and referred to by id afterwards. Definition entries are
+ * deduplicated by identity, so that entries shared between indexes are shared again when read back.</p>
+ */
+final class SnapshotOutput {
+	static final int NULL = 0;
+	static final int REFERENCE = 1;
+	static final int NEW = 2;
+
+	static final int CLASS = 0;
+	static final int CLASS_DEF = 1;
+	static final int FIELD = 2;
+	static final int FIELD_DEF = 3;
+	static final int METHOD = 4;
+	static final int METHOD_DEF = 5;
+
+	private final DataOutputStream out;
+	private final Map<String, Integer> stringIds = new HashMap<>();
+	private final Map<Entry<?>, Integer> entryIds = new HashMap<>();
+	private final Map<Entry<?>, Integer> defEntryIds = new IdentityHashMap<>();
+	private int nextEntryId;
+
+	SnapshotOutput(DataOutputStream out) {
+		this.out = out;
+	}
+
+	void writeInt(int value) throws IOException {
+		out.writeInt(value);
+	}
+
+	void writeBoolean(boolean value) throws IOException {
+		out.writeBoolean(value);
+	}
+
+	void writeVarInt(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.writeByte(value);
+	}
+
+	void writeString(@Nullable String value) throws IOException {
+		if (value == null) {
+			writeVarInt(NULL);
+			return;
+		}
+
+		Integer id = stringIds.get(value);
+		if (id != null) {
+			writeVarInt(REFERENCE);
+			writeVarInt(id);
+			return;
+		}
+
+		stringIds.put(value, stringIds.size());
+		writeVarInt(NEW);
+		out.writeUTF(value);
+	}
+
+	void writeAccess(AccessFlags access) throws IOException {
+		writeVarInt(access.getFlags());
+	}
+
+	void writeEntry(@Nullable Entry<?> entry) throws IOException {
+		if (entry == null) {
+			writeVarInt(NULL);
+			return;
+		}
+
+		Map<Entry<?>, Integer> ids = entry instanceof DefEntry ? defEntryIds : entryIds;
+		Integer id = ids.get(entry);
+		if (id != null) {
+			writeVarInt(REFERENCE);
+			writeVarInt(id);
+			return;
+		}
+
+		// ids are assigned before the contents are written, the reader reserves them in the same order
+		ids.put(entry, nextEntryId++);
+		writeVarInt(NEW);
+
+		if (entry instanceof ClassDefEntry classEntry) {
+			out.writeByte(CLASS_DEF);
+			writeEntry(classEntry.getParent());
+			writeString(classEntry.getName());
+			writeString(classEntry.getSignature().getSignature());
+			writeAccess(classEntry.getAccess());
+			writeEntry(classEntry.getSuperClass());
+			writeVarInt(classEntry.getInterfaces().length);
+			for (ClassEntry interfaceEntry : classEntry.getInterfaces()) {
+				writeEntry(interfaceEntry);
+			}
+		} else if (entry instanceof ClassEntry classEntry) {
+			out.writeByte(CLASS);
+			writeEntry(classEntry.getParent());
+			writeString(classEntry.getName());
+		} else if (entry instanceof FieldDefEntry fieldEntry) {
+			out.writeByte(FIELD_DEF);
+			writeEntry(fieldEntry.getParent());
+			writeString(fieldEntry.getName());
+			writeString(fieldEntry.getDesc().toString());
+			writeSignature(fieldEntry.getSignature());
+			writeAccess(fieldEntry.getAccess());
+		} else if (entry instanceof FieldEntry fieldEntry) {
+			out.writeByte(FIELD);
+			writeEntry(fieldEntry.getParent());
+			writeString(fieldEntry.getName());
+			writeString(fieldEntry.getDesc().toString());
+		} else if (entry instanceof MethodDefEntry methodEntry) {
+			out.writeByte(METHOD_DEF);
+			writeEntry(methodEntry.getParent());
+			writeString(methodEntry.getName());
+			writeString(methodEntry.getDesc().toString());
+			writeSignature(methodEntry.getSignature());
+			writeAccess(methodEntry.getAccess());
+		} else if (entry instanceof MethodEntry methodEntry) {
+			out.writeByte(METHOD);
+			writeEntry(methodEntry.getParent());
+			writeString(methodEntry.getName());
+			writeString(methodEntry.getDesc().toString());
+		} else {
+			throw new IllegalArgumentException("Cannot write entry " + entry + " of type " + entry.getClass().getName());
+		}
+	}
+
+	private void writeSignature(Signature signature) throws IOException {
+		writeString(signature.getSignature());
+	}
+
+	void writeReference(EntryReference<?, ?> reference) throws IOException {
+		writeEntry(reference.entry);
+		writeEntry(reference.context);
+		writeBoolean(reference.isNamed());
+		writeBoolean(reference.isDeclaration());
+
+		ReferenceTargetType targetType = reference.targetType;
+		out.writeByte(targetType.getKind().ordinal());
+		if (targetType instanceof ReferenceTargetType.ClassType classType) {
+			writeEntry(classType.getEntry());
+		}
+	}
+
+	<T> void writeCollection(Collection<T> values, ValueWriter<? super T> writer) throws IOException {
+		writeVarInt(values.size());
+		for (T value : values) {
+			writer.write(value);
+		}
+	}
+
+	<K, V> void writeMap(Map<K, V> map, ValueWriter<? super K> keyWriter, ValueWriter<? super V> valueWriter) throws IOException {
+		writeVarInt(map.size());
+		for (Map.Entry<K, V> entry : map.entrySet()) {
+			keyWriter.write(entry.getKey());
+			valueWriter.write(entry.getValue());
+		}
+	}
+
+	<K, V> void writeMultimap(Multimap<K, V> multimap, ValueWriter<? super K> keyWriter, ValueWriter<? super V> valueWriter) throws IOException {
+		writeVarInt(multimap.keySet().size());
+		for (Map.Entry<K, Collection<V>> entry : multimap.asMap().entrySet()) {
+			keyWriter.write(entry.getKey());
+			writeCollection(entry.getValue(), valueWriter);
+		}
+	}
+
+	@FunctionalInterface
+	interface ValueWriter<T> {
+		void write(T value) throws IOException;
+	}
+}
@@ -67,6 +67,15 @@ public interface ClassHandle extends AutoCloseable {
 
 	void invalidateJavadoc();
 
+	/**
+	 * Marks whether this class handle is currently shown to the user. Classes
+	 * with a visible handle are decompiled and remapped before all other
+	 * classes.
+	 *
+	 * @param visible whether the class handle is visible
+	 */
+	void setVisible(boolean visible);
+
 	/**
 	 * Adds a listener for this class handle.
 	 *
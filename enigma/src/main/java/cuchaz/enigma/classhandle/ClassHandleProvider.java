@@ -2,33 +2,47 @@ package cuchaz.enigma.classhandle;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
 
 import javax.annotation.Nullable;
 
 import cuchaz.enigma.EnigmaProject;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.classhandle.DecompileScheduler.Priority;
+import cuchaz.enigma.classhandle.DecompileScheduler.Stage;
 import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassCacheSettings;
+import cuchaz.enigma.classprovider.ClassProvider;
 import cuchaz.enigma.classprovider.ObfuscationFixClassProvider;
 import cuchaz.enigma.events.ClassHandleListener;
 import cuchaz.enigma.events.ClassHandleListener.InvalidationType;
 import cuchaz.enigma.source.*;
+import cuchaz.enigma.translation.mapping.EntryResolver;
+import cuchaz.enigma.translation.mapping.ResolutionStrategy;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import cuchaz.enigma.translation.representation.entry.ParentedEntry;
 import cuchaz.enigma.utils.Result;
 
 import static cuchaz.enigma.utils.Utils.withLock;
 
 public final class ClassHandleProvider {
 
+	private static final int MAX_PREFETCHED_CLASSES = 32;
+
 	private final EnigmaProject project;
 
-	private final ExecutorService pool = Executors.newWorkStealingPool();
+	private final DecompileScheduler scheduler = new DecompileScheduler(Runtime.getRuntime().availableProcessors());
 	private DecompilerService ds;
 	private Decompiler decompiler;
+	private final SourcePrefetcher prefetcher = new SourcePrefetcher(scheduler, entry -> decompiler.getSource(entry.getFullName(), null));
 
 	private final Map<ClassEntry, Entry> handles = new HashMap<>();
 
@@ -72,6 +86,7 @@ public final class ClassHandleProvider {
 
 		this.ds = ds;
 		this.decompiler = createDecompiler();
+		prefetcher.invalidate();
 		withLock(lock.readLock(), () -> {
 			handles.values().forEach(Entry::invalidate);
 		});
@@ -87,7 +102,12 @@ public final class ClassHandleProvider {
 	}
 
 	private Decompiler createDecompiler() {
-		return ds.create(new CachingClassProvider(new ObfuscationFixClassProvider(project.getClassProvider(), project.getJarIndex())), new SourceSettings(true, true));
+		ClassProvider classProvider = new CachingClassProvider(new ObfuscationFixClassProvider(project.getClassProvider(), project.getJarIndex()), project.getEnigma().getProfile().getClassCacheSettings().share(ClassCacheSettings.DECOMPILER_SHARE));
+		SourceSettings settings = new SourceSettings(true, true);
+		Decompiler decompiler = ds.create(classProvider, settings);
+
+		DecompiledSourceCache sourceCache = project.getEnigma().getSourceCache();
+		return sourceCache != null ? new CachingDecompiler(decompiler, classProvider, settings, sourceCache) : decompiler;
 	}
 
 	/**
@@ -117,6 +137,42 @@ public final class ClassHandleProvider {
 		});
 	}
 
+	/**
+	 * Invalidates mappings after an entry was renamed. Only the tokens which
+	 * are affected by the rename are remapped again, and classes without any
+	 * such token are left alone.
+	 *
+	 * @param renamedEntry the obfuscated entry which was renamed
+	 */
+	public void invalidateRenamed(cuchaz.enigma.translation.representation.entry.Entry<?> renamedEntry) {
+		Set<cuchaz.enigma.translation.representation.entry.Entry<?>> renamedEntries = collectRenamedEntries(renamedEntry);
+		withLock(lock.readLock(), () -> {
+			handles.values().forEach(e -> e.invalidateRenamed(renamedEntries));
+		});
+	}
+
+	/**
+	 * Collects the entries whose names change with the given entry, the same
+	 * way {@link cuchaz.enigma.translation.mapping.EntryRemapper} stores the
+	 * mapping.
+	 */
+	private Set<cuchaz.enigma.translation.representation.entry.Entry<?>> collectRenamedEntries(cuchaz.enigma.translation.representation.entry.Entry<?> renamedEntry) {
+		EntryResolver resolver = project.getMapper().getObfResolver();
+		Set<cuchaz.enigma.translation.representation.entry.Entry<?>> renamedEntries = new HashSet<>();
+		renamedEntries.add(renamedEntry);
+
+		for (cuchaz.enigma.translation.representation.entry.Entry<?> root : resolver.resolveEntry(renamedEntry, ResolutionStrategy.RESOLVE_ROOT)) {
+			renamedEntries.addAll(resolver.resolveEquivalentEntries(root));
+		}
+
+		// renaming a record component also renames its getter
+		if (renamedEntry instanceof FieldEntry field) {
+			renamedEntries.add(new MethodEntry(field.getParent(), field.getName(), new MethodDescriptor("()" + field.getDesc())));
+		}
+
+		return renamedEntries;
+	}
+
 	/**
 	 * Invalidates all javadoc. This causes all open class handles to be
 	 * re-remapped.
@@ -146,10 +202,64 @@ public final class ClassHandleProvider {
 		});
 	}
 
+	/**
+	 * Schedules decompilation of the classes the user is likely to open after
+	 * the given class in the background: its outer and inner classes, its
+	 * super types and the classes referenced from its source. Replaces the
+	 * classes scheduled for any previously opened class.
+	 *
+	 * @param entry the class which was opened
+	 * @param index the obfuscated source index of the class
+	 */
+	private void prefetchAround(ClassEntry entry, SourceIndex index) {
+		JarIndex jarIndex = project.getJarIndex();
+		Set<ClassEntry> candidates = new LinkedHashSet<>();
+
+		candidates.add(entry.getOutermostClass());
+		for (ParentedEntry<?> child : jarIndex.getChildrenByClass().get(entry)) {
+			if (child instanceof ClassEntry) {
+				candidates.add(((ClassEntry) child).getOutermostClass());
+			}
+		}
+
+		for (ClassEntry parent : jarIndex.getInheritanceIndex().getParents(entry)) {
+			candidates.add(parent.getOutermostClass());
+		}
+
+		for (Token token : index.referenceTokens()) {
+			candidates.add(index.getReference(token).entry.getContainingClass().getOutermostClass());
+		}
+
+		List<ClassEntry> classes = withLock(lock.readLock(), () -> candidates.stream()
+				.filter(candidate -> !handles.containsKey(candidate) && jarIndex.getEntryIndex().hasClass(candidate))
+				.limit(MAX_PREFETCHED_CLASSES)
+				.toList());
+		prefetcher.prefetch(classes);
+	}
+
+	/**
+	 * Stops decompiling classes in the background. Classes which were already
+	 * decompiled in the background are kept until they're opened.
+	 */
+	public void cancelPrefetch() {
+		prefetcher.cancel();
+	}
+
+	/**
+	 * Gets the scheduler decompilation runs on, which provides metrics on
+	 * its queue and on the time spent in each stage.
+	 *
+	 * @return the scheduler of this class handle provider
+	 */
+	public DecompileScheduler getScheduler() {
+		return scheduler;
+	}
+
 	private void deleteEntry(Entry entry) {
 		withLock(lock.writeLock(), () -> {
 			handles.remove(entry.entry);
 		});
+		scheduler.removeOwner(entry);
 	}
 
 	/**
@@ -162,9 +272,10 @@ public final class ClassHandleProvider {
 	 * be used.
 	 */
 	public void destroy() {
-		pool.shutdown();
+		prefetcher.invalidate();
+		scheduler.shutdown();
 		try {
-			pool.awaitTermination(30, TimeUnit.SECONDS);
+			scheduler.awaitTermination(30, TimeUnit.SECONDS);
 		} catch (InterruptedException e) {
 			throw new RuntimeException(e);
 		}
@@ -182,7 +293,7 @@ public final class ClassHandleProvider {
 		private ClassEntry deobfRef;
 		private final List<ClassHandleImpl> handles = new ArrayList<>();
 		private Result<Source, ClassHandleError> uncommentedSource;
-		private Result<DecompiledClassSource, ClassHandleError> source;
+		private volatile MappedSource source;
 
 		private final List<CompletableFuture<Result<Source, ClassHandleError>>> waitingUncommentedSources = Collections.synchronizedList(new ArrayList<>());
 		private final List<CompletableFuture<Result<DecompiledClassSource, ClassHandleError>>> waitingSources = Collections.synchronizedList(new ArrayList<>());
@@ -191,6 +302,7 @@ public final class ClassHandleProvider {
 		private final AtomicInteger javadocVersion = new AtomicInteger();
 		private final AtomicInteger indexVersion = new AtomicInteger();
 		private final AtomicInteger mappedVersion = new AtomicInteger();
+		private final AtomicBoolean prefetchPending = new AtomicBoolean(true);
 
 		private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -238,55 +350,90 @@ public final class ClassHandleProvider {
 		public void invalidateMapped() {
 			checkDeobfRefForUpdate();
 			withLock(lock.readLock(), () -> new ArrayList<>(handles)).forEach(h -> h.onInvalidate(InvalidationType.MAPPINGS));
-			continueMapSource(CompletableFuture.completedFuture(source));
+			MappedSource source = this.source;
+			continueMapSource(CompletableFuture.completedFuture(source != null ? source.result() : null));
+		}
+
+		public void invalidateRenamed(Set<cuchaz.enigma.translation.representation.entry.Entry<?>> renamedEntries) {
+			checkDeobfRefForUpdate();
+
+			// a source which is still being remapped may not include the new name yet
+			MappedSource mapped = this.source;
+			if (mapped == null || mapped.result().isErr() || mapped.version() != mappedVersion.get()) {
+				invalidateMapped();
+				return;
+			}
+
+			DecompiledClassSource source = mapped.result().unwrap();
+			if (!source.isAffectedByRename(p.project, renamedEntries)) {
+				return;
+			}
+
+			withLock(lock.readLock(), () -> new ArrayList<>(handles)).forEach(h -> h.onInvalidate(InvalidationType.MAPPINGS));
+			int nv = mappedVersion.incrementAndGet();
+			completeMapSource(nv, schedule(Stage.MAP, mappedVersion, nv, () ->
+					Result.ok(source.remapEntries(p.project, p.project.getMapper().getDeobfuscator(), renamedEntries))
+			));
+		}
+
+		/**
+		 * Schedules a stage for this class, which is dropped if the stage is
+		 * invalidated again before it starts.
+		 */
+		private <T> CompletableFuture<T> schedule(Stage stage, AtomicInteger version, int v, Supplier<T> task) {
+			if (version.get() != v) return CompletableFuture.completedFuture(null);
+			return p.scheduler.submit(this, stage, version::get, v, () -> version.get() != v ? null : task.get());
 		}
 
 		private CompletableFuture<Result<Source, ClassHandleError>> decompile() {
 			int v = decompileVersion.incrementAndGet();
-			return CompletableFuture.supplyAsync(() -> {
-				if (decompileVersion.get() != v) return null;
-
-				Result<Source, ClassHandleError> uncommentedSource = Result.ok(p.decompiler.getSource(entry.getFullName()));
+			return schedule(Stage.DECOMPILE, decompileVersion, v, () -> {
+				Source prefetched = p.prefetcher.take(entry);
+				Result<Source, ClassHandleError> uncommentedSource = Result.ok(prefetched != null ? prefetched : p.decompiler.getSource(entry.getFullName()));
 				Entry.this.uncommentedSource = uncommentedSource;
 				Entry.this.waitingUncommentedSources.forEach(f -> f.complete(uncommentedSource));
 				Entry.this.waitingUncommentedSources.clear();
 				withLock(lock.readLock(), () -> new ArrayList<>(handles)).forEach(h -> h.onUncommentedSourceChanged(uncommentedSource));
 				return uncommentedSource;
-			}, p.pool);
+			});
 		}
 
 		private CompletableFuture<Result<Source, ClassHandleError>> continueInsertJavadoc(CompletableFuture<Result<Source, ClassHandleError>> f) {
 			int v = javadocVersion.incrementAndGet();
-			return f.thenApplyAsync(res -> {
-				if (res == null || javadocVersion.get() != v) return null;
+			return f.thenCompose(res -> res == null ? CompletableFuture.completedFuture(null) : schedule(Stage.JAVADOC, javadocVersion, v, () -> {
 				Result<Source, ClassHandleError> jdSource = res.map(s -> s.withJavadocs(p.project.getMapper()));
 				withLock(lock.readLock(), () -> new ArrayList<>(handles)).forEach(h -> h.onDocsChanged(jdSource));
 				return jdSource;
-			}, p.pool);
+			}));
 		}
 
 		private CompletableFuture<Result<DecompiledClassSource, ClassHandleError>> continueIndexSource(CompletableFuture<Result<Source, ClassHandleError>> f) {
 			int v = indexVersion.incrementAndGet();
-			return f.thenApplyAsync(res -> {
-				if (res == null || indexVersion.get() != v) return null;
-				return res.andThen(jdSource -> {
-					SourceIndex index = jdSource.index();
-					index.resolveReferences(p.project.getMapper().getObfResolver());
-					DecompiledClassSource source = new DecompiledClassSource(entry, index);
-					return Result.ok(source);
-				});
-			}, p.pool).exceptionally(e -> Result.err(ClassHandleError.decompile(e)));
+			return f.thenCompose(res -> res == null ? CompletableFuture.completedFuture(null) : schedule(Stage.INDEX, indexVersion, v, () -> res.andThen(jdSource -> {
+				SourceIndex index = jdSource.index();
+				if (prefetchPending.getAndSet(false)) {
+					p.prefetchAround(entry, index);
+				}
+
+				index.resolveReferences(p.project.getMapper().getObfResolver());
+				DecompiledClassSource source = new DecompiledClassSource(entry, index);
+				return Result.ok(source);
+			}))).exceptionally(e -> Result.err(ClassHandleError.decompile(e)));
 		}
 
 		private void continueMapSource(CompletableFuture<Result<DecompiledClassSource, ClassHandleError>> f) {
 			int v = mappedVersion.incrementAndGet();
-			f.thenApplyAsync(res -> {
-				if (res == null || mappedVersion.get() != v) return null;
-				return res.andThen(source -> Result.ok(source.remapSource(p.project, p.project.getMapper().getDeobfuscator())));
-			}, p.pool).whenComplete((res, e) -> {
+			completeMapSource(v, f.thenCompose(res -> res == null ? CompletableFuture.completedFuture(null) : schedule(Stage.MAP, mappedVersion, v, () ->
+					res.andThen(source -> Result.ok(source.remapSource(p.project, p.project.getMapper().getDeobfuscator())))
+			)));
+		}
+
+		private void completeMapSource(int v, CompletableFuture<Result<DecompiledClassSource, ClassHandleError>> f) {
+			f.whenComplete((res, e) -> {
 				if (e != null) res = Result.err(ClassHandleError.remap(e));
 				if (res == null) return;
-				Entry.this.source = res;
+				Result<DecompiledClassSource, ClassHandleError> source = res;
+				Entry.this.source = new MappedSource(source, v);
 				Entry.this.waitingSources.forEach(s -> s.complete(source));
 				Entry.this.waitingSources.clear();
 				withLock(lock.readLock(), () -> new ArrayList<>(handles)).forEach(h -> h.onMappedSourceChanged(source));
@@ -295,12 +442,24 @@ public final class ClassHandleProvider {
 
 		public void closeHandle(ClassHandleImpl classHandle) {
 			classHandle.destroy();
-			withLock(lock.writeLock(), () -> {
+			boolean deleted = withLock(lock.writeLock(), () -> {
 				handles.remove(classHandle);
 				if (handles.isEmpty()) {
 					p.deleteEntry(this);
+					return true;
 				}
+
+				return false;
 			});
+
+			if (!deleted) {
+				updatePriority();
+			}
+		}
+
+		public void updatePriority() {
+			boolean visible = withLock(lock.readLock(), () -> handles.stream().anyMatch(ClassHandleImpl::isVisible));
+			p.scheduler.setPriority(this, visible ? Priority.VISIBLE : Priority.OPEN);
 		}
 
 		public void destroy() {
@@ -321,8 +480,9 @@ public final class ClassHandleProvider {
 		}
 
 		public CompletableFuture<Result<DecompiledClassSource, ClassHandleError>> getSourceAsync() {
+			MappedSource source = this.source;
 			if (source != null) {
-				return CompletableFuture.completedFuture(source);
+				return CompletableFuture.completedFuture(source.result());
 			} else {
 				CompletableFuture<Result<DecompiledClassSource, ClassHandleError>> f = new CompletableFuture<>();
 				waitingSources.add(f);
@@ -331,11 +491,18 @@ public final class ClassHandleProvider {
 		}
 	}
 
+	/**
+	 * A remapped source, along with the version of the map stage which produced it.
+	 */
+	private record MappedSource(Result<DecompiledClassSource, ClassHandleError> result, int version) {
+	}
+
 	private static final class ClassHandleImpl implements ClassHandle {
 
 		private final Entry entry;
 
 		private boolean valid = true;
+		private volatile boolean visible;
 
 		private final Set<ClassHandleListener> listeners = new HashSet<>();
 
@@ -343,6 +510,16 @@ public final class ClassHandleProvider {
 			this.entry = entry;
 		}
 
+		@Override
+		public void setVisible(boolean visible) {
+			this.visible = visible;
+			if (valid) this.entry.updatePriority();
+		}
+
+		public boolean isVisible() {
+			return visible;
+		}
+
 		@Override
 		public ClassEntry getRef() {
 			checkValid();
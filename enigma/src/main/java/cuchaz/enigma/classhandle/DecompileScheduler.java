@@ -0,0 +1,311 @@
+package cuchaz.enigma.classhandle;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Runs the stages of decompiling and remapping classes on a fixed set of
+ * threads, in order of the priority of the class they belong to.
+ *
+ * <p>Each task is owned by some object, usually the class it works on, and
+ * belongs to a version of that class. A task which was superseded by a
+ * newer version of the same stage is dropped before it is started, and its
+ * future completes with {@code null}, just like a stage which finds out it
+ * is outdated when it runs. Futures are never completed while the scheduler
+ * is locked, so their callbacks may take other locks and submit tasks.
+ */
+public final class DecompileScheduler {
+
+	/**
+	 * Priorities of tasks, from most to least urgent.
+	 */
+	public enum Priority {
+		/**
+		 * A class which is shown to the user.
+		 */
+		VISIBLE,
+		/**
+		 * A class which is open, but not shown.
+		 */
+		OPEN,
+		/**
+		 * A class which is not open yet.
+		 */
+		PREFETCH
+	}
+
+	public enum Stage {
+		DECOMPILE,
+		JAVADOC,
+		INDEX,
+		MAP
+	}
+
+	private final List<Thread> threads = new ArrayList<>();
+
+	private final PriorityQueue<Task<?>> queue = new PriorityQueue<>(Comparator.<Task<?>, Priority>comparing(task -> task.priority).thenComparingLong(task -> task.sequence));
+	private final Map<TaskKey, Task<?>> queuedTasks = new HashMap<>();
+	private final Map<Object, Priority> priorities = new HashMap<>();
+	private long nextSequence;
+	private boolean shutdown;
+
+	private final StageMetrics[] stageMetrics = new StageMetrics[Stage.values().length];
+
+	DecompileScheduler(int threadCount) {
+		for (Stage stage : Stage.values()) {
+			stageMetrics[stage.ordinal()] = new StageMetrics();
+		}
+
+		for (int i = 0; i < threadCount; i++) {
+			Thread thread = new Thread(this::runWorker, "Decompiler thread " + (i + 1));
+			thread.setDaemon(true);
+			threads.add(thread);
+			thread.start();
+		}
+	}
+
+	/**
+	 * Queues a task for the given owner.
+	 *
+	 * @param owner          the owner of the task
+	 * @param stage          the stage the task runs
+	 * @param currentVersion the current version of the stage for the owner
+	 * @param version        the version the task belongs to
+	 * @param task           the task
+	 * @return a future completed with the result of the task, or with
+	 * {@code null} if the task was superseded before it started or the
+	 * scheduler is shut down
+	 */
+	<T> CompletableFuture<T> submit(Object owner, Stage stage, IntSupplier currentVersion, int version, Supplier<T> task) {
+		Task<T> t = new Task<>(new TaskKey(owner, stage), currentVersion, version, task);
+		Task<?> dropped = enqueue(t);
+
+		if (dropped != null) {
+			dropped.future.complete(null);
+		}
+
+		return t.future;
+	}
+
+	/**
+	 * Queues a task, unless a newer version of it is queued already.
+	 *
+	 * @return the task which was dropped instead, if any
+	 */
+	private synchronized Task<?> enqueue(Task<?> t) {
+		if (shutdown) {
+			return t;
+		}
+
+		Task<?> queued = queuedTasks.get(t.key);
+		if (queued != null) {
+			if (queued.version > t.version) {
+				countCoalesced(t);
+				return t;
+			}
+
+			queue.remove(queued);
+			countCoalesced(queued);
+		}
+
+		t.priority = priorities.getOrDefault(t.key.owner(), Priority.OPEN);
+		t.sequence = nextSequence++;
+		t.queuedTime = System.nanoTime();
+		queuedTasks.put(t.key, t);
+		queue.add(t);
+		notify();
+		return queued;
+	}
+
+	/**
+	 * Sets the priority of the tasks of an owner, including the ones which
+	 * are queued already.
+	 */
+	synchronized void setPriority(Object owner, Priority priority) {
+		if (priorities.put(owner, priority) == priority) {
+			return;
+		}
+
+		List<Task<?>> tasks = new ArrayList<>();
+		for (Task<?> task : queuedTasks.values()) {
+			if (task.key.owner() == owner) {
+				tasks.add(task);
+			}
+		}
+
+		for (Task<?> task : tasks) {
+			queue.remove(task);
+			task.priority = priority;
+			queue.add(task);
+		}
+	}
+
+	/**
+	 * Forgets the priority of an owner which won't submit any more tasks.
+	 */
+	synchronized void removeOwner(Object owner) {
+		priorities.remove(owner);
+	}
+
+	private void countCoalesced(Task<?> task) {
+		stageMetrics[task.key.stage().ordinal()].coalesced++;
+	}
+
+	private void runWorker() {
+		while (true) {
+			Task<?> task;
+			boolean outdated;
+			synchronized (this) {
+				while (queue.isEmpty() && !shutdown) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+
+				task = queue.poll();
+				if (task == null) {
+					return;
+				}
+
+				queuedTasks.remove(task.key);
+				outdated = task.currentVersion.getAsInt() != task.version;
+				if (outdated) {
+					countCoalesced(task);
+				}
+			}
+
+			if (outdated) {
+				task.future.complete(null);
+				continue;
+			}
+
+			long startTime = System.nanoTime();
+			task.run();
+			long endTime = System.nanoTime();
+
+			synchronized (this) {
+				stageMetrics[task.key.stage().ordinal()].record(startTime - task.queuedTime, endTime - startTime);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of tasks which are waiting to be started, for each
+	 * priority.
+	 */
+	public synchronized Map<Priority, Integer> getQueueDepth() {
+		Map<Priority, Integer> depth = new EnumMap<>(Priority.class);
+		for (Priority priority : Priority.values()) {
+			depth.put(priority, 0);
+		}
+
+		for (Task<?> task : queue) {
+			depth.merge(task.priority, 1, Integer::sum);
+		}
+
+		return depth;
+	}
+
+	/**
+	 * Returns the latencies of a stage since the scheduler was created.
+	 */
+	public synchronized StageStats getStageStats(Stage stage) {
+		StageMetrics metrics = stageMetrics[stage.ordinal()];
+		return new StageStats(metrics.count, metrics.coalesced, metrics.totalWaitNanos, metrics.totalRunNanos, metrics.maxRunNanos);
+	}
+
+	/**
+	 * Stops all threads once the tasks which are already queued are done.
+	 */
+	synchronized void shutdown() {
+		shutdown = true;
+		notifyAll();
+	}
+
+	boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (Thread thread : threads) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+
+			TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+			if (thread.isAlive()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Latencies of a stage.
+	 *
+	 * @param count          the number of tasks which ran
+	 * @param coalesced      the number of tasks which were dropped because
+	 *                       they were superseded before they started
+	 * @param totalWaitNanos the total time tasks spent in the queue
+	 * @param totalRunNanos  the total time tasks spent running
+	 * @param maxRunNanos    the longest time a single task ran
+	 */
+	public record StageStats(long count, long coalesced, long totalWaitNanos, long totalRunNanos, long maxRunNanos) {
+		public double meanWaitMillis() {
+			return count == 0 ? 0 : totalWaitNanos / 1e6 / count;
+		}
+
+		public double meanRunMillis() {
+			return count == 0 ? 0 : totalRunNanos / 1e6 / count;
+		}
+	}
+
+	private static final class StageMetrics {
+		private long count;
+		private long coalesced;
+		private long totalWaitNanos;
+		private long totalRunNanos;
+		private long maxRunNanos;
+
+		private void record(long waitNanos, long runNanos) {
+			count++;
+			totalWaitNanos += waitNanos;
+			totalRunNanos += runNanos;
+			maxRunNanos = Math.max(maxRunNanos, runNanos);
+		}
+	}
+
+	private record TaskKey(Object owner, Stage stage) {
+	}
+
+	private static final class Task<T> {
+		private final TaskKey key;
+		private final IntSupplier currentVersion;
+		private final int version;
+		private final Supplier<T> task;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		private Priority priority;
+		private long sequence;
+		private long queuedTime;
+
+		private Task(TaskKey key, IntSupplier currentVersion, int version, Supplier<T> task) {
+			this.key = key;
+			this.currentVersion = currentVersion;
+			this.version = version;
+			this.task = task;
+		}
+
+		private void run() {
+			try {
+				future.complete(task.get());
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			}
+		}
+	}
+}
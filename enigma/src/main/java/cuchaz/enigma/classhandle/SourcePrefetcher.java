@@ -0,0 +1,123 @@
+package cuchaz.enigma.classhandle;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import cuchaz.enigma.source.Source;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+
+/**
+ * Decompiles classes which are likely to be opened next in the background,
+ * so that opening them doesn't have to wait for the decompiler.
+ *
+ * <p>At most one class is prefetched at a time, with the lowest priority of
+ * the {@link DecompileScheduler}, so that it never waits in front of a class
+ * the user opened. Prefetched sources are kept until their class is opened,
+ * up to an estimated memory budget.
+ */
+final class SourcePrefetcher {
+
+	private static final long MEMORY_BUDGET = 64L * 1024 * 1024;
+	// a source keeps the decompiler's tree alive, which is far larger than its text
+	private static final int ESTIMATED_BYTES_PER_CHAR = 16;
+
+	private final DecompileScheduler scheduler;
+	private final Function<ClassEntry, Source> decompiler;
+
+	private final Deque<ClassEntry> queue = new ArrayDeque<>();
+	private final Cache<ClassEntry, Source> prefetched = CacheBuilder.newBuilder()
+			.maximumWeight(MEMORY_BUDGET)
+			.weigher((ClassEntry entry, Source source) -> (int) Math.min(Integer.MAX_VALUE, (long) source.asString().length() * ESTIMATED_BYTES_PER_CHAR))
+			.build();
+
+	private boolean running;
+	private volatile int generation;
+
+	SourcePrefetcher(DecompileScheduler scheduler, Function<ClassEntry, Source> decompiler) {
+		this.scheduler = scheduler;
+		this.decompiler = decompiler;
+		scheduler.setPriority(this, DecompileScheduler.Priority.PREFETCH);
+	}
+
+	/**
+	 * Replaces the classes waiting to be prefetched. Classes are prefetched
+	 * in the given order.
+	 */
+	public synchronized void prefetch(Collection<ClassEntry> classes) {
+		queue.clear();
+		for (ClassEntry entry : classes) {
+			if (prefetched.getIfPresent(entry) == null) {
+				queue.add(entry);
+			}
+		}
+
+		schedule();
+	}
+
+	/**
+	 * Takes the prefetched source of a class, if there is one. A source is
+	 * only handed out once.
+	 */
+	@Nullable
+	public Source take(ClassEntry entry) {
+		return prefetched.asMap().remove(entry);
+	}
+
+	/**
+	 * Stops prefetching classes. Sources which were already prefetched are
+	 * kept, a class being decompiled right now is discarded.
+	 */
+	public synchronized void cancel() {
+		queue.clear();
+		generation++;
+	}
+
+	/**
+	 * Stops prefetching classes and discards all prefetched sources, for
+	 * example because the decompiler changed.
+	 */
+	public synchronized void invalidate() {
+		cancel();
+		prefetched.invalidateAll();
+	}
+
+	private void schedule() {
+		ClassEntry entry = running ? null : queue.poll();
+		if (entry != null) {
+			running = true;
+			int generation = this.generation;
+			scheduler.submit(this, DecompileScheduler.Stage.DECOMPILE, () -> this.generation, generation, () -> prefetch(entry, generation))
+					.whenComplete((res, e) -> {
+						synchronized (this) {
+							running = false;
+							schedule();
+						}
+					});
+		}
+	}
+
+	private Void prefetch(ClassEntry entry, int generation) {
+		try {
+			Source source = decompiler.apply(entry);
+			// the text is what the memory budget is estimated from, and is needed to show the class anyway
+			source.asString();
+
+			synchronized (this) {
+				if (generation == this.generation) {
+					prefetched.put(entry, source);
+				}
+			}
+		} catch (Exception e) {
+			// the class is decompiled again if it's opened, which reports the error
+		}
+
+		return null;
+	}
+}
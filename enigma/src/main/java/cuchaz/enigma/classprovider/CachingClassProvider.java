@@ -2,26 +2,78 @@ package cuchaz.enigma.classprovider;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
 import javax.annotation.Nullable;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 
 /**
  * Wraps a ClassProvider to provide caching and synchronization.
+ *
+ * <p>The cache is bounded by the estimated memory retained by the cached classes, see
+ * {@link ClassCacheSettings}. Three quarters of it are spent on class nodes, which are much larger
+ * than the class file bytes they were read from.</p>
  */
 public class CachingClassProvider implements ClassProvider {
+    private static final long MISSING_CLASS_SIZE = 64;
+
     private final ClassProvider classProvider;
-    private final Cache<String, Optional<ClassNode>> cache = CacheBuilder.newBuilder()
-            .maximumSize(128)
-            .expireAfterAccess(1, TimeUnit.MINUTES)
-            .concurrencyLevel(1)
-            .build();
+    private final Cache<String, Optional<ClassNode>> cache;
+    private final Cache<String, Optional<byte[]>> bytesCache;
 
     public CachingClassProvider(ClassProvider classProvider) {
+        this(classProvider, ClassCacheSettings.DEFAULT);
+    }
+
+    public CachingClassProvider(ClassProvider classProvider, ClassCacheSettings settings) {
         this.classProvider = classProvider;
+
+        long maxBytes = settings.getMaxBytes();
+        this.cache = buildCache(settings, maxBytes / 4 * 3, CachingClassProvider::estimateSize);
+        this.bytesCache = buildCache(settings, maxBytes / 4, bytes -> bytes.length);
+    }
+
+    private static <T> Cache<String, Optional<T>> buildCache(ClassCacheSettings settings, long maxWeight, ToLongFunction<T> sizeEstimator) {
+        Weigher<String, Optional<T>> weigher = (name, value) -> (int) Math.min(Integer.MAX_VALUE, value.map(sizeEstimator::applyAsLong).orElse(MISSING_CLASS_SIZE));
+        CacheBuilder<String, Optional<T>> builder = CacheBuilder.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher(weigher)
+                .concurrencyLevel(settings.getConcurrencyLevel())
+                .recordStats();
+
+        if (settings.useSoftValues()) {
+            builder.softValues();
+        }
+
+        if (settings.getExpireAfterAccessSeconds() > 0) {
+            builder.expireAfterAccess(settings.getExpireAfterAccessSeconds(), TimeUnit.SECONDS);
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Roughly estimates the memory retained by a class node, from the number of the tree nodes
+     * it is made of.
+     */
+    private static long estimateSize(ClassNode node) {
+        long size = 1024 + node.fields.size() * 160L;
+
+        for (MethodNode method : node.methods) {
+            size += 320 + method.instructions.size() * 64L + method.tryCatchBlocks.size() * 80L;
+
+            if (method.localVariables != null) {
+                size += method.localVariables.size() * 96L;
+            }
+        }
+
+        return size;
     }
 
     @Override
@@ -33,4 +85,29 @@ public class CachingClassProvider implements ClassProvider {
             throw new RuntimeException(e);
         }
     }
+
+    @Override
+    @Nullable
+    public byte[] getClassBytes(String name) {
+        try {
+            return bytesCache.get(name, () -> Optional.ofNullable(classProvider.getClassBytes(name))).orElse(null);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of the cached class nodes and bytes together.
+     */
+    public CacheStats getStats() {
+        return cache.stats().plus(bytesCache.stats());
+    }
+
+    public CacheStats getNodeStats() {
+        return cache.stats();
+    }
+
+    public CacheStats getBytesStats() {
+        return bytesCache.stats();
+    }
 }
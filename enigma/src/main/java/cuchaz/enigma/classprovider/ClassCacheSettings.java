@@ -0,0 +1,89 @@
+package cuchaz.enigma.classprovider;
+
+import com.google.gson.annotations.SerializedName;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of a {@link CachingClassProvider}, which can be tuned in the {@code class_cache} section
+ * of a profile. Settings which are left out keep their defaults.
+ *
+ * <p>The memory budget is shared by all class caches of an open project, see {@link #share}: half
+ * of it is spent on the classes of the jar and its libraries, a quarter on the classes read by the
+ * decompiler and a quarter on the classes of a source export.</p>
+ */
+public class ClassCacheSettings {
+    public static final ClassCacheSettings DEFAULT = new ClassCacheSettings(null, null, null, null);
+
+    public static final double PROJECT_SHARE = 0.5;
+    public static final double DECOMPILER_SHARE = 0.25;
+    public static final double EXPORT_SHARE = 0.25;
+
+    private static final long DEFAULT_MAX_BYTES = Math.min(256L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 8);
+    private static final long DEFAULT_EXPIRE_AFTER_ACCESS_SECONDS = TimeUnit.MINUTES.toSeconds(1);
+
+    @SerializedName("max_megabytes")
+    private final Long maxMegabytes;
+    @SerializedName("concurrency_level")
+    private final Integer concurrencyLevel;
+    @SerializedName("soft_values")
+    private final Boolean softValues;
+    @SerializedName("expire_after_access_seconds")
+    private final Long expireAfterAccessSeconds;
+    // set for a share of the budget, never read from a profile
+    private final transient Long maxBytes;
+
+    /**
+     * @param maxMegabytes             the estimated memory the cached classes may retain
+     * @param concurrencyLevel         the number of threads expected to read classes at once
+     * @param softValues               whether the garbage collector may evict cached classes
+     * @param expireAfterAccessSeconds how long a class stays cached after it was last read, or
+     *                                 {@code 0} to keep it until it is evicted
+     */
+    public ClassCacheSettings(@Nullable Long maxMegabytes, @Nullable Integer concurrencyLevel, @Nullable Boolean softValues, @Nullable Long expireAfterAccessSeconds) {
+        this.maxMegabytes = maxMegabytes;
+        this.concurrencyLevel = concurrencyLevel;
+        this.softValues = softValues;
+        this.expireAfterAccessSeconds = expireAfterAccessSeconds;
+        this.maxBytes = null;
+    }
+
+    private ClassCacheSettings(ClassCacheSettings settings, long maxBytes) {
+        this.maxMegabytes = settings.maxMegabytes;
+        this.concurrencyLevel = settings.concurrencyLevel;
+        this.softValues = settings.softValues;
+        this.expireAfterAccessSeconds = settings.expireAfterAccessSeconds;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns these settings with only a share of the memory budget, for one of several caches
+     * which are used at the same time.
+     *
+     * @param share the part of the budget, between {@code 0} and {@code 1}
+     */
+    public ClassCacheSettings share(double share) {
+        return new ClassCacheSettings(this, (long) (getMaxBytes() * share));
+    }
+
+    public long getMaxBytes() {
+        if (maxBytes != null) {
+            return maxBytes;
+        }
+
+        return maxMegabytes != null ? maxMegabytes * 1024 * 1024 : DEFAULT_MAX_BYTES;
+    }
+
+    public int getConcurrencyLevel() {
+        return concurrencyLevel != null ? concurrencyLevel : Runtime.getRuntime().availableProcessors();
+    }
+
+    public boolean useSoftValues() {
+        return softValues != null && softValues;
+    }
+
+    public long getExpireAfterAccessSeconds() {
+        return expireAfterAccessSeconds != null ? expireAfterAccessSeconds : DEFAULT_EXPIRE_AFTER_ACCESS_SECONDS;
+    }
+}
@@ -1,5 +1,6 @@
 package cuchaz.enigma.classprovider;
 
+import cuchaz.enigma.utils.AsmUtil;
 import org.objectweb.asm.tree.ClassNode;
 
 import javax.annotation.Nullable;
@@ -14,4 +15,21 @@ public interface ClassProvider {
      */
     @Nullable
     ClassNode get(String name);
+
+    /**
+     * Gets the class file bytes for a class, for consumers which would otherwise serialise the
+     * {@linkplain ClassNode} again. The class provider may return a cached result, so it's important
+     * to not mutate it.
+     *
+     * <p>By default, this serialises the result of {@link #get(String)}. Class providers which read
+     * classes from bytes, or cache them, should override this to avoid the round-trip.</p>
+     *
+     * @param name the internal name of the class
+     * @return the bytes of that class, or {@code null} if it was not found
+     */
+    @Nullable
+    default byte[] getClassBytes(String name) {
+        ClassNode node = get(name);
+        return node != null ? AsmUtil.nodeToBytes(node) : null;
+    }
 }
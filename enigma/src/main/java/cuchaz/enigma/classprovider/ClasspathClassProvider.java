@@ -12,14 +12,23 @@ import java.io.InputStream;
  */
 public class ClasspathClassProvider implements ClassProvider {
     @Nullable @Override public ClassNode get(String name) {
+        byte[] bytes = getClassBytes(name);
+        if (bytes == null) {
+            return null;
+        }
+
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, 0);
+        return node;
+    }
+
+    @Nullable @Override public byte[] getClassBytes(String name) {
         try (InputStream in = ClasspathClassProvider.class.getResourceAsStream("/" + name + ".class")) {
             if (in == null) {
                 return null;
             }
 
-            ClassNode node = new ClassNode();
-            new ClassReader(in).accept(node, 0);
-            return node;
+            return in.readAllBytes();
         } catch (IOException e) {
             return null;
         }
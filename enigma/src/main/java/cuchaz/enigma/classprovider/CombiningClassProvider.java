@@ -28,4 +28,18 @@ public class CombiningClassProvider implements ClassProvider {
 
         return null;
     }
+
+    @Override
+    @Nullable
+    public byte[] getClassBytes(String name) {
+        for (ClassProvider cp : classProviders) {
+            byte[] bytes = cp.getClassBytes(name);
+
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+
+        return null;
+    }
 }
@@ -46,12 +46,19 @@ public class JarClassProvider implements AutoCloseable, ClassProvider {
     @Nullable
     @Override
     public ClassNode get(String name) {
+        byte[] bytes = getClassBytes(name);
+        return bytes != null ? AsmUtil.bytesToNode(bytes) : null;
+    }
+
+    @Nullable
+    @Override
+    public byte[] getClassBytes(String name) {
         if (!classNames.contains(name)) {
             return null;
         }
 
         try {
-            return AsmUtil.bytesToNode(Files.readAllBytes(fileSystem.getPath(name + ".class")));
+            return Files.readAllBytes(fileSystem.getPath(name + ".class"));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -0,0 +1,257 @@
+package cuchaz.enigma.classprovider;
+
+import cuchaz.enigma.utils.AsmUtil;
+import org.objectweb.asm.tree.ClassNode;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Provides classes by loading them from a memory-mapped JAR file.
+ *
+ * <p>The central directory is parsed once into a table of class entries, and class files are read
+ * straight out of the mapped file: stored entries are copied once, deflated entries are inflated
+ * directly from the mapping into the class bytes.</p>
+ */
+public class MappedJarClassProvider implements AutoCloseable, ClassProvider {
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_SIGNATURE = 0x06054b50;
+	private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+	private static final int ZIP64_EXTRA_ID = 0x0001;
+
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_SIZE = 22;
+	private static final int ZIP64_LOCATOR_SIZE = 20;
+	private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+
+	// dropped on close, the mapping is only released once the buffer is garbage collected
+	private ByteBuffer buffer;
+	private final Map<String, Integer> classIndices;
+	private final int[] localHeaderOffsets;
+	private final int[] compressedSizes;
+	private final int[] uncompressedSizes;
+	private final byte[] methods;
+
+	public MappedJarClassProvider(Path jarPath) throws IOException {
+		try (FileChannel channel = FileChannel.open(jarPath, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Jar is too large to be mapped: " + jarPath);
+			}
+
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			this.buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		int endOffset = findEnd();
+		long entryCount = Short.toUnsignedInt(buffer.getShort(endOffset + 10));
+		long directoryOffset = Integer.toUnsignedLong(buffer.getInt(endOffset + 16));
+
+		// a jar with exactly 0xFFFF entries may still use the plain record, without a zip64 locator
+		int locatorOffset = endOffset - ZIP64_LOCATOR_SIZE;
+		if ((entryCount == 0xFFFF || directoryOffset == 0xFFFFFFFFL) && locatorOffset >= 0 && buffer.getInt(locatorOffset) == ZIP64_LOCATOR_SIGNATURE) {
+			int zip64EndOffset = checkOffset(buffer.getLong(locatorOffset + 8));
+			if (buffer.getInt(zip64EndOffset) != ZIP64_END_SIGNATURE) {
+				throw new ZipException("Invalid zip64 end of central directory record");
+			}
+
+			entryCount = buffer.getLong(zip64EndOffset + 32);
+			directoryOffset = buffer.getLong(zip64EndOffset + 48);
+		}
+
+		int count = checkOffset(entryCount);
+		this.localHeaderOffsets = new int[count];
+		this.compressedSizes = new int[count];
+		this.uncompressedSizes = new int[count];
+		this.methods = new byte[count];
+
+		this.classIndices = new LinkedHashMap<>();
+
+		int classCount = 0;
+		int offset = checkOffset(directoryOffset);
+		for (int i = 0; i < count; i++) {
+			if (buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid central directory header at " + offset);
+			}
+
+			int method = Short.toUnsignedInt(buffer.getShort(offset + 10));
+			long compressedSize = Integer.toUnsignedLong(buffer.getInt(offset + 20));
+			long uncompressedSize = Integer.toUnsignedLong(buffer.getInt(offset + 24));
+			int nameLength = Short.toUnsignedInt(buffer.getShort(offset + 28));
+			int extraLength = Short.toUnsignedInt(buffer.getShort(offset + 30));
+			int commentLength = Short.toUnsignedInt(buffer.getShort(offset + 32));
+			long localHeaderOffset = Integer.toUnsignedLong(buffer.getInt(offset + 42));
+
+			String name = readName(offset + CENTRAL_HEADER_SIZE, nameLength);
+
+			if (name.endsWith(".class")) {
+				if (uncompressedSize == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+					// zip64 extra field, containing only the values that overflowed, in this order
+					int extraOffset = findZip64Extra(offset + CENTRAL_HEADER_SIZE + nameLength, extraLength);
+					if (uncompressedSize == 0xFFFFFFFFL) {
+						uncompressedSize = buffer.getLong(extraOffset);
+						extraOffset += 8;
+					}
+
+					if (compressedSize == 0xFFFFFFFFL) {
+						compressedSize = buffer.getLong(extraOffset);
+						extraOffset += 8;
+					}
+
+					if (localHeaderOffset == 0xFFFFFFFFL) {
+						localHeaderOffset = buffer.getLong(extraOffset);
+					}
+				}
+
+				if (method != STORED && method != DEFLATED) {
+					throw new ZipException("Unsupported compression method " + method + " for " + name);
+				}
+
+				localHeaderOffsets[classCount] = checkOffset(localHeaderOffset);
+				compressedSizes[classCount] = checkOffset(compressedSize);
+				uncompressedSizes[classCount] = checkOffset(uncompressedSize);
+				methods[classCount] = (byte) method;
+				classIndices.put(name.substring(0, name.length() - ".class".length()), classCount);
+				classCount++;
+			}
+
+			offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+	}
+
+	private int findEnd() throws ZipException {
+		int minOffset = Math.max(0, buffer.limit() - END_SIZE - MAX_COMMENT_SIZE);
+		for (int offset = buffer.limit() - END_SIZE; offset >= minOffset; offset--) {
+			if (buffer.getInt(offset) == END_SIGNATURE) {
+				return offset;
+			}
+		}
+
+		throw new ZipException("Missing end of central directory record");
+	}
+
+	private int findZip64Extra(int offset, int length) throws ZipException {
+		int end = offset + length;
+		while (offset + 4 <= end) {
+			int id = Short.toUnsignedInt(buffer.getShort(offset));
+			int size = Short.toUnsignedInt(buffer.getShort(offset + 2));
+			if (id == ZIP64_EXTRA_ID) {
+				return offset + 4;
+			}
+
+			offset += 4 + size;
+		}
+
+		throw new ZipException("Missing zip64 extra field");
+	}
+
+	private String readName(int offset, int length) {
+		byte[] name = new byte[length];
+		buffer.get(offset, name);
+		return new String(name, StandardCharsets.UTF_8);
+	}
+
+	private int checkOffset(long value) throws ZipException {
+		if (value < 0 || value > buffer.limit()) {
+			throw new ZipException("Invalid offset or size " + value);
+		}
+
+		return (int) value;
+	}
+
+	public Set<String> getClassNames() {
+		return Collections.unmodifiableSet(classIndices.keySet());
+	}
+
+	/**
+	 * Reads the raw bytes of a class file.
+	 *
+	 * @param name the internal name of the class
+	 * @return the bytes of that class, or {@code null} if it is not in the jar
+	 */
+	@Nullable
+	@Override
+	public byte[] getClassBytes(String name) {
+		Integer index = classIndices.get(name);
+		if (index == null) {
+			return null;
+		}
+
+		ByteBuffer buffer = this.buffer;
+		if (buffer == null) {
+			throw new IllegalStateException("Jar is closed");
+		}
+
+		int headerOffset = localHeaderOffsets[index];
+		if (buffer.getInt(headerOffset) != LOCAL_HEADER_SIGNATURE) {
+			throw new RuntimeException(new ZipException("Invalid local header for " + name));
+		}
+
+		// the local header may have a different extra field than the central directory
+		int nameLength = Short.toUnsignedInt(buffer.getShort(headerOffset + 26));
+		int extraLength = Short.toUnsignedInt(buffer.getShort(headerOffset + 28));
+		int dataOffset = headerOffset + LOCAL_HEADER_SIZE + nameLength + extraLength;
+
+		byte[] bytes = new byte[uncompressedSizes[index]];
+		if (methods[index] == STORED) {
+			buffer.get(dataOffset, bytes);
+			return bytes;
+		}
+
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(buffer.slice(dataOffset, compressedSizes[index]));
+
+			int read = 0;
+			while (read < bytes.length) {
+				int n = inflater.inflate(bytes, read, bytes.length - read);
+				if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					throw new ZipException("Truncated entry " + name);
+				}
+
+				read += n;
+			}
+
+			return bytes;
+		} catch (DataFormatException | ZipException e) {
+			throw new RuntimeException(e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	@Nullable
+	@Override
+	public ClassNode get(String name) {
+		byte[] bytes = getClassBytes(name);
+		return bytes != null ? AsmUtil.bytesToNode(bytes) : null;
+	}
+
+	/**
+	 * Drops the reference to the mapped file. The mapping can't be unmapped explicitly, and is only
+	 * released once the buffer is garbage collected, so the file may stay mapped until then.
+	 */
+	@Override
+	public void close() {
+		buffer = null;
+	}
+}
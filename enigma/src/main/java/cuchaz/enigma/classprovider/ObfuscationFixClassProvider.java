@@ -57,6 +57,17 @@ public class ObfuscationFixClassProvider implements ClassProvider {
         return fixedNode;
     }
 
+    @Override
+    @Nullable
+    public byte[] getClassBytes(String name) {
+        // classes which aren't fixed keep their original bytes
+        if (!jarIndex.isIndexed(name)) {
+            return classProvider.getClassBytes(name);
+        }
+
+        return ClassProvider.super.getClassBytes(name);
+    }
+
     private void removeRedundantClassCalls(ClassNode node) {
         // Removes .getClass() calls added by Proguard:
         // DUP
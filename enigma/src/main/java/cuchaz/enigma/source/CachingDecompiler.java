@@ -0,0 +1,255 @@
+package cuchaz.enigma.source;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.TypeDescriptor;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InnerClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * A decompiler which reuses sources stored in a {@link DecompiledSourceCache} instead of
+ * decompiling classes again.
+ *
+ * <p>Sources are keyed by the decompiler, the source settings and the bytes of the class, its inner
+ * classes and their direct supertypes, as read from the class provider the decompiler uses. Javadocs
+ * are never cached: a class with javadocs in the given remapper is decompiled again when they are
+ * requested, a class without any is served from the cache as is.</p>
+ *
+ * <p>A source which can't be loaded from the cache is decompiled again. Once a source can't be saved,
+ * for example because the disk is full, no more sources are saved by this decompiler.</p>
+ */
+public class CachingDecompiler implements Decompiler {
+	private final Decompiler decompiler;
+	private final ClassProvider classProvider;
+	private final SourceSettings settings;
+	private final DecompiledSourceCache cache;
+	private volatile boolean saveFailed;
+
+	public CachingDecompiler(Decompiler decompiler, ClassProvider classProvider, SourceSettings settings, DecompiledSourceCache cache) {
+		this.decompiler = decompiler;
+		this.classProvider = classProvider;
+		this.settings = settings;
+		this.cache = cache;
+	}
+
+	@Override
+	public Source getSource(String className, @Nullable EntryRemapper remapper) {
+		Map<String, ClassNode> classes = collectClasses(className);
+		if (classes.isEmpty() || remapper != null && hasJavadocs(classes.values(), remapper)) {
+			return decompiler.getSource(className, remapper);
+		}
+
+		byte[] key = computeKey(classes);
+		SourceIndex index = null;
+		try {
+			index = cache.load(key);
+		} catch (IOException e) {
+			System.err.println(e.getMessage() + ", the class will be decompiled again: " + e.getCause());
+		}
+
+		if (index != null) {
+			return new CachedSource(className, classes, index);
+		}
+
+		return new CachingSource(classes, key, decompiler.getSource(className, null));
+	}
+
+	/**
+	 * Collects the class and everything nested in it, which are decompiled together.
+	 */
+	private Map<String, ClassNode> collectClasses(String className) {
+		Map<String, ClassNode> classes = new TreeMap<>();
+		List<String> queue = new ArrayList<>();
+		queue.add(className);
+
+		while (!queue.isEmpty()) {
+			String name = queue.remove(queue.size() - 1);
+			if (classes.containsKey(name)) {
+				continue;
+			}
+
+			ClassNode node = classProvider.get(name);
+			if (node == null) {
+				continue;
+			}
+
+			classes.put(name, node);
+			for (InnerClassNode innerClass : node.innerClasses) {
+				if (innerClass.name.startsWith(name + "$")) {
+					queue.add(innerClass.name);
+				}
+			}
+		}
+
+		return classes;
+	}
+
+	private byte[] computeKey(Map<String, ClassNode> classes) {
+		Hasher hasher = Hashing.sha256().newHasher();
+		hasher.putString(decompiler.getClass().getName(), StandardCharsets.UTF_8);
+		hasher.putBoolean(settings.removeImports);
+		hasher.putBoolean(settings.removeVariableFinal);
+
+		Set<String> supertypes = new TreeSet<>();
+		for (ClassNode node : classes.values()) {
+			putClass(hasher, node);
+
+			if (node.superName != null) {
+				supertypes.add(node.superName);
+			}
+
+			for (String superInterface : node.interfaces) {
+				supertypes.add(superInterface);
+			}
+		}
+
+		for (String supertype : supertypes) {
+			if (!classes.containsKey(supertype)) {
+				ClassNode node = classProvider.get(supertype);
+				if (node != null) {
+					putClass(hasher, node);
+				}
+			}
+		}
+
+		return hasher.hash().asBytes();
+	}
+
+	private void putClass(Hasher hasher, ClassNode node) {
+		byte[] bytes = classProvider.getClassBytes(node.name);
+		hasher.putString(node.name, StandardCharsets.UTF_8);
+		hasher.putInt(bytes.length);
+		hasher.putBytes(bytes);
+	}
+
+	/**
+	 * Returns whether the decompiler would insert any javadoc from the given remapper into the
+	 * source of these classes.
+	 */
+	private static boolean hasJavadocs(Iterable<ClassNode> classes, EntryRemapper remapper) {
+		for (ClassNode node : classes) {
+			ClassEntry classEntry = new ClassEntry(node.name);
+			if (hasJavadoc(classEntry, remapper)) {
+				return true;
+			}
+
+			for (FieldNode field : node.fields) {
+				if (hasJavadoc(new FieldEntry(classEntry, field.name, new TypeDescriptor(field.desc)), remapper)) {
+					return true;
+				}
+			}
+
+			for (MethodNode method : node.methods) {
+				MethodEntry methodEntry = new MethodEntry(classEntry, method.name, new MethodDescriptor(method.desc));
+				if (hasJavadoc(methodEntry, remapper)) {
+					return true;
+				}
+
+				for (Entry<?> child : remapper.getObfChildren(methodEntry)) {
+					if (hasJavadoc(child, remapper)) {
+						return true;
+					}
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean hasJavadoc(Entry<?> entry, EntryRemapper remapper) {
+		return remapper.getDeobfMapping(entry).javadoc() != null;
+	}
+
+	/**
+	 * A source which was just decompiled, and is stored in the cache once it is indexed.
+	 */
+	private class CachingSource implements Source {
+		private final Map<String, ClassNode> classes;
+		private final byte[] key;
+		private final Source source;
+		private boolean saved;
+
+		CachingSource(Map<String, ClassNode> classes, byte[] key, Source source) {
+			this.classes = classes;
+			this.key = key;
+			this.source = source;
+		}
+
+		@Override
+		public String asString() {
+			// exporting sources only asks for the text, index it anyway so that it is cached
+			return index().getSource();
+		}
+
+		@Override
+		public Source withJavadocs(EntryRemapper remapper) {
+			return hasJavadocs(classes.values(), remapper) ? source.withJavadocs(remapper) : this;
+		}
+
+		@Override
+		public synchronized SourceIndex index() {
+			SourceIndex index = source.index();
+			if (!saved && !saveFailed) {
+				saved = true;
+
+				try {
+					cache.save(key, index);
+				} catch (IOException e) {
+					saveFailed = true;
+					System.err.println("Failed to save cached source, no more sources will be cached: " + e);
+				}
+			}
+
+			return index;
+		}
+	}
+
+	/**
+	 * A source loaded from the cache.
+	 */
+	private class CachedSource implements Source {
+		private final String className;
+		private final Map<String, ClassNode> classes;
+		private final SourceIndex index;
+
+		CachedSource(String className, Map<String, ClassNode> classes, SourceIndex index) {
+			this.className = className;
+			this.classes = classes;
+			this.index = index;
+		}
+
+		@Override
+		public String asString() {
+			return index.getSource();
+		}
+
+		@Override
+		public Source withJavadocs(EntryRemapper remapper) {
+			return hasJavadocs(classes.values(), remapper) ? decompiler.getSource(className, remapper) : this;
+		}
+
+		@Override
+		public SourceIndex index() {
+			return index;
+		}
+	}
+}
@@ -16,7 +16,9 @@ import cuchaz.enigma.translation.mapping.ResolutionStrategy;
 import cuchaz.enigma.translation.representation.TypeDescriptor;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
 import cuchaz.enigma.translation.representation.entry.LocalVariableDefEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
 
 public class DecompiledClassSource {
 	private final ClassEntry classEntry;
@@ -50,6 +52,149 @@ public class DecompiledClassSource {
 		return new DecompiledClassSource(this.classEntry, this.obfuscatedIndex, remappedIndex, tokenStore);
 	}
 
+	/**
+	 * Remaps only the tokens which refer to one of the given entries, or to a class nested in one of
+	 * them, reusing the remapped text of all other tokens. This is equivalent to
+	 * {@link #remapSource} when the names of no other entries changed since this source was remapped.
+	 *
+	 * <p>If the project has name proposal services, tokens which are not mapped are remapped as well
+	 * when the name proposed for them may depend on the renamed entries. A proposal is assumed to only
+	 * depend on the names of the entry itself, of its parents (including the outer classes of its
+	 * class), and of the classes in its descriptor. Proposals which look at other entries are only
+	 * updated by {@link #remapSource}.</p>
+	 *
+	 * @param entries the renamed entries, including all their equivalent entries
+	 * @return the remapped source, or this source if no token is affected by the rename
+	 */
+	public DecompiledClassSource remapEntries(EnigmaProject project, Translator translator, Set<Entry<?>> entries) {
+		if (!isAffectedByRename(project, entries)) {
+			return this;
+		}
+
+		boolean proposing = hasNameProposalServices(project);
+
+		String source = remappedIndex.getSource();
+		StringBuilder remappedSource = new StringBuilder(source.length());
+		Map<Token, Token> remappedTokens = new HashMap<>();
+		TokenStore tokenStore = TokenStore.create(this.obfuscatedIndex);
+
+		int copiedUntil = 0;
+		int accumulatedOffset = 0;
+		Iterator<Token> remappedTokenItr = remappedIndex.referenceTokens().iterator();
+		for (Token token : obfuscatedIndex.referenceTokens()) {
+			Token remappedToken = remappedTokenItr.next();
+			Token movedToken;
+
+			if (isAffected(obfuscatedIndex.getReference(token).getNameableEntry(), remappedToken, entries, proposing)) {
+				movedToken = new Token(remappedToken.start + accumulatedOffset, remappedToken.start + accumulatedOffset + token.length(), token.text);
+
+				String remappedName = remapToken(tokenStore, project, token, movedToken, translator);
+				if (remappedName != null) {
+					movedToken.text = remappedName;
+					movedToken.end = movedToken.start + remappedName.length();
+				}
+
+				remappedSource.append(source, copiedUntil, remappedToken.start).append(movedToken.text);
+				copiedUntil = remappedToken.end;
+				accumulatedOffset += movedToken.length() - remappedToken.length();
+			} else {
+				movedToken = remappedToken.move(accumulatedOffset);
+
+				RenamableTokenType type = highlightedTokens.getType(remappedToken);
+				if (type != null) {
+					tokenStore.add(type, movedToken);
+				}
+			}
+
+			if (!token.equals(movedToken)) {
+				remappedTokens.put(token, movedToken);
+			}
+		}
+
+		remappedSource.append(source, copiedUntil, source.length());
+
+		SourceIndex remappedIndex = obfuscatedIndex.remapTo(new SourceRemapper.Result(remappedSource.toString(), remappedTokens));
+		return new DecompiledClassSource(this.classEntry, this.obfuscatedIndex, remappedIndex, tokenStore);
+	}
+
+	/**
+	 * Returns whether {@link #remapEntries} would remap any token of this source.
+	 */
+	public boolean isAffectedByRename(EnigmaProject project, Set<Entry<?>> entries) {
+		boolean proposing = hasNameProposalServices(project);
+
+		Iterator<Token> remappedTokenItr = remappedIndex.referenceTokens().iterator();
+		for (Token token : obfuscatedIndex.referenceTokens()) {
+			if (isAffected(obfuscatedIndex.getReference(token).getNameableEntry(), remappedTokenItr.next(), entries, proposing)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static boolean hasNameProposalServices(EnigmaProject project) {
+		return !project.getEnigma().getServices().get(NameProposalService.TYPE).isEmpty();
+	}
+
+	private boolean isUnmapped(Token remappedToken) {
+		RenamableTokenType type = highlightedTokens.getType(remappedToken);
+		return type == RenamableTokenType.OBFUSCATED || type == RenamableTokenType.PROPOSED;
+	}
+
+	private boolean isAffected(Entry<?> entry, Token remappedToken, Set<Entry<?>> entries, boolean proposing) {
+		if (isAffected(entry, entries)) {
+			return true;
+		}
+
+		return proposing && isUnmapped(remappedToken) && mayProposeFrom(entry, entries);
+	}
+
+	private static boolean mayProposeFrom(Entry<?> entry, Set<Entry<?>> entries) {
+		for (Entry<?> parent = entry.getParent(); parent != null; parent = parent.getParent()) {
+			if (isAffected(parent, entries)) {
+				return true;
+			}
+		}
+
+		if (entry instanceof FieldEntry field) {
+			return isAffected(field.getDesc(), entries);
+		} else if (entry instanceof LocalVariableDefEntry local) {
+			return isAffected(local.getDesc(), entries);
+		} else if (entry instanceof MethodEntry method) {
+			for (TypeDescriptor argument : method.getDesc().getArgumentDescs()) {
+				if (isAffected(argument, entries)) {
+					return true;
+				}
+			}
+
+			return isAffected(method.getDesc().getReturnDesc(), entries);
+		}
+
+		return false;
+	}
+
+	private static boolean isAffected(TypeDescriptor desc, Set<Entry<?>> entries) {
+		return desc.containsType() && isAffected(desc.getTypeEntry(), entries);
+	}
+
+	private static boolean isAffected(Entry<?> entry, Set<Entry<?>> entries) {
+		if (entries.contains(entry)) {
+			return true;
+		}
+
+		// nested classes are remapped to a name qualified by their outer classes
+		if (entry instanceof ClassEntry classEntry) {
+			for (ClassEntry outerClass = classEntry.getOuterClass(); outerClass != null; outerClass = outerClass.getOuterClass()) {
+				if (entries.contains(outerClass)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
 	private String remapToken(TokenStore target, EnigmaProject project, Token token, Token movedToken, Translator translator) {
 		EntryReference<Entry<?>, Entry<?>> reference = obfuscatedIndex.getReference(token);
 
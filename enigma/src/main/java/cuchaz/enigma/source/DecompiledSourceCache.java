@@ -0,0 +1,387 @@
+package cuchaz.enigma.source;
+
+import com.google.common.io.BaseEncoding;
+import cuchaz.enigma.Enigma;
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.translation.representation.MethodDescriptor;
+import cuchaz.enigma.translation.representation.TypeDescriptor;
+import cuchaz.enigma.translation.representation.entry.*;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores decompiled, uncommented sources on disk together with the tokens of their obfuscated
+ * {@link SourceIndex}, keyed by a hash of everything the decompiled output depends on.
+ *
+ * <p>See {@link CachingDecompiler} for how the keys are computed. An entry is only loaded if it was
+ * written by the same format and Enigma version, which also pins the versions of the bundled
+ * decompilers.</p>
+ *
+ * <p>The size of the cache is bounded: once the stored sources exceed the maximum size, the least
+ * recently used ones are deleted until they take three quarters of it. Loading a source marks it as
+ * used by updating its modification time.</p>
+ */
+public final class DecompiledSourceCache {
+	private static final int MAGIC = 0x45535243; // "ESRC"
+	private static final int FORMAT_VERSION = 1;
+	private static final String EXTENSION = ".source";
+	private static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+
+	private static final int NULL = 0;
+	private static final int CLASS = 1;
+	private static final int FIELD = 2;
+	private static final int METHOD = 3;
+	private static final int LOCAL_VARIABLE = 4;
+	private static final int LOCAL_VARIABLE_DEF = 5;
+
+	private final Path directory;
+	private final long maxSize;
+
+	// the size of the stored sources, measured when the first source is saved
+	private long size = -1;
+
+	/**
+	 * @param directory the directory sources are stored in
+	 */
+	public DecompiledSourceCache(Path directory) {
+		this(directory, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * @param directory the directory sources are stored in
+	 * @param maxSize   the size in bytes the stored sources may take before the least recently used ones are deleted
+	 */
+	public DecompiledSourceCache(Path directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	private Path getSourcePath(byte[] key) {
+		String name = BaseEncoding.base16().lowerCase().encode(key);
+		// spread the files over subdirectories, a large jar has tens of thousands of classes
+		return directory.resolve(name.substring(0, 2)).resolve(name + EXTENSION);
+	}
+
+	/**
+	 * Loads the source index stored under the given key. A source which can't be read is deleted,
+	 * so that it is saved again.
+	 *
+	 * @return the index, or {@code null} if there is no matching source
+	 * @throws IOException if the stored source can't be read
+	 */
+	@Nullable
+	public SourceIndex load(byte[] key) throws IOException {
+		Path path = getSourcePath(key);
+		SourceIndex index;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+			if (!readHeader(in, key)) {
+				return null;
+			}
+
+			index = readIndex(new DataInputStream(new BufferedInputStream(new GZIPInputStream(in))));
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(path);
+			throw new IOException("Failed to load cached source " + path, e);
+		}
+
+		try {
+			Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+		} catch (IOException e) {
+			// the source is only evicted sooner
+		}
+
+		return index;
+	}
+
+	/**
+	 * Saves the given source index under the given key, replacing any previous source, and deletes
+	 * the least recently used sources if the cache is over its maximum size.
+	 *
+	 * <p>The index must not have been resolved or remapped yet.</p>
+	 *
+	 * @throws IOException if the source can't be written
+	 */
+	public void save(byte[] key, SourceIndex index) throws IOException {
+		Path path = getSourcePath(key);
+
+		Files.createDirectories(path.getParent());
+		Path tempPath = Files.createTempFile(path.getParent(), "source", ".tmp");
+
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+				writeHeader(out, key);
+
+				GZIPOutputStream gzip = new GZIPOutputStream(out);
+				DataOutputStream body = new DataOutputStream(new BufferedOutputStream(gzip));
+				writeIndex(body, index);
+				body.flush();
+				gzip.finish();
+			}
+
+			long sourceSize = Files.size(tempPath);
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			addSize(sourceSize);
+		} finally {
+			Files.deleteIfExists(tempPath);
+		}
+	}
+
+	private synchronized void addSize(long sourceSize) throws IOException {
+		if (size < 0) {
+			// the new source is already stored
+			size = measure();
+		} else {
+			// a replaced source is counted twice until the cache is measured again
+			size += sourceSize;
+		}
+
+		if (size > maxSize) {
+			evict();
+		}
+	}
+
+	private long measure() throws IOException {
+		long total = 0;
+		for (StoredSource source : listSources()) {
+			total += source.size();
+		}
+
+		return total;
+	}
+
+	private void evict() throws IOException {
+		List<StoredSource> sources = listSources();
+		sources.sort(Comparator.comparing(StoredSource::lastUsed));
+
+		long total = 0;
+		for (StoredSource source : sources) {
+			total += source.size();
+		}
+
+		long target = maxSize / 4 * 3;
+		for (StoredSource source : sources) {
+			if (total <= target) {
+				break;
+			}
+
+			Files.deleteIfExists(source.path());
+			total -= source.size();
+		}
+
+		size = total;
+	}
+
+	private List<StoredSource> listSources() throws IOException {
+		List<StoredSource> sources = new ArrayList<>();
+		Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+				if (attributes.isRegularFile() && file.getFileName().toString().endsWith(EXTENSION)) {
+					sources.add(new StoredSource(file, attributes.size(), attributes.lastModifiedTime()));
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				// deleted while walking
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		return sources;
+	}
+
+	private record StoredSource(Path path, long size, FileTime lastUsed) {
+	}
+
+	private static void writeHeader(DataOutputStream out, byte[] key) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeUTF(Enigma.VERSION);
+		out.writeInt(key.length);
+		out.write(key);
+	}
+
+	private static boolean readHeader(DataInputStream in, byte[] key) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !in.readUTF().equals(Enigma.VERSION)) {
+			return false;
+		}
+
+		byte[] storedKey = new byte[in.readInt()];
+		in.readFully(storedKey);
+		return Arrays.equals(storedKey, key);
+	}
+
+	private static void writeIndex(DataOutputStream out, SourceIndex index) throws IOException {
+		byte[] source = index.getSource().getBytes(StandardCharsets.UTF_8);
+		out.writeInt(source.length);
+		out.write(source);
+
+		// the index is rebuilt with the same calls the decompiler made, so only the declarations
+		// and the references which are not implied by a declaration are written
+		int declarationCount = 0;
+		for (Entry<?> ignored : index.declarations()) {
+			declarationCount++;
+		}
+
+		out.writeInt(declarationCount);
+		for (Entry<?> entry : index.declarations()) {
+			writeToken(out, index.getDeclarationToken(entry));
+			writeEntry(out, entry);
+		}
+
+		int referenceCount = 0;
+		for (Token token : index.referenceTokens()) {
+			if (!isDeclaration(index, token)) {
+				referenceCount++;
+			}
+		}
+
+		out.writeInt(referenceCount);
+		for (Token token : index.referenceTokens()) {
+			if (!isDeclaration(index, token)) {
+				EntryReference<Entry<?>, Entry<?>> reference = index.getReference(token);
+				writeToken(out, token);
+				writeEntry(out, reference.entry);
+				writeEntry(out, reference.context);
+			}
+		}
+	}
+
+	private static boolean isDeclaration(SourceIndex index, Token token) {
+		EntryReference<Entry<?>, Entry<?>> reference = index.getReference(token);
+		return reference.context == null && token.equals(index.getDeclarationToken(reference.entry));
+	}
+
+	private static SourceIndex readIndex(DataInputStream in) throws IOException {
+		byte[] source = new byte[in.readInt()];
+		in.readFully(source);
+		SourceIndex index = new SourceIndex(new String(source, StandardCharsets.UTF_8));
+
+		int declarationCount = in.readInt();
+		for (int i = 0; i < declarationCount; i++) {
+			Token token = readToken(in);
+			index.addDeclaration(token, readEntry(in));
+		}
+
+		int referenceCount = in.readInt();
+		for (int i = 0; i < referenceCount; i++) {
+			Token token = readToken(in);
+			Entry<?> entry = readEntry(in);
+			index.addReference(token, entry, readEntry(in));
+		}
+
+		return index;
+	}
+
+	private static void writeToken(DataOutputStream out, Token token) throws IOException {
+		out.writeInt(token.start);
+		out.writeInt(token.end);
+		out.writeUTF(token.text);
+	}
+
+	private static Token readToken(DataInputStream in) throws IOException {
+		int start = in.readInt();
+		int end = in.readInt();
+		return new Token(start, end, in.readUTF());
+	}
+
+	/**
+	 * Writes an entry with its parents. Definition data of classes, fields and methods is not
+	 * written, the decompilers don't rely on it past building the index.
+	 */
+	private static void writeEntry(DataOutputStream out, @Nullable Entry<?> entry) throws IOException {
+		if (entry == null) {
+			out.writeByte(NULL);
+		} else if (entry instanceof ClassEntry classEntry) {
+			out.writeByte(CLASS);
+			writeEntry(out, classEntry.getParent());
+			out.writeUTF(classEntry.getName());
+		} else if (entry instanceof FieldEntry field) {
+			out.writeByte(FIELD);
+			writeEntry(out, field.getParent());
+			out.writeUTF(field.getName());
+			out.writeUTF(field.getDesc().toString());
+		} else if (entry instanceof MethodEntry method) {
+			out.writeByte(METHOD);
+			writeEntry(out, method.getParent());
+			out.writeUTF(method.getName());
+			out.writeUTF(method.getDesc().toString());
+		} else if (entry instanceof LocalVariableEntry variable) {
+			boolean definition = variable instanceof LocalVariableDefEntry;
+			out.writeByte(definition ? LOCAL_VARIABLE_DEF : LOCAL_VARIABLE);
+			writeEntry(out, variable.getParent());
+			out.writeInt(variable.getIndex());
+			out.writeUTF(variable.getName());
+			out.writeBoolean(variable.isArgument());
+			if (definition) {
+				out.writeUTF(((LocalVariableDefEntry) variable).getDesc().toString());
+			}
+		} else {
+			throw new IllegalArgumentException("Cannot write entry " + entry);
+		}
+	}
+
+	@Nullable
+	private static Entry<?> readEntry(DataInputStream in) throws IOException {
+		int kind = in.readByte();
+		switch (kind) {
+			case NULL:
+				return null;
+			case CLASS: {
+				ClassEntry parent = (ClassEntry) readEntry(in);
+				return new ClassEntry(parent, in.readUTF());
+			}
+			case FIELD: {
+				ClassEntry parent = (ClassEntry) readEntry(in);
+				String name = in.readUTF();
+				return new FieldEntry(parent, name, new TypeDescriptor(in.readUTF()));
+			}
+			case METHOD: {
+				ClassEntry parent = (ClassEntry) readEntry(in);
+				String name = in.readUTF();
+				return new MethodEntry(parent, name, new MethodDescriptor(in.readUTF()));
+			}
+			case LOCAL_VARIABLE:
+			case LOCAL_VARIABLE_DEF: {
+				MethodEntry parent = (MethodEntry) readEntry(in);
+				int index = in.readInt();
+				String name = in.readUTF();
+				boolean parameter = in.readBoolean();
+				if (kind == LOCAL_VARIABLE) {
+					return new LocalVariableEntry(parent, index, name, parameter, null);
+				}
+
+				return new LocalVariableDefEntry(parent, index, name, parameter, new TypeDescriptor(in.readUTF()), null);
+			}
+			default:
+				throw new IOException("Unknown entry kind " + kind);
+		}
+	}
+}
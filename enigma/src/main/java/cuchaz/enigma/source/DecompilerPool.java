@@ -0,0 +1,59 @@
+package cuchaz.enigma.source;
+
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * A decompiler which gives every thread it is used from its own instance of another decompiler, so
+ * that classes can be decompiled in parallel without contending on, or thrashing, the internal state
+ * of a single instance.
+ *
+ * <p>The instances are created lazily and live as long as the pool, or until they decompiled a
+ * given number of classes. They should share a class provider which is safe to read from multiple
+ * threads, so that classes are only read once.</p>
+ */
+public final class DecompilerPool implements Decompiler {
+	private final Supplier<Decompiler> factory;
+	private final int maxClassesPerInstance;
+	private final Map<Thread, Instance> instances = new ConcurrentHashMap<>();
+
+	/**
+	 * @param factory creates a decompiler for a thread
+	 */
+	public DecompilerPool(Supplier<Decompiler> factory) {
+		this(factory, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param factory               creates a decompiler for a thread
+	 * @param maxClassesPerInstance the number of classes after which an instance is replaced by a
+	 *                              new one, so that the caches decompilers build up internally
+	 *                              can't grow without bound
+	 */
+	public DecompilerPool(Supplier<Decompiler> factory, int maxClassesPerInstance) {
+		this.factory = factory;
+		this.maxClassesPerInstance = maxClassesPerInstance;
+	}
+
+	@Override
+	public Source getSource(String className, @Nullable EntryRemapper remapper) {
+		Instance instance = instances.compute(Thread.currentThread(), (thread, current) ->
+				current == null || current.classes >= maxClassesPerInstance ? new Instance(factory.get()) : current);
+		instance.classes++;
+		return instance.decompiler.getSource(className, remapper);
+	}
+
+	private static final class Instance {
+		private final Decompiler decompiler;
+		// only accessed by the thread owning the instance
+		private int classes;
+
+		private Instance(Decompiler decompiler) {
+			this.decompiler = decompiler;
+		}
+	}
+}
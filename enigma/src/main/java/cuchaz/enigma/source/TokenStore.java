@@ -2,6 +2,8 @@ package cuchaz.enigma.source;
 
 import java.util.*;
 
+import javax.annotation.Nullable;
+
 public final class TokenStore {
 
 	private static final TokenStore EMPTY = new TokenStore(Collections.emptyNavigableSet(), Collections.emptyMap(), null);
@@ -33,6 +35,20 @@ public final class TokenStore {
 		this.byType.get(type).add(token);
 	}
 
+	/**
+	 * Returns the type a token was added with, or {@code null} if it was not added.
+	 */
+	@Nullable
+	public RenamableTokenType getType(Token token) {
+		for (Map.Entry<RenamableTokenType, NavigableSet<Token>> entry : this.byType.entrySet()) {
+			if (entry.getValue().contains(token)) {
+				return entry.getKey();
+			}
+		}
+
+		return null;
+	}
+
 	public boolean isCompatible(TokenStore other) {
 		return this.obfSource != null && other.obfSource != null &&
 				this.obfSource.equals(other.obfSource) &&
@@ -1,11 +1,14 @@
 package cuchaz.enigma.translation.mapping;
 
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.Objects;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Stream;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 import cuchaz.enigma.analysis.index.JarIndex;
 import cuchaz.enigma.translation.MappingTranslator;
@@ -88,33 +91,61 @@ public class EntryRemapper {
 		}
 	}
 
+	/**
+	 * Collects the entries whose mappings may be changed by putting a mapping for the given entry, so that
+	 * they can be restored exactly: the entry itself, the entries it resolves to, and the getter of a record component.
+	 */
+	public Set<Entry<?>> getAffectedEntries(Entry<?> obfuscatedEntry) {
+		Set<Entry<?>> entries = new LinkedHashSet<>();
+		entries.add(obfuscatedEntry);
+		entries.addAll(obfResolver.resolveEntry(obfuscatedEntry, ResolutionStrategy.RESOLVE_ROOT));
+		entries.addAll(obfResolver.resolveEntry(obfuscatedEntry, ResolutionStrategy.RESOLVE_CLOSEST));
+
+		if (obfuscatedEntry instanceof FieldEntry fieldEntry && isRecordComponent(fieldEntry.getParent(), fieldEntry)) {
+			MethodEntry getter = findRecordComponentGetter(fieldEntry.getParent(), fieldEntry);
+			if (getter != null) {
+				entries.addAll(getAffectedEntries(getter));
+			}
+		}
+
+		return entries;
+	}
+
 	// A little bit of a hack to also map the getter method for record fields/components.
 	private void mapRecordComponentGetter(ValidationContext vc, ClassEntry classEntry, FieldEntry fieldEntry, EntryMapping fieldMapping) {
-		if (!jarIndex.getEntryIndex().getClassAccess(classEntry).isRecord() || jarIndex.getEntryIndex().getFieldAccess(fieldEntry).isStatic()) {
+		if (!isRecordComponent(classEntry, fieldEntry)) {
+			return;
+		}
+
+		MethodEntry methodEntry = findRecordComponentGetter(classEntry, fieldEntry);
+
+		if (methodEntry == null && fieldMapping != null) {
+			vc.raise(Message.UNKNOWN_RECORD_GETTER, fieldMapping.targetName());
 			return;
 		}
 
+		putMapping(vc, methodEntry, fieldMapping != null ? new EntryMapping(fieldMapping.targetName()) : null);
+	}
+
+	private boolean isRecordComponent(ClassEntry classEntry, FieldEntry fieldEntry) {
+		return jarIndex.getEntryIndex().getClassAccess(classEntry).isRecord() && !jarIndex.getEntryIndex().getFieldAccess(fieldEntry).isStatic();
+	}
+
+	@Nullable
+	private MethodEntry findRecordComponentGetter(ClassEntry classEntry, FieldEntry fieldEntry) {
 		// Find all the methods in this record class
 		List<MethodEntry> classMethods = jarIndex.getEntryIndex().getMethods().stream()
 				.filter(entry -> classEntry.equals(entry.getParent()))
 				.toList();
 
-		MethodEntry methodEntry = null;
-
 		for (MethodEntry method : classMethods) {
 			// Find the matching record component getter via matching the names. My understanding is this is safe, failing this it may need to be a bit more intelligent
 			if (method.getName().equals(fieldEntry.getName()) && method.getDesc().toString().equals("()" + fieldEntry.getDesc())) {
-				methodEntry = method;
-				break;
+				return method;
 			}
 		}
 
-		if (methodEntry == null && fieldMapping != null) {
-			vc.raise(Message.UNKNOWN_RECORD_GETTER, fieldMapping.targetName());
-			return;
-		}
-
-		putMapping(vc, methodEntry, fieldMapping != null ? new EntryMapping(fieldMapping.targetName()) : null);
+		return null;
 	}
 
 	@Nonnull
@@ -1,5 +1,9 @@
 package cuchaz.enigma.translation.mapping;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.annotation.Nonnull;
 
 import cuchaz.enigma.translation.representation.entry.Entry;
@@ -17,6 +21,35 @@ public class EntryUtil {
 		return mapping;
 	}
 
+	/**
+	 * Applies changes in order, or none of them if one of them is invalid.
+	 *
+	 * @return whether the changes were applied
+	 */
+	public static boolean applyChanges(ValidationContext vc, EntryRemapper remapper, List<? extends EntryChange<?>> changes) {
+		// the mappings stored in the tree before the first change to each entry, null if there were none
+		Map<Entry<?>, EntryMapping> previous = new HashMap<>();
+
+		for (EntryChange<?> change : changes) {
+			// a change can be stored on other entries than its target, such as the root of an overridden method
+			for (Entry<?> entry : remapper.getAffectedEntries(change.getTarget())) {
+				if (!previous.containsKey(entry)) {
+					previous.put(entry, remapper.getObfToDeobf().get(entry));
+				}
+			}
+
+			applyChange(vc, remapper, change);
+
+			if (!vc.canProceed()) {
+				// restore the stored mappings directly, putting them would resolve the entries again
+				previous.forEach((entry, mapping) -> remapper.getObfToDeobf().insert(entry, mapping));
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	public static EntryMapping applyChange(@Nonnull EntryMapping self, EntryChange<?> change) {
 		if (change.getDeobfName().isSet()) {
 			self = self.withName(change.getDeobfName().getNewValue());
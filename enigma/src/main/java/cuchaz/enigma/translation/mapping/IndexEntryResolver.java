@@ -1,35 +1,40 @@
 package cuchaz.enigma.translation.mapping;
 
-import com.google.common.collect.Sets;
-import cuchaz.enigma.analysis.IndexTreeBuilder;
-import cuchaz.enigma.analysis.MethodImplementationsTreeNode;
-import cuchaz.enigma.analysis.MethodInheritanceTreeNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import cuchaz.enigma.analysis.index.BridgeMethodIndex;
 import cuchaz.enigma.analysis.index.EntryIndex;
 import cuchaz.enigma.analysis.index.InheritanceIndex;
 import cuchaz.enigma.analysis.index.JarIndex;
-import cuchaz.enigma.translation.VoidTranslator;
+import cuchaz.enigma.analysis.index.MethodFamilyIndex;
 import cuchaz.enigma.translation.representation.AccessFlags;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
 import cuchaz.enigma.translation.representation.entry.MethodEntry;
 
 import javax.annotation.Nullable;
 import java.util.*;
 
 public class IndexEntryResolver implements EntryResolver {
+	private static final int MAX_CACHED_RESOLUTIONS = 1 << 18;
+
 	private final EntryIndex entryIndex;
 	private final InheritanceIndex inheritanceIndex;
 	private final BridgeMethodIndex bridgeMethodIndex;
+	private final MethodFamilyIndex methodFamilyIndex;
 
-	private final IndexTreeBuilder treeBuilder;
+	private final Cache<ResolutionKey, Set<Entry<ClassEntry>>> resolutionCache = CacheBuilder.newBuilder()
+			.maximumSize(MAX_CACHED_RESOLUTIONS)
+			.recordStats()
+			.build();
 
 	public IndexEntryResolver(JarIndex index) {
 		this.entryIndex = index.getEntryIndex();
 		this.inheritanceIndex = index.getInheritanceIndex();
 		this.bridgeMethodIndex = index.getBridgeMethodIndex();
-
-		this.treeBuilder = new IndexTreeBuilder(index);
+		this.methodFamilyIndex = index.getMethodFamilyIndex();
 	}
 
 	@Override
@@ -49,7 +54,7 @@ public class IndexEntryResolver implements EntryResolver {
 			}
 
 			if (access == null || !access.isPrivate()) {
-				Collection<Entry<ClassEntry>> resolvedChildren = resolveChildEntry(classChild, strategy);
+				Collection<Entry<ClassEntry>> resolvedChildren = resolveChildEntry(toPlainEntry(classChild), strategy);
 				if (!resolvedChildren.isEmpty()) {
 					return resolvedChildren.stream()
 							.map(resolvedChild -> (E) entry.replaceAncestor(classChild, resolvedChild))
@@ -81,7 +86,33 @@ public class IndexEntryResolver implements EntryResolver {
 		return null;
 	}
 
+	/**
+	 * Strips definition data and javadocs from an entry, so that all equal entries resolve to the
+	 * same cached result.
+	 */
+	private static Entry<ClassEntry> toPlainEntry(Entry<ClassEntry> entry) {
+		if (entry instanceof MethodEntry method && entry.getClass() != MethodEntry.class) {
+			return new MethodEntry(method.getParent(), method.getName(), method.getDesc());
+		} else if (entry instanceof FieldEntry field && entry.getClass() != FieldEntry.class) {
+			return new FieldEntry(field.getParent(), field.getName(), field.getDesc());
+		}
+
+		return entry;
+	}
+
 	private Set<Entry<ClassEntry>> resolveChildEntry(Entry<ClassEntry> entry, ResolutionStrategy strategy) {
+		// not Cache.get with a loader, resolution recurses into the parents of the entry
+		ResolutionKey key = new ResolutionKey(entry, strategy);
+		Set<Entry<ClassEntry>> resolved = resolutionCache.getIfPresent(key);
+		if (resolved == null) {
+			resolved = Collections.unmodifiableSet(computeChildEntry(entry, strategy));
+			resolutionCache.put(key, resolved);
+		}
+
+		return resolved;
+	}
+
+	private Set<Entry<ClassEntry>> computeChildEntry(Entry<ClassEntry> entry, ResolutionStrategy strategy) {
 		ClassEntry ownerClass = entry.getParent();
 
 		if (entry instanceof MethodEntry) {
@@ -160,67 +191,20 @@ public class IndexEntryResolver implements EntryResolver {
 			throw new IllegalArgumentException("Could not find method " + methodEntry);
 		}
 
-		if (!canInherit(methodEntry, access)) {
-			return Collections.singleton(methodEntry);
-		}
-
-		Set<MethodEntry> methodEntries = Sets.newHashSet();
-		resolveEquivalentMethods(methodEntries, treeBuilder.buildMethodInheritance(VoidTranslator.INSTANCE, methodEntry));
-		return methodEntries;
+		return methodFamilyIndex.getFamily(methodEntry);
 	}
 
-	private void resolveEquivalentMethods(Set<MethodEntry> methodEntries, MethodInheritanceTreeNode node) {
-		MethodEntry methodEntry = node.getMethodEntry();
-		if (methodEntries.contains(methodEntry)) {
-			return;
-		}
-
-		AccessFlags flags = entryIndex.getMethodAccess(methodEntry);
-		if (flags != null && canInherit(methodEntry, flags)) {
-			// collect the entry
-			methodEntries.add(methodEntry);
-		}
-
-		// look at bridge methods!
-		MethodEntry bridgedMethod = bridgeMethodIndex.getBridgeFromSpecialized(methodEntry);
-		while (bridgedMethod != null) {
-			methodEntries.addAll(resolveEquivalentMethods(bridgedMethod));
-			bridgedMethod = bridgeMethodIndex.getBridgeFromSpecialized(bridgedMethod);
-		}
-
-		// look at interface methods too
-		for (MethodImplementationsTreeNode implementationsNode : treeBuilder.buildMethodImplementations(VoidTranslator.INSTANCE, methodEntry)) {
-			resolveEquivalentMethods(methodEntries, implementationsNode);
-		}
-
-		// recurse
-		for (int i = 0; i < node.getChildCount(); i++) {
-			resolveEquivalentMethods(methodEntries, (MethodInheritanceTreeNode) node.getChildAt(i));
-		}
+	/**
+	 * Discards all cached resolutions. Must be called whenever the index this resolver reads from changes.
+	 */
+	public void invalidateCache() {
+		resolutionCache.invalidateAll();
 	}
 
-	private void resolveEquivalentMethods(Set<MethodEntry> methodEntries, MethodImplementationsTreeNode node) {
-		MethodEntry methodEntry = node.getMethodEntry();
-		AccessFlags flags = entryIndex.getMethodAccess(methodEntry);
-		if (flags != null && !flags.isPrivate() && !flags.isStatic()) {
-			// collect the entry
-			methodEntries.add(methodEntry);
-		}
-
-		// look at bridge methods!
-		MethodEntry bridgedMethod = bridgeMethodIndex.getBridgeFromSpecialized(methodEntry);
-		while (bridgedMethod != null) {
-			methodEntries.addAll(resolveEquivalentMethods(bridgedMethod));
-			bridgedMethod = bridgeMethodIndex.getBridgeFromSpecialized(bridgedMethod);
-		}
-
-		// recurse
-		for (int i = 0; i < node.getChildCount(); i++) {
-			resolveEquivalentMethods(methodEntries, (MethodImplementationsTreeNode) node.getChildAt(i));
-		}
+	public CacheStats getCacheStats() {
+		return resolutionCache.stats();
 	}
 
-	private boolean canInherit(MethodEntry entry, AccessFlags access) {
-		return !entry.isConstructor() && !access.isPrivate() && !access.isStatic() && !access.isFinal();
+	private record ResolutionKey(Entry<ClassEntry> entry, ResolutionStrategy strategy) {
 	}
 }
@@ -13,6 +13,7 @@ package cuchaz.enigma.translation.mapping.serde.enigma;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.*;
@@ -56,7 +57,7 @@ public enum EnigmaMappingsWriter implements MappingsWriter {
 					writeRoot(writer, mappings, classEntry);
 				}
 			} catch (IOException e) {
-				e.printStackTrace();
+				throw new UncheckedIOException("Failed to write the mappings to " + path, e);
 			}
 		}
 	},
@@ -73,6 +74,8 @@ public enum EnigmaMappingsWriter implements MappingsWriter {
 			progress.init(changedClasses.size(), I18n.translate("progress.mappings.enigma_directory.writing"));
 
 			AtomicInteger steps = new AtomicInteger();
+			// classes which couldn't be written don't stop the others, but fail the write once they are done
+			IOException failure = new IOException("Failed to write the mappings to " + path);
 
 			Translator translator = new MappingTranslator(mappings, VoidEntryResolver.INSTANCE);
 			changedClasses.parallelStream().forEach(classEntry -> {
@@ -92,10 +95,13 @@ public enum EnigmaMappingsWriter implements MappingsWriter {
 						writeRoot(writer, mappings, classEntry);
 					}
 				} catch (Throwable t) {
-					System.err.println("Failed to write class '" + classEntry.getFullName() + "'");
-					t.printStackTrace();
+					failure.addSuppressed(new IOException("Failed to write class '" + classEntry.getFullName() + "'", t));
 				}
 			});
+
+			if (failure.getSuppressed().length > 0) {
+				throw new UncheckedIOException(failure);
+			}
 		}
 
 		private void applyDeletions(Path root, Collection<ClassEntry> changedClasses, EntryTree<EntryMapping> mappings, EntryTree<EntryMapping> oldMappings, MappingFileNameFormat fileNameFormat) {
@@ -161,7 +167,7 @@ public enum EnigmaMappingsWriter implements MappingsWriter {
 			try (FileSystem fs = FileSystems.newFileSystem(new URI("jar:file", null, zip.toUri().getPath(), ""), Collections.singletonMap("create", "true"))) {
 				DIRECTORY.write(mappings, delta, fs.getPath("/"), progress, saveParameters);
 			} catch (IOException e) {
-				e.printStackTrace();
+				throw new UncheckedIOException("Failed to write the mappings to " + zip, e);
 			} catch (URISyntaxException e) {
 				throw new RuntimeException("Unexpected error creating URI for " + zip, e);
 			}
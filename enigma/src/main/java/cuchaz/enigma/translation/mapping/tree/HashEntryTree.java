@@ -27,17 +27,18 @@ public class HashEntryTree<T> implements EntryTree<T> {
 
 	@Override
 	public void insert(Entry<?> entry, T value) {
-		List<HashTreeNode<T>> path = computePath(entry, true);
-		path.get(path.size() - 1).putValue(value);
 		if (value == null) {
-			removeDeadAlong(path);
+			remove(entry);
+			return;
 		}
+
+		computeNode(entry).putValue(value);
 	}
 
 	@Override
 	@Nullable
 	public T remove(Entry<?> entry) {
-		List<HashTreeNode<T>> path = computePath(entry, false);
+		List<HashTreeNode<T>> path = computePath(entry);
 		if (path.isEmpty()) {
 			return null;
 		}
@@ -88,26 +89,32 @@ public class HashEntryTree<T> implements EntryTree<T> {
 		return siblings;
 	}
 
+	/**
+	 * Finds the node of an entry by descending from its root ancestor, without building the
+	 * ancestry list of the entry.
+	 */
 	@Override
 	@Nullable
 	public HashTreeNode<T> findNode(Entry<?> target) {
-		List<Entry<?>> parentChain = target.getAncestry();
-		if (parentChain.isEmpty()) {
-			return null;
+		Entry<?> parent = target.getParent();
+		if (parent == null) {
+			return root.get(target);
 		}
 
-		HashTreeNode<T> node = root.get(parentChain.get(0));
-		for (int i = 1; i < parentChain.size(); i++) {
-			if (node == null) {
-				return null;
-			}
-			node = node.getChild(parentChain.get(i));
+		HashTreeNode<T> parentNode = findNode(parent);
+		return parentNode != null ? parentNode.getChild(target) : null;
+	}
+
+	private HashTreeNode<T> computeNode(Entry<?> target) {
+		Entry<?> parent = target.getParent();
+		if (parent == null) {
+			return root.computeIfAbsent(target, HashTreeNode::new);
 		}
 
-		return node;
+		return computeNode(parent).computeChild(target);
 	}
 
-	private List<HashTreeNode<T>> computePath(Entry<?> target, boolean make) {
+	private List<HashTreeNode<T>> computePath(Entry<?> target) {
 		List<Entry<?>> ancestry = target.getAncestry();
 		if (ancestry.isEmpty()) {
 			return Collections.emptyList();
@@ -116,7 +123,7 @@ public class HashEntryTree<T> implements EntryTree<T> {
 		List<HashTreeNode<T>> path = new ArrayList<>(ancestry.size());
 
 		Entry<?> rootEntry = ancestry.get(0);
-		HashTreeNode<T> node = make ? root.computeIfAbsent(rootEntry, HashTreeNode::new) : root.get(rootEntry);
+		HashTreeNode<T> node = root.get(rootEntry);
 		if (node == null) {
 			return Collections.emptyList();
 		}
@@ -125,7 +132,7 @@ public class HashEntryTree<T> implements EntryTree<T> {
 
 		for (int i = 1; i < ancestry.size(); i++) {
 			Entry<?> ancestor = ancestry.get(i);
-			node = make ? node.computeChild(ancestor) : node.getChild(ancestor);
+			node = node.getChild(ancestor);
 			if (node == null) {
 				return Collections.emptyList();
 			}
@@ -112,7 +112,7 @@ public class ClassEntry extends ParentedEntry<ClassEntry> implements Comparable<
 	}
 
 	public boolean equals(ClassEntry other) {
-		return other != null && Objects.equals(parent, other.parent) && this.name.equals(other.name);
+		return this == other || other != null && Objects.equals(parent, other.parent) && this.name.equals(other.name);
 	}
 
 	@Override
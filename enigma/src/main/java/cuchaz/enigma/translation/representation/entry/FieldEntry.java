@@ -25,6 +25,7 @@ import cuchaz.enigma.translation.representation.TypeDescriptor;
 
 public class FieldEntry extends ParentedEntry<ClassEntry> implements Comparable<FieldEntry> {
 	protected final TypeDescriptor desc;
+	private int hash;
 
 	public FieldEntry(ClassEntry parent, String name, TypeDescriptor desc) {
 		this(parent, name, desc, null);
@@ -74,7 +75,13 @@ public class FieldEntry extends ParentedEntry<ClassEntry> implements Comparable<
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(this.parent, this.name, this.desc);
+		// entries are immutable, so the hash can be cached
+		int hash = this.hash;
+		if (hash == 0) {
+			hash = Objects.hash(this.parent, this.name, this.desc);
+			this.hash = hash;
+		}
+		return hash;
 	}
 
 	@Override
@@ -83,7 +90,7 @@ public class FieldEntry extends ParentedEntry<ClassEntry> implements Comparable<
 	}
 
 	public boolean equals(FieldEntry other) {
-		return this.parent.equals(other.parent) && name.equals(other.name) && desc.equals(other.desc);
+		return this == other || this.parent.equals(other.parent) && name.equals(other.name) && desc.equals(other.desc);
 	}
 
 	@Override
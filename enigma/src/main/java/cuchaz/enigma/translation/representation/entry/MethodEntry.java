@@ -26,6 +26,7 @@ import cuchaz.enigma.translation.representation.MethodDescriptor;
 public class MethodEntry extends ParentedEntry<ClassEntry> implements Comparable<MethodEntry> {
 
 	protected final MethodDescriptor descriptor;
+	private int hash;
 
 	public MethodEntry(ClassEntry parent, String name, MethodDescriptor descriptor) {
 		this(parent, name, descriptor, null);
@@ -79,7 +80,12 @@ public class MethodEntry extends ParentedEntry<ClassEntry> implements Comparable
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(this.parent, this.name, this.descriptor);
+		int hash = this.hash;
+		if (hash == 0) {
+			hash = Objects.hash(this.parent, this.name, this.descriptor);
+			this.hash = hash;
+		}
+		return hash;
 	}
 
 	@Override
@@ -88,7 +94,7 @@ public class MethodEntry extends ParentedEntry<ClassEntry> implements Comparable
 	}
 
 	public boolean equals(MethodEntry other) {
-		return this.parent.equals(other.getParent()) && this.name.equals(other.getName()) && this.descriptor.equals(other.getDesc());
+		return this == other || this.parent.equals(other.getParent()) && this.name.equals(other.getName()) && this.descriptor.equals(other.getDesc());
 	}
 
 	@Override
@@ -19,11 +19,15 @@ import org.junit.Test;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Set;
 
 import static cuchaz.enigma.TestEntryFactory.newClass;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 
 public class PackageVisibilityIndexTest {
 	public static final Path JAR = Paths.get("build/test-obf/packageAccess.jar");
@@ -33,10 +37,11 @@ public class PackageVisibilityIndexTest {
 	private static final ClassEntry SAME_PACKAGE_CHILD_INNER = newClass("b$a");
 	private static final ClassEntry OTHER_PACKAGE_CHILD = newClass("c");
 	private static final ClassEntry OTHER_PACKAGE_CHILD_INNER = newClass("c$a");
+	private final JarClassProvider jcp;
 	private final JarIndex jarIndex;
 
 	public PackageVisibilityIndexTest() throws Exception {
-		JarClassProvider jcp = new JarClassProvider(JAR);
+		jcp = new JarClassProvider(JAR);
 		jarIndex = JarIndex.empty();
 		jarIndex.indexJar(jcp.getClassNames(), jcp, ProgressListener.none());
 	}
@@ -52,4 +57,37 @@ public class PackageVisibilityIndexTest {
 				contains(KEEP)
 		));
 	}
+
+	@Test
+	public void updatedClasses() {
+		JarIndex index = JarIndex.empty();
+		index.indexJar(jcp.getClassNames(), jcp, ProgressListener.none());
+		index.updateClasses(Set.of(), Set.of(), Set.of(SAME_PACKAGE_CHILD.getFullName(), OTHER_PACKAGE_CHILD_INNER.getFullName()), jcp, ProgressListener.none());
+
+		assertThat(index.getPackageVisibilityIndex().getPartitions(), containsInAnyOrder(
+				containsInAnyOrder(BASE, SAME_PACKAGE_CHILD, SAME_PACKAGE_CHILD_INNER),
+				containsInAnyOrder(OTHER_PACKAGE_CHILD, OTHER_PACKAGE_CHILD_INNER),
+				contains(KEEP)
+		));
+		assertThat(index.getPackageVisibilityIndex().getPartition(SAME_PACKAGE_CHILD_INNER), is(jarIndex.getPackageVisibilityIndex().getPartition(SAME_PACKAGE_CHILD_INNER)));
+	}
+
+	@Test
+	public void removedClasses() {
+		JarIndex index = JarIndex.empty();
+		index.indexJar(jcp.getClassNames(), jcp, ProgressListener.none());
+		index.updateClasses(Set.of(), Set.of(SAME_PACKAGE_CHILD_INNER.getFullName()), Set.of(), jcp, ProgressListener.none());
+
+		Set<String> remainingClasses = new HashSet<>(jcp.getClassNames());
+		remainingClasses.remove(SAME_PACKAGE_CHILD_INNER.getFullName());
+		JarIndex expected = JarIndex.empty();
+		expected.indexJar(remainingClasses, jcp, ProgressListener.none());
+
+		for (ClassEntry entry : expected.getEntryIndex().getClasses()) {
+			assertThat(index.getPackageVisibilityIndex().getPartition(entry), is(expected.getPackageVisibilityIndex().getPartition(entry)));
+		}
+
+		assertThat(index.getPackageVisibilityIndex().getPartitions().size(), is(expected.getPackageVisibilityIndex().getPartitions().size()));
+		assertThat(index.getPackageVisibilityIndex().getPartition(SAME_PACKAGE_CHILD_INNER), is(nullValue()));
+	}
 }
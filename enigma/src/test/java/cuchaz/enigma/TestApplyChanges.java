@@ -0,0 +1,73 @@
+package cuchaz.enigma;
+
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.translation.mapping.EntryChange;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.mapping.EntryUtil;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import cuchaz.enigma.utils.validation.ValidationContext;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static cuchaz.enigma.TestEntryFactory.newClass;
+import static cuchaz.enigma.TestEntryFactory.newMethod;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TestApplyChanges {
+	public static final Path JAR = Paths.get("build/test-obf/inheritanceTree.jar");
+
+	private final ClassEntry baseClass = newClass("a");
+	private final ClassEntry subClassA = newClass("b");
+	private final ClassEntry subClassAA = newClass("d");
+	// doBaseThings, declared by the base class and overridden without a mapping of its own
+	private final MethodEntry baseMethod = newMethod(baseClass, "a", "()V");
+	private final MethodEntry overrideMethod = newMethod(subClassAA, "a", "()V");
+
+	private final EntryRemapper remapper;
+
+	public TestApplyChanges() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		JarIndex index = JarIndex.empty();
+		index.indexJar(jcp.getClassNames(), new CachingClassProvider(jcp), ProgressListener.none());
+		remapper = EntryRemapper.empty(index);
+	}
+
+	@Test
+	public void appliesBatch() {
+		ValidationContext vc = new ValidationContext();
+		assertThat(EntryUtil.applyChanges(vc, remapper, List.of(
+				EntryChange.modify(overrideMethod).withDeobfName("doBaseThings"),
+				EntryChange.modify(subClassA).withDeobfName("pkg/SubclassA")
+		)), is(true));
+
+		// the rename of the override is stored on the method it overrides
+		assertThat(remapper.getObfToDeobf().get(baseMethod), is(new EntryMapping("doBaseThings")));
+		assertThat(remapper.getDeobfMapping(subClassA), is(new EntryMapping("pkg/SubclassA")));
+	}
+
+	@Test
+	public void rollsBackRejectedBatch() {
+		remapper.putMapping(new ValidationContext(), subClassAA, new EntryMapping("pkg/SubsubclassAA"));
+
+		ValidationContext vc = new ValidationContext();
+		assertThat(EntryUtil.applyChanges(vc, remapper, List.of(
+				EntryChange.modify(overrideMethod).withDeobfName("doBaseThings"),
+				EntryChange.modify(subClassAA).withDeobfName("pkg/Renamed"),
+				EntryChange.modify(subClassA).withDeobfName("pkg/not valid")
+		)), is(false));
+		assertThat(vc.canProceed(), is(false));
+
+		assertThat(remapper.getObfToDeobf().get(baseMethod), is((EntryMapping) null));
+		assertThat(remapper.getObfToDeobf().get(overrideMethod), is((EntryMapping) null));
+		assertThat(remapper.getDeobfMapping(subClassAA), is(new EntryMapping("pkg/SubsubclassAA")));
+		assertThat(remapper.getObfToDeobf().get(subClassA), is((EntryMapping) null));
+	}
+}
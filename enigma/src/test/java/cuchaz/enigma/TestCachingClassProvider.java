@@ -0,0 +1,69 @@
+package cuchaz.enigma;
+
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassCacheSettings;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class TestCachingClassProvider {
+	public static final Path JAR = Paths.get("build/test-obf/inheritanceTree.jar");
+
+	@Test
+	public void stats() throws Exception {
+		try (JarClassProvider jcp = new JarClassProvider(JAR)) {
+			CachingClassProvider provider = new CachingClassProvider(jcp);
+			String name = jcp.getClassNames().iterator().next();
+
+			assertThat(provider.get(name), is(sameInstance(provider.get(name))));
+			assertThat(provider.getClassBytes(name), is(sameInstance(provider.getClassBytes(name))));
+			assertThat(provider.getStats().hitCount(), is(2L));
+			assertThat(provider.getStats().missCount(), is(2L));
+		}
+	}
+
+	@Test
+	public void boundedByMemory() throws Exception {
+		try (JarClassProvider jcp = new JarClassProvider(JAR)) {
+			// less than a single class node
+			CachingClassProvider provider = new CachingClassProvider(jcp, new ClassCacheSettings(0L, 1, false, 0L));
+
+			for (String name : jcp.getClassNames()) {
+				provider.get(name);
+			}
+
+			assertThat(provider.getNodeStats().evictionCount(), greaterThan(0L));
+		}
+	}
+
+	@Test
+	public void profileSettings() {
+		EnigmaProfile profile = EnigmaProfile.parse(new StringReader("{\"class_cache\": {\"max_megabytes\": 16, \"soft_values\": true}}"));
+		ClassCacheSettings settings = profile.getClassCacheSettings();
+
+		assertThat(settings.getMaxBytes(), is(16L * 1024 * 1024));
+		assertThat(settings.useSoftValues(), is(true));
+		assertThat(settings.getConcurrencyLevel(), is(ClassCacheSettings.DEFAULT.getConcurrencyLevel()));
+		assertThat(EnigmaProfile.EMPTY.getClassCacheSettings(), is(sameInstance(ClassCacheSettings.DEFAULT)));
+	}
+
+	@Test
+	public void sharedBudget() {
+		EnigmaProfile profile = EnigmaProfile.parse(new StringReader("{\"class_cache\": {\"max_megabytes\": 16, \"soft_values\": true}}"));
+		ClassCacheSettings settings = profile.getClassCacheSettings();
+		ClassCacheSettings project = settings.share(ClassCacheSettings.PROJECT_SHARE);
+		ClassCacheSettings decompiler = settings.share(ClassCacheSettings.DECOMPILER_SHARE);
+		ClassCacheSettings export = settings.share(ClassCacheSettings.EXPORT_SHARE);
+
+		assertThat(project.getMaxBytes() + decompiler.getMaxBytes() + export.getMaxBytes(), is(settings.getMaxBytes()));
+		assertThat(project.useSoftValues(), is(true));
+	}
+}
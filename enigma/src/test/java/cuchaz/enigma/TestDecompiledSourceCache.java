@@ -0,0 +1,178 @@
+package cuchaz.enigma;
+
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.source.CachingDecompiler;
+import cuchaz.enigma.source.DecompiledSourceCache;
+import cuchaz.enigma.source.Decompiler;
+import cuchaz.enigma.source.Decompilers;
+import cuchaz.enigma.source.Source;
+import cuchaz.enigma.source.SourceIndex;
+import cuchaz.enigma.source.SourceSettings;
+import cuchaz.enigma.source.Token;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.mapping.tree.EntryTree;
+import cuchaz.enigma.translation.mapping.tree.HashEntryTree;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static cuchaz.enigma.TestEntryFactory.newClass;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThrows;
+
+public class TestDecompiledSourceCache {
+	public static final Path JAR = Paths.get("build/test-obf/innerClasses.jar");
+	private static final String CLASS_TREE_ROOT = "f";
+	private static final SourceSettings SETTINGS = new SourceSettings(false, false);
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final JarIndex index;
+	private final ClassProvider classProvider;
+	private final Decompiler decompiler;
+	private final AtomicInteger decompiled = new AtomicInteger();
+
+	public TestDecompiledSourceCache() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		classProvider = new CachingClassProvider(jcp);
+		index = JarIndex.empty();
+		index.indexJar(jcp.getClassNames(), classProvider, ProgressListener.none());
+
+		Decompiler procyon = Decompilers.PROCYON.create(classProvider, SETTINGS);
+		decompiler = (className, remapper) -> {
+			decompiled.incrementAndGet();
+			return procyon.getSource(className, remapper);
+		};
+	}
+
+	@Test
+	public void reusesCachedSource() {
+		DecompiledSourceCache cache = new DecompiledSourceCache(folder.getRoot().toPath());
+
+		SourceIndex expected = new CachingDecompiler(decompiler, classProvider, SETTINGS, cache).getSource(CLASS_TREE_ROOT, null).index();
+		assertThat(decompiled.get(), is(1));
+
+		// a new decompiler, as after a restart
+		Source cached = new CachingDecompiler(decompiler, classProvider, SETTINGS, cache).getSource(CLASS_TREE_ROOT, null);
+		assertThat(cached.withJavadocs(EntryRemapper.empty(index)), is(cached));
+		assertThat(decompiled.get(), is(1));
+
+		assertSameIndex(cached.index(), expected);
+	}
+
+	@Test
+	public void javadocsAreNotCached() {
+		DecompiledSourceCache cache = new DecompiledSourceCache(folder.getRoot().toPath());
+		new CachingDecompiler(decompiler, classProvider, SETTINGS, cache).getSource(CLASS_TREE_ROOT, null).index();
+
+		EntryTree<EntryMapping> mappings = new HashEntryTree<>();
+		mappings.insert(newClass(CLASS_TREE_ROOT + "$a"), new EntryMapping(null, "An inner class."));
+		EntryRemapper remapper = EntryRemapper.mapped(index, mappings);
+
+		Source source = new CachingDecompiler(decompiler, classProvider, SETTINGS, cache).getSource(CLASS_TREE_ROOT, null);
+		assertThat(decompiled.get(), is(1));
+		assertThat(source.withJavadocs(remapper).asString().contains("An inner class."), is(true));
+		assertThat(decompiled.get(), is(2));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() throws Exception {
+		Path directory = folder.getRoot().toPath();
+		SourceIndex source = new SourceIndex("class a {}");
+		new DecompiledSourceCache(directory).save(key(1), source);
+		long sourceSize = sourceFiles().get(0).toFile().length();
+
+		// room for a little less than three sources
+		DecompiledSourceCache cache = new DecompiledSourceCache(directory, sourceSize * 29 / 10);
+		age();
+		cache.save(key(2), source);
+		age();
+		assertThat(cache.load(key(1)), is(notNullValue()));
+		age();
+		cache.save(key(3), source);
+
+		assertThat(sourceFiles().size(), is(2));
+		assertThat(cache.load(key(2)), is(nullValue()));
+		assertThat(cache.load(key(1)), is(notNullValue()));
+		assertThat(cache.load(key(3)), is(notNullValue()));
+	}
+
+	@Test
+	public void unreadableSourceIsDeleted() throws Exception {
+		DecompiledSourceCache cache = new DecompiledSourceCache(folder.getRoot().toPath());
+		cache.save(key(1), new SourceIndex("class a {}"));
+
+		Path file = sourceFiles().get(0);
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+
+		assertThrows(IOException.class, () -> cache.load(key(1)));
+		assertThat(Files.exists(file), is(false));
+		assertThat(cache.load(key(1)), is(nullValue()));
+	}
+
+	private static byte[] key(int id) {
+		byte[] key = new byte[32];
+		key[0] = (byte) id;
+		return key;
+	}
+
+	private List<Path> sourceFiles() throws IOException {
+		try (Stream<Path> files = Files.walk(folder.getRoot().toPath())) {
+			return files.filter(file -> file.toString().endsWith(".source")).collect(Collectors.toList());
+		}
+	}
+
+	// makes every source an hour older, so that the order they were used in doesn't depend on the clock resolution
+	private void age() throws IOException {
+		for (Path file : sourceFiles()) {
+			Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - TimeUnit.HOURS.toMillis(1)));
+		}
+	}
+
+	private static void assertSameIndex(SourceIndex actual, SourceIndex expected) {
+		assertThat(actual.getSource(), is(expected.getSource()));
+		assertThat(references(actual), is(references(expected)));
+
+		for (Entry<?> entry : expected.declarations()) {
+			assertThat(actual.getDeclarationToken(entry), is(expected.getDeclarationToken(entry)));
+		}
+
+		for (EntryReference<Entry<?>, Entry<?>> reference : expected.references()) {
+			assertThat(actual.getReferenceTokens(reference), is(expected.getReferenceTokens(reference)));
+		}
+	}
+
+	private static Map<Token, EntryReference<Entry<?>, Entry<?>>> references(SourceIndex index) {
+		Map<Token, EntryReference<Entry<?>, Entry<?>>> references = new HashMap<>();
+		for (Token token : index.referenceTokens()) {
+			references.put(token, index.getReference(token));
+		}
+
+		return references;
+	}
+}
@@ -0,0 +1,64 @@
+package cuchaz.enigma;
+
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.source.Decompiler;
+import cuchaz.enigma.source.DecompilerPool;
+import cuchaz.enigma.source.Decompilers;
+import cuchaz.enigma.source.SourceSettings;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TestDecompilerPool {
+	public static final Path JAR = Paths.get("build/test-obf/translation.jar");
+	private static final int THREADS = 4;
+	private static final int ROUNDS = 4;
+
+	@Test
+	public void matchesSingleDecompiler() throws Exception {
+		try (JarClassProvider jcp = new JarClassProvider(JAR)) {
+			ClassProvider classProvider = new CachingClassProvider(jcp);
+			List<String> classNames = new ArrayList<>(jcp.getClassNames());
+			classNames.removeIf(name -> name.contains("$"));
+
+			Decompiler single = Decompilers.PROCYON.create(classProvider, new SourceSettings(false, false));
+			Map<String, String> expected = new HashMap<>();
+			for (String className : classNames) {
+				expected.put(className, single.getSource(className, null).asString());
+			}
+
+			// replace the instances often, so that they are also created while others are in use
+			Decompiler pool = new DecompilerPool(() -> Decompilers.PROCYON.create(classProvider, new SourceSettings(false, false)), 3);
+			ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+			try {
+				List<Future<String>> sources = new ArrayList<>();
+				for (int round = 0; round < ROUNDS; round++) {
+					for (String className : classNames) {
+						sources.add(executor.submit(() -> pool.getSource(className, null).asString()));
+					}
+				}
+
+				for (int i = 0; i < sources.size(); i++) {
+					String className = classNames.get(i % classNames.size());
+					assertThat(className, sources.get(i).get(), is(expected.get(className)));
+				}
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package cuchaz.enigma;
+
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.index.EntryPool;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class TestEntryPool {
+	public static final Path JAR = Paths.get("build/test-obf/translation.jar");
+
+	@Test
+	public void canonicalEntries() {
+		EntryPool pool = new EntryPool();
+
+		ClassEntry inner = pool.getClass("a$b$c");
+		assertThat(inner, is(new ClassEntry("a$b$c")));
+		assertThat(inner.getParent(), sameInstance(pool.getClass("a$b")));
+		assertThat(inner.getOutermostClass(), sameInstance(pool.getClass("a")));
+
+		assertThat(pool.getMethod("a", "b", "(I)V"), sameInstance(pool.getMethod("a", "b", "(I)V")));
+		assertThat(pool.getField("a", "b", "I"), sameInstance(pool.getField("a", "b", "I")));
+		assertThat(pool.getMethod("a", "b", "(I)V").getParent(), sameInstance(pool.getClass("a")));
+		assertThat(pool.getMethod("a", "b", "(I)V"), is(MethodEntry.parse("a", "b", "(I)V")));
+	}
+
+	@Test
+	public void indexedReferencesAreShared() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		JarIndex index = JarIndex.empty();
+		index.indexJar(jcp.getClassNames(), new CachingClassProvider(jcp), ProgressListener.none(), true);
+
+		Map<MethodEntry, MethodEntry> seen = new HashMap<>();
+		for (MethodEntry caller : index.getEntryIndex().getMethods()) {
+			for (MethodEntry referenced : index.getReferenceIndex().getMethodsReferencedBy(caller)) {
+				assertThat(referenced, sameInstance(seen.computeIfAbsent(referenced, m -> m)));
+
+				for (EntryReference<MethodEntry, MethodDefEntry> reference : index.getReferenceIndex().getReferencesToMethod(referenced)) {
+					assertThat(reference.entry, sameInstance(referenced));
+				}
+			}
+		}
+
+		assertThat(seen.size(), greaterThan(0));
+	}
+}
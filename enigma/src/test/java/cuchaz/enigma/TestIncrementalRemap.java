@@ -0,0 +1,124 @@
+package cuchaz.enigma;
+
+import cuchaz.enigma.api.EnigmaPlugin;
+import cuchaz.enigma.api.service.NameProposalService;
+import cuchaz.enigma.classprovider.ClasspathClassProvider;
+import cuchaz.enigma.source.DecompiledClassSource;
+import cuchaz.enigma.source.Decompilers;
+import cuchaz.enigma.source.RenamableTokenType;
+import cuchaz.enigma.source.SourceIndex;
+import cuchaz.enigma.source.SourceSettings;
+import cuchaz.enigma.source.Token;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.translation.representation.entry.Entry;
+import cuchaz.enigma.utils.validation.ValidationContext;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static cuchaz.enigma.TestEntryFactory.newClass;
+import static cuchaz.enigma.TestEntryFactory.newField;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class TestIncrementalRemap {
+	public static final Path JAR = Paths.get("build/test-obf/innerClasses.jar");
+	private static final String CLASS_TREE_ROOT = "f";
+
+	private EnigmaProject project;
+	private DecompiledClassSource source;
+
+	public TestIncrementalRemap() throws Exception {
+		open(Enigma.create());
+	}
+
+	private void open(Enigma enigma) throws Exception {
+		project = enigma.openJar(JAR, new ClasspathClassProvider(), ProgressListener.none());
+
+		SourceIndex index = Decompilers.PROCYON.create(project.getClassProvider(), new SourceSettings(false, false))
+				.getSource(CLASS_TREE_ROOT, null)
+				.index();
+		index.resolveReferences(project.getMapper().getObfResolver());
+		source = remapFully(new DecompiledClassSource(newClass(CLASS_TREE_ROOT), index));
+	}
+
+	@Test
+	public void renameClass() {
+		// also renames the classes nested in it
+		assertRemapsLikeFullRemap(newClass(CLASS_TREE_ROOT + "$a"), "Renamed");
+	}
+
+	@Test
+	public void renameField() {
+		assertRemapsLikeFullRemap(newField(CLASS_TREE_ROOT + "$a$a$a", "a", "I"), "renamedField");
+	}
+
+	@Test
+	public void proposedNameDependingOnRenamedEntry() throws Exception {
+		openWithProposer();
+		assertRemapsLikeFullRemap(newClass(CLASS_TREE_ROOT + "$a"), "Renamed");
+	}
+
+	@Test
+	public void proposedNameNotDependingOnRenamedEntry() throws Exception {
+		openWithProposer();
+		// the proposed names only depend on the entries around them, not on unrelated classes
+		assertThat(source.isAffectedByRename(project, Set.of(newClass("a"))), is(false));
+	}
+
+	private void openWithProposer() throws Exception {
+		String profile = "{\"services\": {\"name_proposal\": {\"id\": \"test:proposer\"}}}";
+		EnigmaPlugin plugin = ctx -> ctx.registerService("test:proposer", NameProposalService.TYPE, args -> (entry, remapper) -> {
+			if (entry.equals(newField(CLASS_TREE_ROOT + "$a$a$a", "a", "I"))) {
+				return Optional.of("of" + remapper.deobfuscate(newClass(CLASS_TREE_ROOT + "$a")).getSimpleName());
+			}
+
+			return Optional.empty();
+		});
+
+		open(Enigma.builder().setProfile(EnigmaProfile.parse(new StringReader(profile))).setPlugins(List.of(plugin)).build());
+	}
+
+	@Test
+	public void unreferencedEntry() {
+		assertThat(source.remapEntries(project, project.getMapper().getDeobfuscator(), Set.of(newClass("a"))), is(sameInstance(source)));
+	}
+
+	private void assertRemapsLikeFullRemap(Entry<?> entry, String name) {
+		project.getMapper().putMapping(new ValidationContext(), entry, new EntryMapping(name));
+
+		DecompiledClassSource incremental = source.remapEntries(project, project.getMapper().getDeobfuscator(), Set.of(entry));
+		DecompiledClassSource full = remapFully(source);
+
+		assertThat(incremental.toString(), is(not(source.toString())));
+		assertThat(incremental.toString(), is(full.toString()));
+		assertThat(tokens(incremental.getIndex().referenceTokens()), is(tokens(full.getIndex().referenceTokens())));
+
+		for (Map.Entry<RenamableTokenType, ? extends Collection<Token>> tokens : full.getHighlightedTokens().entrySet()) {
+			assertThat(tokens(incremental.getHighlightedTokens().get(tokens.getKey())), is(tokens(tokens.getValue())));
+		}
+	}
+
+	private DecompiledClassSource remapFully(DecompiledClassSource source) {
+		return source.remapSource(project, project.getMapper().getDeobfuscator());
+	}
+
+	private static List<String> tokens(Iterable<Token> tokens) {
+		List<String> strings = new ArrayList<>();
+		for (Token token : tokens) {
+			strings.add(token + token.text);
+		}
+
+		return strings;
+	}
+}
@@ -0,0 +1,103 @@
+package cuchaz.enigma;
+
+import cuchaz.enigma.classprovider.ClasspathClassProvider;
+import cuchaz.enigma.translation.mapping.EntryMapping;
+import cuchaz.enigma.utils.validation.ValidationContext;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static cuchaz.enigma.TestEntryFactory.newClass;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+public class TestJarExport {
+	public static final Path JAR = Paths.get("build/test-obf/innerClasses.jar");
+	public static final Path EXPORTED = Paths.get("build/test-deobf/innerClasses-export.jar");
+	public static final Path STREAMED = Paths.get("build/test-deobf/innerClasses-streamed.jar");
+	public static final Path REPRODUCIBLE = Paths.get("build/test-deobf/innerClasses-reproducible.jar");
+	public static final Path FRESH = Paths.get("build/test-deobf/innerClasses-fresh.jar");
+
+	@Test
+	public void streamedJarMatchesExport() throws Exception {
+		Files.createDirectories(EXPORTED.getParent());
+
+		EnigmaProject project = Enigma.create().openJar(JAR, new ClasspathClassProvider(), ProgressListener.none());
+		project.exportRemappedJar(ProgressListener.none()).write(EXPORTED, ProgressListener.none());
+		project.exportRemappedJar(STREAMED, ProgressListener.none(), 3);
+
+		Map<String, byte[]> exported = readEntries(EXPORTED);
+		Map<String, byte[]> streamed = readEntries(STREAMED);
+
+		// entries are ordered by class name, so that inner classes follow their outer class
+		List<String> sortedNames = new ArrayList<>();
+		for (String name : exported.keySet()) {
+			sortedNames.add(name.substring(0, name.length() - ".class".length()));
+		}
+
+		Collections.sort(sortedNames);
+		sortedNames.replaceAll(name -> name + ".class");
+
+		assertThat(new ArrayList<>(exported.keySet()), is(sortedNames));
+		assertThat(new ArrayList<>(streamed.keySet()), is(sortedNames));
+
+		for (String name : sortedNames) {
+			assertThat(name, streamed.get(name), is(equalTo(exported.get(name))));
+		}
+	}
+
+	@Test
+	public void reproducibleIncrementalExport() throws Exception {
+		Files.createDirectories(REPRODUCIBLE.getParent());
+		Files.deleteIfExists(REPRODUCIBLE);
+
+		EnigmaProject project = Enigma.create().openJar(JAR, new ClasspathClassProvider(), ProgressListener.none());
+		JarExportManifest first = project.exportReproducibleJar(REPRODUCIBLE, ProgressListener.none(), null);
+		byte[] firstBytes = Files.readAllBytes(REPRODUCIBLE);
+
+		assertThat(project.exportReproducibleJar(FRESH, ProgressListener.none(), null), is(first));
+		assertThat(Files.readAllBytes(FRESH), is(firstBytes));
+
+		project.getMapper().putMapping(new ValidationContext(), newClass("a"), new EntryMapping("Renamed"));
+
+		JarExportManifest second = project.exportReproducibleJar(REPRODUCIBLE, ProgressListener.none(), first);
+		assertThat(second.getChangedClasses(first), contains("Renamed", "Renamed$1"));
+		assertThat(second.getRemovedClasses(first), contains("a", "a$1"));
+		assertThat(second.getHash("f"), is(first.getHash("f")));
+
+		// reusing the entries of the previous jar gives the same jar as a full export
+		project.exportReproducibleJar(FRESH, ProgressListener.none(), null);
+		assertThat(Files.readAllBytes(REPRODUCIBLE), is(Files.readAllBytes(FRESH)));
+
+		Path manifestPath = REPRODUCIBLE.resolveSibling("innerClasses-reproducible.sha256");
+		second.write(manifestPath);
+		assertThat(JarExportManifest.read(manifestPath), is(second));
+	}
+
+	private static Map<String, byte[]> readEntries(Path path) throws IOException {
+		Map<String, byte[]> entries = new LinkedHashMap<>();
+
+		try (ZipFile zip = new ZipFile(path.toFile())) {
+			Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+			while (zipEntries.hasMoreElements()) {
+				ZipEntry entry = zipEntries.nextElement();
+				entries.put(entry.getName(), zip.getInputStream(entry).readAllBytes());
+			}
+		}
+
+		return entries;
+	}
+}
@@ -0,0 +1,188 @@
+package cuchaz.enigma;
+
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.analysis.index.JarIndexCache;
+import cuchaz.enigma.analysis.index.ReferenceIndex;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.translation.representation.entry.ClassDefEntry;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import cuchaz.enigma.utils.Utils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class TestJarIndexCache {
+	public static final Path JAR = Paths.get("build/test-obf/translation.jar");
+	private static final String LIBRARIES = "libraries";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTrip() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		JarIndex index = JarIndex.empty();
+		index.indexJar(jcp.getClassNames(), new CachingClassProvider(jcp), ProgressListener.none());
+
+		byte[] checksum = Utils.zipSha1(JAR);
+		JarIndexCache cache = new JarIndexCache(folder.getRoot().toPath(), List.of());
+		assertThat(cache.load(checksum, LIBRARIES), is(nullValue()));
+
+		cache.save(checksum, LIBRARIES, index);
+		JarIndex loaded = cache.load(checksum, LIBRARIES);
+		assertThat(loaded, is(notNullValue()));
+
+		assertThat(set(loaded.getEntryIndex().getClasses()), is(set(index.getEntryIndex().getClasses())));
+		assertThat(set(loaded.getEntryIndex().getMethods()), is(set(index.getEntryIndex().getMethods())));
+		assertThat(set(loaded.getEntryIndex().getFields()), is(set(index.getEntryIndex().getFields())));
+
+		for (ClassEntry entry : index.getEntryIndex().getClasses()) {
+			ClassDefEntry definition = index.getEntryIndex().getDefinition(entry);
+			ClassDefEntry loadedDefinition = loaded.getEntryIndex().getDefinition(entry);
+			assertThat(loadedDefinition.getAccess(), is(definition.getAccess()));
+			assertThat(loadedDefinition.getSignature(), is(definition.getSignature()));
+			assertThat(loadedDefinition.getSuperClass(), is(definition.getSuperClass()));
+			assertThat(loadedDefinition.getInterfaces(), is(definition.getInterfaces()));
+
+			assertThat(set(loaded.getInheritanceIndex().getParents(entry)), is(set(index.getInheritanceIndex().getParents(entry))));
+			assertThat(set(loaded.getInheritanceIndex().getChildren(entry)), is(set(index.getInheritanceIndex().getChildren(entry))));
+			assertThat(set(loaded.getReferenceIndex().getReferencesToClass(entry)), is(set(index.getReferenceIndex().getReferencesToClass(entry))));
+			assertThat(loaded.getPackageVisibilityIndex().getPartition(entry), is(index.getPackageVisibilityIndex().getPartition(entry)));
+			assertThat(loaded.isIndexed(entry.getFullName()), is(index.isIndexed(entry.getFullName())));
+		}
+
+		ReferenceIndex references = index.getReferenceIndex();
+		ReferenceIndex loadedReferences = loaded.getReferenceIndex();
+		for (MethodEntry entry : index.getEntryIndex().getMethods()) {
+			assertThat(loaded.getEntryIndex().getMethodAccess(entry), is(index.getEntryIndex().getMethodAccess(entry)));
+			assertThat(set(loadedReferences.getMethodsReferencedBy(entry)), is(set(references.getMethodsReferencedBy(entry))));
+
+			Collection<EntryReference<MethodEntry, ?>> referencesToMethod = List.copyOf(references.getReferencesToMethod(entry));
+			assertThat(set(loadedReferences.getReferencesToMethod(entry)), is(set(referencesToMethod)));
+			for (EntryReference<MethodEntry, ?> reference : loadedReferences.getReferencesToMethod(entry)) {
+				EntryReference<MethodEntry, ?> original = referencesToMethod.stream().filter(reference::equals).findFirst().orElseThrow();
+				assertThat(reference.isNamed(), is(original.isNamed()));
+				assertThat(reference.targetType.getKind(), is(original.targetType.getKind()));
+			}
+		}
+
+		for (FieldEntry entry : index.getEntryIndex().getFields()) {
+			assertThat(loaded.getEntryIndex().getFieldAccess(entry), is(index.getEntryIndex().getFieldAccess(entry)));
+			assertThat(set(loadedReferences.getReferencesToField(entry)), is(set(references.getReferencesToField(entry))));
+		}
+
+		assertThat(loaded.getBridgeMethodIndex().getBridgeToSpecialized(), is(index.getBridgeMethodIndex().getBridgeToSpecialized()));
+		assertThat(loaded.getBridgeMethodIndex().getSpecializedToBridge(), is(index.getBridgeMethodIndex().getSpecializedToBridge()));
+		assertThat(loaded.getChildrenByClass(), is(index.getChildrenByClass()));
+	}
+
+	@Test
+	public void mismatchedIndexers() throws Exception {
+		JarIndex index = indexJar();
+
+		byte[] checksum = Utils.zipSha1(JAR);
+		new JarIndexCache(folder.getRoot().toPath(), List.of("plugin:indexer")).save(checksum, LIBRARIES, index);
+		assertThat(new JarIndexCache(folder.getRoot().toPath(), List.of()).load(checksum, LIBRARIES), is(nullValue()));
+		assertThat(new JarIndexCache(folder.getRoot().toPath(), List.of("plugin:indexer{key=value}")).load(checksum, LIBRARIES), is(nullValue()));
+		assertThat(new JarIndexCache(folder.getRoot().toPath(), List.of("plugin:indexer")).load(checksum, LIBRARIES), is(notNullValue()));
+	}
+
+	@Test
+	public void mismatchedLibraries() throws Exception {
+		JarIndex index = indexJar();
+
+		byte[] checksum = Utils.zipSha1(JAR);
+		JarIndexCache cache = new JarIndexCache(folder.getRoot().toPath(), List.of());
+		cache.save(checksum, LIBRARIES, index);
+		assertThat(cache.load(checksum, "other libraries"), is(nullValue()));
+		assertThat(cache.load(checksum, LIBRARIES), is(notNullValue()));
+	}
+
+	@Test
+	public void longLibraries() throws Exception {
+		JarIndex index = indexJar();
+
+		// longer than a string written with writeUTF may be, like the classpath of a dev launch
+		String libraries = "library.jar".repeat(10000);
+		byte[] checksum = Utils.zipSha1(JAR);
+		JarIndexCache cache = new JarIndexCache(folder.getRoot().toPath(), List.of());
+		cache.save(checksum, libraries, index);
+		assertThat(cache.load(checksum, libraries), is(notNullValue()));
+		assertThat(cache.load(checksum, libraries + "other.jar"), is(nullValue()));
+	}
+
+	@Test
+	public void loadedEntriesAreInterned() throws Exception {
+		byte[] checksum = Utils.zipSha1(JAR);
+		JarIndexCache cache = new JarIndexCache(folder.getRoot().toPath(), List.of());
+		cache.save(checksum, LIBRARIES, indexJar());
+		JarIndex loaded = cache.load(checksum, LIBRARIES);
+
+		// entries created after loading, such as when reindexing a class, are the loaded instances
+		for (MethodEntry caller : loaded.getEntryIndex().getMethods()) {
+			for (MethodEntry referenced : loaded.getReferenceIndex().getMethodsReferencedBy(caller)) {
+				String owner = referenced.getParent().getFullName();
+				assertThat(loaded.getEntryPool().getMethod(owner, referenced.getName(), referenced.getDesc().toString()), is(sameInstance(referenced)));
+				assertThat(loaded.getEntryPool().getClass(owner), is(sameInstance(referenced.getParent())));
+			}
+		}
+	}
+
+	@Test
+	public void pruneLeastRecentlyUsed() throws Exception {
+		JarIndex index = indexJar();
+
+		byte[] checksum = Utils.zipSha1(JAR);
+		JarIndexCache cache = new JarIndexCache(folder.getRoot().toPath(), List.of(), 2);
+		cache.save(checksum, "a", index);
+		age();
+		cache.save(checksum, "b", index);
+		age();
+		assertThat(cache.load(checksum, "a"), is(notNullValue()));
+		age();
+		cache.save(checksum, "c", index);
+
+		assertThat(cache.load(checksum, "b"), is(nullValue()));
+		assertThat(cache.load(checksum, "a"), is(notNullValue()));
+		assertThat(cache.load(checksum, "c"), is(notNullValue()));
+	}
+
+	private static JarIndex indexJar() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		JarIndex index = JarIndex.empty();
+		index.indexJar(jcp.getClassNames(), new CachingClassProvider(jcp), ProgressListener.none());
+		return index;
+	}
+
+	// makes every snapshot an hour older, so that the order they were used in doesn't depend on the clock resolution
+	private void age() throws IOException {
+		try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() - TimeUnit.HOURS.toMillis(1)));
+			}
+		}
+	}
+
+	private static <T> Set<T> set(Collection<? extends T> collection) {
+		return new HashSet<>(collection);
+	}
+}
@@ -0,0 +1,198 @@
+package cuchaz.enigma;
+
+import com.google.common.collect.HashMultimap;
+import cuchaz.enigma.analysis.EntryReference;
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.analysis.index.ReferenceIndex;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import org.junit.Test;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+
+public class TestJarIndexIncremental {
+	public static final Path JAR = Paths.get("build/test-obf/inheritanceTree.jar");
+
+	private final Set<String> classNames;
+	private final ClassProvider classProvider;
+	private final JarIndex full;
+	private final Set<String> leafClasses = new TreeSet<>();
+
+	public TestJarIndexIncremental() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		classNames = jcp.getClassNames();
+		classProvider = new CachingClassProvider(jcp);
+		full = index(classNames);
+
+		for (ClassEntry entry : full.getEntryIndex().getClasses()) {
+			if (full.getInheritanceIndex().getChildren(entry).isEmpty()) {
+				leafClasses.add(entry.getFullName());
+			}
+		}
+	}
+
+	private JarIndex index(Set<String> classNames) {
+		JarIndex index = JarIndex.empty();
+		index.indexJar(classNames, classProvider, ProgressListener.none());
+		return index;
+	}
+
+	@Test
+	public void changedClasses() {
+		JarIndex index = index(classNames);
+		index.updateClasses(Collections.emptySet(), Collections.emptySet(), leafClasses, classProvider, ProgressListener.none());
+		assertSameIndex(index, full);
+	}
+
+	@Test
+	public void addedClasses() {
+		Set<String> initialClasses = new HashSet<>(classNames);
+		initialClasses.removeAll(leafClasses);
+
+		JarIndex index = index(initialClasses);
+		index.updateClasses(leafClasses, Collections.emptySet(), Collections.emptySet(), classProvider, ProgressListener.none());
+		assertSameIndex(index, full);
+	}
+
+	@Test
+	public void removedClasses() {
+		Set<String> remainingClasses = new HashSet<>(classNames);
+		remainingClasses.removeAll(leafClasses);
+
+		JarIndex index = index(classNames);
+		index.updateClasses(Collections.emptySet(), leafClasses, Collections.emptySet(), classProvider, ProgressListener.none());
+		assertSameIndex(index, index(remainingClasses));
+	}
+
+	@Test
+	public void changedMembers() {
+		// remove a method which other classes call, so that their references resolve to another entry
+		MethodEntry calledMethod = null;
+		for (MethodEntry method : full.getEntryIndex().getMethods()) {
+			if (!method.isConstructor() && isReferencedFromOtherClass(method)) {
+				calledMethod = method;
+				break;
+			}
+		}
+
+		assertThat(calledMethod, is(notNullValue()));
+
+		MethodEntry removedMethod = calledMethod;
+		ClassProvider changedProvider = name -> {
+			ClassNode node = classProvider.get(name);
+			if (node == null || !name.equals(removedMethod.getParent().getFullName())) {
+				return node;
+			}
+
+			ClassNode copy = new ClassNode();
+			node.accept(copy);
+			copy.methods.removeIf(method -> method.name.equals(removedMethod.getName()) && method.desc.equals(removedMethod.getDesc().toString()));
+			return copy;
+		};
+
+		JarIndex index = index(classNames);
+		index.updateClasses(Collections.emptySet(), Collections.emptySet(), Set.of(removedMethod.getParent().getFullName()), changedProvider, ProgressListener.none());
+
+		JarIndex expected = JarIndex.empty();
+		expected.indexJar(classNames, changedProvider, ProgressListener.none());
+		assertSameIndex(index, expected);
+	}
+
+	@Test
+	public void changedHierarchy() {
+		Set<String> parentClasses = new HashSet<>(classNames);
+		parentClasses.removeAll(leafClasses);
+		assertThat(parentClasses, is(not(Collections.emptySet())));
+
+		// removing classes which are extended falls back to indexing the whole jar again
+		JarIndex index = index(classNames);
+		index.updateClasses(Collections.emptySet(), parentClasses, Collections.emptySet(), classProvider, ProgressListener.none());
+		index.updateClasses(parentClasses, Collections.emptySet(), Collections.emptySet(), classProvider, ProgressListener.none());
+		assertSameIndex(index, full);
+	}
+
+	@Test
+	public void repeatedUpdates() {
+		Set<String> remainingClasses = new HashSet<>(classNames);
+		remainingClasses.removeAll(leafClasses);
+
+		// the entries of the removed classes pile up in the store until it is compacted again
+		JarIndex index = index(classNames);
+		for (int i = 0; i < 4; i++) {
+			index.updateClasses(Collections.emptySet(), leafClasses, Collections.emptySet(), classProvider, ProgressListener.none());
+			assertSameIndex(index, index(remainingClasses));
+			index.updateClasses(leafClasses, Collections.emptySet(), Collections.emptySet(), classProvider, ProgressListener.none());
+			assertSameIndex(index, full);
+		}
+	}
+
+	@Test
+	public void indexedAgain() {
+		// the references are compacted after the first pass, and indexed into directly by the second
+		JarIndex index = index(classNames);
+		index.indexJar(classNames, classProvider, ProgressListener.none());
+		assertSameIndex(index, full);
+	}
+
+	private boolean isReferencedFromOtherClass(MethodEntry method) {
+		for (EntryReference<MethodEntry, MethodDefEntry> reference : full.getReferenceIndex().getReferencesToMethod(method)) {
+			if (!reference.context.getParent().equals(method.getParent())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private static void assertSameIndex(JarIndex actual, JarIndex expected) {
+		assertThat(new HashSet<>(actual.getEntryIndex().getClasses()), is(new HashSet<>(expected.getEntryIndex().getClasses())));
+		assertThat(new HashSet<>(actual.getEntryIndex().getMethods()), is(new HashSet<>(expected.getEntryIndex().getMethods())));
+		assertThat(new HashSet<>(actual.getEntryIndex().getFields()), is(new HashSet<>(expected.getEntryIndex().getFields())));
+
+		ReferenceIndex actualReferences = actual.getReferenceIndex();
+		ReferenceIndex expectedReferences = expected.getReferenceIndex();
+
+		for (ClassEntry entry : expected.getEntryIndex().getClasses()) {
+			assertThat(new HashSet<>(actual.getInheritanceIndex().getParents(entry)), is(new HashSet<>(expected.getInheritanceIndex().getParents(entry))));
+			assertThat(new HashSet<>(actual.getInheritanceIndex().getChildren(entry)), is(new HashSet<>(expected.getInheritanceIndex().getChildren(entry))));
+			assertThat(new HashSet<>(actualReferences.getReferencesToClass(entry)), is(new HashSet<>(expectedReferences.getReferencesToClass(entry))));
+			assertThat(new HashSet<>(actualReferences.getMethodTypeReferencesToClass(entry)), is(new HashSet<>(expectedReferences.getMethodTypeReferencesToClass(entry))));
+			assertThat(new HashSet<>(actualReferences.getFieldTypeReferencesToClass(entry)), is(new HashSet<>(expectedReferences.getFieldTypeReferencesToClass(entry))));
+			assertThat(actual.getPackageVisibilityIndex().getPartition(entry), is(expected.getPackageVisibilityIndex().getPartition(entry)));
+		}
+
+		for (MethodEntry entry : expected.getEntryIndex().getMethods()) {
+			assertThat(new HashSet<>(actualReferences.getReferencesToMethod(entry)), is(new HashSet<>(expectedReferences.getReferencesToMethod(entry))));
+			assertThat(new HashSet<>(actualReferences.getMethodsReferencedBy(entry)), is(new HashSet<>(expectedReferences.getMethodsReferencedBy(entry))));
+			assertThat(actual.getMethodFamilyIndex().getFamily(entry), is(expected.getMethodFamilyIndex().getFamily(entry)));
+		}
+
+		for (FieldEntry entry : expected.getEntryIndex().getFields()) {
+			assertThat(new HashSet<>(actualReferences.getReferencesToField(entry)), is(new HashSet<>(expectedReferences.getReferencesToField(entry))));
+		}
+
+		assertThat(actual.getBridgeMethodIndex().getBridgeToSpecialized(), is(expected.getBridgeMethodIndex().getBridgeToSpecialized()));
+		assertThat(actual.getBridgeMethodIndex().getSpecializedToBridge(), is(expected.getBridgeMethodIndex().getSpecializedToBridge()));
+		assertThat(HashMultimap.create(actual.getChildrenByClass()), is(HashMultimap.create(expected.getChildrenByClass())));
+
+		for (String className : expected.getEntryIndex().getClasses().stream().map(ClassEntry::getFullName).toList()) {
+			assertThat(actual.isIndexed(className), is(true));
+		}
+	}
+}
@@ -15,21 +15,26 @@ import cuchaz.enigma.analysis.EntryReference;
 import cuchaz.enigma.analysis.index.EntryIndex;
 import cuchaz.enigma.analysis.index.InheritanceIndex;
 import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.analysis.index.MethodFamilyIndex;
 import cuchaz.enigma.classprovider.CachingClassProvider;
 import cuchaz.enigma.classprovider.JarClassProvider;
 import cuchaz.enigma.translation.mapping.EntryResolver;
 import cuchaz.enigma.translation.mapping.IndexEntryResolver;
+import cuchaz.enigma.translation.mapping.ResolutionStrategy;
 import cuchaz.enigma.translation.representation.AccessFlags;
 import cuchaz.enigma.translation.representation.entry.ClassEntry;
 import cuchaz.enigma.translation.representation.entry.FieldEntry;
 import cuchaz.enigma.translation.representation.entry.MethodDefEntry;
 import cuchaz.enigma.translation.representation.entry.MethodEntry;
 import org.junit.Test;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Collection;
+import java.util.Map;
 
 import static cuchaz.enigma.TestEntryFactory.*;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -93,6 +98,67 @@ public class TestJarIndexInheritanceTree {
 		assertThat(index.getEntryIndex().getFieldAccess(numThingsField), is(new AccessFlags(Opcodes.ACC_PRIVATE)));
 	}
 
+	@Test
+	public void methodFamilies() {
+		MethodFamilyIndex families = index.getMethodFamilyIndex();
+		MethodEntry baseGetName = newMethod(baseClass, "a", "()Ljava/lang/String;");
+		MethodEntry overriddenGetName = newMethod(subClassAA, "a", "()Ljava/lang/String;");
+
+		assertThat(families.getFamily(baseGetName), containsInAnyOrder(baseGetName, overriddenGetName));
+		assertThat(families.getFamilyRoot(overriddenGetName), is(families.getFamilyRoot(baseGetName)));
+		assertThat(families.isInFamily(baseGetName, newMethod(subClassB, "a", "()V")), is(false));
+
+		// methods that are not overridden are alone in their family
+		assertThat(families.getFamily(newMethod(subClassB, "b", "()V")), contains(newMethod(subClassB, "b", "()V")));
+	}
+
+	@Test
+	public void finalMethodFamilies() {
+		ClassNode iface = classNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "I");
+		iface.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "foo", "()V", null, null).visitEnd();
+
+		ClassNode implementation = classNode(Opcodes.ACC_PUBLIC, "A", "I");
+		MethodVisitor foo = implementation.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, "foo", "()V", null, null);
+		foo.visitCode();
+		foo.visitInsn(Opcodes.RETURN);
+		foo.visitMaxs(0, 1);
+		foo.visitEnd();
+
+		Map<String, ClassNode> classes = Map.of("I", iface, "A", implementation);
+		JarIndex index = JarIndex.empty();
+		index.indexJar(classes.keySet(), classes::get, ProgressListener.none());
+
+		MethodEntry interfaceFoo = newMethod("I", "foo", "()V");
+		MethodEntry finalFoo = newMethod("A", "foo", "()V");
+		MethodFamilyIndex families = index.getMethodFamilyIndex();
+		assertThat(families.getFamily(finalFoo), containsInAnyOrder(interfaceFoo, finalFoo));
+		// the final method is not the root, even though its class sorts first
+		assertThat(families.getFamilyRoot(finalFoo), is(interfaceFoo));
+		assertThat(new IndexEntryResolver(index).resolveEquivalentMethods(interfaceFoo), containsInAnyOrder(interfaceFoo, finalFoo));
+	}
+
+	private static ClassNode classNode(int access, String name, String... interfaces) {
+		ClassNode node = new ClassNode();
+		node.visit(Opcodes.V1_8, access, name, null, "java/lang/Object", interfaces);
+		return node;
+	}
+
+	@Test
+	public void cachedResolution() {
+		IndexEntryResolver resolver = new IndexEntryResolver(index);
+		MethodEntry getName = newMethod(subClassAA, "a", "()Ljava/lang/String;");
+		MethodEntry inheritedGetName = newMethod(subClassA, "a", "()Ljava/lang/String;");
+
+		assertThat(resolver.resolveEntry(getName, ResolutionStrategy.RESOLVE_ROOT), contains(newMethod(baseClass, "a", "()Ljava/lang/String;")));
+		assertThat(resolver.resolveEntry(inheritedGetName, ResolutionStrategy.RESOLVE_ROOT), contains(newMethod(baseClass, "a", "()Ljava/lang/String;")));
+		assertThat(resolver.resolveEntry(inheritedGetName, ResolutionStrategy.RESOLVE_CLOSEST), contains(newMethod(baseClass, "a", "()Ljava/lang/String;")));
+		assertThat(resolver.getCacheStats().hitCount(), is(1L));
+
+		resolver.invalidateCache();
+		assertThat(resolver.resolveEntry(getName, ResolutionStrategy.RESOLVE_ROOT), contains(newMethod(baseClass, "a", "()Ljava/lang/String;")));
+		assertThat(resolver.getCacheStats().hitCount(), is(1L));
+	}
+
 	@Test
 	public void relatedMethodImplementations() {
 
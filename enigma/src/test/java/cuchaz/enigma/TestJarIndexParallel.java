@@ -0,0 +1,81 @@
+package cuchaz.enigma;
+
+import cuchaz.enigma.analysis.index.JarIndex;
+import cuchaz.enigma.analysis.index.ReferenceIndex;
+import cuchaz.enigma.classprovider.CachingClassProvider;
+import cuchaz.enigma.classprovider.ClassProvider;
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import cuchaz.enigma.translation.representation.entry.FieldEntry;
+import cuchaz.enigma.translation.representation.entry.MethodEntry;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class TestJarIndexParallel {
+	public static final Path JAR = Paths.get("build/test-obf/translation.jar");
+
+	private final JarIndex serial;
+	private final JarIndex parallel;
+
+	public TestJarIndexParallel() throws Exception {
+		JarClassProvider jcp = new JarClassProvider(JAR);
+		ClassProvider classProvider = new CachingClassProvider(jcp);
+
+		serial = JarIndex.empty();
+		serial.indexJar(jcp.getClassNames(), classProvider, ProgressListener.none(), false);
+
+		parallel = JarIndex.empty();
+		parallel.indexJar(jcp.getClassNames(), classProvider, ProgressListener.none(), true);
+	}
+
+	@Test
+	public void entries() {
+		assertThat(new HashSet<>(parallel.getEntryIndex().getClasses()), is(new HashSet<>(serial.getEntryIndex().getClasses())));
+		assertThat(new HashSet<>(parallel.getEntryIndex().getMethods()), is(new HashSet<>(serial.getEntryIndex().getMethods())));
+		assertThat(new HashSet<>(parallel.getEntryIndex().getFields()), is(new HashSet<>(serial.getEntryIndex().getFields())));
+	}
+
+	@Test
+	public void inheritance() {
+		for (ClassEntry entry : serial.getEntryIndex().getClasses()) {
+			assertThat(new HashSet<>(parallel.getInheritanceIndex().getParents(entry)), is(new HashSet<>(serial.getInheritanceIndex().getParents(entry))));
+			assertThat(new HashSet<>(parallel.getInheritanceIndex().getChildren(entry)), is(new HashSet<>(serial.getInheritanceIndex().getChildren(entry))));
+		}
+	}
+
+	@Test
+	public void references() {
+		ReferenceIndex serialReferences = serial.getReferenceIndex();
+		ReferenceIndex parallelReferences = parallel.getReferenceIndex();
+
+		for (MethodEntry entry : serial.getEntryIndex().getMethods()) {
+			assertThat(new HashSet<>(parallelReferences.getReferencesToMethod(entry)), is(new HashSet<>(serialReferences.getReferencesToMethod(entry))));
+			assertThat(new HashSet<>(parallelReferences.getMethodsReferencedBy(entry)), is(new HashSet<>(serialReferences.getMethodsReferencedBy(entry))));
+		}
+
+		for (FieldEntry entry : serial.getEntryIndex().getFields()) {
+			assertThat(new HashSet<>(parallelReferences.getReferencesToField(entry)), is(new HashSet<>(serialReferences.getReferencesToField(entry))));
+		}
+
+		for (ClassEntry entry : serial.getEntryIndex().getClasses()) {
+			assertThat(new HashSet<>(parallelReferences.getReferencesToClass(entry)), is(new HashSet<>(serialReferences.getReferencesToClass(entry))));
+		}
+	}
+
+	@Test
+	public void bridgeMethods() {
+		assertThat(parallel.getBridgeMethodIndex().getBridgeToSpecialized(), is(serial.getBridgeMethodIndex().getBridgeToSpecialized()));
+		assertThat(parallel.getBridgeMethodIndex().getSpecializedToBridge(), is(serial.getBridgeMethodIndex().getSpecializedToBridge()));
+	}
+
+	@Test
+	public void childrenByClass() {
+		assertThat(parallel.getChildrenByClass(), is(serial.getChildrenByClass()));
+	}
+}
@@ -0,0 +1,93 @@
+package cuchaz.enigma;
+
+import cuchaz.enigma.classprovider.JarClassProvider;
+import cuchaz.enigma.classprovider.MappedJarClassProvider;
+import cuchaz.enigma.utils.AsmUtil;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThrows;
+
+public class TestMappedJarClassProvider {
+	public static final Path JAR = Paths.get("build/test-obf/inheritanceTree.jar");
+
+	@Test
+	public void sameClasses() throws Exception {
+		try (JarClassProvider jcp = new JarClassProvider(JAR); MappedJarClassProvider mapped = new MappedJarClassProvider(JAR)) {
+			assertThat(mapped.getClassNames(), is(jcp.getClassNames()));
+
+			for (String name : jcp.getClassNames()) {
+				assertThat(AsmUtil.nodeToBytes(mapped.get(name)), is(AsmUtil.nodeToBytes(jcp.get(name))));
+				assertThat(mapped.getClassBytes(name), is(jcp.getClassBytes(name)));
+			}
+		}
+	}
+
+	@Test
+	public void missingClass() throws Exception {
+		try (MappedJarClassProvider mapped = new MappedJarClassProvider(JAR)) {
+			assertThat(mapped.get("does/not/Exist"), is(nullValue()));
+			assertThat(mapped.getClassBytes("does/not/Exist"), is(nullValue()));
+		}
+	}
+
+	@Test
+	public void closed() throws Exception {
+		MappedJarClassProvider mapped = new MappedJarClassProvider(JAR);
+		String name = mapped.getClassNames().iterator().next();
+		mapped.close();
+
+		assertThrows(IllegalStateException.class, () -> mapped.getClassBytes(name));
+	}
+
+	@Test
+	public void maxEntriesWithoutZip64() throws Exception {
+		byte[] classBytes;
+		try (JarClassProvider jcp = new JarClassProvider(JAR)) {
+			classBytes = jcp.getClassBytes("a");
+		}
+
+		// the zip64 records written for 0xFFFF entries are removed, leaving only the plain end record
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(out)) {
+			zip.putNextEntry(new ZipEntry("a.class"));
+			zip.write(classBytes);
+			for (int i = 1; i < 0xFFFF; i++) {
+				zip.putNextEntry(new ZipEntry("dir" + i + "/"));
+			}
+		}
+
+		byte[] jar = out.toByteArray();
+		ByteBuffer buffer = ByteBuffer.wrap(jar).order(ByteOrder.LITTLE_ENDIAN);
+		int endOffset = jar.length - 22;
+		int zip64EndOffset = (int) buffer.getLong(endOffset - 20 + 8);
+		byte[] stripped = new byte[zip64EndOffset + 22];
+		System.arraycopy(jar, 0, stripped, 0, zip64EndOffset);
+		System.arraycopy(jar, endOffset, stripped, zip64EndOffset, 22);
+		assertThat(Arrays.copyOfRange(stripped, zip64EndOffset + 10, zip64EndOffset + 12), is(new byte[] {(byte) 0xFF, (byte) 0xFF}));
+
+		Path path = Files.createTempFile("enigma-max-entries", ".jar");
+		try {
+			Files.write(path, stripped);
+			try (MappedJarClassProvider mapped = new MappedJarClassProvider(path)) {
+				assertThat(mapped.getClassNames(), is(Set.of("a")));
+				assertThat(mapped.getClassBytes("a"), is(classBytes));
+			}
+		} finally {
+			Files.delete(path);
+		}
+	}
+}
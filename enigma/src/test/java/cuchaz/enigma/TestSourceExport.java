@@ -0,0 +1,138 @@
+package cuchaz.enigma;
+
+import cuchaz.enigma.EnigmaProject.DecompileErrorStrategy;
+import cuchaz.enigma.classprovider.ClasspathClassProvider;
+import cuchaz.enigma.source.Decompiler;
+import cuchaz.enigma.source.DecompilerService;
+import cuchaz.enigma.source.Decompilers;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertThrows;
+
+public class TestSourceExport {
+	public static final Path JAR = Paths.get("build/test-obf/innerClasses.jar");
+	public static final Path EXPORTED = Paths.get("build/test-deobf/innerClasses-sources");
+	public static final Path STREAMED = Paths.get("build/test-deobf/innerClasses-streamed-sources");
+	public static final Path STREAMED_ZIP = Paths.get("build/test-deobf/innerClasses-streamed-sources.zip");
+	private static final String FAILING_CLASS = "a";
+
+	private final EnigmaProject project;
+
+	public TestSourceExport() throws Exception {
+		project = Enigma.create().openJar(JAR, new ClasspathClassProvider(), ProgressListener.none());
+		deleteRecursively(EXPORTED);
+		deleteRecursively(STREAMED);
+		Files.createDirectories(STREAMED_ZIP.getParent());
+		Files.deleteIfExists(STREAMED_ZIP);
+	}
+
+	@Test
+	public void streamedSourcesMatchExport() throws Exception {
+		project.exportRemappedJar(ProgressListener.none()).decompile(ProgressListener.none(), Decompilers.PROCYON, DecompileErrorStrategy.PROPAGATE).write(EXPORTED, ProgressListener.none());
+		project.exportRemappedSources(STREAMED, ProgressListener.none(), Decompilers.PROCYON, DecompileErrorStrategy.PROPAGATE, 3);
+		project.exportRemappedSources(STREAMED_ZIP, ProgressListener.none(), Decompilers.PROCYON, DecompileErrorStrategy.PROPAGATE, 3);
+
+		Map<String, String> exported = readDirectory(EXPORTED);
+		Map<String, String> zipped = readZip(STREAMED_ZIP);
+
+		assertThat(exported.isEmpty(), is(false));
+		assertThat(readDirectory(STREAMED), is(exported));
+		assertThat(new TreeMap<>(zipped), is(exported));
+		// the zip entries are ordered by class name, whichever class was decompiled first
+		assertThat(new ArrayList<>(zipped.keySet()), is(new ArrayList<>(exported.keySet())));
+	}
+
+	@Test
+	public void propagatesErrors() {
+		IllegalStateException e = assertThrows(IllegalStateException.class, () -> project.exportRemappedSources(STREAMED_ZIP, ProgressListener.none(), failingDecompiler(), DecompileErrorStrategy.PROPAGATE, 3));
+		assertThat(e.getMessage(), is("Couldn't decompile " + FAILING_CLASS));
+	}
+
+	@Test
+	public void ignoresErrors() throws Exception {
+		project.exportRemappedSources(STREAMED_ZIP, ProgressListener.none(), failingDecompiler(), DecompileErrorStrategy.IGNORE, 3);
+
+		Map<String, String> zipped = readZip(STREAMED_ZIP);
+		assertThat(zipped, not(hasKey(FAILING_CLASS + ".java")));
+		assertThat(zipped, hasKey("b.java"));
+	}
+
+	@Test
+	public void tracesErrorsAsSource() throws Exception {
+		project.exportRemappedSources(STREAMED, ProgressListener.none(), failingDecompiler(), DecompileErrorStrategy.TRACE_AS_SOURCE, 3);
+		assertThat(readDirectory(STREAMED).get(FAILING_CLASS + ".java"), containsString("Couldn't decompile " + FAILING_CLASS));
+	}
+
+	private static DecompilerService failingDecompiler() {
+		return (classProvider, settings) -> {
+			Decompiler decompiler = Decompilers.PROCYON.create(classProvider, settings);
+			return (className, remapper) -> {
+				if (className.equals(FAILING_CLASS)) {
+					throw new IllegalStateException("Couldn't decompile " + className);
+				}
+
+				return decompiler.getSource(className, remapper);
+			};
+		};
+	}
+
+	private static Map<String, String> readDirectory(Path root) throws IOException {
+		Map<String, String> sources = new TreeMap<>();
+
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Path path : paths.filter(Files::isRegularFile).toList()) {
+				sources.put(root.relativize(path).toString().replace('\\', '/'), Files.readString(path));
+			}
+		}
+
+		return sources;
+	}
+
+	private static Map<String, String> readZip(Path path) throws IOException {
+		Map<String, String> sources = new LinkedHashMap<>();
+
+		try (ZipFile zip = new ZipFile(path.toFile())) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				sources.put(entry.getName(), new String(zip.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8));
+			}
+		}
+
+		return sources;
+	}
+
+	private static void deleteRecursively(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return;
+		}
+
+		try (Stream<Path> paths = Files.walk(path)) {
+			List<Path> files = paths.sorted(Comparator.reverseOrder()).toList();
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package cuchaz.enigma.classhandle;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+public class TestDecompileScheduler {
+	private final DecompileScheduler scheduler = new DecompileScheduler(1);
+	private final List<String> ran = Collections.synchronizedList(new ArrayList<>());
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@After
+	public void shutdown() throws InterruptedException {
+		release.countDown();
+		scheduler.shutdown();
+		scheduler.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void runsByPriorityThenInOrder() throws Exception {
+		blockWorker();
+
+		Object visible = new Object();
+		Object open = new Object();
+		Object prefetch = new Object();
+		scheduler.setPriority(visible, DecompileScheduler.Priority.VISIBLE);
+		scheduler.setPriority(prefetch, DecompileScheduler.Priority.PREFETCH);
+
+		CompletableFuture<String> last = submit(prefetch, "prefetch");
+		submit(open, "open 1");
+		submit(visible, "visible");
+		submit(new Object(), "open 2");
+
+		release.countDown();
+		last.get(5, TimeUnit.SECONDS);
+		assertThat(ran, contains("visible", "open 1", "open 2", "prefetch"));
+	}
+
+	@Test
+	public void coalescesSupersededTasks() throws Exception {
+		blockWorker();
+
+		Object owner = new Object();
+		AtomicInteger version = new AtomicInteger(2);
+		CompletableFuture<String> first = scheduler.submit(owner, DecompileScheduler.Stage.DECOMPILE, version::get, 1, () -> run("version 1"));
+		CompletableFuture<String> second = scheduler.submit(owner, DecompileScheduler.Stage.DECOMPILE, version::get, 2, () -> run("version 2"));
+		// an older version than the queued one is dropped right away
+		CompletableFuture<String> stale = scheduler.submit(owner, DecompileScheduler.Stage.DECOMPILE, version::get, 1, () -> run("stale"));
+
+		assertThat(first.get(5, TimeUnit.SECONDS), is(nullValue()));
+		assertThat(stale.get(5, TimeUnit.SECONDS), is(nullValue()));
+
+		release.countDown();
+		assertThat(second.get(5, TimeUnit.SECONDS), is("version 2"));
+		assertThat(ran, contains("version 2"));
+		assertThat(scheduler.getStageStats(DecompileScheduler.Stage.DECOMPILE).coalesced(), is(2L));
+	}
+
+	@Test
+	public void dropsOutdatedTasksWhenStarted() throws Exception {
+		blockWorker();
+
+		Object owner = new Object();
+		AtomicInteger version = new AtomicInteger(1);
+		CompletableFuture<String> outdated = scheduler.submit(owner, DecompileScheduler.Stage.MAP, version::get, 1, () -> run("outdated"));
+		version.set(2);
+
+		release.countDown();
+		assertThat(outdated.get(5, TimeUnit.SECONDS), is(nullValue()));
+		assertThat(ran.isEmpty(), is(true));
+	}
+
+	@Test
+	public void reprioritisesQueuedTasks() throws Exception {
+		blockWorker();
+
+		Object first = new Object();
+		Object second = new Object();
+		CompletableFuture<String> last = submit(first, "first");
+		submit(second, "second");
+
+		scheduler.setPriority(first, DecompileScheduler.Priority.PREFETCH);
+
+		release.countDown();
+		last.get(5, TimeUnit.SECONDS);
+		assertThat(ran, contains("second", "first"));
+	}
+
+	@Test
+	public void completesDroppedTasksOutsideTheLock() throws Exception {
+		blockWorker();
+
+		Object owner = new Object();
+		AtomicBoolean locked = new AtomicBoolean();
+		CompletableFuture<String> dropped = scheduler.submit(owner, DecompileScheduler.Stage.DECOMPILE, () -> 2, 1, () -> run("dropped"));
+		CompletableFuture<Void> callback = dropped.thenAccept(result -> locked.set(Thread.holdsLock(scheduler)));
+		scheduler.submit(owner, DecompileScheduler.Stage.DECOMPILE, () -> 2, 2, () -> run("kept"));
+
+		callback.get(5, TimeUnit.SECONDS);
+		assertThat(locked.get(), is(false));
+	}
+
+	/**
+	 * Keeps the only worker busy until the test releases it, so that the next tasks are queued.
+	 */
+	private void blockWorker() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		scheduler.setPriority(this, DecompileScheduler.Priority.VISIBLE);
+		scheduler.submit(this, DecompileScheduler.Stage.JAVADOC, () -> 0, 0, () -> {
+			started.countDown();
+
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			return null;
+		});
+
+		assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+	}
+
+	private CompletableFuture<String> submit(Object owner, String name) {
+		return scheduler.submit(owner, DecompileScheduler.Stage.DECOMPILE, () -> 0, 0, () -> run(name));
+	}
+
+	private String run(String name) {
+		ran.add(name);
+		return name;
+	}
+}
@@ -0,0 +1,143 @@
+package cuchaz.enigma.classhandle;
+
+import cuchaz.enigma.source.Source;
+import cuchaz.enigma.source.SourceIndex;
+import cuchaz.enigma.translation.mapping.EntryRemapper;
+import cuchaz.enigma.translation.representation.entry.ClassEntry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static cuchaz.enigma.TestEntryFactory.newClass;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+public class TestSourcePrefetcher {
+	private static final ClassEntry A = newClass("a");
+	private static final ClassEntry B = newClass("b");
+	private static final ClassEntry C = newClass("c");
+
+	private final DecompileScheduler scheduler = new DecompileScheduler(1);
+	private final List<ClassEntry> decompiled = Collections.synchronizedList(new ArrayList<>());
+
+	@After
+	public void shutdown() throws InterruptedException {
+		scheduler.shutdown();
+		scheduler.awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void prefetchesInOrder() throws InterruptedException {
+		SourcePrefetcher prefetcher = new SourcePrefetcher(scheduler, this::decompile);
+		prefetcher.prefetch(List.of(A, B, C));
+
+		assertThat(awaitSource(prefetcher, C).asString(), is("c"));
+		assertThat(decompiled, contains(A, B, C));
+
+		assertThat(prefetcher.take(A), is(notNullValue()));
+		// a source is only handed out once
+		assertThat(prefetcher.take(A), is(nullValue()));
+	}
+
+	@Test
+	public void failedClassIsSkipped() throws InterruptedException {
+		SourcePrefetcher prefetcher = new SourcePrefetcher(scheduler, entry -> {
+			if (entry.equals(B)) {
+				throw new IllegalStateException("decompiler crashed");
+			}
+
+			return decompile(entry);
+		});
+		prefetcher.prefetch(List.of(A, B, C));
+
+		assertThat(awaitSource(prefetcher, C), is(notNullValue()));
+		assertThat(prefetcher.take(A), is(notNullValue()));
+		assertThat(prefetcher.take(B), is(nullValue()));
+	}
+
+	@Test
+	public void cancelDiscardsRunningClass() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		SourcePrefetcher prefetcher = new SourcePrefetcher(scheduler, entry -> {
+			if (entry.equals(A)) {
+				started.countDown();
+				await(release);
+			}
+
+			return decompile(entry);
+		});
+
+		prefetcher.prefetch(List.of(A, B));
+		assertThat(started.await(5, TimeUnit.SECONDS), is(true));
+		prefetcher.cancel();
+		release.countDown();
+
+		prefetcher.prefetch(List.of(C));
+		assertThat(awaitSource(prefetcher, C), is(notNullValue()));
+		assertThat(prefetcher.take(A), is(nullValue()));
+		assertThat(decompiled, contains(A, C));
+	}
+
+	@Test
+	public void invalidateDiscardsSources() throws InterruptedException {
+		SourcePrefetcher prefetcher = new SourcePrefetcher(scheduler, this::decompile);
+		prefetcher.prefetch(List.of(A, B));
+		assertThat(awaitSource(prefetcher, B), is(notNullValue()));
+
+		prefetcher.invalidate();
+		assertThat(prefetcher.take(A), is(nullValue()));
+	}
+
+	private Source decompile(ClassEntry entry) {
+		decompiled.add(entry);
+		return new TextSource(entry.getFullName());
+	}
+
+	private static Source awaitSource(SourcePrefetcher prefetcher, ClassEntry entry) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (System.nanoTime() < deadline) {
+			Source source = prefetcher.take(entry);
+			if (source != null) {
+				return source;
+			}
+
+			Thread.sleep(1);
+		}
+
+		return null;
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private record TextSource(String text) implements Source {
+		@Override
+		public String asString() {
+			return text;
+		}
+
+		@Override
+		public Source withJavadocs(EntryRemapper remapper) {
+			return this;
+		}
+
+		@Override
+		public SourceIndex index() {
+			return new SourceIndex(text);
+		}
+	}
+}
@@ -17,6 +17,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  * Tests that a MappingFormat can write out a fixed set of mappings and read them back without losing any information.
@@ -126,4 +127,17 @@ public class TestReadWriteCycle {
 	public void testTinyV2() throws IOException, MappingParseException {
 		testReadWriteCycle(MappingFormat.TINY_V2, true, ".tinyv2");
 	}
+
+	@Test
+	public void testEnigmaWriteFailure() throws IOException {
+		EntryTree<EntryMapping> testMappings = new HashEntryTree<>();
+		insertMapping(testMappings, testClazz);
+
+		// a file can't be written into, or used as the mappings directory
+		File tempFile = File.createTempFile("readWriteCycle", ".tmp");
+		tempFile.deleteOnExit();
+
+		Assert.assertThrows(UncheckedIOException.class, () -> MappingFormat.ENIGMA_FILE.write(testMappings, tempFile.toPath().resolve("mappings.enigma"), ProgressListener.none(), parameters));
+		Assert.assertThrows(UncheckedIOException.class, () -> MappingFormat.ENIGMA_DIRECTORY.write(testMappings, tempFile.toPath(), ProgressListener.none(), parameters));
+	}
 }